@@ -0,0 +1,65 @@
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.EvaluateAttenuationCnossos;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CNOSSOS attenuation of the propagation paths found in a small synthetic scene
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AttenuationBenchmark {
+    private ComputeRaysOutAttenuation rayOut;
+    private PropagationProcessPathData pathData;
+    private EvaluateAttenuationCnossos evaluator;
+    private EvaluateAttenuationCnossos.AttenuationBuffer buffer;
+    private List<PropagationPath> paths;
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        SyntheticScene scene = new SyntheticScene(42, 250);
+        CnossosPropagationData data = scene.createPropagationData(scene.createProfileBuilder(true), 1);
+        pathData = new PropagationProcessPathData(false);
+        rayOut = new ComputeRaysOutAttenuation(true, pathData, data);
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(1);
+        computeRays.run(rayOut);
+        paths = rayOut.getPropagationPaths();
+        if (paths.isEmpty()) {
+            throw new IllegalStateException("No propagation path in the synthetic scene");
+        }
+        evaluator = new EvaluateAttenuationCnossos(pathData);
+        buffer = evaluator.createBuffer();
+    }
+
+    @Benchmark
+    public void computeAttenuation(Blackhole blackhole) {
+        PropagationPath path = paths.get(index++ % paths.size());
+        blackhole.consume(rayOut.computeAttenuation(pathData, evaluator, buffer, path.getIdSource(), 1.0,
+                path.getIdReceiver(), Collections.singletonList(path)));
+    }
+}
@@ -0,0 +1,100 @@
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.Orientation;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diffraction on horizontal edges (over the buildings) and on vertical edges (around the buildings) for
+ * source-receiver pairs that are hidden by buildings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DiffractionBenchmark {
+    private static final int PAIR_COUNT = 256;
+
+    private CnossosPropagationData data;
+    private ComputeCnossosRays computeRays;
+    private final List<Coordinate> sources = new ArrayList<>();
+    private final List<Coordinate> receivers = new ArrayList<>();
+    private final List<ProfileBuilder.CutProfile> profiles = new ArrayList<>();
+    /** Profiles reused by the direct path computation, as a computation thread does */
+    private final ProfileBuilder.CutProfile directProfile = new ProfileBuilder.CutProfile();
+    private final ProfileBuilder.CutProfile segmentProfile = new ProfileBuilder.CutProfile();
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        SyntheticScene scene = new SyntheticScene(42, 1000);
+        ProfileBuilder profileBuilder = scene.createProfileBuilder(false);
+        data = scene.createPropagationData(profileBuilder, 0);
+        computeRays = new ComputeCnossosRays(data);
+        List<Coordinate> sceneReceivers = scene.getReceivers();
+        Random random = new Random(42);
+        while (profiles.size() < PAIR_COUNT) {
+            Coordinate receiver = sceneReceivers.get(random.nextInt(sceneReceivers.size()));
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double distance = 50 + random.nextDouble() * 250;
+            Coordinate source = new Coordinate(receiver.x + Math.cos(angle) * distance,
+                    receiver.y + Math.sin(angle) * distance, SyntheticScene.SOURCE_HEIGHT);
+            if (source.x < 0 || source.y < 0 || source.x > scene.getSize() || source.y > scene.getSize()) {
+                continue;
+            }
+            ProfileBuilder.CutProfile profile = profileBuilder.getProfile(source, receiver, 0.5);
+            if (profile.intersectBuilding()) {
+                sources.add(source);
+                receivers.add(receiver);
+                profiles.add(profile);
+            }
+        }
+    }
+
+    @Benchmark
+    public void computeHEdgeDiffraction(Blackhole blackhole) {
+        int i = index++ % PAIR_COUNT;
+        blackhole.consume(computeRays.computeHEdgeDiffraction(profiles.get(i), false));
+    }
+
+    @Benchmark
+    public void computeVEdgeDiffraction(Blackhole blackhole) {
+        int i = index++ % PAIR_COUNT;
+        blackhole.consume(computeRays.computeVEdgeDiffraction(receivers.get(i), sources.get(i), data,
+                ComputeCnossosRays.ComputationSide.LEFT, new Orientation()));
+    }
+
+    @Benchmark
+    public void directPath(Blackhole blackhole) {
+        int i = index++ % PAIR_COUNT;
+        blackhole.consume(computeRays.directPath(sources.get(i), -1, new Orientation(), receivers.get(i), -1,
+                true, true, false, directProfile, segmentProfile));
+    }
+
+    @Benchmark
+    public void computeSideHull(Blackhole blackhole) {
+        int i = index++ % PAIR_COUNT;
+        blackhole.consume(computeRays.computeSideHull(true, new Coordinate(receivers.get(i)),
+                new Coordinate(sources.get(i)), data.profileBuilder));
+    }
+}
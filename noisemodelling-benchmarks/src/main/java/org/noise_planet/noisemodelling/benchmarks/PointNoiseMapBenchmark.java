@@ -0,0 +1,67 @@
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.noise_planet.noisemodelling.jdbc.PointNoiseMap;
+import org.noise_planet.noisemodelling.pathfinder.RootProgressVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full computation of one cell of the synthetic scene stored in an in-memory H2GIS database: fetching of the
+ * geometries, propagation paths and attenuation.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PointNoiseMapBenchmark {
+    private Connection connection;
+    private PointNoiseMap pointNoiseMap;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                PointNoiseMapBenchmark.class.getSimpleName(), true, ""));
+        new SyntheticScene(42, 500).createTables(connection);
+        pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS", "RECEIVERS");
+        pointNoiseMap.setDemTable("DEM");
+        pointNoiseMap.setSoilTableName("LAND_G");
+        pointNoiseMap.setMaximumPropagationDistance(250);
+        pointNoiseMap.setMaximumReflectionDistance(100);
+        pointNoiseMap.setSoundReflectionOrder(1);
+        pointNoiseMap.setComputeHorizontalDiffraction(true);
+        pointNoiseMap.setComputeVerticalDiffraction(true);
+        pointNoiseMap.setThreadCount(1);
+        pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public Object evaluateCell() throws SQLException, IOException {
+        return pointNoiseMap.evaluateCell(connection, 0, 0, new RootProgressVisitor(1, false, 1),
+                new HashSet<>());
+    }
+}
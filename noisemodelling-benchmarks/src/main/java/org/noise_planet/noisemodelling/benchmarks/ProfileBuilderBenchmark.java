@@ -0,0 +1,74 @@
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cut profile between random source and receiver positions of the synthetic scene.
+ * Run with {@code -prof gc} and compare the gc.alloc.rate.norm of {@link #getProfile} and
+ * {@link #getProfileReused} to measure the allocations saved by reusing the cut profile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProfileBuilderBenchmark {
+    private static final int PAIR_COUNT = 1024;
+
+    @Param({"true", "false"})
+    public boolean topography;
+
+    private ProfileBuilder profileBuilder;
+    private final Coordinate[] sources = new Coordinate[PAIR_COUNT];
+    private final Coordinate[] receivers = new Coordinate[PAIR_COUNT];
+    private final ProfileBuilder.CutProfile reusedProfile = new ProfileBuilder.CutProfile();
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        SyntheticScene scene = new SyntheticScene(42, 1000);
+        profileBuilder = scene.createProfileBuilder(topography);
+        List<Coordinate> sceneReceivers = scene.getReceivers();
+        Random random = new Random(42);
+        for (int i = 0; i < PAIR_COUNT; i++) {
+            receivers[i] = sceneReceivers.get(random.nextInt(sceneReceivers.size()));
+            // Source at most 500 m from the receiver
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double distance = 10 + random.nextDouble() * 490;
+            sources[i] = new Coordinate(
+                    Math.max(0, Math.min(scene.getSize(), receivers[i].x + Math.cos(angle) * distance)),
+                    Math.max(0, Math.min(scene.getSize(), receivers[i].y + Math.sin(angle) * distance)),
+                    SyntheticScene.SOURCE_HEIGHT);
+        }
+    }
+
+    @Benchmark
+    public void getProfile(Blackhole blackhole) {
+        int i = index++ % PAIR_COUNT;
+        blackhole.consume(profileBuilder.getProfile(sources[i], receivers[i], 0.5));
+    }
+
+    @Benchmark
+    public void getProfileReused(Blackhole blackhole) {
+        int i = index++ % PAIR_COUNT;
+        blackhole.consume(profileBuilder.getProfile(sources[i], receivers[i], 0.5, reusedProfile));
+    }
+}
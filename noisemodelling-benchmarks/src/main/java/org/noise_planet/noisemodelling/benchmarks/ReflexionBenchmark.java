@@ -0,0 +1,85 @@
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverResultIndex;
+import org.noise_planet.noisemodelling.pathfinder.Orientation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mirror receivers construction and reflection paths for the reflection orders 1 to 3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReflexionBenchmark {
+    private static final int RECEIVER_COUNT = 16;
+    private static final int SOURCE_COUNT = 64;
+
+    @Param({"1", "2", "3"})
+    public int order;
+
+    private CnossosPropagationData data;
+    private ComputeCnossosRays computeRays;
+    private final Coordinate[] receivers = new Coordinate[RECEIVER_COUNT];
+    private final MirrorReceiverResultIndex[] mirrorIndexes = new MirrorReceiverResultIndex[RECEIVER_COUNT];
+    private final Coordinate[] sources = new Coordinate[SOURCE_COUNT];
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        SyntheticScene scene = new SyntheticScene(42, 1000);
+        data = scene.createPropagationData(scene.createProfileBuilder(false), order);
+        computeRays = new ComputeCnossosRays(data);
+        Random random = new Random(42);
+        List<Coordinate> sceneReceivers = scene.getReceivers();
+        for (int i = 0; i < RECEIVER_COUNT; i++) {
+            receivers[i] = sceneReceivers.get(random.nextInt(sceneReceivers.size()));
+            mirrorIndexes[i] = createMirrorIndex(receivers[i]);
+        }
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            Coordinate receiver = receivers[i % RECEIVER_COUNT];
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double distance = 20 + random.nextDouble() * 180;
+            sources[i] = new Coordinate(receiver.x + Math.cos(angle) * distance,
+                    receiver.y + Math.sin(angle) * distance, SyntheticScene.SOURCE_HEIGHT);
+        }
+    }
+
+    private MirrorReceiverResultIndex createMirrorIndex(Coordinate receiver) {
+        return new MirrorReceiverResultIndex(computeRays.getReflectionCandidateIndex(), receiver, order,
+                data.maxSrcDist, data.maxRefDist);
+    }
+
+    @Benchmark
+    public void mirrorReceiverIndex(Blackhole blackhole) {
+        blackhole.consume(createMirrorIndex(receivers[index++ % RECEIVER_COUNT]));
+    }
+
+    @Benchmark
+    public void computeReflexion(Blackhole blackhole) {
+        int i = index++ % SOURCE_COUNT;
+        int idReceiver = i % RECEIVER_COUNT;
+        blackhole.consume(computeRays.computeReflexion(receivers[idReceiver], sources[i], false, new Orientation(),
+                mirrorIndexes[idReceiver]));
+    }
+}
@@ -0,0 +1,69 @@
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.noise_planet.noisemodelling.emission.EvaluateRoadSourceCnossos;
+import org.noise_planet.noisemodelling.emission.RoadSourceParametersCnossos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CNOSSOS road emission of one frequency band for random traffic parameters
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RoadEmissionBenchmark {
+    private static final int PARAMETERS_COUNT = 1024;
+    private static final int[] FREQUENCIES = new int[]{63, 125, 250, 500, 1000, 2000, 4000, 8000};
+    private static final String[] SURFACES = new String[]{"NL01", "NL02", "NL05", "FR_R2", "DEF"};
+
+    private final RoadSourceParametersCnossos[] parameters = new RoadSourceParametersCnossos[PARAMETERS_COUNT];
+    private final double[] spectrum = new double[PARAMETERS_COUNT * FREQUENCIES.length];
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < PARAMETERS_COUNT; i++) {
+            double lvSpeed = 30 + random.nextInt(100);
+            double hgvSpeed = Math.min(90, lvSpeed);
+            RoadSourceParametersCnossos roadParameters = new RoadSourceParametersCnossos(lvSpeed, hgvSpeed,
+                    hgvSpeed, 50, 50, random.nextInt(2000), random.nextInt(100), random.nextInt(200),
+                    random.nextInt(50), random.nextInt(50), FREQUENCIES[random.nextInt(FREQUENCIES.length)],
+                    5 + random.nextInt(20), SURFACES[random.nextInt(SURFACES.length)], 0, 0, 200, 1);
+            roadParameters.setSlopePercentage_without_limit(random.nextInt(13) - 6);
+            roadParameters.setCoeffVer(1);
+            parameters[i] = roadParameters;
+        }
+    }
+
+    @Benchmark
+    public double evaluate() throws IOException {
+        return EvaluateRoadSourceCnossos.evaluate(parameters[index++ % PARAMETERS_COUNT]);
+    }
+
+    /**
+     * All frequency bands of all the road segments
+     */
+    @Benchmark
+    @OperationsPerInvocation(PARAMETERS_COUNT * 8)
+    public double[] evaluateBatch() throws IOException {
+        EvaluateRoadSourceCnossos.evaluate(parameters, PARAMETERS_COUNT, FREQUENCIES, spectrum);
+        return spectrum;
+    }
+}
@@ -0,0 +1,232 @@
+package org.noise_planet.noisemodelling.benchmarks;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible urban scene: blocks of buildings separated by streets, a simplex noise digital elevation model and
+ * ground areas. Roads follow the streets and receivers are on a regular grid outside of the buildings.
+ * The same seed and size always give the same scene.
+ */
+public class SyntheticScene {
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+    public static final double BLOCK_SIZE = 60;
+    public static final double STREET_WIDTH = 20;
+    public static final double DEM_STEP = 10;
+    public static final double GROUND_AREA_SIZE = 100;
+    public static final double RECEIVER_STEP = 25;
+    public static final double RECEIVER_HEIGHT = 4;
+    public static final double SOURCE_HEIGHT = 0.05;
+
+    private final double size;
+    private final List<Polygon> buildings = new ArrayList<>();
+    private final List<Double> buildingHeights = new ArrayList<>();
+    private final List<Coordinate> topographicPoints = new ArrayList<>();
+    private final List<Polygon> groundAreas = new ArrayList<>();
+    private final List<Double> groundCoefficients = new ArrayList<>();
+    private final List<LineString> roads = new ArrayList<>();
+    private final List<Coordinate> receivers = new ArrayList<>();
+
+    /**
+     * @param seed Random seed
+     * @param size Side length of the square scene in meters
+     */
+    public SyntheticScene(long seed, double size) {
+        this.size = size;
+        Random random = new Random(seed);
+        double period = BLOCK_SIZE + STREET_WIDTH;
+        // Buildings, up to four per block
+        for (double x = STREET_WIDTH; x + BLOCK_SIZE <= size; x += period) {
+            for (double y = STREET_WIDTH; y + BLOCK_SIZE <= size; y += period) {
+                double half = BLOCK_SIZE / 2;
+                for (int part = 0; part < 4; part++) {
+                    if (random.nextDouble() < 0.15) {
+                        continue;
+                    }
+                    double minX = x + (part % 2) * half + random.nextDouble() * 4;
+                    double minY = y + (part / 2) * half + random.nextDouble() * 4;
+                    double maxX = minX + half - 8 + random.nextDouble() * 4;
+                    double maxY = minY + half - 8 + random.nextDouble() * 4;
+                    buildings.add(FACTORY.createPolygon(new Coordinate[]{new Coordinate(minX, minY),
+                            new Coordinate(maxX, minY), new Coordinate(maxX, maxY), new Coordinate(minX, maxY),
+                            new Coordinate(minX, minY)}));
+                    double noise = OpenSimplex2S.noise2(seed, minX / 400, minY / 400);
+                    buildingHeights.add(9 + 12 * (noise + 1) + random.nextDouble() * 3);
+                }
+            }
+        }
+        // Digital elevation model
+        for (double x = 0; x <= size; x += DEM_STEP) {
+            for (double y = 0; y <= size; y += DEM_STEP) {
+                topographicPoints.add(new Coordinate(x, y, 15 * OpenSimplex2S.noise2(seed + 1, x / 600, y / 600)));
+            }
+        }
+        // Ground areas
+        for (double x = 0; x < size; x += GROUND_AREA_SIZE) {
+            for (double y = 0; y < size; y += GROUND_AREA_SIZE) {
+                groundAreas.add((Polygon) FACTORY.toGeometry(new Envelope(x, Math.min(size, x + GROUND_AREA_SIZE),
+                        y, Math.min(size, y + GROUND_AREA_SIZE))));
+                groundCoefficients.add(Math.round((OpenSimplex2S.noise2(seed + 2, x / 300, y / 300) + 1) * 5) / 10.0);
+            }
+        }
+        // Roads in the middle of the streets, split at each crossing
+        for (double street = STREET_WIDTH / 2; street < size; street += period) {
+            for (double start = STREET_WIDTH / 2; start + period < size; start += period) {
+                roads.add(FACTORY.createLineString(new Coordinate[]{new Coordinate(street, start, SOURCE_HEIGHT),
+                        new Coordinate(street, start + period, SOURCE_HEIGHT)}));
+                roads.add(FACTORY.createLineString(new Coordinate[]{new Coordinate(start, street, SOURCE_HEIGHT),
+                        new Coordinate(start + period, street, SOURCE_HEIGHT)}));
+            }
+        }
+        // Receivers outside of the buildings
+        for (double x = RECEIVER_STEP / 2; x < size; x += RECEIVER_STEP) {
+            for (double y = RECEIVER_STEP / 2; y < size; y += RECEIVER_STEP) {
+                Coordinate receiver = new Coordinate(x, y, RECEIVER_HEIGHT);
+                boolean inside = false;
+                for (Polygon building : buildings) {
+                    if (building.getEnvelopeInternal().contains(receiver)) {
+                        inside = true;
+                        break;
+                    }
+                }
+                if (!inside) {
+                    receivers.add(receiver);
+                }
+            }
+        }
+    }
+
+    public double getSize() {
+        return size;
+    }
+
+    public List<Polygon> getBuildings() {
+        return buildings;
+    }
+
+    public List<Double> getBuildingHeights() {
+        return buildingHeights;
+    }
+
+    public List<Coordinate> getTopographicPoints() {
+        return topographicPoints;
+    }
+
+    public List<LineString> getRoads() {
+        return roads;
+    }
+
+    public List<Coordinate> getReceivers() {
+        return receivers;
+    }
+
+    /**
+     * @param withTopography If true the digital elevation model is added
+     * @return ProfileBuilder of the scene, with finished feeding
+     */
+    public ProfileBuilder createProfileBuilder(boolean withTopography) {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        for (int i = 0; i < buildings.size(); i++) {
+            profileBuilder.addBuilding(buildings.get(i), buildingHeights.get(i), i + 1);
+        }
+        if (withTopography) {
+            for (Coordinate topographicPoint : topographicPoints) {
+                profileBuilder.addTopographicPoint(new Coordinate(topographicPoint));
+            }
+        }
+        for (int i = 0; i < groundAreas.size(); i++) {
+            profileBuilder.addGroundEffect(groundAreas.get(i), groundCoefficients.get(i));
+        }
+        profileBuilder.finishFeeding();
+        return profileBuilder;
+    }
+
+    /**
+     * @param profileBuilder ProfileBuilder of the scene
+     * @param reflectionOrder Reflection order
+     * @return Propagation data with the roads as sources and all the receivers, the z of sources and receivers are
+     * relative to the ground
+     */
+    public CnossosPropagationData createPropagationData(ProfileBuilder profileBuilder, int reflectionOrder) {
+        CnossosPropagationData data = new CnossosPropagationData(profileBuilder);
+        for (int i = 0; i < roads.size(); i++) {
+            data.addSource((long) i + 1, roads.get(i));
+        }
+        for (Coordinate receiver : receivers) {
+            data.addReceiver(new Coordinate(receiver));
+        }
+        data.reflexionOrder = reflectionOrder;
+        data.maxSrcDist = 500;
+        data.maxRefDist = 100;
+        data.setComputeHorizontalDiffraction(true);
+        data.setComputeVerticalDiffraction(true);
+        return data;
+    }
+
+    /**
+     * Create the tables BUILDINGS, ROADS, RECEIVERS, DEM and LAND_G
+     * @param connection Spatial database connection
+     * @throws SQLException Error while creating the tables
+     */
+    public void createTables(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS BUILDINGS, ROADS, RECEIVERS, DEM, LAND_G");
+            st.execute("CREATE TABLE BUILDINGS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY(POLYGON), HEIGHT DOUBLE PRECISION)");
+            st.execute("CREATE TABLE ROADS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY(LINESTRINGZ))");
+            st.execute("CREATE TABLE RECEIVERS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ))");
+            st.execute("CREATE TABLE DEM(THE_GEOM GEOMETRY(POINTZ))");
+            st.execute("CREATE TABLE LAND_G(THE_GEOM GEOMETRY(POLYGON), G DOUBLE PRECISION)");
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO BUILDINGS(THE_GEOM, HEIGHT) VALUES (?, ?)")) {
+            for (int i = 0; i < buildings.size(); i++) {
+                insert.setObject(1, buildings.get(i));
+                insert.setDouble(2, buildingHeights.get(i));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO ROADS(THE_GEOM) VALUES (?)")) {
+            for (LineString road : roads) {
+                insert.setObject(1, road);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO RECEIVERS(THE_GEOM) VALUES (?)")) {
+            for (Coordinate receiver : receivers) {
+                insert.setObject(1, FACTORY.createPoint(receiver));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO DEM(THE_GEOM) VALUES (?)")) {
+            for (Coordinate topographicPoint : topographicPoints) {
+                insert.setObject(1, FACTORY.createPoint(topographicPoint));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO LAND_G(THE_GEOM, G) VALUES (?, ?)")) {
+            for (int i = 0; i < groundAreas.size(); i++) {
+                insert.setObject(1, groundAreas.get(i));
+                insert.setDouble(2, groundCoefficients.get(i));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+
+package org.noise_planet.noisemodelling.emission;
+
+import java.util.List;
+
+/**
+ * Records of a {@link DiscreteDirectionAttributes} stored as a dense (theta, phi) grid.
+ * The surrounding records of a query are found from the grid step instead of binary searches in the records lists, and
+ * the attenuation of the records is stored as sound power for the bilinear interpolation, so a query does not allocate
+ * anything but the returned array. The four records and the weights are the same as the ones of
+ * {@link DiscreteDirectionAttributes#getRecord(double, double, int)}.
+ * The grid can only be created when the records are the product of a list of theta and a list of phi angles.
+ */
+public class DirectivityGrid {
+    private final int interpolationMethod;
+    private final double[] thetas;
+    private final double[] phis;
+    private final double[] sinPhis;
+    private final double[] cosPhis;
+    private final double thetaInverseStep;
+    private final double phiInverseStep;
+    private final int frequencyCount;
+    /** Sound power in W (bilinear) or attenuation in dB (closest) [(idTheta * phis.length + idPhi) * frequencyCount + idFrequency] */
+    private final double[] values;
+    private double maximumError = 0;
+
+    private DirectivityGrid(int interpolationMethod, double[] thetas, double[] phis, int frequencyCount) {
+        this.interpolationMethod = interpolationMethod;
+        this.thetas = thetas;
+        this.phis = phis;
+        sinPhis = new double[phis.length];
+        cosPhis = new double[phis.length];
+        for(int idPhi = 0; idPhi < phis.length; idPhi++) {
+            sinPhis[idPhi] = Math.sin(phis[idPhi]);
+            cosPhis[idPhi] = Math.cos(phis[idPhi]);
+        }
+        this.frequencyCount = frequencyCount;
+        thetaInverseStep = thetas.length > 1 ? (thetas.length - 1) / (thetas[thetas.length - 1] - thetas[0]) : 0;
+        phiInverseStep = phis.length > 1 ? (phis.length - 1) / (phis[phis.length - 1] - phis[0]) : 0;
+        values = new double[thetas.length * phis.length * frequencyCount];
+    }
+
+    /**
+     * @param records Records sorted by theta then phi
+     * @param frequencyCount Number of frequency bands of the records
+     * @param interpolationMethod 0 for closest neighbor, 1 for Bilinear interpolation
+     * @return The grid or null if the records are not on a grid
+     */
+    static DirectivityGrid create(List<DiscreteDirectionAttributes.DirectivityRecord> records, int frequencyCount,
+                                  int interpolationMethod) {
+        if(records.isEmpty()) {
+            return null;
+        }
+        double[] thetas = records.stream().mapToDouble(DiscreteDirectionAttributes.DirectivityRecord::getTheta)
+                .distinct().toArray();
+        double[] phis = records.stream().mapToDouble(DiscreteDirectionAttributes.DirectivityRecord::getPhi)
+                .sorted().distinct().toArray();
+        if(thetas.length * phis.length != records.size()) {
+            // Missing records
+            return null;
+        }
+        DirectivityGrid grid = new DirectivityGrid(interpolationMethod, thetas, phis, frequencyCount);
+        for(int idRecord = 0; idRecord < records.size(); idRecord++) {
+            DiscreteDirectionAttributes.DirectivityRecord record = records.get(idRecord);
+            // records are sorted by theta then phi, so this is the grid order
+            if(Double.compare(record.getPhi(), phis[idRecord % phis.length]) != 0 ||
+                    record.getAttenuation() == null || record.getAttenuation().length < frequencyCount) {
+                return null;
+            }
+            int offset = idRecord * frequencyCount;
+            for(int idFrequency = 0; idFrequency < frequencyCount; idFrequency++) {
+                double attenuation = record.getAttenuation()[idFrequency];
+                grid.values[offset + idFrequency] = interpolationMethod == 0 ? attenuation : Utils.dbToW(attenuation);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * @return Index of the first value greater or equal than the provided value, values.length if all values are lower
+     */
+    private static int getLowerBound(double[] values, double inverseStep, double value) {
+        if(value <= values[0]) {
+            return 0;
+        }
+        if(!(value <= values[values.length - 1])) {
+            return values.length;
+        }
+        // first guess from the step then look for the exact index
+        int index = Math.max(0, Math.min(values.length - 1, (int)((value - values[0]) * inverseStep)));
+        while(index > 0 && values[index - 1] >= value) {
+            index--;
+        }
+        while(values[index] < value) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return Index of the query in the records sorted by major then minor angle, same as the binary search of the
+     * records lists
+     */
+    private static int getInsertionIndex(double[] major, double majorInverseStep, double majorValue, double[] minor,
+                                         double minorInverseStep, double minorValue) {
+        int majorIndex = getLowerBound(major, majorInverseStep, majorValue);
+        if(majorIndex < major.length && major[majorIndex] == majorValue) {
+            return majorIndex * minor.length + getLowerBound(minor, minorInverseStep, minorValue);
+        }
+        return majorIndex * minor.length;
+    }
+
+    /**
+     * Same distance as DiscreteDirectionAttributes with the sine and cosine of phi angles given
+     */
+    private static double getDistance(double sinPhi, double cosPhi, double sinPhiB, double cosPhiB,
+                                      double cosDeltaTheta) {
+        return Math.acos(sinPhi * sinPhiB + cosPhi * cosPhiB * cosDeltaTheta);
+    }
+
+    private static double normalize(double value) {
+        double normalized = Math.max(0, Math.min(1, value));
+        return Double.isNaN(normalized) ? 0 : normalized;
+    }
+
+    /**
+     * Compute the attenuation for the given angles
+     * @param theta in radians
+     * @param phi in radians
+     * @param frequencyIndex Index of the record attenuation for each returned value
+     * @param attenuation Attenuation in dB, same length as frequencyIndex
+     */
+    public void getAttenuation(double theta, double phi, int[] frequencyIndex, double[] attenuation) {
+        int size = thetas.length * phis.length;
+        int thetaIndex = getInsertionIndex(thetas, thetaInverseStep, theta, phis, phiInverseStep, phi);
+        int theta1 = thetaIndex >= size ? 0 : thetaIndex / phis.length;
+        int theta2 = thetaIndex == 0 ? thetas.length - 1 : (thetaIndex - 1) / phis.length;
+        int phiIndex = getInsertionIndex(phis, phiInverseStep, phi, thetas, thetaInverseStep, theta);
+        int phi1 = phiIndex >= size ? 0 : phiIndex / thetas.length;
+        int phi2 = phiIndex == 0 ? phis.length - 1 : (phiIndex - 1) / thetas.length;
+        // Same corner order as DiscreteDirectionAttributes
+        int offset0 = (theta1 * phis.length + phi1) * frequencyCount;
+        int offset1 = (theta2 * phis.length + phi1) * frequencyCount;
+        int offset2 = (theta2 * phis.length + phi2) * frequencyCount;
+        int offset3 = (theta1 * phis.length + phi2) * frequencyCount;
+        if(interpolationMethod == 0) {
+            int closest = offset0;
+            double minDist = Double.MAX_VALUE;
+            double sinPhi = Math.sin(phi);
+            double cosPhi = Math.cos(phi);
+            double cosDeltaTheta1 = Math.cos(theta - thetas[theta1]);
+            double cosDeltaTheta2 = Math.cos(theta - thetas[theta2]);
+            double testDist = getDistance(sinPhi, cosPhi, sinPhis[phi1], cosPhis[phi1], cosDeltaTheta1);
+            if(testDist < minDist) {
+                minDist = testDist;
+            }
+            testDist = getDistance(sinPhi, cosPhi, sinPhis[phi1], cosPhis[phi1], cosDeltaTheta2);
+            if(testDist < minDist) {
+                minDist = testDist;
+                closest = offset1;
+            }
+            testDist = getDistance(sinPhi, cosPhi, sinPhis[phi2], cosPhis[phi2], cosDeltaTheta2);
+            if(testDist < minDist) {
+                minDist = testDist;
+                closest = offset2;
+            }
+            testDist = getDistance(sinPhi, cosPhi, sinPhis[phi2], cosPhis[phi2], cosDeltaTheta1);
+            if(testDist < minDist) {
+                closest = offset3;
+            }
+            for(int i = 0; i < frequencyIndex.length; i++) {
+                attenuation[i] = values[closest + frequencyIndex[i]];
+            }
+        } else {
+            double x1 = thetas[theta1];
+            double sinPhi = Math.sin(phi);
+            double cosPhi = Math.cos(phi);
+            double xLength = getDistance(sinPhis[phi1], cosPhis[phi1], sinPhis[phi1], cosPhis[phi1],
+                    Math.cos(thetas[theta2] - x1));
+            double yLength = getDistance(sinPhis[phi2], cosPhis[phi2], sinPhis[phi1], cosPhis[phi1], 1);
+            double x = normalize(getDistance(sinPhi, cosPhi, sinPhi, cosPhi, Math.cos(x1 - theta)) / xLength);
+            double y = normalize(getDistance(sinPhis[phi1], cosPhis[phi1], sinPhi, cosPhi, 1) / yLength);
+            for(int i = 0; i < frequencyIndex.length; i++) {
+                int idFrequency = frequencyIndex[i];
+                attenuation[i] = Utils.wToDb(values[offset0 + idFrequency] * (1 - x) * (1 - y)
+                        + values[offset1 + idFrequency] * x * (1 - y)
+                        + values[offset3 + idFrequency] * (1 - x) * y
+                        + values[offset2 + idFrequency] * x * y);
+            }
+        }
+    }
+
+    /**
+     * Compare the grid with the records interpolation at the center of each cell
+     * @param source Directivity that contains the records
+     * @return Maximum difference in dB
+     */
+    double computeMaximumError(DiscreteDirectionAttributes source) {
+        double error = 0;
+        int[] frequencyIndex = new int[frequencyCount];
+        for(int idFrequency = 0; idFrequency < frequencyCount; idFrequency++) {
+            frequencyIndex[idFrequency] = idFrequency;
+        }
+        double[] attenuation = new double[frequencyCount];
+        for(int idTheta = 0; idTheta < thetas.length; idTheta++) {
+            double theta = idTheta + 1 < thetas.length ? (thetas[idTheta] + thetas[idTheta + 1]) / 2 : thetas[idTheta];
+            for(int idPhi = 0; idPhi < phis.length; idPhi++) {
+                double phi = idPhi + 1 < phis.length ? (phis[idPhi] + phis[idPhi + 1]) / 2 : phis[idPhi];
+                double[] expected = source.getRecord(theta, phi, interpolationMethod).getAttenuation();
+                getAttenuation(theta, phi, frequencyIndex, attenuation);
+                for(int idFrequency = 0; idFrequency < frequencyCount; idFrequency++) {
+                    if(Double.compare(expected[idFrequency], attenuation[idFrequency]) != 0) {
+                        error = Math.max(error, Math.abs(expected[idFrequency] - attenuation[idFrequency]));
+                    }
+                }
+            }
+        }
+        maximumError = error;
+        return error;
+    }
+
+    /**
+     * @return Maximum difference in dB between this grid and the interpolation of the records, at the center of the
+     * cells
+     */
+    public double getMaximumError() {
+        return maximumError;
+    }
+
+    /**
+     * @return Number of theta angles
+     */
+    public int getThetaCount() {
+        return thetas.length;
+    }
+
+    /**
+     * @return Number of phi angles
+     */
+    public int getPhiCount() {
+        return phis.length;
+    }
+}
@@ -29,6 +29,10 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
 
     ThetaComparator thetaComparator = new ThetaComparator();
     PhiComparator phiComparator = new PhiComparator();
+    // Optional grid used instead of the records lists, see compile
+    DirectivityGrid grid = null;
+    // Index of the record attenuation for the last requested frequencies
+    private volatile FrequencyIndex lastFrequencyIndex = null;
 
     public DiscreteDirectionAttributes(int directionIdentifier, double[] frequencies) {
         this.directionIdentifier = directionIdentifier;
@@ -40,6 +44,31 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
 
     public void setInterpolationMethod(int interpolationMethod) {
         this.interpolationMethod = interpolationMethod;
+        grid = null;
+    }
+
+    /**
+     * Store the records into a grid, the following queries will find the surrounding records from the grid step instead
+     * of the binary searches. The grid is discarded when records are added or when the interpolation method is changed.
+     * @param tolerance Maximum difference in dB with the interpolation of the records, checked at the center of the
+     *                  cells
+     * @return The grid used by the queries, null if the records are not on a grid or if the tolerance is not reached
+     */
+    public DirectivityGrid compile(double tolerance) {
+        grid = null;
+        DirectivityGrid compiledGrid = DirectivityGrid.create(recordsTheta, frequencies.length, interpolationMethod);
+        if(compiledGrid == null || compiledGrid.computeMaximumError(this) > tolerance) {
+            return null;
+        }
+        grid = compiledGrid;
+        return compiledGrid;
+    }
+
+    /**
+     * @return The grid used by the queries, null if {@link #compile(double)} has not been called or has failed
+     */
+    public DirectivityGrid getGrid() {
+        return grid;
     }
 
     public List<DirectivityRecord> getRecordsTheta() {
@@ -70,11 +99,23 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
                         first : last;
             }
         }
+        DirectivityGrid compiledGrid = grid;
+        if(compiledGrid != null) {
+            double[] attenuation = new double[1];
+            compiledGrid.getAttenuation(theta, phi, new int[] {idFreq}, attenuation);
+            return attenuation[0];
+        }
         return getRecord(query.theta, query.phi, interpolationMethod).getAttenuation()[idFreq];
     }
 
     @Override
     public double[] getAttenuationArray(double[] frequencies, double phi, double theta) {
+        DirectivityGrid compiledGrid = grid;
+        if(compiledGrid != null) {
+            double[] returnAttenuation = new double[frequencies.length];
+            compiledGrid.getAttenuation(theta, phi, getFrequencyIndex(frequencies), returnAttenuation);
+            return returnAttenuation;
+        }
         DirectivityRecord query = new DirectivityRecord(theta, phi, null);
 
         DirectivityRecord record = getRecord(query.theta, query.phi, interpolationMethod);
@@ -100,6 +141,44 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
         return returnAttenuation;
     }
 
+    /**
+     * @param requestedFrequencies Frequency in Hertz
+     * @return Index of the record attenuation for each frequency
+     */
+    private int[] getFrequencyIndex(double[] requestedFrequencies) {
+        FrequencyIndex frequencyIndex = lastFrequencyIndex;
+        if(frequencyIndex != null && Arrays.equals(frequencyIndex.frequencies, requestedFrequencies)) {
+            return frequencyIndex.index;
+        }
+        int[] index = new int[requestedFrequencies.length];
+        for(int frequencyIndexId = 0; frequencyIndexId < requestedFrequencies.length; frequencyIndexId++) {
+            double frequency = requestedFrequencies[frequencyIndexId];
+            Integer idFreq = frequencyMapping.get(Double.doubleToLongBits(frequency));
+            if (idFreq == null) {
+                // get closest index
+                idFreq = Arrays.binarySearch(frequencies, frequency);
+                if (idFreq < 0) {
+                    int last = Math.min(-idFreq - 1, frequencies.length - 1);
+                    int first = Math.max(last - 1, 0);
+                    idFreq = Math.abs(frequencies[first] - frequency) < Math.abs(frequencies[last] - frequency) ? first : last;
+                }
+            }
+            index[frequencyIndexId] = idFreq;
+        }
+        lastFrequencyIndex = new FrequencyIndex(requestedFrequencies.clone(), index);
+        return index;
+    }
+
+    private static final class FrequencyIndex {
+        final double[] frequencies;
+        final int[] index;
+
+        FrequencyIndex(double[] frequencies, int[] index) {
+            this.frequencies = frequencies;
+            this.index = index;
+        }
+    }
+
     /**
      * Add angle attenuation record
      * @param theta (-π/2 π/2) 0 is horizontal π is top
@@ -107,6 +186,7 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
      * @param attenuation Attenuation in dB
      */
     public void addDirectivityRecord(double theta, double phi, double[] attenuation) {
+        grid = null;
         DirectivityRecord record = new DirectivityRecord(theta, phi, attenuation);
         int index = Collections.binarySearch(recordsTheta, record, thetaComparator);
         if(index >= 0) {
@@ -179,7 +259,7 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
 
     private int getPhiIndex(DirectivityRecord record) {
         int index = Collections.binarySearch(recordsPhi, record, phiComparator);
-        return -index - 1;
+        return (index >= 0) ? index : -index - 1;
     }
 
     private double getPhi1(int index) {
@@ -258,6 +338,7 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
      * @param newRecords Records to push
      */
     public void addDirectivityRecords(Collection<DirectivityRecord> newRecords) {
+        grid = null;
         recordsTheta.addAll(newRecords);
         recordsTheta.sort(thetaComparator);
         recordsPhi.addAll(newRecords);
@@ -24,7 +24,7 @@ import java.util.Locale;
 import java.util.Map;
 
 import static java.lang.Math.min;
-import static org.noise_planet.noisemodelling.emission.Utils.Vperhour2NoiseLevel;
+import static org.noise_planet.noisemodelling.emission.Utils.Vperhour2NoiseLevelPrimitive;
 import static org.noise_planet.noisemodelling.emission.utils.interpLinear.interpLinear;
 
 
@@ -338,7 +338,6 @@ public class EvaluateRailwaySourceCnossos {
         String typeVehicle = vehicleParameters.getTypeVehicle();
         double speedVehicle = vehicleParameters.getSpeedVehicle();
         double vehPerHour = vehicleParameters.getNumberVehicle();
-        double axlesPerVeh = getAxlesPerVeh(typeVehicle);
         int runningCondition = vehicleParameters.getRunningCondition();
 
         double speedTrack = trackParameters.getSpeedTrack();
@@ -365,29 +364,54 @@ public class EvaluateRailwaySourceCnossos {
             RailWayLW lWRailWay = new RailWayLW(lWSpectre, lWSpectre, lWSpectre, lWSpectre, lWSpectre, lWSpectre);
             return lWRailWay;
         }else {
-            //  Rolling noise calcul
-            double[] lWRolling = evaluateLWroughness("Rolling", typeVehicle, trackRoughnessId, impactId, bridgeId, curvature, speed, trackTransferId, spectreVer, axlesPerVeh);
-            // Traction noise calcul
-            double[] lWTractionA = evaluateLWSpectre(typeVehicle, "RefTraction", runningCondition, speed, 0, spectreVer);
-            double[] lWTractionB = evaluateLWSpectre(typeVehicle, "RefTraction", runningCondition, speed, 1, spectreVer);
-            // Aerodynamic noise calcul
-            double[] lWAerodynamicA = evaluateLWSpectre(typeVehicle, "RefAerodynamic", runningCondition, speed, 0, spectreVer);
-            double[] lWAerodynamicB = evaluateLWSpectre(typeVehicle, "RefAerodynamic", runningCondition, speed, 1, spectreVer);
-            // Bridge noise calcul
-            double[] lWBridge = evaluateLWroughness("Bridge", typeVehicle, trackRoughnessId, impactId, bridgeId, curvature, speed, trackTransferId, spectreVer, axlesPerVeh);
-
-            for (int i=0;i<lWRolling.length;i++) {
-                lWRolling[i] = Vperhour2NoiseLevel(lWRolling[i], vehPerHour*getNbCoach(typeVehicle), speed) ;
-                lWTractionA[i] = Vperhour2NoiseLevel(lWTractionA[i], vehPerHour*getNbCoach(typeVehicle), speed);
-                lWTractionB[i] = Vperhour2NoiseLevel(lWTractionB[i], vehPerHour*getNbCoach(typeVehicle), speed);
-                lWAerodynamicA[i] = Vperhour2NoiseLevel(lWAerodynamicA[i], vehPerHour*getNbCoach(typeVehicle), speed);
-                lWAerodynamicB[i] = Vperhour2NoiseLevel(lWAerodynamicB[i], vehPerHour*getNbCoach(typeVehicle), speed);
-                lWBridge[i] = Vperhour2NoiseLevel(lWBridge[i], vehPerHour*getNbCoach(typeVehicle), speed);
-            }
+            double[][] lWSpectra = evaluateVehicleSpectra(typeVehicle, runningCondition, speed, trackRoughnessId,
+                    trackTransferId, impactId, bridgeId, curvature, spectreVer);
+            return applyTrafficFlow(lWSpectra, vehPerHour*getNbCoach(typeVehicle), speed);
+        }
+    }
 
-            RailWayLW lWRailWay = new RailWayLW(lWRolling, lWTractionA, lWTractionB, lWAerodynamicA, lWAerodynamicB, lWBridge);
-            return lWRailWay;
+    /**
+     * Sound power of a single vehicle, before taking into account the traffic flow.
+     * The spectra only depend on the vehicle type, the track and the speed so they can be shared by all the sections
+     * with the same rolling stock, see {@link RailwayEmissionCache}.
+     * @param typeVehicle vehicle data base
+     * @param runningCondition 0 = constant speed, 1 = acceleration , 2 = decceleration, 3 = idling
+     * @param speed min speed between vehicle and track
+     * @return LWRoll / LWTraction A & B / LWAerodynamic A & B / LWBridge level in dB, in the order of
+     * {@link RailWayLW.TrainNoiseSource}
+     */
+    double[][] evaluateVehicleSpectra(String typeVehicle, int runningCondition, double speed, int trackRoughnessId,
+                                      int trackTransferId, int impactId, int bridgeId, int curvature, int spectreVer) {
+        double axlesPerVeh = getAxlesPerVeh(typeVehicle);
+        //  Rolling noise calcul
+        double[] lWRolling = evaluateLWroughness("Rolling", typeVehicle, trackRoughnessId, impactId, bridgeId, curvature, speed, trackTransferId, spectreVer, axlesPerVeh);
+        // Traction noise calcul
+        double[] lWTractionA = evaluateLWSpectre(typeVehicle, "RefTraction", runningCondition, speed, 0, spectreVer);
+        double[] lWTractionB = evaluateLWSpectre(typeVehicle, "RefTraction", runningCondition, speed, 1, spectreVer);
+        // Aerodynamic noise calcul
+        double[] lWAerodynamicA = evaluateLWSpectre(typeVehicle, "RefAerodynamic", runningCondition, speed, 0, spectreVer);
+        double[] lWAerodynamicB = evaluateLWSpectre(typeVehicle, "RefAerodynamic", runningCondition, speed, 1, spectreVer);
+        // Bridge noise calcul
+        double[] lWBridge = evaluateLWroughness("Bridge", typeVehicle, trackRoughnessId, impactId, bridgeId, curvature, speed, trackTransferId, spectreVer, axlesPerVeh);
+        return new double[][]{lWRolling, lWTractionA, lWTractionB, lWAerodynamicA, lWAerodynamicB, lWBridge};
+    }
+
+    /**
+     * Sound power of the traffic flow, the single vehicle spectra are not modified
+     * @param lWSpectra Single vehicle spectra given by evaluateVehicleSpectra
+     * @param coachPerHour Number of coach per hour
+     * @param speed min speed between vehicle and track
+     * @return LWRoll / LWTraction A & B / LWAerodynamic A & B / LWBridge level in dB
+     */
+    static RailWayLW applyTrafficFlow(double[][] lWSpectra, double coachPerHour, double speed) {
+        double[][] lW = new double[lWSpectra.length][];
+        for (int idSource = 0; idSource < lWSpectra.length; idSource++) {
+            lW[idSource] = new double[lWSpectra[idSource].length];
+            for (int i = 0; i < lW[idSource].length; i++) {
+                lW[idSource][i] = Vperhour2NoiseLevelPrimitive(lWSpectra[idSource][i], coachPerHour, speed);
+            }
         }
+        return new RailWayLW(lW[0], lW[1], lW[2], lW[3], lW[4], lW[5]);
     }
 
     /**
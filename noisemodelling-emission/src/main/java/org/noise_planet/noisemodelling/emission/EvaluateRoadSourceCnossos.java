@@ -15,10 +15,13 @@ package org.noise_planet.noisemodelling.emission;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.NullNode;
+import org.noise_planet.noisemodelling.emission.RoadCoefficientsCnossos.VehicleCategory;
 
 import java.io.IOException;
 import java.io.InputStream;
 
+import static org.noise_planet.noisemodelling.emission.RoadCoefficientsCnossos.Coefficient.*;
+import static org.noise_planet.noisemodelling.emission.RoadCoefficientsCnossos.VehicleCategory.*;
 import static org.noise_planet.noisemodelling.emission.Utils.*;
 
 /**
@@ -34,6 +37,8 @@ public class EvaluateRoadSourceCnossos {
 
     private static JsonNode cnossosData = parse(EvaluateRoadSourceCnossos.class.getResourceAsStream("coefficients_Road_Cnossos_2015.json"));
     private static JsonNode cnossosData2019 = parse(EvaluateRoadSourceCnossos.class.getResourceAsStream("coefficients_Road_Cnossos_2020.json")); // new coefficients in 2019 amendments
+    private static final RoadCoefficientsCnossos coefficients = new RoadCoefficientsCnossos(cnossosData);
+    private static final RoadCoefficientsCnossos coefficients2019 = new RoadCoefficientsCnossos(cnossosData2019);
 
     private static JsonNode parse(InputStream inputStream) {
         try {
@@ -52,6 +57,18 @@ public class EvaluateRoadSourceCnossos {
         }
     }
 
+    /**
+     * @param coeffVer 2015 or 2019 coefficients version
+     * @return Coefficients of this version stored in primitive arrays
+     */
+    public static RoadCoefficientsCnossos getCoefficients(int coeffVer) {
+        if (coeffVer == 1) {
+            return coefficients;
+        } else {
+            return coefficients2019;
+        }
+    }
+
     /**
      * Get a Road Coeff for a frequency value
      * @param Freq Frequency in Hz (ocrave band)
@@ -61,36 +78,9 @@ public class EvaluateRoadSourceCnossos {
      * @return a Road Coeff
      */
     public static Double getA_Roadcoeff(int Freq, String vehCat, String RoadSurface, int coeffVer) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - accessed on line 2017 at : https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        int Freq_ind;
-        switch (Freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
-                break;
-            case 250:
-                Freq_ind = 2;
-                break;
-            case 500:
-                Freq_ind = 3;
-                break;
-            case 1000:
-                Freq_ind = 4;
-                break;
-            case 2000:
-                Freq_ind = 5;
-                break;
-            case 4000:
-                Freq_ind = 6;
-                break;
-            case 8000:
-                Freq_ind = 7;
-                break;
-            default:
-                Freq_ind = 0;
-        }
-        return getCnossosData(coeffVer).get("roads").get(RoadSurface).get("ref").get(vehCat).get("spectrum").get(Freq_ind).doubleValue();
+        RoadCoefficientsCnossos roadCoefficients = getCoefficients(coeffVer);
+        return roadCoefficients.getSurfaceSpectrum(roadCoefficients.getSurfaceIndex(RoadSurface),
+                VehicleCategory.fromCode(vehCat), RoadCoefficientsCnossos.getBandIndex(Freq));
     }
 
     /**
@@ -101,7 +91,9 @@ public class EvaluateRoadSourceCnossos {
      * @return b Road Coeff
      */
     public static Double getB_Roadcoeff(String vehCat, String roadSurface, int coeffVer) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        return getCnossosData(coeffVer).get("roads").get(roadSurface).get("ref").get(vehCat).get("ßm").doubleValue();
+        RoadCoefficientsCnossos roadCoefficients = getCoefficients(coeffVer);
+        return roadCoefficients.getSurfaceBeta(roadCoefficients.getSurfaceIndex(roadSurface),
+                VehicleCategory.fromCode(vehCat));
     }
 
     /**
@@ -112,7 +104,7 @@ public class EvaluateRoadSourceCnossos {
      * @return Cr coefficient
      */
     public static double getCr(String vehCat, int k, int coeffVer) {
-        return getCnossosData(coeffVer).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cr").doubleValue();
+        return getCoefficients(coeffVer).getCr(VehicleCategory.fromCode(vehCat), k);
     }
 
     /**
@@ -123,7 +115,7 @@ public class EvaluateRoadSourceCnossos {
      * @return Cp coefficient
      */
     public static double getCp(String vehCat, int k, int coeffVer) {
-        return getCnossosData(coeffVer).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cp").doubleValue();
+        return getCoefficients(coeffVer).getCp(VehicleCategory.fromCode(vehCat), k);
     }
 
     /**
@@ -134,36 +126,8 @@ public class EvaluateRoadSourceCnossos {
      * @return Vehicle emission values coefficients
      */
     public static Double getCoeff(String coeff, int freq, String vehicleCategory, int coeffVer) {
-        int Freq_ind;
-        switch (freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
-                break;
-            case 250:
-                Freq_ind = 2;
-                break;
-            case 500:
-                Freq_ind = 3;
-                break;
-            case 1000:
-                Freq_ind = 4;
-                break;
-            case 2000:
-                Freq_ind = 5;
-                break;
-            case 4000:
-                Freq_ind = 6;
-                break;
-            case 8000:
-                Freq_ind = 7;
-                break;
-            default:
-                Freq_ind = 0;
-        }
-        return getCnossosData(coeffVer).get("vehicles").get(vehicleCategory).get(coeff).get(Freq_ind).doubleValue();
+        return getCoefficients(coeffVer).getVehicleCoefficient(RoadCoefficientsCnossos.Coefficient.fromCode(coeff),
+                VehicleCategory.fromCode(vehicleCategory), RoadCoefficientsCnossos.getBandIndex(freq));
     }
 
     /**
@@ -174,7 +138,7 @@ public class EvaluateRoadSourceCnossos {
      * @param speedBase vref in km/h
      * @return
      */
-    private static Double getNoiseLvl(double base, double adj, double speed,
+    private static double getNoiseLvl(double base, double adj, double speed,
                                       double speedBase) {
         return base + adj * Math.log10(speed / speedBase);
     }
@@ -184,33 +148,33 @@ public class EvaluateRoadSourceCnossos {
      * @param parameters
      * @param Pm_stud
      * @param Ts_stud
-     * @param freqParam
-     * @param coeffVer
+     * @param roadCoefficients Coefficients of the evaluated version
+     * @param band Frequency band index
      * @return
      */
-    private static Double getDeltaStuddedTyres(RoadSourceParametersCnossos parameters, double Pm_stud, double Ts_stud,
-                                               int freqParam, int coeffVer, double vRef) throws IOException {
+    private static double getDeltaStuddedTyres(RoadSourceParametersCnossos parameters, double Pm_stud, double Ts_stud,
+                                               RoadCoefficientsCnossos roadCoefficients, int band, double vRef) throws IOException {
             double speed = parameters.getSpeedLv();
             double ps = Pm_stud * Ts_stud / 12; // Eq. 2.2.7 yearly average proportion of vehicles equipped with studded tyres
             speed = (speed >= 90) ? 90 : speed;
             speed = (speed <= 50) ? 50 : speed;
-            double deltastud = getNoiseLvl(getCoeff("a", freqParam, "1", coeffVer), getCoeff("b", freqParam, "1", coeffVer), speed, vRef);
+            double deltastud = getNoiseLvl(roadCoefficients.getVehicleCoefficient(A, LV, band), roadCoefficients.getVehicleCoefficient(B, LV, band), speed, vRef);
             return  10 * Math.log10((1 - ps) + ps * Math.pow(10, deltastud / 10)); // Eq. 2.2.8
             // Only for light vehicles (Eq.2.2.9)
     }
 
 
-    private static Double getDeltaTemperature(double Temperature, String category) throws IOException {
+    private static double getDeltaTemperature(double Temperature, VehicleCategory category) {
         double K = 0.08;
         double tempRef = 20;
         switch (category){
-            case "1":
+            case LV:
                 K = 0.08;
                 break;
-            case "2":
+            case MV:
                 K = 0.04;
                 break;
-            case "3":
+            case HGV:
                 K = 0.04;
                 break;
         }
@@ -219,12 +183,12 @@ public class EvaluateRoadSourceCnossos {
     }
 
 
-    private static Double getDeltaSlope(RoadSourceParametersCnossos parameters, String category, double sign) throws IOException {
+    private static double getDeltaSlope(RoadSourceParametersCnossos parameters, VehicleCategory category, double sign) throws IOException {
 
         double deltaSlope = 0;
         double slope = sign * parameters.getSlopePercentage();
         switch (category){
-            case "1":
+            case LV:
                 if (slope < -6) {
                     deltaSlope =  (Math.min(12, -slope) - 6) / 1;
                 } else if (slope <= 2) {
@@ -233,7 +197,7 @@ public class EvaluateRoadSourceCnossos {
                     deltaSlope = ((parameters.getSpeedLv() / 100) * ((Math.min(12, slope) - 2) / 1.5));
                 }
                 break;
-            case "2":
+            case MV:
                 // Medium and Heavy vehicles (cat 2 and 3) - Eq 2.2.14 and 2.2.15
                 if (slope < -4) {
                     deltaSlope =  ((parameters.getSpeedMv() - 20) / 100) * (Math.min(12, -slope) - 4) / 0.7;
@@ -243,7 +207,7 @@ public class EvaluateRoadSourceCnossos {
                     deltaSlope =  (parameters.getSpeedMv() / 100) * (Math.min(12, slope)) / 1;
                  }
                 break;
-            case "3":
+            case HGV:
                 // Medium and Heavy vehicles (cat 2 and 3) - Eq 2.2.14 and 2.2.15
                 if (slope < -4) {
                     deltaSlope =  ((parameters.getSpeedHgv() - 10) / 100) * (Math.min(12, -slope) - 4) / 0.5;
@@ -266,7 +230,7 @@ public class EvaluateRoadSourceCnossos {
      * @param dB2 Second value in dB
      * @return
      */
-    private static Double sumDbValues(Double dB1, Double dB2) {
+    private static double sumDbValues(double dB1, double dB2) {
         return wToDb(dbToW(dB1) + dbToW(dB2));
     }
 
@@ -279,7 +243,7 @@ public class EvaluateRoadSourceCnossos {
      * @param dB5 value in dB
      * @return
      */
-    private static Double sumDb5(Double dB1, Double dB2, Double dB3, Double dB4, Double dB5) {
+    private static double sumDb5(double dB1, double dB2, double dB3, double dB4, double dB5) {
         return wToDb(dbToW(dB1) + dbToW(dB2) + dbToW(dB3) + dbToW(dB4) + dbToW(dB5));
     }
 
@@ -289,44 +253,81 @@ public class EvaluateRoadSourceCnossos {
      * @return Noise level in dB
      */
     public static double evaluate(RoadSourceParametersCnossos parameters) throws IOException {
-        final int freqParam = parameters.getFreqParam();
+        RoadCoefficientsCnossos roadCoefficients = getCoefficients(parameters.getCoeffVer());
+        return evaluate(parameters, roadCoefficients, roadCoefficients.getSurfaceIndex(parameters.getRoadSurface()),
+                RoadCoefficientsCnossos.getBandIndex(parameters.getFreqParam()));
+    }
+
+    /**
+     * Road noise evaluation of all the frequency bands of many road segments. The coefficients are looked up once per
+     * segment and band, without boxing of the intermediate values.
+     * @param parameters Noise emission parameters of the road segments, the frequency of the parameters is ignored
+     * @param segmentCount Number of road segments to evaluate
+     * @param frequencies Octave frequency bands in Hz
+     * @param spectrum Noise levels in dB, spectrum[idSegment * frequencies.length + idFrequency]
+     */
+    public static void evaluate(RoadSourceParametersCnossos[] parameters, int segmentCount, int[] frequencies,
+                                double[] spectrum) throws IOException {
+        int[] bands = new int[frequencies.length];
+        for (int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+            bands[idFrequency] = RoadCoefficientsCnossos.getBandIndex(frequencies[idFrequency]);
+        }
+        for (int idSegment = 0; idSegment < segmentCount; idSegment++) {
+            RoadSourceParametersCnossos segment = parameters[idSegment];
+            RoadCoefficientsCnossos roadCoefficients = getCoefficients(segment.getCoeffVer());
+            int surface = roadCoefficients.getSurfaceIndex(segment.getRoadSurface());
+            int offset = idSegment * frequencies.length;
+            for (int idFrequency = 0; idFrequency < bands.length; idFrequency++) {
+                spectrum[offset + idFrequency] = evaluate(segment, roadCoefficients, surface, bands[idFrequency]);
+            }
+        }
+    }
+
+    /**
+     * Road noise evaluation of one frequency band.
+     * @param parameters Noise emission parameters, the frequency of the parameters is ignored
+     * @param roadCoefficients Coefficients of the version of the parameters
+     * @param surface Road surface index in the coefficients
+     * @param band Frequency band index
+     * @return Noise level in dB
+     */
+    private static double evaluate(RoadSourceParametersCnossos parameters, RoadCoefficientsCnossos roadCoefficients,
+                                   int surface, int band) throws IOException {
         final double Temperature = parameters.getTemperature();
         final double Ts_stud = parameters.getTsStud();
         final double Pm_stud = parameters.getqStudRatio();
         final double Junc_dist = parameters.getJunc_dist();
         final int Junc_type = parameters.getJunc_type();
-        final String roadSurface = parameters.getRoadSurface();
-        final int coeffVer = parameters.getCoeffVer();
         double vRef = 70.;
 
         /**
          * Rolling Noise
          */
         // Rolling noise level Eq. 2.2.4
-        double lvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "1", coeffVer), getCoeff("br", freqParam, "1", coeffVer), parameters.getSpeedLv(), vRef);
-        double medRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "2", coeffVer), getCoeff("br", freqParam, "2", coeffVer), parameters.getSpeedMv(), vRef);
-        double hgvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "3", coeffVer), getCoeff("br", freqParam, "3", coeffVer), parameters.getSpeedHgv(), vRef);
+        double lvRoadLvl = getNoiseLvl(roadCoefficients.getVehicleCoefficient(AR, LV, band), roadCoefficients.getVehicleCoefficient(BR, LV, band), parameters.getSpeedLv(), vRef);
+        double medRoadLvl = getNoiseLvl(roadCoefficients.getVehicleCoefficient(AR, MV, band), roadCoefficients.getVehicleCoefficient(BR, MV, band), parameters.getSpeedMv(), vRef);
+        double hgvRoadLvl = getNoiseLvl(roadCoefficients.getVehicleCoefficient(AR, HGV, band), roadCoefficients.getVehicleCoefficient(BR, HGV, band), parameters.getSpeedHgv(), vRef);
         // Rolling noise is only for categories 1, 2 and 3
 
         // Correction for studded tyres - Eq. 2.2.6
         if (Pm_stud > 0 && Ts_stud > 0) {
-            lvRoadLvl = lvRoadLvl + getDeltaStuddedTyres(parameters, Pm_stud, Ts_stud, freqParam, coeffVer, vRef);
+            lvRoadLvl = lvRoadLvl + getDeltaStuddedTyres(parameters, Pm_stud, Ts_stud, roadCoefficients, band, vRef);
         }
 
         // Effect of air temperature on rolling noise correction Eq 2.2.10
-        lvRoadLvl = lvRoadLvl + getDeltaTemperature(Temperature, "1"); // K = 0.08
-        medRoadLvl = medRoadLvl + getDeltaTemperature(Temperature, "2"); // K = 0.04
-        hgvRoadLvl = hgvRoadLvl + getDeltaTemperature(Temperature, "3"); // K = 0.04
+        lvRoadLvl = lvRoadLvl + getDeltaTemperature(Temperature, LV); // K = 0.08
+        medRoadLvl = medRoadLvl + getDeltaTemperature(Temperature, MV); // K = 0.04
+        hgvRoadLvl = hgvRoadLvl + getDeltaTemperature(Temperature, HGV); // K = 0.04
 
         /**
          * Propulsion Noise
          */
         // General equation - Eq. 2.2.11
-        double lvMotorLvl = getCoeff("ap", freqParam, "1", coeffVer) + getCoeff("bp", freqParam, "1", coeffVer) * (parameters.getSpeedLv() - vRef) / vRef;
-        double medMotorLvl = getCoeff("ap", freqParam, "2", coeffVer) + getCoeff("bp", freqParam, "2", coeffVer) * (parameters.getSpeedMv() - vRef) / vRef;
-        double hgvMotorLvl = getCoeff("ap", freqParam, "3", coeffVer) + getCoeff("bp", freqParam, "3", coeffVer) * (parameters.getSpeedHgv() - vRef) / vRef;
-        double wheelaMotorLvl = getCoeff("ap", freqParam, "4a", coeffVer) + getCoeff("bp", freqParam, "4a", coeffVer) * (parameters.getSpeedWav() - vRef) / vRef;
-        double wheelbMotorLvl = getCoeff("ap", freqParam, "4b", coeffVer) + getCoeff("bp", freqParam, "4b", coeffVer) * (parameters.getSpeedWbv() - vRef) / vRef;
+        double lvMotorLvl = roadCoefficients.getVehicleCoefficient(AP, LV, band) + roadCoefficients.getVehicleCoefficient(BP, LV, band) * (parameters.getSpeedLv() - vRef) / vRef;
+        double medMotorLvl = roadCoefficients.getVehicleCoefficient(AP, MV, band) + roadCoefficients.getVehicleCoefficient(BP, MV, band) * (parameters.getSpeedMv() - vRef) / vRef;
+        double hgvMotorLvl = roadCoefficients.getVehicleCoefficient(AP, HGV, band) + roadCoefficients.getVehicleCoefficient(BP, HGV, band) * (parameters.getSpeedHgv() - vRef) / vRef;
+        double wheelaMotorLvl = roadCoefficients.getVehicleCoefficient(AP, WAV, band) + roadCoefficients.getVehicleCoefficient(BP, WAV, band) * (parameters.getSpeedWav() - vRef) / vRef;
+        double wheelbMotorLvl = roadCoefficients.getVehicleCoefficient(AP, WBV, band) + roadCoefficients.getVehicleCoefficient(BP, WBV, band) * (parameters.getSpeedWbv() - vRef) / vRef;
 
         // Effect of road gradients
         // This correction implicitly includes the effect of slope on speed.
@@ -344,9 +345,9 @@ public class EvaluateRoadSourceCnossos {
                 twoWay = true;
         }
 
-        lvMotorLvl = lvMotorLvl + getDeltaSlope(parameters, "1", sign);
-        medMotorLvl = medMotorLvl + getDeltaSlope(parameters, "2", sign);
-        hgvMotorLvl = hgvMotorLvl + getDeltaSlope(parameters, "3", sign);
+        lvMotorLvl = lvMotorLvl + getDeltaSlope(parameters, LV, sign);
+        medMotorLvl = medMotorLvl + getDeltaSlope(parameters, MV, sign);
+        hgvMotorLvl = hgvMotorLvl + getDeltaSlope(parameters, HGV, sign);
 
         /**
          * Mixed effects (Rolling & Propulsion)
@@ -355,27 +356,27 @@ public class EvaluateRoadSourceCnossos {
         // Todo Here, we should get the Junc_dist by another way that we are doing now to be more precise issue #261
         double coefficientJunctionDistance = Math.max(1 - Math.abs(Junc_dist) / 100, 0);
         // Effect of the acceleration and deceleration of vehicles - Rolling Noise Eq 2.2.17
-        lvRoadLvl = lvRoadLvl + getCr("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medRoadLvl = medRoadLvl + getCr("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvRoadLvl = hgvRoadLvl + getCr("3", Junc_type, coeffVer) * coefficientJunctionDistance;
+        lvRoadLvl = lvRoadLvl + roadCoefficients.getCr(LV, Junc_type) * coefficientJunctionDistance;
+        medRoadLvl = medRoadLvl + roadCoefficients.getCr(MV, Junc_type) * coefficientJunctionDistance;
+        hgvRoadLvl = hgvRoadLvl + roadCoefficients.getCr(HGV, Junc_type) * coefficientJunctionDistance;
         // Effect of the acceleration and deceleration of vehicles - Propulsion Noise Eq 2.2.18
-        lvMotorLvl = lvMotorLvl + getCp("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medMotorLvl = medMotorLvl + getCp("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvMotorLvl = hgvMotorLvl + getCp("3", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelaMotorLvl = wheelaMotorLvl + getCp("4a", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelbMotorLvl = wheelbMotorLvl + getCp("4b", Junc_type, coeffVer) * coefficientJunctionDistance;
+        lvMotorLvl = lvMotorLvl + roadCoefficients.getCp(LV, Junc_type) * coefficientJunctionDistance;
+        medMotorLvl = medMotorLvl + roadCoefficients.getCp(MV, Junc_type) * coefficientJunctionDistance;
+        hgvMotorLvl = hgvMotorLvl + roadCoefficients.getCp(HGV, Junc_type) * coefficientJunctionDistance;
+        wheelaMotorLvl = wheelaMotorLvl + roadCoefficients.getCp(WAV, Junc_type) * coefficientJunctionDistance;
+        wheelbMotorLvl = wheelbMotorLvl + roadCoefficients.getCp(WBV, Junc_type) * coefficientJunctionDistance;
 
         // Effect of the type of road surface - Eq. 2.2.19
-        lvRoadLvl = lvRoadLvl + getNoiseLvl(getA_Roadcoeff(freqParam, "1", parameters.getRoadSurface(), coeffVer), getB_Roadcoeff("1", roadSurface, coeffVer), parameters.getSpeedLv(), 70.);
-        medRoadLvl = medRoadLvl + getNoiseLvl(getA_Roadcoeff(freqParam, "2", parameters.getRoadSurface(), coeffVer), getB_Roadcoeff("2", roadSurface, coeffVer), parameters.getSpeedMv(), 70.);
-        hgvRoadLvl = hgvRoadLvl + getNoiseLvl(getA_Roadcoeff(freqParam, "3", parameters.getRoadSurface(), coeffVer), getB_Roadcoeff("3", roadSurface, coeffVer), parameters.getSpeedHgv(), 70.);
+        lvRoadLvl = lvRoadLvl + getNoiseLvl(roadCoefficients.getSurfaceSpectrum(surface, LV, band), roadCoefficients.getSurfaceBeta(surface, LV), parameters.getSpeedLv(), 70.);
+        medRoadLvl = medRoadLvl + getNoiseLvl(roadCoefficients.getSurfaceSpectrum(surface, MV, band), roadCoefficients.getSurfaceBeta(surface, MV), parameters.getSpeedMv(), 70.);
+        hgvRoadLvl = hgvRoadLvl + getNoiseLvl(roadCoefficients.getSurfaceSpectrum(surface, HGV, band), roadCoefficients.getSurfaceBeta(surface, HGV), parameters.getSpeedHgv(), 70.);
 
         // Correction road on propulsion noise - Eq. 2.2.20
-        lvMotorLvl = lvMotorLvl + Math.min(getA_Roadcoeff(freqParam, "1", roadSurface, coeffVer), 0.);
-        medMotorLvl = medMotorLvl + Math.min(getA_Roadcoeff(freqParam, "2", roadSurface, coeffVer), 0.);
-        hgvMotorLvl = hgvMotorLvl + Math.min(getA_Roadcoeff(freqParam, "3", roadSurface, coeffVer), 0.);
-        wheelaMotorLvl = wheelaMotorLvl + Math.min(getA_Roadcoeff(freqParam, "4a", roadSurface, coeffVer), 0.);
-        wheelbMotorLvl = wheelbMotorLvl + Math.min(getA_Roadcoeff(freqParam, "4b", roadSurface, coeffVer), 0.);
+        lvMotorLvl = lvMotorLvl + Math.min(roadCoefficients.getSurfaceSpectrum(surface, LV, band), 0.);
+        medMotorLvl = medMotorLvl + Math.min(roadCoefficients.getSurfaceSpectrum(surface, MV, band), 0.);
+        hgvMotorLvl = hgvMotorLvl + Math.min(roadCoefficients.getSurfaceSpectrum(surface, HGV, band), 0.);
+        wheelaMotorLvl = wheelaMotorLvl + Math.min(roadCoefficients.getSurfaceSpectrum(surface, WAV, band), 0.);
+        wheelbMotorLvl = wheelbMotorLvl + Math.min(roadCoefficients.getSurfaceSpectrum(surface, WBV, band), 0.);
 
         /**
          * Combine Propulsion and Rolling Noise - Eq. 2.2.2
@@ -389,25 +390,25 @@ public class EvaluateRoadSourceCnossos {
         /**
          * Compute Noise Level from flow_rate and speed - Eq 2.2.1
          */
-        double lvLvl = Vperhour2NoiseLevel(lvCompound, parameters.getLvPerHour(), parameters.getSpeedLv());
-        double medLvl = Vperhour2NoiseLevel(medCompound, parameters.getMvPerHour(), parameters.getSpeedMv()) ;
-        double hgvLvl = Vperhour2NoiseLevel(hgvCompound, parameters.getHgvPerHour(), parameters.getSpeedHgv());
-        double wheelaLvl = Vperhour2NoiseLevel(wheelaCompound, parameters.getWavPerHour(), parameters.getSpeedWav());
-        double wheelbLvl = Vperhour2NoiseLevel(wheelbCompound, parameters.getWbvPerHour(), parameters.getSpeedWbv());
+        double lvLvl = Vperhour2NoiseLevelPrimitive(lvCompound, parameters.getLvPerHour(), parameters.getSpeedLv());
+        double medLvl = Vperhour2NoiseLevelPrimitive(medCompound, parameters.getMvPerHour(), parameters.getSpeedMv()) ;
+        double hgvLvl = Vperhour2NoiseLevelPrimitive(hgvCompound, parameters.getHgvPerHour(), parameters.getSpeedHgv());
+        double wheelaLvl = Vperhour2NoiseLevelPrimitive(wheelaCompound, parameters.getWavPerHour(), parameters.getSpeedWav());
+        double wheelbLvl = Vperhour2NoiseLevelPrimitive(wheelbCompound, parameters.getWbvPerHour(), parameters.getSpeedWbv());
 
         // In the case of a bi-directional traffic flow, it is necessary to split the flow into two components and correct half for uphill and half for downhill.
         if (twoWay && parameters.getSlopePercentage() != 0)
         {
-            lvRoadLvl = lvRoadLvl - getDeltaSlope(parameters,"1",sign)+ getDeltaSlope(parameters,"1",-sign);
-            medRoadLvl = medRoadLvl - getDeltaSlope(parameters,"2",sign)+ getDeltaSlope(parameters,"2",-sign);
-            hgvRoadLvl = hgvRoadLvl - getDeltaSlope(parameters,"3",sign)+ getDeltaSlope(parameters,"3",-sign);
+            lvRoadLvl = lvRoadLvl - getDeltaSlope(parameters,LV,sign)+ getDeltaSlope(parameters,LV,-sign);
+            medRoadLvl = medRoadLvl - getDeltaSlope(parameters,MV,sign)+ getDeltaSlope(parameters,MV,-sign);
+            hgvRoadLvl = hgvRoadLvl - getDeltaSlope(parameters,HGV,sign)+ getDeltaSlope(parameters,HGV,-sign);
             double lvCompound_InverseSlope = sumDbValues(lvRoadLvl, lvMotorLvl);
             double medCompound_InverseSlope = sumDbValues(medRoadLvl, medMotorLvl);
             double hgvCompound_InverseSlope = sumDbValues(hgvRoadLvl, hgvMotorLvl);
 
-            lvLvl = sumDbValues(Vperhour2NoiseLevel(lvCompound, parameters.getLvPerHour()/2, parameters.getSpeedLv()),Vperhour2NoiseLevel(lvCompound_InverseSlope, parameters.getLvPerHour()/2, parameters.getSpeedLv()));
-            medLvl = sumDbValues(Vperhour2NoiseLevel(medCompound, parameters.getMvPerHour()/2, parameters.getSpeedMv()),Vperhour2NoiseLevel(medCompound_InverseSlope, parameters.getMvPerHour()/2, parameters.getSpeedMv()));
-            hgvLvl = sumDbValues(Vperhour2NoiseLevel(hgvCompound, parameters.getHgvPerHour()/2, parameters.getSpeedHgv()),Vperhour2NoiseLevel(hgvCompound_InverseSlope, parameters.getHgvPerHour()/2, parameters.getSpeedHgv()));
+            lvLvl = sumDbValues(Vperhour2NoiseLevelPrimitive(lvCompound, parameters.getLvPerHour()/2, parameters.getSpeedLv()),Vperhour2NoiseLevelPrimitive(lvCompound_InverseSlope, parameters.getLvPerHour()/2, parameters.getSpeedLv()));
+            medLvl = sumDbValues(Vperhour2NoiseLevelPrimitive(medCompound, parameters.getMvPerHour()/2, parameters.getSpeedMv()),Vperhour2NoiseLevelPrimitive(medCompound_InverseSlope, parameters.getMvPerHour()/2, parameters.getSpeedMv()));
+            hgvLvl = sumDbValues(Vperhour2NoiseLevelPrimitive(hgvCompound, parameters.getHgvPerHour()/2, parameters.getSpeedHgv()),Vperhour2NoiseLevelPrimitive(hgvCompound_InverseSlope, parameters.getHgvPerHour()/2, parameters.getSpeedHgv()));
         }
 
 
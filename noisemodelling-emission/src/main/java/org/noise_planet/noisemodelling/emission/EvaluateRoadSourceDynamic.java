@@ -12,13 +12,11 @@
 
 package org.noise_planet.noisemodelling.emission;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.NullNode;
+import org.noise_planet.noisemodelling.emission.RoadCoefficientsCnossos.VehicleCategory;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.Random;
 
+import static org.noise_planet.noisemodelling.emission.RoadCoefficientsCnossos.Coefficient.*;
 import static org.noise_planet.noisemodelling.emission.Utils.dbToW;
 import static org.noise_planet.noisemodelling.emission.Utils.wToDb;
 
@@ -34,74 +32,26 @@ import static org.noise_planet.noisemodelling.emission.Utils.wToDb;
 
 public class EvaluateRoadSourceDynamic {
 
-    private static JsonNode cnossosData = parse(EvaluateRoadSourceCnossos.class.getResourceAsStream("coefficients_Road_Cnossos_2015.json"));
-    private static JsonNode cnossosData2019 = parse(EvaluateRoadSourceCnossos.class.getResourceAsStream("coefficients_Road_Cnossos_2020.json"));
-
-    private static JsonNode parse(InputStream inputStream) {
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.readTree(inputStream);
-        } catch (IOException ex) {
-            return NullNode.getInstance();
-        }
-    }
-
     public static JsonNode getCnossosData(int coeffVer){
-        if (coeffVer==1){
-            return cnossosData;
-        }
-        else {
-            return cnossosData2019;
-        }
+        return EvaluateRoadSourceCnossos.getCnossosData(coeffVer);
     }
 
     /** Get a Road Coeff by Freq **/
     public static Double getA_Roadcoeff(int Freq, String vehCat, String RoadSurface, int coeffVer) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        int Freq_ind;
-        int VehCat_ind;
-        double out_value;
-        switch (Freq) {
-            case 63:
-                Freq_ind=0;
-                break;
-            case 125:
-                Freq_ind=1;
-                break;
-            case 250:
-                Freq_ind=2;
-                break;
-            case 500:
-                Freq_ind=3;
-                break;
-            case 1000:
-                Freq_ind=4;
-                break;
-            case 2000:
-                Freq_ind=5;
-                break;
-            case 4000:
-                Freq_ind=6;
-                break;
-            case 8000:
-                Freq_ind=7;
-                break;
-            default:
-                Freq_ind=0;
-        }
-        return getCnossosData(coeffVer).get("roads").get(RoadSurface).get("ref").get(vehCat).get("spectrum").get(Freq_ind).doubleValue();
+        return EvaluateRoadSourceCnossos.getA_Roadcoeff(Freq, vehCat, RoadSurface, coeffVer);
     }
 
     /** Get b Road Coeff by Freq **/
     public static Double getB_Roadcoeff(String vehCat, String roadSurface, int coeffVer) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        return getCnossosData(coeffVer).get("roads").get(roadSurface).get("ref").get(vehCat).get("ßm").doubleValue();
+        return EvaluateRoadSourceCnossos.getB_Roadcoeff(vehCat, roadSurface, coeffVer);
     }
 
     public static double getCr(String vehCat, int k, int coeffVer) {
-        return getCnossosData(coeffVer).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cr").doubleValue();
+        return EvaluateRoadSourceCnossos.getCr(vehCat, k, coeffVer);
     }
 
     public static double getCp(String vehCat, int k, int coeffVer) {
-        return getCnossosData(coeffVer).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cp").doubleValue();
+        return EvaluateRoadSourceCnossos.getCp(vehCat, k, coeffVer);
     }
 
     /**
@@ -112,51 +62,22 @@ public class EvaluateRoadSourceDynamic {
      * @return
      */
     public static Double getCoeff(String coeff, int freq, String vehicleCategory, int coeffVer) {
-        int Freq_ind;
-        switch (freq) {
-            case 63:
-                Freq_ind=0;
-                break;
-            case 125:
-                Freq_ind=1;
-                break;
-            case 250:
-                Freq_ind=2;
-                break;
-            case 500:
-                Freq_ind=3;
-                break;
-            case 1000:
-                Freq_ind=4;
-                break;
-            case 2000:
-                Freq_ind=5;
-                break;
-            case 4000:
-                Freq_ind=6;
-                break;
-            case 8000:
-                Freq_ind=7;
-                break;
-            default:
-                Freq_ind=0;
-        }
-        return getCnossosData(coeffVer).get("vehicles").get(vehicleCategory).get(coeff).get(Freq_ind).doubleValue();
+        return EvaluateRoadSourceCnossos.getCoeff(coeff, freq, vehicleCategory, coeffVer);
     }
 
     /** get noise level from speed **/
-    private static Double getNoiseLvl(Double base, Double adj, Double speed,
-                                      Double speedBase) {
+    private static double getNoiseLvl(double base, double adj, double speed,
+                                      double speedBase) {
         return base + adj * Math.log10(speed / speedBase);
     }
 
 
     /** get sum dBa **/
-    private static Double sumDba(Double dBA1, Double dBA2) {
+    private static double sumDba(double dBA1, double dBA2) {
         return wToDb(dbToW(dBA1) + dbToW(dBA2));
     }
 
-    private static Double sumDba_5(Double dBA1, Double dBA2, Double dBA3, Double dBA4, Double dBA5) {
+    private static double sumDba_5(double dBA1, double dBA2, double dBA3, double dBA4, double dBA5) {
         return wToDb(dbToW(dBA1) + dbToW(dBA2) + dbToW(dBA3) + dbToW(dBA4) + dbToW(dBA5));
     }
 
@@ -180,6 +101,10 @@ public class EvaluateRoadSourceDynamic {
         final double Temperature = parameters.getTemperature();
         final String roadSurface = parameters.getRoadSurface();
         final int coeffVer = parameters.getCoeffVer();
+        final RoadCoefficientsCnossos roadCoefficients = EvaluateRoadSourceCnossos.getCoefficients(coeffVer);
+        final VehicleCategory category = VehicleCategory.fromCode(veh_type);
+        final int band = RoadCoefficientsCnossos.getBandIndex(freqParam);
+        final int surface = roadCoefficients.getSurfaceIndex(roadSurface);
 
         // ///////////////////////
         // Noise road/tire CNOSSOS
@@ -187,7 +112,7 @@ public class EvaluateRoadSourceDynamic {
 
         // Noise level
         // Noise level
-        RoadLvl = getNoiseLvl(getCoeff("ap", freqParam , veh_type  ,coeffVer), getCoeff("bp", freqParam , veh_type  ,coeffVer), speed, 70.);
+        RoadLvl = getNoiseLvl(roadCoefficients.getVehicleCoefficient(AP, category, band), roadCoefficients.getVehicleCoefficient(BP, category, band), speed, 70.);
 
         // Correction by temperature p. 36
         switch (veh_type) {
@@ -205,7 +130,7 @@ public class EvaluateRoadSourceDynamic {
 
         // Rolling noise acceleration correction
         double coefficientJunctionDistance = Math.max(1 - Math.abs(Junc_dist) / 100, 0);
-        RoadLvl = RoadLvl + getCr(veh_type, Junc_type,coeffVer) * coefficientJunctionDistance;
+        RoadLvl = RoadLvl + roadCoefficients.getCr(category, Junc_type) * coefficientJunctionDistance;
 
 
         //Studied tyres
@@ -213,13 +138,13 @@ public class EvaluateRoadSourceDynamic {
             if (Stud) {
                 double speedStud  = (speed >= 90) ? 90 : speed;
                 speedStud = (speedStud <= 50) ? 50 : speedStud;
-                double deltaStud = getNoiseLvl(getCoeff( "a" , freqParam , veh_type  ,coeffVer), getCoeff("b", freqParam , veh_type ,coeffVer), speedStud, 70.);
+                double deltaStud = getNoiseLvl(roadCoefficients.getVehicleCoefficient(A, category, band), roadCoefficients.getVehicleCoefficient(B, category, band), speedStud, 70.);
                 RoadLvl = RoadLvl + Math.pow(10, deltaStud / 10);
             }
         }
 
         //Road surface correction on rolling noise
-        RoadLvl = RoadLvl +getNoiseLvl(getA_Roadcoeff(freqParam,veh_type, roadSurface,coeffVer), getB_Roadcoeff(veh_type,roadSurface,coeffVer), speed, 70.);
+        RoadLvl = RoadLvl +getNoiseLvl(roadCoefficients.getSurfaceSpectrum(surface, category, band), roadCoefficients.getSurfaceBeta(surface, category), speed, 70.);
 
 
         // ///////////////////////
@@ -229,7 +154,7 @@ public class EvaluateRoadSourceDynamic {
         RoadLvl = (speed <= 20) ? 0 : RoadLvl;
         speed = (speed <= 20) ? 20 : speed; // Because when vehicles are stopped they still emit motor sounds.
         // default or steady speed.
-        MotorLvl =getCoeff("ap", freqParam , veh_type ,coeffVer ) + getCoeff("bp", freqParam , veh_type ,coeffVer ) * (speed-70)/70 ;
+        MotorLvl =roadCoefficients.getVehicleCoefficient(AP, category, band) + roadCoefficients.getVehicleCoefficient(BP, category, band) * (speed-70)/70 ;
 
         // Propulsion noise acceleration correction
 
@@ -239,7 +164,7 @@ public class EvaluateRoadSourceDynamic {
         switch (acc_type) {
             case 1:
                 if (veh_type.equals("1") || veh_type.equals("2") || veh_type.equals("3") ) {
-                    MotorLvl = MotorLvl + getCp(veh_type, Junc_type,coeffVer) * coefficientJunctionDistance;
+                    MotorLvl = MotorLvl + roadCoefficients.getCp(category, Junc_type) * coefficientJunctionDistance;
                 }
                 break;
             case 2:
@@ -341,7 +266,7 @@ public class EvaluateRoadSourceDynamic {
 
 
         // Correction road on propulsion noise
-        MotorLvl = MotorLvl+ Math.min(getA_Roadcoeff(freqParam ,veh_type,roadSurface,coeffVer), 0.);
+        MotorLvl = MotorLvl+ Math.min(roadCoefficients.getSurfaceSpectrum(surface, category, band), 0.);
 
         Random r = new Random(VehId);
         double deltaLwdistrib = 0.115*Math.pow(parameters.getLwStd(),2.0); // Gozalo, G. R., Aumond, P., & Can, A. (2020). Variability in sound power levels: Implications for static and dynamic traffic models. Transportation Research Part D: Transport and Environment, 84, 102339.
@@ -0,0 +1,233 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+
+package org.noise_planet.noisemodelling.emission;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Math.min;
+
+/**
+ * Memoization of the railway emission of a single vehicle.
+ * The rolling, traction, aerodynamic and bridge spectra of a vehicle only depend on the vehicle type, the track
+ * properties and the speed. These spectra are computed once by {@link EvaluateRailwaySourceCnossos} for each
+ * combination, then the traffic flow of the section is applied on a copy, so the returned {@link RailWayLW} can be
+ * modified by the caller. The least recently used combinations are evicted when the cache is full.
+ * The cache can be used by multiple threads.
+ */
+public class RailwayEmissionCache {
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private final EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos;
+    /** Spectra in access order, the first entry is the least recently used. Guarded by its own lock */
+    private final LinkedHashMap<VehicleTrackKey, VehicleSpectra> spectra =
+            new LinkedHashMap<VehicleTrackKey, VehicleSpectra>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<VehicleTrackKey, VehicleSpectra> eldest) {
+                    return size() > maximumSize;
+                }
+            };
+    /** Maximum number of spectra kept in the cache, the least recently used spectra are evicted */
+    private volatile int maximumSize;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param evaluateRailwaySourceCnossos Railway emission evaluation, the vehicle and train data must not be changed
+     *                                     afterwards
+     */
+    public RailwayEmissionCache(EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos) {
+        this(evaluateRailwaySourceCnossos, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param evaluateRailwaySourceCnossos Railway emission evaluation, the vehicle and train data must not be changed
+     *                                     afterwards
+     * @param maximumSize Maximum number of vehicle/track/speed combinations kept in the cache, 0 to disable the cache
+     */
+    public RailwayEmissionCache(EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos, int maximumSize) {
+        this.evaluateRailwaySourceCnossos = evaluateRailwaySourceCnossos;
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * @return Railway emission evaluation
+     */
+    public EvaluateRailwaySourceCnossos getEvaluateRailwaySourceCnossos() {
+        return evaluateRailwaySourceCnossos;
+    }
+
+    /**
+     * @return Maximum number of vehicle/track/speed combinations kept in the cache
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @param maximumSize Maximum number of vehicle/track/speed combinations kept in the cache, 0 to disable the cache
+     */
+    public void setMaximumSize(int maximumSize) {
+        synchronized (spectra) {
+            this.maximumSize = maximumSize;
+            Iterator<VehicleSpectra> it = spectra.values().iterator();
+            while (spectra.size() > Math.max(0, maximumSize)) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Same result as {@link EvaluateRailwaySourceCnossos#evaluate(RailwayVehicleParametersCnossos, RailwayTrackParametersCnossos)}
+     * @param vehicleParameters Vehicle Noise emission parameters
+     * @param trackParameters Track Noise emission parameters
+     * @return LWRoll / LWTraction A & B / LWAerodynamic A & B / LWBridge level in dB
+     */
+    public RailWayLW evaluate(RailwayVehicleParametersCnossos vehicleParameters,
+                              RailwayTrackParametersCnossos trackParameters) {
+        if (trackParameters.getIsTunnel() || maximumSize <= 0) {
+            return evaluateRailwaySourceCnossos.evaluate(vehicleParameters, trackParameters);
+        }
+        String typeVehicle = vehicleParameters.getTypeVehicle();
+        double speed = min(vehicleParameters.getSpeedVehicle(), min(trackParameters.getSpeedTrack(),
+                trackParameters.getSpeedCommercial()));
+        VehicleTrackKey key = new VehicleTrackKey(typeVehicle, vehicleParameters.getRunningCondition(), speed,
+                trackParameters.getRailRoughness(), trackParameters.getTrackTransfer(),
+                trackParameters.getImpactNoise(), trackParameters.getBridgeTransfert(), trackParameters.getCurvature(),
+                vehicleParameters.getSpectreVer());
+        VehicleSpectra vehicleSpectra;
+        synchronized (spectra) {
+            vehicleSpectra = spectra.get(key);
+        }
+        if (vehicleSpectra == null) {
+            missCount.incrementAndGet();
+            vehicleSpectra = new VehicleSpectra(evaluateRailwaySourceCnossos.evaluateVehicleSpectra(typeVehicle,
+                    key.runningCondition, speed, key.railRoughness, key.trackTransfer, key.impactNoise,
+                    key.bridgeTransfert, key.curvature, key.spectreVer),
+                    evaluateRailwaySourceCnossos.getNbCoach(typeVehicle));
+            synchronized (spectra) {
+                spectra.put(key, vehicleSpectra);
+            }
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return EvaluateRailwaySourceCnossos.applyTrafficFlow(vehicleSpectra.lW,
+                vehicleParameters.getNumberVehicle() * vehicleSpectra.nbCoach, speed);
+    }
+
+    /**
+     * @return Number of vehicle/track/speed combinations in the cache
+     */
+    public int size() {
+        synchronized (spectra) {
+            return spectra.size();
+        }
+    }
+
+    /**
+     * @return Number of evaluations that reused the cached spectra
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return Number of evaluations that computed the spectra
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return Ratio of evaluations that reused the cached spectra, 0 if nothing has been evaluated
+     */
+    public double getHitRate() {
+        long hit = hitCount.get();
+        long total = hit + missCount.get();
+        return total == 0 ? 0 : hit / (double) total;
+    }
+
+    /**
+     * Remove all the cached spectra and reset the statistics
+     */
+    public void clear() {
+        synchronized (spectra) {
+            spectra.clear();
+        }
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    /**
+     * Cached single vehicle emission, never modified once created
+     */
+    private static final class VehicleSpectra {
+        final double[][] lW;
+        final int nbCoach;
+
+        VehicleSpectra(double[][] lW, int nbCoach) {
+            this.lW = lW;
+            this.nbCoach = nbCoach;
+        }
+    }
+
+    /**
+     * Parameters of {@link EvaluateRailwaySourceCnossos} that change the spectra of a single vehicle
+     */
+    private static final class VehicleTrackKey {
+        final String typeVehicle;
+        final int runningCondition;
+        final double speed;
+        final int railRoughness;
+        final int trackTransfer;
+        final int impactNoise;
+        final int bridgeTransfert;
+        final int curvature;
+        final int spectreVer;
+
+        VehicleTrackKey(String typeVehicle, int runningCondition, double speed, int railRoughness, int trackTransfer,
+                        int impactNoise, int bridgeTransfert, int curvature, int spectreVer) {
+            this.typeVehicle = typeVehicle;
+            this.runningCondition = runningCondition;
+            this.speed = speed;
+            this.railRoughness = railRoughness;
+            this.trackTransfer = trackTransfer;
+            this.impactNoise = impactNoise;
+            this.bridgeTransfert = bridgeTransfert;
+            this.curvature = curvature;
+            this.spectreVer = spectreVer;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            VehicleTrackKey that = (VehicleTrackKey) o;
+            return runningCondition == that.runningCondition && Double.compare(that.speed, speed) == 0 &&
+                    railRoughness == that.railRoughness && trackTransfer == that.trackTransfer &&
+                    impactNoise == that.impactNoise && bridgeTransfert == that.bridgeTransfert &&
+                    curvature == that.curvature && spectreVer == that.spectreVer &&
+                    typeVehicle.equals(that.typeVehicle);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(typeVehicle, runningCondition, speed, railRoughness, trackTransfer, impactNoise,
+                    bridgeTransfert, curvature, spectreVer);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+
+package org.noise_planet.noisemodelling.emission;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * CNOSSOS road emission coefficients of one version (2015 or 2019 amendments), read once from the json tree into
+ * primitive arrays. Coefficients are accessed with the ordinals of the vehicle category and coefficient enums, the
+ * frequency band index and the road surface index, without navigating the json tree for each evaluation.
+ */
+public class RoadCoefficientsCnossos {
+    /** Octave frequency bands of the coefficients, in Hz */
+    public static final int[] FREQUENCIES = new int[]{63, 125, 250, 500, 1000, 2000, 4000, 8000};
+    public static final int BAND_COUNT = FREQUENCIES.length;
+    private static final int CATEGORY_COUNT = VehicleCategory.values().length;
+    private static final int COEFFICIENT_COUNT = Coefficient.values().length;
+
+    /**
+     * CNOSSOS vehicle categories
+     */
+    public enum VehicleCategory {
+        /** Light vehicles */
+        LV("1"),
+        /** Medium heavy vehicles */
+        MV("2"),
+        /** Heavy vehicles */
+        HGV("3"),
+        /** Powered two-wheelers, mopeds */
+        WAV("4a"),
+        /** Powered two-wheelers, motorcycles */
+        WBV("4b");
+
+        /** Category identifier in the json file */
+        public final String code;
+
+        VehicleCategory(String code) {
+            this.code = code;
+        }
+
+        /**
+         * @param code Category identifier 1,2,3,4a,4b
+         * @return Vehicle category
+         * @throws IllegalArgumentException Unknown category
+         */
+        public static VehicleCategory fromCode(String code) {
+            switch (code) {
+                case "1":
+                    return LV;
+                case "2":
+                    return MV;
+                case "3":
+                    return HGV;
+                case "4a":
+                    return WAV;
+                case "4b":
+                    return WBV;
+                default:
+                    throw new IllegalArgumentException("Unknown vehicle category " + code);
+            }
+        }
+    }
+
+    /**
+     * Vehicle emission coefficients, defined for each frequency band
+     */
+    public enum Coefficient {
+        /** Rolling noise coefficient A */
+        AR("ar"),
+        /** Rolling noise coefficient B */
+        BR("br"),
+        /** Propulsion noise coefficient A */
+        AP("ap"),
+        /** Propulsion noise coefficient B */
+        BP("bp"),
+        /** Studded tyres coefficient a */
+        A("a"),
+        /** Studded tyres coefficient b */
+        B("b");
+
+        /** Coefficient identifier in the json file */
+        public final String code;
+
+        Coefficient(String code) {
+            this.code = code;
+        }
+
+        /**
+         * @param code Coefficient identifier ar,br,ap,bp,a,b
+         * @return Coefficient
+         * @throws IllegalArgumentException Unknown coefficient
+         */
+        public static Coefficient fromCode(String code) {
+            for (Coefficient coefficient : values()) {
+                if (coefficient.code.equals(code)) {
+                    return coefficient;
+                }
+            }
+            throw new IllegalArgumentException("Unknown vehicle coefficient " + code);
+        }
+    }
+
+    /** vehicleCoefficients[(category * COEFFICIENT_COUNT + coefficient) * BAND_COUNT + band] */
+    private final double[] vehicleCoefficients = new double[CATEGORY_COUNT * COEFFICIENT_COUNT * BAND_COUNT];
+    /** Acceleration correction of rolling noise, crCoefficients[category * 2 + (crossing ? 0 : 1)] */
+    private final double[] crCoefficients = new double[CATEGORY_COUNT * 2];
+    /** Acceleration correction of propulsion noise, cpCoefficients[category * 2 + (crossing ? 0 : 1)] */
+    private final double[] cpCoefficients = new double[CATEGORY_COUNT * 2];
+    private final Map<String, Integer> surfaceIndex = new HashMap<>();
+    private final String[] surfaces;
+    /** surfaceSpectrum[(surface * CATEGORY_COUNT + category) * BAND_COUNT + band] */
+    private final double[] surfaceSpectrum;
+    /** surfaceBeta[surface * CATEGORY_COUNT + category] */
+    private final double[] surfaceBeta;
+
+    /**
+     * Read the coefficients
+     * @param cnossosData Json tree of coefficients_Road_Cnossos_2015.json or coefficients_Road_Cnossos_2020.json
+     * @throws IllegalArgumentException Missing vehicle category or road surface coefficients
+     */
+    public RoadCoefficientsCnossos(JsonNode cnossosData) {
+        JsonNode vehicles = cnossosData.get("vehicles");
+        JsonNode roads = cnossosData.get("roads");
+        if (vehicles == null || roads == null) {
+            throw new IllegalArgumentException("Not a CNOSSOS road coefficients file");
+        }
+        // Undefined coefficients (ex: studded tyres for heavy vehicles) are NaN
+        Arrays.fill(vehicleCoefficients, Double.NaN);
+        for (VehicleCategory category : VehicleCategory.values()) {
+            JsonNode vehicle = vehicles.get(category.code);
+            if (vehicle == null) {
+                throw new IllegalArgumentException("Missing coefficients of vehicle category " + category.code);
+            }
+            for (Coefficient coefficient : Coefficient.values()) {
+                JsonNode values = vehicle.get(coefficient.code);
+                if (values != null) {
+                    int offset = (category.ordinal() * COEFFICIENT_COUNT + coefficient.ordinal()) * BAND_COUNT;
+                    for (int band = 0; band < BAND_COUNT; band++) {
+                        vehicleCoefficients[offset + band] = values.get(band).doubleValue();
+                    }
+                }
+            }
+            crCoefficients[category.ordinal() * 2] = vehicle.get("crossing").get("cr").doubleValue();
+            crCoefficients[category.ordinal() * 2 + 1] = vehicle.get("roundabout").get("cr").doubleValue();
+            cpCoefficients[category.ordinal() * 2] = vehicle.get("crossing").get("cp").doubleValue();
+            cpCoefficients[category.ordinal() * 2 + 1] = vehicle.get("roundabout").get("cp").doubleValue();
+        }
+        surfaces = new String[roads.size()];
+        surfaceSpectrum = new double[surfaces.length * CATEGORY_COUNT * BAND_COUNT];
+        surfaceBeta = new double[surfaces.length * CATEGORY_COUNT];
+        Iterator<Map.Entry<String, JsonNode>> roadIterator = roads.fields();
+        int surface = 0;
+        while (roadIterator.hasNext()) {
+            Map.Entry<String, JsonNode> road = roadIterator.next();
+            surfaces[surface] = road.getKey();
+            surfaceIndex.put(road.getKey(), surface);
+            JsonNode reference = road.getValue().get("ref");
+            for (VehicleCategory category : VehicleCategory.values()) {
+                JsonNode coefficients = reference.get(category.code);
+                if (coefficients == null) {
+                    throw new IllegalArgumentException("Missing coefficients of vehicle category " + category.code
+                            + " for the road surface " + road.getKey());
+                }
+                int offset = (surface * CATEGORY_COUNT + category.ordinal()) * BAND_COUNT;
+                JsonNode spectrum = coefficients.get("spectrum");
+                for (int band = 0; band < BAND_COUNT; band++) {
+                    surfaceSpectrum[offset + band] = spectrum.get(band).doubleValue();
+                }
+                surfaceBeta[surface * CATEGORY_COUNT + category.ordinal()] = coefficients.get("ßm").doubleValue();
+            }
+            surface++;
+        }
+    }
+
+    /**
+     * @param frequency Frequency in Hz (octave band)
+     * @return Index of the frequency band, 0 (63 Hz) if the frequency is not an octave band
+     */
+    public static int getBandIndex(int frequency) {
+        switch (frequency) {
+            case 125:
+                return 1;
+            case 250:
+                return 2;
+            case 500:
+                return 3;
+            case 1000:
+                return 4;
+            case 2000:
+                return 5;
+            case 4000:
+                return 6;
+            case 8000:
+                return 7;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param roadSurface Road surface identifier
+     * @return Index of the road surface in this version of the coefficients
+     * @throws IllegalArgumentException Unknown road surface
+     */
+    public int getSurfaceIndex(String roadSurface) {
+        Integer index = surfaceIndex.get(roadSurface);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown road surface " + roadSurface);
+        }
+        return index;
+    }
+
+    /**
+     * @return Road surface identifiers, by surface index
+     */
+    public String[] getSurfaces() {
+        return surfaces.clone();
+    }
+
+    /**
+     * @param coefficient Coefficient
+     * @param category Vehicle category
+     * @param band Frequency band index
+     * @return Vehicle emission coefficient, NaN if not defined for this category
+     */
+    public double getVehicleCoefficient(Coefficient coefficient, VehicleCategory category, int band) {
+        return vehicleCoefficients[(category.ordinal() * COEFFICIENT_COUNT + coefficient.ordinal()) * BAND_COUNT + band];
+    }
+
+    /**
+     * @param category Vehicle category
+     * @param junctionType k=1 Crossing lights, k=2 roundabout
+     * @return Cr coefficient, acceleration correction of rolling noise
+     */
+    public double getCr(VehicleCategory category, int junctionType) {
+        return crCoefficients[category.ordinal() * 2 + (junctionType == 1 ? 0 : 1)];
+    }
+
+    /**
+     * @param category Vehicle category
+     * @param junctionType k=1 Crossing lights, k=2 roundabout
+     * @return Cp coefficient, acceleration correction of propulsion noise
+     */
+    public double getCp(VehicleCategory category, int junctionType) {
+        return cpCoefficients[category.ordinal() * 2 + (junctionType == 1 ? 0 : 1)];
+    }
+
+    /**
+     * @param surface Road surface index
+     * @param category Vehicle category
+     * @param band Frequency band index
+     * @return Road surface coefficient a
+     */
+    public double getSurfaceSpectrum(int surface, VehicleCategory category, int band) {
+        return surfaceSpectrum[(surface * CATEGORY_COUNT + category.ordinal()) * BAND_COUNT + band];
+    }
+
+    /**
+     * @param surface Road surface index
+     * @param category Vehicle category
+     * @return Road surface coefficient ß
+     */
+    public double getSurfaceBeta(int surface, VehicleCategory category) {
+        return surfaceBeta[surface * CATEGORY_COUNT + category.ordinal()];
+    }
+}
@@ -58,6 +58,17 @@ public class Utils {
      * @throws IOException if speed < 0 km/h
      */
     public static Double Vperhour2NoiseLevel(double LWim, double Qm, double vm){
+        return Vperhour2NoiseLevelPrimitive(LWim, Qm, vm);
+    }
+
+    /**
+     * Same as {@link #Vperhour2NoiseLevel(double, double, double)} without boxing the result
+     * @param LWim LW,i,m is the directional sound power of a single vehicle and is expressed in dB (re. 10–12 W/m).
+     * @param Qm Traffic flow data Qm shall be expressed as yearly average per hour, per time period (day-evening-night), per vehicle class and per source line.
+     * @param vm The speed vm is a representative speed per vehicle category
+     * @return Noise level
+     */
+    public static double Vperhour2NoiseLevelPrimitive(double LWim, double Qm, double vm){
         return LWim + 10 * Math.log10(Qm / (1000 * vm));
     }
 
@@ -2,6 +2,10 @@ package org.noise_planet.noisemodelling.emission;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 public class DiscreteDirectionAttributesTest {
@@ -62,4 +66,60 @@ public class DiscreteDirectionAttributesTest {
                 (float)Math.toRadians(26)),0.1);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testCompiledGrid() {
+        RailWayLW.TrainAttenuation att = new RailWayLW.TrainAttenuation(RailWayLW.TrainNoiseSource.ROLLING);
+        List<DiscreteDirectionAttributes.DirectivityRecord> records = new ArrayList<>();
+        for(int yaw = 0; yaw < 360; yaw += 10) {
+            double phi = Math.toRadians(yaw);
+            for(int pitch = -90; pitch <= 90; pitch += 15) {
+                double theta = Math.toRadians(pitch);
+                records.add(new DiscreteDirectionAttributes.DirectivityRecord(theta, phi,
+                        att.getAttenuationArray(freqTest, phi, theta)));
+            }
+        }
+        for(int interpolationMethod = 0; interpolationMethod < 2; interpolationMethod++) {
+            DiscreteDirectionAttributes expected = new DiscreteDirectionAttributes(1, freqTest);
+            expected.setInterpolationMethod(interpolationMethod);
+            expected.addDirectivityRecords(records);
+            DiscreteDirectionAttributes compiled = new DiscreteDirectionAttributes(1, freqTest);
+            compiled.setInterpolationMethod(interpolationMethod);
+            compiled.addDirectivityRecords(records);
+            DirectivityGrid grid = compiled.compile(1e-6);
+            assertNotNull(grid);
+            assertSame(grid, compiled.getGrid());
+            assertEquals(36, grid.getPhiCount());
+            assertEquals(13, grid.getThetaCount());
+            Random random = new Random(42);
+            for(int i = 0; i < 5000; i++) {
+                // yaw of the rays is in the range -π π
+                double phi = -Math.PI + random.nextDouble() * 3 * Math.PI;
+                double theta = -Math.PI / 2 + random.nextDouble() * Math.PI;
+                assertArrayEquals(expected.getAttenuationArray(freqTest, phi, theta),
+                        compiled.getAttenuationArray(freqTest, phi, theta), 1e-6);
+            }
+            // query on the records angles
+            for(DiscreteDirectionAttributes.DirectivityRecord record : records) {
+                assertArrayEquals(expected.getAttenuationArray(freqTest, record.getPhi(), record.getTheta()),
+                        compiled.getAttenuationArray(freqTest, record.getPhi(), record.getTheta()), 1e-6);
+            }
+            assertEquals(expected.getAttenuation(freqTest[2] + 1, 0.3, 0.2),
+                    compiled.getAttenuation(freqTest[2] + 1, 0.3, 0.2), 1e-6);
+        }
+    }
+
+    @Test
+    public void testCompileMissingRecord() {
+        DiscreteDirectionAttributes d = new DiscreteDirectionAttributes(1, freqTest);
+        for(int yaw = 0; yaw < 360; yaw += 10) {
+            for(int pitch = -90; pitch <= 90; pitch += 15) {
+                if(yaw != 40 || pitch != 15) {
+                    d.addDirectivityRecord(Math.toRadians(pitch), Math.toRadians(yaw), new double[freqTest.length]);
+                }
+            }
+        }
+        assertNull(d.compile(0.1));
+        assertNull(d.getGrid());
+    }
+
+}
@@ -222,4 +222,60 @@ public class EvaluateRoadSourceCnossosTest {
             assertEquals(String.format("%d Hz", FREQUENCIES[idFreq]), expectedValues[idFreq], result, EPSILON_TEST1);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void CnossosEmissionBatchTest() throws IOException {
+        String[] surfaces = new String[]{"NL01", "FR_R2", "DEF"};
+        RoadSourceParametersCnossos[] segments = new RoadSourceParametersCnossos[surfaces.length * 2];
+        for (int idSegment = 0; idSegment < segments.length; idSegment++) {
+            segments[idSegment] = new RoadSourceParametersCnossos(50 + idSegment * 10, 50, 50 + idSegment * 5,
+                    50, 50, 1000, 50, 80 + idSegment, 10, 10, 63, 15,
+                    surfaces[idSegment % surfaces.length], 4, 0.5, 50, 1 + idSegment % 2);
+            segments[idSegment].setSlopePercentage_without_limit(idSegment - 3);
+            segments[idSegment].setWay(1 + idSegment % 3);
+            segments[idSegment].setCoeffVer(1 + idSegment % 2);
+        }
+        double[] spectrum = new double[segments.length * FREQUENCIES.length];
+        EvaluateRoadSourceCnossos.evaluate(segments, segments.length, FREQUENCIES, spectrum);
+        for (int idSegment = 0; idSegment < segments.length; idSegment++) {
+            RoadSourceParametersCnossos segment = segments[idSegment];
+            for (int idFreq = 0; idFreq < FREQUENCIES.length; idFreq++) {
+                RoadSourceParametersCnossos rsParameters = new RoadSourceParametersCnossos(segment.getSpeedLv(),
+                        segment.getSpeedMv(), segment.getSpeedHgv(), segment.getSpeedWav(), segment.getSpeedWbv(),
+                        segment.getLvPerHour(), segment.getMvPerHour(), segment.getHgvPerHour(),
+                        segment.getWavPerHour(), segment.getWbvPerHour(), FREQUENCIES[idFreq],
+                        segment.getTemperature(), segment.getRoadSurface(), segment.getTsStud(),
+                        segment.getqStudRatio(), segment.getJunc_dist(), segment.getJunc_type());
+                rsParameters.setSlopePercentage_without_limit(segment.getSlopePercentage());
+                rsParameters.setWay((int) segment.getWay());
+                rsParameters.setCoeffVer(segment.getCoeffVer());
+                assertEquals(EvaluateRoadSourceCnossos.evaluate(rsParameters),
+                        spectrum[idSegment * FREQUENCIES.length + idFreq], 0);
+            }
+        }
+    }
+
+    @Test
+    public void CompiledCoefficientsTest() {
+        // Same values as the json tree
+        for (int coeffVer = 1; coeffVer <= 2; coeffVer++) {
+            RoadCoefficientsCnossos coefficients = EvaluateRoadSourceCnossos.getCoefficients(coeffVer);
+            for (String surface : coefficients.getSurfaces()) {
+                assertEquals(EvaluateRoadSourceCnossos.getCnossosData(coeffVer).get("roads").get(surface).get("ref")
+                        .get("3").get("spectrum").get(5).doubleValue(),
+                        EvaluateRoadSourceCnossos.getA_Roadcoeff(2000, "3", surface, coeffVer), 0);
+            }
+            assertEquals(EvaluateRoadSourceCnossos.getCnossosData(coeffVer).get("vehicles").get("4b").get("bp")
+                    .get(7).doubleValue(), EvaluateRoadSourceCnossos.getCoeff("bp", 8000, "4b", coeffVer), 0);
+        }
+        assertEquals(88.0, EvaluateRoadSourceCnossos.getCoeff("ap", 63, "4a", 1), 0);
+        assertEquals(-4.5, EvaluateRoadSourceCnossos.getCr("1", 1, 1), 0);
+        assertTrue(Double.isNaN(EvaluateRoadSourceCnossos.getCoeff("a", 63, "3", 2)));
+        try {
+            EvaluateRoadSourceCnossos.getA_Roadcoeff(63, "1", "UNKNOWN_SURFACE", 2);
+            fail("Unknown road surface must be rejected");
+        } catch (IllegalArgumentException ex) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.noise_planet.noisemodelling.emission;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RailwayEmissionCacheTest {
+
+    private static void assertSameEmission(RailWayLW expected, RailWayLW actual) {
+        assertArrayEquals(expected.getLWRolling(), actual.getLWRolling(), 0);
+        assertArrayEquals(expected.getLWTractionA(), actual.getLWTractionA(), 0);
+        assertArrayEquals(expected.getLWTractionB(), actual.getLWTractionB(), 0);
+        assertArrayEquals(expected.getLWAerodynamicA(), actual.getLWAerodynamicA(), 0);
+        assertArrayEquals(expected.getLWAerodynamicB(), actual.getLWAerodynamicB(), 0);
+        assertArrayEquals(expected.getLWBridge(), actual.getLWBridge(), 0);
+    }
+
+    @Test
+    public void testSameEmissionAsEvaluate() {
+        EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos = new EvaluateRailwaySourceCnossos();
+        RailwayEmissionCache cache = new RailwayEmissionCache(evaluateRailwaySourceCnossos);
+        String[] vehicles = new String[]{"SNCF1", "SNCF2", "SNCF4"};
+        double[] speeds = new double[]{80, 160, 250};
+        double[] flows = new double[]{0.5, 3, 12};
+        int[] bridges = new int[]{0, 3};
+        int evaluations = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (String vehicle : vehicles) {
+                for (double speed : speeds) {
+                    for (double flow : flows) {
+                        for (int bridge : bridges) {
+                            RailwayVehicleParametersCnossos vehicleParameters = new RailwayVehicleParametersCnossos(
+                                    vehicle, speed, flow, 0, 0);
+                            vehicleParameters.setSpectreVer(bridge == 3 ? 1 : 2);
+                            RailwayTrackParametersCnossos trackParameters = new RailwayTrackParametersCnossos(300, 4,
+                                    1, 0, bridge, 0, 300, false, 2);
+                            assertSameEmission(evaluateRailwaySourceCnossos.evaluate(vehicleParameters,
+                                    trackParameters), cache.evaluate(vehicleParameters, trackParameters));
+                            evaluations++;
+                        }
+                    }
+                }
+            }
+        }
+        int combinations = vehicles.length * speeds.length * bridges.length;
+        assertEquals(combinations, cache.size());
+        assertEquals(combinations, cache.getMissCount());
+        assertEquals(evaluations - combinations, cache.getHitCount());
+        assertEquals((evaluations - combinations) / (double) evaluations, cache.getHitRate(), 1e-12);
+    }
+
+    @Test
+    public void testReturnedEmissionIsACopy() {
+        RailwayEmissionCache cache = new RailwayEmissionCache(new EvaluateRailwaySourceCnossos());
+        RailwayVehicleParametersCnossos vehicleParameters = new RailwayVehicleParametersCnossos("SNCF2", 120, 4, 0, 0);
+        RailwayTrackParametersCnossos trackParameters = new RailwayTrackParametersCnossos(160, 4, 1, 0, 0, 0, 160,
+                false, 2);
+        RailWayLW first = cache.evaluate(vehicleParameters, trackParameters);
+        double[] expectedRolling = first.getLWRolling().clone();
+        first.getLWRolling()[5] = 0;
+        RailWayLW second = cache.evaluate(vehicleParameters, trackParameters);
+        assertArrayEquals(expectedRolling, second.getLWRolling(), 0);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testMaximumSize() {
+        RailwayEmissionCache cache = new RailwayEmissionCache(new EvaluateRailwaySourceCnossos(), 2);
+        RailwayTrackParametersCnossos trackParameters = new RailwayTrackParametersCnossos(300, 4, 1, 0, 0, 0, 300,
+                false, 2);
+        for (double speed = 60; speed < 200; speed += 20) {
+            cache.evaluate(new RailwayVehicleParametersCnossos("SNCF1", speed, 1, 0, 0), trackParameters);
+            assertTrue(cache.size() <= 2);
+        }
+        cache.setMaximumSize(0);
+        cache.evaluate(new RailwayVehicleParametersCnossos("SNCF1", 60, 1, 0, 0), trackParameters);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+}
@@ -0,0 +1,389 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.h2gis.utilities.TableLocation;
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrixReader;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation.VerticeSL;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+/**
+ * Compute the sound levels again from the attenuation matrix stored by a previous computation
+ * (see {@link LDENConfig#setAttenuationMatrixFile(File)}) and new source emissions.
+ * The buildings, the ground, the receivers and the geometry of the sources must be the same as in the previous
+ * computation. New sources are not taken into account and removed sources do not contribute anymore.
+ * In traffic flow mode the road slope is not evaluated from the DEM, it is read from the SLOPE column if it exists.
+ * The levels are written in the tables (or files) of the provided {@link LDENConfig}, only the merged sources output
+ * is supported. When only some sources have changed, the rows of the receivers reached by these sources are replaced
+ * in the existing tables.
+ * @author Nicolas Fortin
+ */
+public class AttenuationMatrixUpdate {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AttenuationMatrixUpdate.class);
+    /** Suffix of the temporary tables of the updated receivers */
+    static final String CHANGED_TABLE_SUFFIX = "_CHANGED";
+    private final LDENConfig ldenConfig;
+    private final File attenuationMatrixFile;
+    private Set<Long> changedSources = null;
+    private final List<Long> sourcesPkList = new ArrayList<>();
+    private final List<double[]> sourcesEmissionList = new ArrayList<>();
+    /** Sorted primary keys of the sources */
+    private long[] sourcesPk;
+    /** Emission in W of the source at the same index in sourcesPk, emission[idPeriod * frequencyCount + idFreq] */
+    private double[][] sourcesEmission;
+
+    /**
+     * @param ldenConfig Configuration of the output tables
+     * @param attenuationMatrixFile File written by the previous computation
+     */
+    public AttenuationMatrixUpdate(LDENConfig ldenConfig, File attenuationMatrixFile) {
+        this.ldenConfig = ldenConfig;
+        this.attenuationMatrixFile = attenuationMatrixFile;
+    }
+
+    /**
+     * @param changedSources Primary key of the sources that have a new emission. Only the receivers reached by at
+     *                       least one of these sources are computed, and their rows are replaced in the existing
+     *                       level tables. Null to write all receivers in new tables.
+     */
+    public void setChangedSources(Set<Long> changedSources) {
+        this.changedSources = changedSources;
+    }
+
+    /**
+     * Set the emission of a source
+     * @param sourcePk Source primary key
+     * @param dayEmission Day emission spectrum in W
+     * @param eveningEmission Evening emission spectrum in W
+     * @param nightEmission Night emission spectrum in W
+     */
+    public void setSourceEmission(long sourcePk, double[] dayEmission, double[] eveningEmission,
+                                  double[] nightEmission) {
+        int frequencyCount = dayEmission.length;
+        double[] emission = new double[3 * frequencyCount];
+        System.arraycopy(dayEmission, 0, emission, 0, frequencyCount);
+        System.arraycopy(eveningEmission, 0, emission, frequencyCount, frequencyCount);
+        System.arraycopy(nightEmission, 0, emission, 2 * frequencyCount, frequencyCount);
+        sourcesPkList.add(sourcePk);
+        sourcesEmissionList.add(emission);
+        sourcesPk = null;
+    }
+
+    /**
+     * Read the emission of all the sources of the table, using the input mode of the configuration
+     * @param connection Active connection
+     * @param sourcesTableName Sources table, with the same primary keys as in the previous computation
+     * @throws SQLException Error while reading the table
+     * @throws IOException Error while reading the table
+     */
+    public void loadSourcesEmission(Connection connection, String sourcesTableName) throws SQLException, IOException {
+        initPropagationProcessPathData();
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, new TableLocation(sourcesTableName));
+        if(pkIndex < 1) {
+            throw new IllegalArgumentException(String.format("Source table %s does not contain a primary key",
+                    sourcesTableName));
+        }
+        LDENPropagationProcessData emissionData = new LDENPropagationProcessData(null, ldenConfig);
+        try (Statement st = connection.createStatement();
+             SpatialResultSet rs = st.executeQuery("SELECT * FROM " + sourcesTableName)
+                     .unwrap(SpatialResultSet.class)) {
+            while (rs.next()) {
+                double[][] lw = emissionData.computeLw(rs);
+                setSourceEmission(rs.getLong(pkIndex), lw[0], lw[1], lw[2]);
+            }
+        }
+    }
+
+    /**
+     * Set the frequency bands of the configuration from the attenuation matrix if not already set
+     */
+    private void initPropagationProcessPathData() throws IOException {
+        if(ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY) != null) {
+            return;
+        }
+        int[] frequencies;
+        try (AttenuationMatrixReader reader = new AttenuationMatrixReader(attenuationMatrixFile)) {
+            frequencies = reader.getFrequencies();
+        }
+        List<Integer> allFrequencyValues = Arrays.asList(CnossosPropagationData.DEFAULT_FREQUENCIES_THIRD_OCTAVE);
+        List<Integer> frequencyValues = new ArrayList<>();
+        List<Double> exactFrequencies = new ArrayList<>();
+        List<Double> aWeighting = new ArrayList<>();
+        for (int freq : frequencies) {
+            int index = allFrequencyValues.indexOf(freq);
+            if(index < 0) {
+                throw new IOException("Unsupported frequency band " + freq + " in " + attenuationMatrixFile);
+            }
+            frequencyValues.add(freq);
+            exactFrequencies.add(CnossosPropagationData.DEFAULT_FREQUENCIES_EXACT_THIRD_OCTAVE[index]);
+            aWeighting.add(CnossosPropagationData.DEFAULT_FREQUENCIES_A_WEIGHTING_THIRD_OCTAVE[index]);
+        }
+        PropagationProcessPathData propagationProcessPathData = new PropagationProcessPathData(frequencyValues,
+                exactFrequencies, aWeighting);
+        for(LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
+            ldenConfig.setPropagationProcessPathData(timePeriod, propagationProcessPathData);
+        }
+    }
+
+    /**
+     * Sort the sources by primary key
+     */
+    private void prepareSources() {
+        if(sourcesPk != null) {
+            return;
+        }
+        Integer[] order = new Integer[sourcesPkList.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(sourcesPkList.get(a), sourcesPkList.get(b)));
+        sourcesPk = new long[order.length];
+        sourcesEmission = new double[order.length][];
+        for (int i = 0; i < order.length; i++) {
+            sourcesPk[i] = sourcesPkList.get(order[i]);
+            sourcesEmission[i] = sourcesEmissionList.get(order[i]);
+        }
+    }
+
+    /**
+     * Compute the levels and write them with a {@link LDENPointNoiseMapFactory}. If changed sources are set, the
+     * rows of the updated receivers are replaced in the existing level tables, the other rows are kept.
+     * @param connection Active connection
+     * @return Number of receivers written
+     * @throws SQLException Error while writing the levels
+     * @throws IOException Error while reading the attenuation matrix
+     */
+    public long run(Connection connection) throws SQLException, IOException {
+        initPropagationProcessPathData();
+        if(changedSources != null) {
+            return updateTables(connection);
+        }
+        return writeLevels(connection);
+    }
+
+    /**
+     * @return Level tables of the computed periods, in the order day, evening, night, den
+     */
+    private List<String> getComputedTables() {
+        List<String> tables = new ArrayList<>();
+        if(ldenConfig.computeLDay) {
+            tables.add(ldenConfig.lDayTable);
+        }
+        if(ldenConfig.computeLEvening) {
+            tables.add(ldenConfig.lEveningTable);
+        }
+        if(ldenConfig.computeLNight) {
+            tables.add(ldenConfig.lNightTable);
+        }
+        if(ldenConfig.computeLDEN) {
+            tables.add(ldenConfig.lDenTable);
+        }
+        return tables;
+    }
+
+    /**
+     * Write the levels of the updated receivers into temporary tables, then replace the rows of these receivers in
+     * the level tables
+     */
+    private long updateTables(Connection connection) throws SQLException, IOException {
+        if(ldenConfig.exportLevelsMethod != LDENConfig.ExportLevelsMethods.TO_TABLES ||
+                ldenConfig.sqlOutputFile != null) {
+            throw new IllegalStateException("The levels of the changed sources can only be updated in tables");
+        }
+        List<String> tables = getComputedTables();
+        for (String table : tables) {
+            if(!JDBCUtilities.tableExists(connection, table)) {
+                throw new IllegalStateException(String.format("The table %s does not exist, the levels of all the" +
+                        " receivers must be written before updating the changed sources", table));
+            }
+        }
+        String lDayTable = ldenConfig.lDayTable;
+        String lEveningTable = ldenConfig.lEveningTable;
+        String lNightTable = ldenConfig.lNightTable;
+        String lDenTable = ldenConfig.lDenTable;
+        Boolean dropResultsTable = ldenConfig.dropResultsTable;
+        ldenConfig.lDayTable = lDayTable + CHANGED_TABLE_SUFFIX;
+        ldenConfig.lEveningTable = lEveningTable + CHANGED_TABLE_SUFFIX;
+        ldenConfig.lNightTable = lNightTable + CHANGED_TABLE_SUFFIX;
+        ldenConfig.lDenTable = lDenTable + CHANGED_TABLE_SUFFIX;
+        ldenConfig.dropResultsTable = true;
+        long updatedReceivers;
+        try {
+            updatedReceivers = writeLevels(connection);
+        } finally {
+            ldenConfig.lDayTable = lDayTable;
+            ldenConfig.lEveningTable = lEveningTable;
+            ldenConfig.lNightTable = lNightTable;
+            ldenConfig.lDenTable = lDenTable;
+            ldenConfig.dropResultsTable = dropResultsTable;
+        }
+        if(ldenConfig.aborted) {
+            throw new SQLException("The writing of the updated levels has been aborted");
+        }
+        try (Statement st = connection.createStatement()) {
+            for (String table : tables) {
+                String changedTable = table + CHANGED_TABLE_SUFFIX;
+                st.execute("DELETE FROM " + table + " WHERE IDRECEIVER IN (SELECT IDRECEIVER FROM " +
+                        changedTable + ")");
+                st.execute("INSERT INTO " + table + " SELECT * FROM " + changedTable);
+                st.execute("DROP TABLE " + changedTable);
+            }
+        }
+        return updatedReceivers;
+    }
+
+    private long writeLevels(Connection connection) throws SQLException, IOException {
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        // The attenuation matrix must not be overwritten
+        File attenuationMatrixOutput = ldenConfig.attenuationMatrixFile;
+        ldenConfig.attenuationMatrixFile = null;
+        factory.start();
+        try {
+            return run(factory.getLdenData());
+        } finally {
+            factory.stop();
+            ldenConfig.attenuationMatrixFile = attenuationMatrixOutput;
+        }
+    }
+
+    /**
+     * Compute the levels and push them in the result queues
+     * @param ldenData Result queues of a started {@link LDENPointNoiseMapFactory}
+     * @return Number of receivers pushed
+     * @throws IOException Error while reading the attenuation matrix
+     */
+    public long run(LDENComputeRaysOut.LdenData ldenData) throws IOException {
+        if(!ldenConfig.mergeSources) {
+            throw new IllegalStateException("The attenuation matrix update only support merged sources levels");
+        }
+        prepareSources();
+        long updatedReceivers = 0;
+        long receiverCount = 0;
+        try (AttenuationMatrixReader reader = new AttenuationMatrixReader(attenuationMatrixFile)) {
+            int frequencyCount = reader.getFrequencies().length;
+            int spectrumSize = reader.getSpectrumSize();
+            if(reader.getPeriodCount() != LDENConfig.TIME_PERIOD.values().length) {
+                throw new IOException("Unexpected number of time periods " + reader.getPeriodCount());
+            }
+            if(sourcesEmission.length > 0 && sourcesEmission[0].length != spectrumSize) {
+                throw new IOException("The source emission do not have the frequency bands of the matrix");
+            }
+            long[] receiverSourcesPk = new long[0];
+            float[] attenuation = new float[0];
+            int[] receiverSourcesIndex = new int[0];
+            double[] levels = new double[spectrumSize];
+            while (reader.next()) {
+                receiverCount++;
+                int sourceCount = reader.getSourceCount();
+                if(receiverSourcesPk.length < sourceCount) {
+                    receiverSourcesPk = new long[sourceCount];
+                    receiverSourcesIndex = new int[sourceCount];
+                    attenuation = new float[sourceCount * spectrumSize];
+                }
+                reader.readSources(receiverSourcesPk, attenuation);
+                boolean changed = changedSources == null;
+                for (int idSource = 0; idSource < sourceCount; idSource++) {
+                    receiverSourcesIndex[idSource] = Arrays.binarySearch(sourcesPk, receiverSourcesPk[idSource]);
+                    if(!changed && changedSources.contains(receiverSourcesPk[idSource])) {
+                        changed = true;
+                    }
+                }
+                if(!changed) {
+                    continue;
+                }
+                // Energetic sum of the sources emission with the attenuation
+                Arrays.fill(levels, 0);
+                for (int idSource = 0; idSource < sourceCount; idSource++) {
+                    int sourceIndex = receiverSourcesIndex[idSource];
+                    if(sourceIndex < 0) {
+                        // source removed
+                        continue;
+                    }
+                    double[] emission = sourcesEmission[sourceIndex];
+                    int offset = idSource * spectrumSize;
+                    for (int i = 0; i < spectrumSize; i++) {
+                        levels[i] += emission[i] * dbaToW(attenuation[offset + i]);
+                    }
+                }
+                if(!pushLevels(ldenData, reader.getReceiverPk(), levels, frequencyCount)) {
+                    break;
+                }
+                updatedReceivers++;
+            }
+        }
+        LOGGER.info(String.format("Attenuation matrix update: %d receivers written over %d", updatedReceivers,
+                receiverCount));
+        return updatedReceivers;
+    }
+
+    /**
+     * Push the levels of a receiver in the same way as {@link LDENComputeRaysOut} with merged sources
+     * @return False if the computation has been aborted
+     */
+    private boolean pushLevels(LDENComputeRaysOut.LdenData ldenData, long receiverPk, double[] levels,
+                               int frequencyCount) {
+        double[] dayLevels = Arrays.copyOfRange(levels, 0, frequencyCount);
+        double[] eveningLevels = Arrays.copyOfRange(levels, frequencyCount, 2 * frequencyCount);
+        double[] nightLevels = Arrays.copyOfRange(levels, 2 * frequencyCount, 3 * frequencyCount);
+        if(ldenConfig.computeLDay && !push(ldenData, ldenData.lDayLevels,
+                new VerticeSL(receiverPk, -1, wToDba(dayLevels)))) {
+            return false;
+        }
+        if(ldenConfig.computeLEvening && !push(ldenData, ldenData.lEveningLevels,
+                new VerticeSL(receiverPk, -1, wToDba(eveningLevels)))) {
+            return false;
+        }
+        if(ldenConfig.computeLNight && !push(ldenData, ldenData.lNightLevels,
+                new VerticeSL(receiverPk, -1, wToDba(nightLevels)))) {
+            return false;
+        }
+        if (ldenConfig.computeLDEN) {
+            double[] denLevels = new double[frequencyCount];
+            for(int idFrequency = 0; idFrequency < frequencyCount; idFrequency++) {
+                denLevels[idFrequency] = (12 * dayLevels[idFrequency] +
+                        4 * dbaToW(wToDba(eveningLevels[idFrequency]) + 5) +
+                        8 * dbaToW(wToDba(nightLevels[idFrequency]) + 10)) / 24.0;
+            }
+            return push(ldenData, ldenData.lDenLevels, new VerticeSL(receiverPk, -1, wToDba(denLevels)));
+        }
+        return true;
+    }
+
+    private boolean push(LDENComputeRaysOut.LdenData ldenData, ConcurrentLinkedDeque<VerticeSL> stack,
+                         VerticeSL row) {
+        if(!ldenData.awaitQueueSpace(ldenConfig)) {
+            return false;
+        }
+        stack.add(row);
+        ldenData.onRowsPushed(1);
+        return true;
+    }
+}
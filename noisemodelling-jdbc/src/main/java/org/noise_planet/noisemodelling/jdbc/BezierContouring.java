@@ -27,6 +27,7 @@ import org.h2gis.utilities.jts_utils.Contouring;
 import org.h2gis.utilities.jts_utils.TriMarkers;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.index.quadtree.Quadtree;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.operation.union.CascadedPolygonUnion;
 import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
 import org.slf4j.Logger;
@@ -35,6 +36,10 @@ import org.slf4j.LoggerFactory;
 import java.sql.*;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.noise_planet.noisemodelling.emission.Utils.dbaToW;
 
@@ -55,6 +60,8 @@ public class BezierContouring {
     double smoothCoefficient = 1.0;
     double deltaPoints = 0.5; // minimal distance between bezier points
     double epsilon = 0.05;
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    boolean mergeCells = false;
 
     int srid;
     public static final List<Double> NF31_133_ISO = Collections.unmodifiableList(Arrays.asList(35.0,40.0,45.0,50.0,55.0,60.0,65.0,70.0,75.0,80.0,200.0));
@@ -113,6 +120,30 @@ public class BezierContouring {
         return epsilon;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount Number of cells processed at the same time, 1 to process the cells in the calling thread
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public boolean isMergeCells() {
+        return mergeCells;
+    }
+
+    /**
+     * @param mergeCells If true, the polygons of the same iso level split by the cell borders are merged once all the
+     *                   cells are processed. The merged polygons are inserted after the other polygons, with the
+     *                   smallest cell id of the merged parts. False by default, the polygons are cut by the cells.
+     */
+    public void setMergeCells(boolean mergeCells) {
+        this.mergeCells = mergeCells;
+    }
+
     public String getPointTableField() {
         return pointTableField;
     }
@@ -343,12 +374,11 @@ public class BezierContouring {
 
     /**
      * Merge polygons of the same iso levels then apply bezier filtering on outer and inner rings.
-     * Finally insert those polygons into the output table
-     * @param connection jdbc connection (h2gis or postgis)
-     * @param cellId area id (aggregate polygons by large area in order to avoid memory overloading)
+     * This method does not share any state with other cells, cells are processed by multiple threads.
      * @param polys Polygons by isolevel
+     * @return Merged polygons by isolevel
      */
-    void processCell(Connection connection, int cellId, Map<Short, ArrayList<Geometry>> polys) throws SQLException {
+    Map<Short, ArrayList<Polygon>> processCell(Map<Short, ArrayList<Geometry>> polys) {
         // First step
         // Smoothing of polygons
         GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
@@ -402,44 +432,57 @@ public class BezierContouring {
                 }
             }
         }
-        // Second step insertion
-        int batchSize = 0;
-        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + TableLocation.parse(outputTable)
-                + "(cell_id, the_geom, ISOLVL, ISOLABEL) VALUES (?, ?, ?, ?);")) {
-            for (Map.Entry<Short, ArrayList<Geometry>> entry : polys.entrySet()) {
-                ArrayList<Polygon> polygons = new ArrayList<>();
-                if(!smooth) {
-                    // Merge triangles
-                    try {
-                        CascadedPolygonUnion union = new CascadedPolygonUnion(entry.getValue());
-                        Geometry mergeTriangles = union.union();
-                        explode(mergeTriangles, polygons);
-                    } catch (TopologyException t) {
-                        log.warn(t.getLocalizedMessage(), t);
-                        explode(factory.createGeometryCollection(entry.getValue().toArray(new Geometry[0])), polygons);
-                    }
-                } else {
+        Map<Short, ArrayList<Polygon>> cellPolygons = new LinkedHashMap<>();
+        for (Map.Entry<Short, ArrayList<Geometry>> entry : polys.entrySet()) {
+            ArrayList<Polygon> polygons = new ArrayList<>();
+            if(!smooth) {
+                // Merge triangles
+                try {
+                    CascadedPolygonUnion union = new CascadedPolygonUnion(entry.getValue());
+                    Geometry mergeTriangles = union.union();
+                    explode(mergeTriangles, polygons);
+                } catch (TopologyException t) {
+                    log.warn(t.getLocalizedMessage(), t);
                     explode(factory.createGeometryCollection(entry.getValue().toArray(new Geometry[0])), polygons);
                 }
-                for(Polygon polygon : polygons) {
-                    int parameterIndex = 1;
-                    ps.setInt(parameterIndex++, cellId);
-                    ps.setObject(parameterIndex++, polygon);
-                    ps.setInt(parameterIndex++, entry.getKey());
-                    ps.setString(parameterIndex++, isoLabels.get(entry.getKey()));
-                    ps.addBatch();
-                    batchSize++;
-                    if (batchSize >= BATCH_MAX_SIZE) {
-                        ps.executeBatch();
-                        ps.clearBatch();
-                        batchSize = 0;
-                    }
-                }
+            } else {
+                explode(factory.createGeometryCollection(entry.getValue().toArray(new Geometry[0])), polygons);
             }
-            if (batchSize > 0) {
-                ps.executeBatch();
+            cellPolygons.put(entry.getKey(), polygons);
+        }
+        return cellPolygons;
+    }
+
+    /**
+     * Split the triangles of a cell into iso levels, then merge and smooth the polygons
+     * @param cell Triangles of the cell
+     * @return Polygons of the cell
+     */
+    CellPolygons processCell(CellTriangles cell) {
+        GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), srid);
+        Map<Short, ArrayList<Geometry>> polyMap = new HashMap<>();
+        for(int idTriangle = 0; idTriangle < cell.size; idTriangle++) {
+            final int coordinateOffset = idTriangle * 6;
+            final int levelOffset = idTriangle * 3;
+            Coordinate a = new Coordinate(cell.coordinates[coordinateOffset], cell.coordinates[coordinateOffset + 1]);
+            Coordinate b = new Coordinate(cell.coordinates[coordinateOffset + 2], cell.coordinates[coordinateOffset + 3]);
+            Coordinate c = new Coordinate(cell.coordinates[coordinateOffset + 4], cell.coordinates[coordinateOffset + 5]);
+            TriMarkers triMarkers = new TriMarkers(a, b, c, cell.levels[levelOffset], cell.levels[levelOffset + 1],
+                    cell.levels[levelOffset + 2]);
+            // Split triangle
+            Map<Short, Deque<TriMarkers>> res = Contouring.processTriangle(triMarkers, isoLevels);
+            for(Map.Entry<Short, Deque<TriMarkers>> entry : res.entrySet()) {
+                if(!polyMap.containsKey(entry.getKey())) {
+                    polyMap.put(entry.getKey(), new ArrayList<>());
+                }
+                ArrayList<Geometry> polygonsArray = polyMap.get(entry.getKey());
+                for(TriMarkers tri : entry.getValue()) {
+                    Polygon poly = geometryFactory.createPolygon(new Coordinate[]{tri.p0, tri.p1, tri.p2, tri.p0});
+                    polygonsArray.add(poly);
+                }
             }
         }
+        return new CellPolygons(cell.cellId, cell.getEnvelope(), processCell(polyMap));
     }
 
     public void createTable(Connection connection) throws SQLException {
@@ -449,14 +492,15 @@ public class BezierContouring {
             throw new SQLException(pointTable+" does not contain a primary key");
         }
         String pkField = fields.get(pk - 1);
-        GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), srid);
-        Map<Short, ArrayList<Geometry>> polyMap = new HashMap<>();
-        int lastCellId = -1;
+        ExecutorService executorService = threadCount > 1 ? Executors.newFixedThreadPool(threadCount) : null;
+        // Cells being processed, written in the cell order
+        Deque<Future<CellPolygons>> pendingCells = new ArrayDeque<>();
         try(Statement st = connection.createStatement()) {
             st.execute("DROP TABLE IF EXISTS " + TableLocation.parse(outputTable));
             st.execute("CREATE TABLE " + TableLocation.parse(outputTable) + "(PK SERIAL, CELL_ID INTEGER, THE_GEOM GEOMETRY, ISOLVL INTEGER, ISOLABEL VARCHAR);");
             String query = "SELECT CELL_ID, ST_X(p1.the_geom) xa,ST_Y(p1.the_geom) ya,ST_X(p2.the_geom) xb,ST_Y(p2.the_geom) yb,ST_X(p3.the_geom) xc,ST_Y(p3.the_geom) yc, p1."+pointTableField+" lvla, p2."+pointTableField+" lvlb, p3."+pointTableField+" lvlc FROM "+triangleTable+" t, "+pointTable+" p1,"+pointTable+" p2,"+pointTable+" p3 WHERE t.PK_1 = p1."+pkField+" and t.PK_2 = p2."+pkField+" AND t.PK_3 = p3."+pkField+" order by cell_id;";
-            try(ResultSet rs = st.executeQuery(query)) {
+            try(ResultSet rs = st.executeQuery(query);
+                PolygonWriter writer = new PolygonWriter(connection)) {
                 // Cache columns index
                 int xa = 0, xb = 0, xc = 0, ya = 0, yb = 0, yc = 0, lvla = 0, lvlb = 0, lvlc = 0, cell_id = 0;
                 ResultSetMetaData resultSetMetaData = rs.getMetaData();
@@ -498,43 +542,242 @@ public class BezierContouring {
                         lvlc == 0 || cell_id == 0) {
                     throw new SQLException("Missing field in input tables");
                 }
+                CellTriangles cell = null;
                 while(rs.next()) {
                     int cellId = rs.getInt(cell_id);
                     // Process polygons of last cell
-                    if(cellId != lastCellId && lastCellId != -1) {
-                        processCell(connection, cellId, polyMap);
-                        polyMap.clear();
+                    if(cell != null && cellId != cell.cellId) {
+                        submitCell(executorService, cell, pendingCells, writer);
+                        cell = null;
                     }
-                    lastCellId = cellId;
-                    // Split current triangle
-                    Coordinate a = new Coordinate(rs.getDouble(xa), rs.getDouble(ya));
-                    Coordinate b = new Coordinate(rs.getDouble(xb), rs.getDouble(yb));
-                    Coordinate c = new Coordinate(rs.getDouble(xc), rs.getDouble(yc));
-                    // Fetch data
-                    TriMarkers triMarkers = new TriMarkers(a, b, c, dbaToW(rs.getDouble(lvla)),
-                            dbaToW(rs.getDouble(lvlb)),
-                            dbaToW(rs.getDouble(lvlc)));
-                    // Split triangle
-                    Map<Short, Deque<TriMarkers>> res = Contouring.processTriangle(triMarkers, isoLevels);
-                    for(Map.Entry<Short, Deque<TriMarkers>> entry : res.entrySet()) {
-                        if(!polyMap.containsKey(entry.getKey())) {
-                            polyMap.put(entry.getKey(), new ArrayList<>());
-                        }
-                        ArrayList<Geometry> polygonsArray = polyMap.get(entry.getKey());
-                        for(TriMarkers tri : entry.getValue()) {
-                            Polygon poly = geometryFactory.createPolygon(new Coordinate[]{tri.p0, tri.p1, tri.p2, tri.p0});
-                            polygonsArray.add(poly);
-                        }
+                    if(cell == null) {
+                        cell = new CellTriangles(cellId);
                     }
+                    cell.add(rs.getDouble(xa), rs.getDouble(ya), rs.getDouble(xb), rs.getDouble(yb),
+                            rs.getDouble(xc), rs.getDouble(yc), dbaToW(rs.getDouble(lvla)),
+                            dbaToW(rs.getDouble(lvlb)), dbaToW(rs.getDouble(lvlc)));
+                }
+                if(cell != null) {
+                    submitCell(executorService, cell, pendingCells, writer);
                 }
+                while(!pendingCells.isEmpty()) {
+                    writer.write(getCellPolygons(pendingCells.pollFirst()));
+                }
+                writer.writeMergedSeams();
             }
-            if(!polyMap.isEmpty()) {
-                processCell(connection, lastCellId, polyMap);
+        } finally {
+            if(executorService != null) {
+                executorService.shutdownNow();
             }
         }
         connection.commit();
     }
 
+    /**
+     * Process the cell, or queue it if there is a thread pool. The oldest cells are written when too many cells are
+     * queued, in order to limit the memory usage.
+     */
+    private void submitCell(ExecutorService executorService, CellTriangles cell,
+                            Deque<Future<CellPolygons>> pendingCells, PolygonWriter writer) throws SQLException {
+        if(executorService == null) {
+            writer.write(processCell(cell));
+            return;
+        }
+        pendingCells.addLast(executorService.submit(() -> processCell(cell)));
+        while(pendingCells.size() > threadCount * 2) {
+            writer.write(getCellPolygons(pendingCells.pollFirst()));
+        }
+    }
+
+    private static CellPolygons getCellPolygons(Future<CellPolygons> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(ex);
+        } catch (ExecutionException ex) {
+            throw new SQLException(ex.getCause());
+        }
+    }
+
+    /**
+     * Triangles of a cell, with the levels in W
+     */
+    static class CellTriangles {
+        final int cellId;
+        int size = 0;
+        /** xa, ya, xb, yb, xc, yc of each triangle */
+        double[] coordinates = new double[6 * 64];
+        /** Level of the a, b and c vertices of each triangle */
+        double[] levels = new double[3 * 64];
+
+        CellTriangles(int cellId) {
+            this.cellId = cellId;
+        }
+
+        void add(double xa, double ya, double xb, double yb, double xc, double yc, double lvla, double lvlb,
+                 double lvlc) {
+            if(size * 3 == levels.length) {
+                coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+                levels = Arrays.copyOf(levels, levels.length * 2);
+            }
+            final int coordinateOffset = size * 6;
+            coordinates[coordinateOffset] = xa;
+            coordinates[coordinateOffset + 1] = ya;
+            coordinates[coordinateOffset + 2] = xb;
+            coordinates[coordinateOffset + 3] = yb;
+            coordinates[coordinateOffset + 4] = xc;
+            coordinates[coordinateOffset + 5] = yc;
+            final int levelOffset = size * 3;
+            levels[levelOffset] = lvla;
+            levels[levelOffset + 1] = lvlb;
+            levels[levelOffset + 2] = lvlc;
+            size++;
+        }
+
+        /**
+         * @return Envelope of the triangles
+         */
+        Envelope getEnvelope() {
+            Envelope envelope = new Envelope();
+            for(int i = 0; i < size * 6; i += 2) {
+                envelope.expandToInclude(coordinates[i], coordinates[i + 1]);
+            }
+            return envelope;
+        }
+    }
+
+    /**
+     * Merged polygons of a cell by iso level
+     */
+    static class CellPolygons {
+        final int cellId;
+        final Envelope envelope;
+        final Map<Short, ArrayList<Polygon>> polygons;
+
+        CellPolygons(int cellId, Envelope envelope, Map<Short, ArrayList<Polygon>> polygons) {
+            this.cellId = cellId;
+            this.envelope = envelope;
+            this.polygons = polygons;
+        }
+    }
+
+    /**
+     * Polygon of a cell that may continue in the neighbour cell
+     */
+    static class SeamPolygon {
+        final int cellId;
+        final Polygon polygon;
+
+        SeamPolygon(int cellId, Polygon polygon) {
+            this.cellId = cellId;
+            this.polygon = polygon;
+        }
+    }
+
+    /**
+     * @param polygonEnvelope Envelope of a polygon of the cell
+     * @param cellEnvelope Envelope of the cell
+     * @param tolerance Distance to the border
+     * @return True if the polygon reaches the border of the cell
+     */
+    static boolean isOnCellBorder(Envelope polygonEnvelope, Envelope cellEnvelope, double tolerance) {
+        return polygonEnvelope.getMinX() - tolerance <= cellEnvelope.getMinX() ||
+                polygonEnvelope.getMinY() - tolerance <= cellEnvelope.getMinY() ||
+                polygonEnvelope.getMaxX() + tolerance >= cellEnvelope.getMaxX() ||
+                polygonEnvelope.getMaxY() + tolerance >= cellEnvelope.getMaxY();
+    }
+
+    /**
+     * Insert the polygons of all the cells into the output table using the same batched statement
+     */
+    private class PolygonWriter implements AutoCloseable {
+        final PreparedStatement ps;
+        int batchSize = 0;
+        /** Polygons on the cell borders by iso level, kept until all the cells are processed if mergeCells is set */
+        final Map<Short, List<SeamPolygon>> seamPolygons = new TreeMap<>();
+
+        PolygonWriter(Connection connection) throws SQLException {
+            ps = connection.prepareStatement("INSERT INTO " + TableLocation.parse(outputTable)
+                    + "(cell_id, the_geom, ISOLVL, ISOLABEL) VALUES (?, ?, ?, ?);");
+        }
+
+        void write(CellPolygons cellPolygons) throws SQLException {
+            for (Map.Entry<Short, ArrayList<Polygon>> entry : cellPolygons.polygons.entrySet()) {
+                for(Polygon polygon : entry.getValue()) {
+                    if(mergeCells && isOnCellBorder(polygon.getEnvelopeInternal(), cellPolygons.envelope, epsilon)) {
+                        seamPolygons.computeIfAbsent(entry.getKey(), k -> new ArrayList<>())
+                                .add(new SeamPolygon(cellPolygons.cellId, polygon));
+                    } else {
+                        write(cellPolygons.cellId, polygon, entry.getKey());
+                    }
+                }
+            }
+        }
+
+        void write(int cellId, Polygon polygon, short isoLevel) throws SQLException {
+            int parameterIndex = 1;
+            ps.setInt(parameterIndex++, cellId);
+            ps.setObject(parameterIndex++, polygon);
+            ps.setInt(parameterIndex++, isoLevel);
+            ps.setString(parameterIndex++, isoLabels.get(isoLevel));
+            ps.addBatch();
+            batchSize++;
+            if (batchSize >= BATCH_MAX_SIZE) {
+                ps.executeBatch();
+                ps.clearBatch();
+                batchSize = 0;
+            }
+        }
+
+        /**
+         * Merge the polygons of the same iso level on the cell borders then insert them
+         */
+        void writeMergedSeams() throws SQLException {
+            for (Map.Entry<Short, List<SeamPolygon>> entry : seamPolygons.entrySet()) {
+                List<SeamPolygon> parts = entry.getValue();
+                List<Geometry> geometries = new ArrayList<>(parts.size());
+                STRtree partsIndex = new STRtree();
+                for(SeamPolygon part : parts) {
+                    geometries.add(part.polygon);
+                    partsIndex.insert(part.polygon.getEnvelopeInternal(), part);
+                }
+                ArrayList<Polygon> polygons = new ArrayList<>();
+                try {
+                    explode(new CascadedPolygonUnion(geometries).union(), polygons);
+                } catch (TopologyException t) {
+                    log.warn(t.getLocalizedMessage(), t);
+                    for(SeamPolygon part : parts) {
+                        write(part.cellId, part.polygon, entry.getKey());
+                    }
+                    continue;
+                }
+                for(Polygon polygon : polygons) {
+                    int cellId = Integer.MAX_VALUE;
+                    for(Object item : partsIndex.query(polygon.getEnvelopeInternal())) {
+                        SeamPolygon part = (SeamPolygon) item;
+                        if(part.cellId < cellId && polygon.intersects(part.polygon.getInteriorPoint())) {
+                            cellId = part.cellId;
+                        }
+                    }
+                    write(cellId == Integer.MAX_VALUE ? parts.get(0).cellId : cellId, polygon, entry.getKey());
+                }
+            }
+            seamPolygons.clear();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (batchSize > 0) {
+                    ps.executeBatch();
+                }
+            } finally {
+                ps.close();
+            }
+        }
+    }
+
     static class Segment {
         Coordinate p0;
         Coordinate p1;
@@ -0,0 +1,204 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.ProgressVisitor;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluate the cells of a {@link PointNoiseMap} in parallel.
+ * The calling thread fetches and prepares the next cells (SQL queries and ProfileBuilder construction) while the
+ * previous cells are computed. All computed cells share the same pool of worker threads so that the cores are kept busy
+ * at the end of a cell.
+ * The JDBC connection is only used by the calling thread.
+ * @author Nicolas Fortin
+ */
+public class CellScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CellScheduler.class);
+    private final PointNoiseMap pointNoiseMap;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private int maximumConcurrentCells = 2;
+    private int maximumPreparedCells = 1;
+    private long memoryBudget = (long)(Runtime.getRuntime().maxMemory() * 0.75);
+    private CellListener cellListener;
+
+    /**
+     * @param pointNoiseMap Initialized instance of PointNoiseMap
+     */
+    public CellScheduler(PointNoiseMap pointNoiseMap) {
+        this.pointNoiseMap = pointNoiseMap;
+        if(pointNoiseMap.getThreadCount() > 0) {
+            threadCount = pointNoiseMap.getThreadCount();
+        }
+    }
+
+    /**
+     * @return Number of worker threads shared by all the cells in computation
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount Number of worker threads shared by all the cells in computation
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @return Maximum number of cells that are computed at the same time
+     */
+    public int getMaximumConcurrentCells() {
+        return maximumConcurrentCells;
+    }
+
+    /**
+     * @param maximumConcurrentCells Maximum number of cells that are computed at the same time
+     */
+    public void setMaximumConcurrentCells(int maximumConcurrentCells) {
+        this.maximumConcurrentCells = maximumConcurrentCells;
+    }
+
+    /**
+     * @return Maximum number of cells fetched in advance and waiting for computation
+     */
+    public int getMaximumPreparedCells() {
+        return maximumPreparedCells;
+    }
+
+    /**
+     * @param maximumPreparedCells Maximum number of cells fetched in advance and waiting for computation
+     */
+    public void setMaximumPreparedCells(int maximumPreparedCells) {
+        this.maximumPreparedCells = maximumPreparedCells;
+    }
+
+    /**
+     * @return Used heap memory in bytes above which no more cell is prepared until a cell computation is done
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @param memoryBudget Used heap memory in bytes above which no more cell is prepared until a cell computation
+     *                     is done. At least one cell is always in computation.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @param cellListener Called after the computation of each cell, from a computation thread
+     */
+    public void setCellListener(CellListener cellListener) {
+        this.cellListener = cellListener;
+    }
+
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Evaluate all provided cells
+     * @param connection JDBC connection, used only from the calling thread
+     * @param cells Cells to evaluate, in this order
+     * @param progression Progression info, a sub process is created for each cell
+     * @param skipReceivers Set of already processed receivers
+     * @throws SQLException Error while fetching cells data
+     * @throws IOException Error while fetching cells data
+     */
+    public void run(Connection connection, Collection<PointNoiseMap.CellIndex> cells, ProgressVisitor progression,
+                    Set<Long> skipReceivers) throws SQLException, IOException {
+        ThreadPool workers = new ThreadPool(threadCount, threadCount + 1, 60, TimeUnit.SECONDS);
+        ExecutorService cellExecutor = Executors.newFixedThreadPool(Math.max(1, maximumConcurrentCells));
+        ExecutorCompletionService<IComputeRaysOut> completionService = new ExecutorCompletionService<>(cellExecutor);
+        int maximumCellsInFlight = Math.max(1, maximumConcurrentCells) + Math.max(0, maximumPreparedCells);
+        int cellsInFlight = 0;
+        try {
+            for (PointNoiseMap.CellIndex cellIndex : cells) {
+                // Wait for a free slot, or for memory to be released by a computed cell
+                while (cellsInFlight >= maximumCellsInFlight || (cellsInFlight > 0 && getUsedMemory() > memoryBudget)) {
+                    waitForCell(completionService, progression);
+                    cellsInFlight--;
+                }
+                if (progression != null && progression.isCanceled()) {
+                    break;
+                }
+                final PointNoiseMap.CellIndex cell = cellIndex;
+                final CnossosPropagationData cellData = pointNoiseMap.prepareCell(connection,
+                        cell.getLatitudeIndex(), cell.getLongitudeIndex(), progression, skipReceivers);
+                completionService.submit(() -> {
+                    IComputeRaysOut out = pointNoiseMap.computeCell(cellData, threadCount, workers);
+                    if (cellListener != null) {
+                        cellListener.onCellComputed(cell, out);
+                    }
+                    return out;
+                });
+                cellsInFlight++;
+            }
+            while (cellsInFlight > 0) {
+                waitForCell(completionService, progression);
+                cellsInFlight--;
+            }
+        } finally {
+            cellExecutor.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    private static void waitForCell(ExecutorCompletionService<IComputeRaysOut> completionService,
+                                    ProgressVisitor progression) throws IOException {
+        try {
+            Future<IComputeRaysOut> done = completionService.take();
+            done.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for cell computation", ex);
+        } catch (ExecutionException ex) {
+            LOGGER.error(ex.getLocalizedMessage(), ex.getCause());
+            if (progression != null) {
+                progression.cancel();
+            }
+            throw new IOException("Error while computing cell", ex.getCause());
+        }
+    }
+
+    /**
+     * Receive the result of each computed cell
+     */
+    public interface CellListener {
+        /**
+         * @param cellIndex Computed cell
+         * @param computeRaysOut Computation output of this cell
+         */
+        void onCellComputed(PointNoiseMap.CellIndex cellIndex, IComputeRaysOut computeRaysOut);
+    }
+}
@@ -37,6 +37,21 @@ public class DirectivityTableLoader {
      * @return
      */
     public static Map<Integer, DiscreteDirectionAttributes> loadTable(Connection connection, String tableName, int defaultInterpolation) throws SQLException {
+        return loadTable(connection, tableName, defaultInterpolation, -1);
+    }
+
+    /**
+     * Same as {@link #loadTable(Connection, String, int)} but the directivities are stored into a grid
+     * in order to speed up the queries, see {@link DiscreteDirectionAttributes#compile(double)}.
+     * The directivities that are not on a grid keep the records lists.
+     * @param connection
+     * @param tableName
+     * @param defaultInterpolation
+     * @param gridTolerance Maximum difference in dB between the grid and the interpolation of the table records,
+     *                      negative to keep only the records
+     * @return
+     */
+    public static Map<Integer, DiscreteDirectionAttributes> loadTable(Connection connection, String tableName, int defaultInterpolation, double gridTolerance) throws SQLException {
         Map<Integer, DiscreteDirectionAttributes> directionAttributes = new HashMap<>();
         List<String> fields = JDBCUtilities.getColumnNames(connection, tableName);
         // fetch provided frequencies
@@ -99,6 +114,11 @@ public class DirectivityTableLoader {
                 }
             }
         }
+        if(gridTolerance >= 0) {
+            for(DiscreteDirectionAttributes attributes : directionAttributes.values()) {
+                attributes.compile(gridTolerance);
+            }
+        }
         return directionAttributes;
     }
 }
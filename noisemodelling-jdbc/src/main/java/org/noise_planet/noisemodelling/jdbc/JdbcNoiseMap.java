@@ -11,6 +11,7 @@ import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.TopographyProvider;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +48,8 @@ public abstract class JdbcNoiseMap {
     protected String soilTableName = "";
     // Digital elevation model table. (Contains points or triangles)
     protected String demTable = "";
+    // Digital elevation model grid, used instead of demTable if not null
+    protected TopographyProvider demRaster = null;
     protected String sound_lvl_field = "DB_M";
     // True if Z of sound source and receivers are relative to the ground
     protected boolean receiverHasAbsoluteZCoordinates = false;
@@ -70,10 +73,23 @@ public abstract class JdbcNoiseMap {
     /** maximum dB Error, stop calculation if the sum of further sources contributions are smaller than this value */
     public double maximumError = Double.NEGATIVE_INFINITY;
 
+    /**
+     * maximum dB Error, compute the further sources without reflections and lateral diffraction if the sum of
+     * their contributions are smaller than this value
+     */
+    public double reducedFidelityError = Double.NEGATIVE_INFINITY;
+
+    /** Bound the contribution of the further sources with the lowest atmospheric absorption of the periods */
+    protected boolean useMinimalAtmosphericAbsorption = true;
+
     /** stop calculation if the sum of further sources contributions are smaller than this value */
     public double noiseFloor = Double.NEGATIVE_INFINITY;
 
     protected String heightField = "HEIGHT";
+    /** if true buildings, DEM and ground areas are fetched and indexed once for the whole computation area,
+     * then the same ProfileBuilder is shared by all cells */
+    protected boolean shareProfileBuilder = false;
+    private ProfileBuilder sceneProfileBuilder;
     protected GeometryFactory geometryFactory;
     protected int parallelComputationCount = 0;
     // Initialised attributes
@@ -260,6 +276,66 @@ public abstract class JdbcNoiseMap {
     }
 
 
+    /**
+     * Fetch buildings, DEM and ground areas of the provided area into a new ProfileBuilder
+     * @param connection Active connection
+     * @param fetchEnvelope Fetch envelope
+     * @return ProfileBuilder with finished feeding
+     * @throws SQLException
+     */
+    protected ProfileBuilder fetchProfileBuilder(Connection connection, Envelope fetchEnvelope) throws SQLException {
+        ProfileBuilder builder = new ProfileBuilder();
+        // //////////////////////////////////////////////////////
+        // feed freeFieldFinder for fast intersection query
+        // optimization
+        // Fetch buildings in extendedEnvelope
+        fetchCellBuildings(connection, fetchEnvelope, builder);
+        //if we have topographic points data
+        if(demRaster != null) {
+            builder.setTopography(demRaster);
+        } else {
+            fetchCellDem(connection, fetchEnvelope, builder);
+        }
+
+        // Fetch soil areas
+        fetchCellSoilAreas(connection, fetchEnvelope, builder);
+
+        builder.finishFeeding();
+        return builder;
+    }
+
+    /**
+     * Return the ProfileBuilder of the whole computation area (expanded by the maximum propagation distance). It is
+     * built on the first call, then the same instance is returned. Once built the ProfileBuilder is only read, so it
+     * can be queried by the cells computed in parallel.
+     * @param connection Active connection
+     * @return Shared ProfileBuilder
+     * @throws SQLException
+     */
+    public synchronized ProfileBuilder getSceneProfileBuilder(Connection connection) throws SQLException {
+        if(sceneProfileBuilder == null) {
+            Envelope sceneEnvelope = new Envelope(mainEnvelope);
+            sceneEnvelope.expandBy(maximumPropagationDistance);
+            if(verbose) {
+                logger.info("Fetch and index buildings, DEM and ground areas of the whole computation area");
+            }
+            sceneProfileBuilder = fetchProfileBuilder(connection, sceneEnvelope);
+            if(verbose) {
+                logger.info(String.format("The computation area contains %d buildings",
+                        sceneProfileBuilder.getBuildingCount()));
+            }
+        }
+        return sceneProfileBuilder;
+    }
+
+    /**
+     * @param sceneProfileBuilder ProfileBuilder of the whole computation area, with finished feeding. Used by all
+     *                            cells if {@link #isShareProfileBuilder()} is true.
+     */
+    public synchronized void setSceneProfileBuilder(ProfileBuilder sceneProfileBuilder) {
+        this.sceneProfileBuilder = sceneProfileBuilder;
+    }
+
     void fetchCellBuildings(Connection connection, Envelope fetchEnvelope, ProfileBuilder builder) throws SQLException {
         ArrayList<ProfileBuilder.Building> buildings = new ArrayList<>();
         fetchCellBuildings(connection, fetchEnvelope, buildings);
@@ -583,6 +659,22 @@ public abstract class JdbcNoiseMap {
         this.demTable = demTable;
     }
 
+    /**
+     * @return Digital Elevation model grid, null if the DEM is read from {@link #getDemTable()}
+     */
+    public TopographyProvider getDemRaster() {
+        return demRaster;
+    }
+
+    /**
+     * Digital Elevation model grid, such as a RasterTopography read from an ESRI ASCII grid. The grid is shared by
+     * all the cells, it is used instead of the DEM table.
+     * @param demRaster Digital Elevation model grid
+     */
+    public void setDemRaster(TopographyProvider demRaster) {
+        this.demRaster = demRaster;
+    }
+
     /**
      * Field name of the {@link #sourcesTableName}HERTZ. Where HERTZ is a number [100-5000].
      * Without the hertz value.
@@ -651,6 +743,59 @@ public abstract class JdbcNoiseMap {
         this.maximumError = maximumError;
     }
 
+    /**
+     * @return maximum dB Error, compute the further sources without reflections and lateral diffraction if the
+     * maximum sum of their contributions are smaller than this value
+     */
+    public double getReducedFidelityError() {
+        return reducedFidelityError;
+    }
+
+    /**
+     * @param reducedFidelityError maximum dB Error, compute the further sources without reflections and lateral
+     *                             diffraction if the maximum sum of their contributions are smaller than this value
+     */
+    public void setReducedFidelityError(double reducedFidelityError) {
+        this.reducedFidelityError = reducedFidelityError;
+    }
+
+    /**
+     * @return True if the contribution of the further sources is bounded with the lowest atmospheric absorption
+     * of the day, evening and night periods
+     */
+    public boolean isUseMinimalAtmosphericAbsorption() {
+        return useMinimalAtmosphericAbsorption;
+    }
+
+    /**
+     * @param useMinimalAtmosphericAbsorption True to bound the contribution of the further sources with the lowest
+     *                                        atmospheric absorption of the day, evening and night periods, false to
+     *                                        ignore the atmospheric absorption in this bound. Used only when
+     *                                        {@link #setMaximumError(double)} or
+     *                                        {@link #setReducedFidelityError(double)} is set
+     */
+    public void setUseMinimalAtmosphericAbsorption(boolean useMinimalAtmosphericAbsorption) {
+        this.useMinimalAtmosphericAbsorption = useMinimalAtmosphericAbsorption;
+    }
+
+    /**
+     * @return Lowest atmospheric absorption coefficient (dB/km) of each frequency band over the day, evening and
+     * night periods
+     */
+    protected double[] getMinimalAtmosphericAbsorption() {
+        double[] alphaDay = propProcPathDataDay.getAlpha_atmo();
+        double[] alphaEvening = propProcPathDataEvening.getAlpha_atmo();
+        double[] alphaNight = propProcPathDataNight.getAlpha_atmo();
+        if(alphaDay.length != alphaEvening.length || alphaDay.length != alphaNight.length) {
+            return null;
+        }
+        double[] alpha = new double[alphaDay.length];
+        for(int idFreq = 0; idFreq < alpha.length; idFreq++) {
+            alpha[idFreq] = Math.min(alphaDay[idFreq], Math.min(alphaEvening[idFreq], alphaNight[idFreq]));
+        }
+        return alpha;
+    }
+
     /**
      * @return Reflection and diffraction maximum search distance, default to 400m.
      */
@@ -724,6 +869,23 @@ public abstract class JdbcNoiseMap {
         this.heightField = heightField;
     }
 
+    /**
+     * @return True if a single ProfileBuilder is built for the whole computation area and shared by all cells
+     */
+    public boolean isShareProfileBuilder() {
+        return shareProfileBuilder;
+    }
+
+    /**
+     * Build buildings, DEM and ground areas index once for the whole computation area instead of for each cell.
+     * Loading and indexing cost then scale with the scene instead of the number of cells, but the whole scene must fit
+     * in memory.
+     * @param shareProfileBuilder True to share a single ProfileBuilder between all cells
+     */
+    public void setShareProfileBuilder(boolean shareProfileBuilder) {
+        this.shareProfileBuilder = shareProfileBuilder;
+    }
+
     /**
      * @return True if multi-threading is activated.
      */
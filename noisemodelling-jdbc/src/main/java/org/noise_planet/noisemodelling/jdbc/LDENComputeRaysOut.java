@@ -1,19 +1,27 @@
 package org.noise_planet.noisemodelling.jdbc;
 
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrixWriter;
+import org.noise_planet.noisemodelling.jdbc.utils.RayStoreWriter;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
 import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
 
@@ -28,7 +36,9 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
     public LDENComputeRaysOut(PropagationProcessPathData dayPathData, PropagationProcessPathData eveningPathData,
                               PropagationProcessPathData nightPathData, LDENPropagationProcessData inputData,
                               LdenData ldenData, LDENConfig ldenConfig) {
-        super(inputData.ldenConfig.exportRaysMethod != LDENConfig.ExportRaysMethods.NONE, null, inputData);
+        // The rays written in binary files are serialized by the threads, they are not kept in memory
+        super(inputData.ldenConfig.exportRaysMethod != LDENConfig.ExportRaysMethods.NONE &&
+                inputData.ldenConfig.exportRaysMethod != LDENConfig.ExportRaysMethods.TO_BINARY_FILES, null, inputData);
         this.keepAbsorption = inputData.ldenConfig.keepAbsorption;
         this.ldenData = ldenData;
         this.ldenPropagationProcessData = inputData;
@@ -79,10 +89,15 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         LDENConfig ldenConfig;
         ThreadRaysOut[] lDENThreadRaysOut = new ThreadRaysOut[3];
         public List<PropagationPath> propagationPaths = new ArrayList<PropagationPath>();
+        /** Rays of the current receiver, null if the rays are not written in binary files */
+        RayStoreWriter.ReceiverRays receiverRays;
 
         public ThreadComputeRaysOut(LDENComputeRaysOut multiThreadParent) {
             this.ldenComputeRaysOut = multiThreadParent;
             this.ldenConfig = multiThreadParent.ldenPropagationProcessData.ldenConfig;
+            if(ldenConfig.getExportRaysMethod() == LDENConfig.ExportRaysMethods.TO_BINARY_FILES) {
+                receiverRays = new RayStoreWriter.ReceiverRays();
+            }
             lDENThreadRaysOut[0] = new ThreadRaysOut(multiThreadParent, multiThreadParent.dayPathData);
             lDENThreadRaysOut[1] = new ThreadRaysOut(multiThreadParent, multiThreadParent.eveningPathData);
             lDENThreadRaysOut[2] = new ThreadRaysOut(multiThreadParent, multiThreadParent.nightPathData);
@@ -119,6 +134,18 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         @Override
         public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPathsParameter) {
             ldenComputeRaysOut.rayCount.addAndGet(propagationPathsParameter.size());
+            if(receiverRays != null && ldenComputeRaysOut.ldenData.rayStoreWriter != null) {
+                // Serialize the rays before the evaluation that changes the time period of the paths
+                long sourcePK = sourceId;
+                if (ldenComputeRaysOut.inputData != null && sourceId < ldenComputeRaysOut.inputData.sourcesPk.size()) {
+                    sourcePK = ldenComputeRaysOut.inputData.sourcesPk.get((int) sourceId);
+                }
+                try {
+                    receiverRays.addSource(sourcePK, sourceLi, propagationPathsParameter);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
             if(ldenComputeRaysOut.keepRays && !ldenComputeRaysOut.keepAbsorption) {
                 for(PropagationPath propagationPath : propagationPathsParameter) {
                     // Use only one ray as the ray is the same if we not keep absorption values
@@ -134,6 +161,26 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                 }
             }
             double[] globalLevel = null;
+            if(!ldenComputeRaysOut.keepAbsorption) {
+                // The geometrical attenuation is computed once for all the time periods
+                double[][][] pathsLevels = new double[propagationPathsParameter.size()][][];
+                for(int idPath = 0; idPath < pathsLevels.length; idPath++) {
+                    pathsLevels[idPath] = ThreadRaysOut.addPropagationPath(lDENThreadRaysOut, sourceId, sourceLi,
+                            receiverId, propagationPathsParameter.get(idPath));
+                }
+                for(LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
+                    for(int idPath = 0; idPath < pathsLevels.length; idPath++) {
+                        double[] pathLevel = pathsLevels[idPath][timePeriod.ordinal()];
+                        if (globalLevel == null) {
+                            globalLevel = pathLevel;
+                        } else {
+                            globalLevel = PowerUtils.sumDbArray(globalLevel, pathLevel);
+                        }
+                        propagationPathsParameter.get(idPath).setTimePeriod(timePeriod.name());
+                    }
+                }
+                return globalLevel;
+            }
             for(LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
                 for(PropagationPath propagationPath : propagationPathsParameter) {
                     if (globalLevel == null) {
@@ -166,23 +213,26 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
          * @param data receiver noise level in dB
          */
         public void pushInStack(ConcurrentLinkedDeque<VerticeSL> stack, VerticeSL data) {
-            while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ex) {
-                    ldenConfig.aborted = true;
-                    break;
-                }
-                if(ldenConfig.aborted) {
-                    if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
-                            this.ldenComputeRaysOut.inputData.cellProg != null) {
-                        this.ldenComputeRaysOut.inputData.cellProg.cancel();
-                    }
-                    return;
-                }
+            if(!awaitQueueSpace()) {
+                return;
             }
             stack.add(data);
-            ldenComputeRaysOut.ldenData.queueSize.incrementAndGet();
+            ldenComputeRaysOut.ldenData.onRowsPushed(1);
+        }
+
+        /**
+         * Block until the result writer has consumed enough rows
+         * @return False if the computation has been aborted
+         */
+        private boolean awaitQueueSpace() {
+            if(!ldenComputeRaysOut.ldenData.awaitQueueSpace(ldenConfig)) {
+                if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
+                        this.ldenComputeRaysOut.inputData.cellProg != null) {
+                    this.ldenComputeRaysOut.inputData.cellProg.cancel();
+                }
+                return false;
+            }
+            return true;
         }
 
         @Override
@@ -195,20 +245,8 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
          * @param data rays
          */
         public void pushInStack(ConcurrentLinkedDeque<PropagationPath> stack, Collection<PropagationPath> data) {
-            while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ex) {
-                    ldenConfig.aborted = true;
-                    break;
-                }
-                if(ldenConfig.aborted) {
-                    if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
-                            this.ldenComputeRaysOut.inputData.cellProg != null) {
-                        this.ldenComputeRaysOut.inputData.cellProg.cancel();
-                    }
-                    return;
-                }
+            if(!awaitQueueSpace()) {
+                return;
             }
             if(ldenConfig.getMaximumRaysOutputCount() == 0 || ldenComputeRaysOut.ldenData.totalRaysInserted.get() < ldenConfig.getMaximumRaysOutputCount()) {
                 long newTotalRays = ldenComputeRaysOut.ldenData.totalRaysInserted.addAndGet(data.size());
@@ -225,7 +263,53 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     data = subList;
                 }
                 stack.addAll(data);
-                ldenComputeRaysOut.ldenData.queueSize.addAndGet(data.size());
+                ldenComputeRaysOut.ldenData.onRowsPushed(data.size());
+            }
+        }
+
+        /**
+         * Store the attenuation of each source that reach the receiver, for all time periods
+         * @param attenuationMatrixWriter Output
+         * @param receiverPK Receiver primary key
+         */
+        void writeAttenuationMatrix(AttenuationMatrixWriter attenuationMatrixWriter, long receiverPK) {
+            int frequencyCount = ldenComputeRaysOut.dayPathData.freq_lvl.size();
+            int periodCount = lDENThreadRaysOut.length;
+            // Merge the attenuation of the same source, the source index is kept in insertion order
+            Map<Long, double[]> attenuationPerSource = new LinkedHashMap<>();
+            for (int idPeriod = 0; idPeriod < periodCount; idPeriod++) {
+                for (VerticeSL lvl : lDENThreadRaysOut[idPeriod].receiverAttenuationLevels) {
+                    double[] attenuation = attenuationPerSource.get(lvl.sourceId);
+                    if (attenuation == null) {
+                        attenuation = new double[periodCount * frequencyCount];
+                        Arrays.fill(attenuation, Double.NEGATIVE_INFINITY);
+                        attenuationPerSource.put(lvl.sourceId, attenuation);
+                    }
+                    int offset = idPeriod * frequencyCount;
+                    for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                        attenuation[offset + idFreq] = wToDba(dbaToW(attenuation[offset + idFreq]) +
+                                dbaToW(lvl.value[idFreq]));
+                    }
+                }
+            }
+            int sourceCount = attenuationPerSource.size();
+            long[] sourcesPk = new long[sourceCount];
+            double[] attenuation = new double[sourceCount * periodCount * frequencyCount];
+            int idSource = 0;
+            for (Map.Entry<Long, double[]> entry : attenuationPerSource.entrySet()) {
+                long sourcePK = entry.getKey();
+                if (ldenComputeRaysOut.inputData != null && sourcePK < ldenComputeRaysOut.inputData.sourcesPk.size()) {
+                    sourcePK = ldenComputeRaysOut.inputData.sourcesPk.get((int) sourcePK);
+                }
+                sourcesPk[idSource] = sourcePK;
+                System.arraycopy(entry.getValue(), 0, attenuation, idSource * periodCount * frequencyCount,
+                        periodCount * frequencyCount);
+                idSource++;
+            }
+            try {
+                attenuationMatrixWriter.writeReceiver(receiverPK, sourceCount, sourcesPk, attenuation);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
             }
         }
 
@@ -255,6 +339,22 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     receiverPK = ldenComputeRaysOut.inputData.receiversPk.get((int)receiverId);
                 }
             }
+            AttenuationMatrixWriter attenuationMatrixWriter = ldenComputeRaysOut.ldenData.attenuationMatrixWriter;
+            if(attenuationMatrixWriter != null) {
+                writeAttenuationMatrix(attenuationMatrixWriter, receiverPK);
+            }
+            RayStoreWriter rayStoreWriter = ldenComputeRaysOut.ldenData.rayStoreWriter;
+            if(receiverRays != null && receiverRays.getRecordCount() > 0) {
+                try {
+                    if(rayStoreWriter != null) {
+                        rayStoreWriter.writeReceiver(receiverPK, receiverRays);
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                } finally {
+                    receiverRays.clear();
+                }
+            }
             double[] dayLevels = new double[0], eveningLevels = new double[0], nightLevels = new double[0];
             if (!ldenConfig.mergeSources) {
                 // Aggregate by source id
@@ -352,6 +452,11 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         }
     }
 
+    /**
+     * Results waiting to be written by the result writer. The producers (computation threads) are blocked when the
+     * number of waiting rows exceeds {@link LDENConfig#outputMaximumQueue}, and the writer is blocked when there
+     * is no more rows to write.
+     */
     public static class LdenData {
         public final AtomicLong queueSize = new AtomicLong(0);
         public final AtomicLong totalRaysInserted = new AtomicLong(0);
@@ -360,5 +465,94 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         public final ConcurrentLinkedDeque<VerticeSL> lNightLevels = new ConcurrentLinkedDeque<>();
         public final ConcurrentLinkedDeque<VerticeSL> lDenLevels = new ConcurrentLinkedDeque<>();
         public final ConcurrentLinkedDeque<PropagationPath> rays = new ConcurrentLinkedDeque<>();
+        /** Attenuation matrix output, null if not stored */
+        public volatile AttenuationMatrixWriter attenuationMatrixWriter;
+        /** Rays output, null if the rays are not written in binary files */
+        public volatile RayStoreWriter rayStoreWriter;
+        private final ReentrantLock queueLock = new ReentrantLock();
+        private final Condition queueNotFull = queueLock.newCondition();
+        private final Condition queueNotEmpty = queueLock.newCondition();
+        private volatile boolean writerWaiting = false;
+
+        /**
+         * Block the calling thread while the queue is full
+         * @param ldenConfig Configuration, the wait is stopped if the computation is aborted
+         * @return False if the computation has been aborted
+         */
+        public boolean awaitQueueSpace(LDENConfig ldenConfig) {
+            if(queueSize.get() <= ldenConfig.outputMaximumQueue) {
+                return !ldenConfig.aborted;
+            }
+            queueLock.lock();
+            try {
+                while (queueSize.get() > ldenConfig.outputMaximumQueue && !ldenConfig.aborted) {
+                    queueNotFull.await();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                ldenConfig.aborted = true;
+            } finally {
+                queueLock.unlock();
+            }
+            return !ldenConfig.aborted;
+        }
+
+        /**
+         * Block the result writer until rows are pushed or the computation state change
+         * @param ldenConfig Configuration, the wait is stopped on exitWhenDone or aborted
+         */
+        public void awaitRows(LDENConfig ldenConfig) throws InterruptedException {
+            queueLock.lock();
+            try {
+                writerWaiting = true;
+                while (queueSize.get() == 0 && !ldenConfig.exitWhenDone && !ldenConfig.aborted) {
+                    queueNotEmpty.await();
+                }
+            } finally {
+                writerWaiting = false;
+                queueLock.unlock();
+            }
+        }
+
+        /**
+         * @param count Number of rows added to the queues
+         */
+        public void onRowsPushed(long count) {
+            queueSize.addAndGet(count);
+            if(writerWaiting) {
+                queueLock.lock();
+                try {
+                    queueNotEmpty.signalAll();
+                } finally {
+                    queueLock.unlock();
+                }
+            }
+        }
+
+        /**
+         * @param count Number of rows removed from the queues
+         */
+        public void onRowsConsumed(long count) {
+            queueSize.addAndGet(-count);
+            queueLock.lock();
+            try {
+                queueNotFull.signalAll();
+            } finally {
+                queueLock.unlock();
+            }
+        }
+
+        /**
+         * Wake up all the waiting threads, called when the computation state change (done or aborted)
+         */
+        public void wakeUp() {
+            queueLock.lock();
+            try {
+                queueNotFull.signalAll();
+                queueNotEmpty.signalAll();
+            } finally {
+                queueLock.unlock();
+            }
+        }
     }
 }
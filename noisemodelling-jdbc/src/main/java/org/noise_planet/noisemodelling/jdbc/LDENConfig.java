@@ -21,6 +21,7 @@
  */
 package org.noise_planet.noisemodelling.jdbc;
 
+import org.noise_planet.noisemodelling.jdbc.utils.LevelsFileWriter;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
 import java.io.File;
@@ -44,8 +45,8 @@ public class LDENConfig {
     int coefficientVersion = 2;
 
     // Process status
-    boolean exitWhenDone = false;
-    boolean aborted = false;
+    volatile boolean exitWhenDone = false;
+    volatile boolean aborted = false;
 
     // Output config
     boolean computeLDay = true;
@@ -64,8 +65,15 @@ public class LDENConfig {
 
     boolean computeLAEQOnly = false;
 
-    public enum ExportRaysMethods {TO_RAYS_TABLE, TO_MEMORY, NONE}
+    public enum ExportRaysMethods {TO_RAYS_TABLE, TO_MEMORY, TO_BINARY_FILES, NONE}
     ExportRaysMethods exportRaysMethod = ExportRaysMethods.NONE;
+    File raysOutputDirectory;
+    boolean raysStoreCompression = true;
+
+    public enum ExportLevelsMethods {TO_TABLES, TO_BINARY_FILES}
+    ExportLevelsMethods exportLevelsMethod = ExportLevelsMethods.TO_TABLES;
+    File levelsOutputDirectory;
+    File attenuationMatrixFile;
 
     boolean exportProfileInRays = false;
     boolean keepAbsorption = false; // in rays, keep store detailed absorption data
@@ -190,13 +198,97 @@ public class LDENConfig {
     }
 
     /**
-     * Export rays in table (beware this could take a lot of storage space) or keep on memory or do not keep
+     * Export rays in table (beware this could take a lot of storage space) or keep on memory or do not keep.
+     * With {@link ExportRaysMethods#TO_BINARY_FILES} the rays are written in {@link #getRaysOutputDirectory()} and
+     * can be read with {@link org.noise_planet.noisemodelling.jdbc.utils.RayStoreReader}
      * @param exportRaysMethod
      */
     public void setExportRaysMethod(ExportRaysMethods exportRaysMethod) {
         this.exportRaysMethod = exportRaysMethod;
     }
 
+    /**
+     * @return Folder of the rays binary files
+     */
+    public File getRaysOutputDirectory() {
+        return raysOutputDirectory;
+    }
+
+    /**
+     * @param raysOutputDirectory Folder of the rays binary files, used with
+     * {@link ExportRaysMethods#TO_BINARY_FILES}
+     */
+    public void setRaysOutputDirectory(File raysOutputDirectory) {
+        this.raysOutputDirectory = raysOutputDirectory;
+    }
+
+    /**
+     * @return True if the rays binary files are compressed
+     */
+    public boolean isRaysStoreCompression() {
+        return raysStoreCompression;
+    }
+
+    /**
+     * @param raysStoreCompression True to compress the rays binary files (default), the files are smaller but the
+     * computation threads spend more time to write them
+     */
+    public void setRaysStoreCompression(boolean raysStoreCompression) {
+        this.raysStoreCompression = raysStoreCompression;
+    }
+
+    public ExportLevelsMethods getExportLevelsMethod() {
+        return exportLevelsMethod;
+    }
+
+    /**
+     * Write the levels in tables, or in binary columnar files (one file per period, named after the table name)
+     * that can be read with {@link org.noise_planet.noisemodelling.jdbc.utils.LevelsFileReader}
+     * @param exportLevelsMethod Levels output
+     */
+    public void setExportLevelsMethod(ExportLevelsMethods exportLevelsMethod) {
+        this.exportLevelsMethod = exportLevelsMethod;
+    }
+
+    /**
+     * @return Folder of the levels binary files
+     */
+    public File getLevelsOutputDirectory() {
+        return levelsOutputDirectory;
+    }
+
+    /**
+     * @param levelsOutputDirectory Folder of the levels binary files
+     */
+    public void setLevelsOutputDirectory(File levelsOutputDirectory) {
+        this.levelsOutputDirectory = levelsOutputDirectory;
+    }
+
+    /**
+     * @return File where the attenuation between receivers and sources is stored, null if not stored
+     */
+    public File getAttenuationMatrixFile() {
+        return attenuationMatrixFile;
+    }
+
+    /**
+     * Store the attenuation between each receiver and the sources that reach it. The sound levels can then be
+     * computed again for new source emissions with {@link AttenuationMatrixUpdate}, without computing the
+     * propagation paths.
+     * @param attenuationMatrixFile Attenuation matrix file, null to not store the attenuation
+     */
+    public void setAttenuationMatrixFile(File attenuationMatrixFile) {
+        this.attenuationMatrixFile = attenuationMatrixFile;
+    }
+
+    /**
+     * @param tableName Levels table name
+     * @return Binary file that contain the levels of this table
+     */
+    public File getLevelsFile(String tableName) {
+        return new File(levelsOutputDirectory, tableName + "." + LevelsFileWriter.FILE_EXTENSION);
+    }
+
     /**
      * @return For each ray export the ground profile under it as a geojson column (take large amount of disk)
      */
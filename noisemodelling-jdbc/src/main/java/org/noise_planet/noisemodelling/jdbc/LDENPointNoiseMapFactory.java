@@ -27,6 +27,9 @@ import org.h2gis.utilities.JDBCUtilities;
 import org.locationtech.jts.geom.LineString;
 import org.noise_planet.noisemodelling.emission.DirectionAttributes;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrixWriter;
+import org.noise_planet.noisemodelling.jdbc.utils.LevelsFileWriter;
+import org.noise_planet.noisemodelling.jdbc.utils.RayStoreWriter;
 import org.noise_planet.noisemodelling.jdbc.utils.StringPreparedStatements;
 import org.noise_planet.noisemodelling.pathfinder.*;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
@@ -36,12 +39,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
 import java.util.zip.GZIPOutputStream;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
@@ -56,6 +62,10 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
     Connection connection;
     static final int BATCH_MAX_SIZE = 500;
     static final int WRITER_CACHE = 65536;
+    /** Number of rows of the levels columnar buffers, rows are written in bulk when the buffer is full */
+    static final int LEVELS_BUFFER_SIZE = 5000;
+    /** Number of rows in each multi-rows INSERT statement */
+    static final int ROWS_PER_INSERT = 100;
     LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
     int srid;
 
@@ -176,13 +186,11 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         ldenConfig.exitWhenDone = false;
         tableWriterThread = new Thread(tableWriter);
         tableWriterThread.start();
-        while (!tableWriter.started && !ldenConfig.aborted) {
-            try {
-                Thread.sleep(150);
-            } catch (InterruptedException e) {
-                // ignore
-                break;
-            }
+        try {
+            // Wait for the creation of the tables
+            tableWriter.startedSignal.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -191,14 +199,8 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
      */
     public void stop() {
         ldenConfig.exitWhenDone = true;
-        while (tableWriterThread != null && tableWriterThread.isAlive()) {
-            try {
-                Thread.sleep(150);
-            } catch (InterruptedException e) {
-                // ignore
-                break;
-            }
-        }
+        ldenData.wakeUp();
+        joinTableWriter();
     }
 
     /**
@@ -206,12 +208,16 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
      */
     public void cancel() {
         ldenConfig.aborted = true;
-        while (tableWriterThread.isAlive()) {
+        ldenData.wakeUp();
+        joinTableWriter();
+    }
+
+    private void joinTableWriter() {
+        if(tableWriterThread != null) {
             try {
-                Thread.sleep(150);
+                tableWriterThread.join();
             } catch (InterruptedException e) {
-                // ignore
-                break;
+                Thread.currentThread().interrupt();
             }
         }
     }
@@ -230,6 +236,79 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 (LDENPropagationProcessData)threadData, ldenData, ldenConfig);
     }
 
+    /**
+     * Columnar buffer of the rows of a levels table. The rows are moved from the queue into this buffer, then the
+     * buffer is written in bulk.
+     */
+    static class LevelsBuffer {
+        final String tableName;
+        final ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack;
+        final long[] receiverId;
+        final long[] sourceId;
+        /** Levels of each frequency band, levels[idFrequency][row] */
+        final double[][] levels;
+        final double[] laeq;
+        final double[] leq;
+        int size = 0;
+        /** Multi-rows insert statement of ROWS_PER_INSERT rows, created on first use */
+        PreparedStatement insertStatement;
+        /** Binary output, null if the levels are written in a table */
+        LevelsFileWriter fileWriter;
+        /** Float columns of the binary file, levels then laeq and leq */
+        final double[][] fileColumns;
+
+        LevelsBuffer(String tableName, ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack,
+                     int frequencyCount, int capacity) {
+            this.tableName = tableName;
+            this.stack = stack;
+            receiverId = new long[capacity];
+            sourceId = new long[capacity];
+            levels = new double[frequencyCount][capacity];
+            laeq = new double[capacity];
+            leq = new double[capacity];
+            fileColumns = new double[frequencyCount == 0 ? 1 : frequencyCount + 2][];
+            System.arraycopy(levels, 0, fileColumns, 0, frequencyCount);
+            fileColumns[frequencyCount] = laeq;
+            if(frequencyCount > 0) {
+                fileColumns[frequencyCount + 1] = leq;
+            }
+        }
+
+        int capacity() {
+            return receiverId.length;
+        }
+
+        /**
+         * Format the rows for the COPY command. The values are written with the locale independent Java format,
+         * the non finite values are written as -99 like in {@link TableWriter#fillBuffer(LevelsBuffer)}.
+         * @param mergeSources True if the table has no IDSOURCE column
+         * @param computeLAEQOnly True if the table has only the LAEQ column
+         * @return One CSV line by row, in the columns order of the table
+         */
+        String toCsv(boolean mergeSources, boolean computeLAEQOnly) {
+            StringBuilder csv = new StringBuilder(size * (levels.length + 4) * 8);
+            for(int index = 0; index < size; index++) {
+                csv.append(receiverId[index]);
+                if(!mergeSources) {
+                    csv.append(',').append(sourceId[index]);
+                }
+                for (double[] frequencyLevels : levels) {
+                    appendCsvLevel(csv, frequencyLevels[index]);
+                }
+                appendCsvLevel(csv, laeq[index]);
+                if (!computeLAEQOnly) {
+                    appendCsvLevel(csv, leq[index]);
+                }
+                csv.append('\n');
+            }
+            return csv.toString();
+        }
+
+        private static void appendCsvLevel(StringBuilder csv, double value) {
+            csv.append(',').append(Double.isFinite(value) ? value : -99.0);
+        }
+    }
+
     private static class TableWriter implements Runnable {
         Logger LOGGER = LoggerFactory.getLogger(TableWriter.class);
         File sqlFilePath;
@@ -237,9 +316,15 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         LDENConfig ldenConfig;
         LDENComputeRaysOut.LdenData ldenData;
         double[] a_weighting;
-        boolean started = false;
+        volatile boolean started = false;
+        /** Released when the tables are created, or on failure */
+        final CountDownLatch startedSignal = new CountDownLatch(1);
         Writer o;
         int srid;
+        final List<LevelsBuffer> levelsBuffers = new ArrayList<>();
+        /** PostgreSQL CopyManager if the connection support the COPY command, null otherwise */
+        Object copyManager;
+        Method copyInMethod;
 
         public TableWriter(Connection connection, LDENConfig ldenConfig, LDENComputeRaysOut.LdenData ldenData, int srid) {
             this.connection = connection;
@@ -251,6 +336,35 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 a_weighting[idfreq] = ldenConfig.propagationProcessPathDataDay.freq_lvl_a_weighting.get(idfreq);
             }
             this.srid = srid;
+            int frequencyCount = ldenConfig.computeLAEQOnly ? 0 : a_weighting.length;
+            levelsBuffers.add(new LevelsBuffer(ldenConfig.lDayTable, ldenData.lDayLevels, frequencyCount,
+                    LEVELS_BUFFER_SIZE));
+            levelsBuffers.add(new LevelsBuffer(ldenConfig.lEveningTable, ldenData.lEveningLevels, frequencyCount,
+                    LEVELS_BUFFER_SIZE));
+            levelsBuffers.add(new LevelsBuffer(ldenConfig.lNightTable, ldenData.lNightLevels, frequencyCount,
+                    LEVELS_BUFFER_SIZE));
+            levelsBuffers.add(new LevelsBuffer(ldenConfig.lDenTable, ldenData.lDenLevels, frequencyCount,
+                    LEVELS_BUFFER_SIZE));
+        }
+
+        /**
+         * Find the PostgreSQL copy API of the connection. The PostgreSQL driver is not a dependency of this module so
+         * it is accessed by reflection.
+         */
+        void initPostgreSQLCopy() {
+            try {
+                Class<?> pgConnectionClass = Class.forName("org.postgresql.PGConnection");
+                if (connection.isWrapperFor(pgConnectionClass)) {
+                    Object pgConnection = connection.unwrap(pgConnectionClass);
+                    copyManager = pgConnectionClass.getMethod("getCopyAPI").invoke(pgConnection);
+                    copyInMethod = copyManager.getClass().getMethod("copyIn", String.class, Reader.class);
+                    LOGGER.info("Use PostgreSQL COPY in order to write the levels");
+                }
+            } catch (ReflectiveOperationException | SQLException ex) {
+                // Not a PostgreSQL connection, use INSERT statements
+                copyManager = null;
+                copyInMethod = null;
+            }
         }
 
         void processRaysStack(ConcurrentLinkedDeque<PropagationPath> stack) throws SQLException {
@@ -278,9 +392,8 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 ps = new StringPreparedStatements(o, query.toString());
             }
             int batchSize = 0;
-            while(!stack.isEmpty()) {
-                PropagationPath row = stack.pop();
-                ldenData.queueSize.decrementAndGet();
+            PropagationPath row;
+            while((row = stack.poll()) != null) {
                 int parameterIndex = 1;
                 LineString lineString = row.asGeom();
                 lineString.setSRID(srid);
@@ -306,84 +419,178 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 if (batchSize >= BATCH_MAX_SIZE) {
                     ps.executeBatch();
                     ps.clearBatch();
+                    ldenData.onRowsConsumed(batchSize);
                     batchSize = 0;
                 }
             }
             if (batchSize > 0) {
                 ps.executeBatch();
+                ldenData.onRowsConsumed(batchSize);
             }
-
+            ps.close();
         }
 
         /**
-         * Pop values from stack and insert rows
-         * @param tableName Table to feed
-         * @param stack Stack to pop from
-         * @throws SQLException Got an error
+         * Move the rows of the queue into the columnar buffer
+         * @param buffer Buffer to fill
+         * @return Number of rows moved into the buffer
          */
-        void processStack(String tableName, ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack) throws SQLException {
-            StringBuilder query = new StringBuilder("INSERT INTO ");
-            query.append(tableName);
-            query.append(" VALUES (? "); // ID_RECEIVER
-            if(!ldenConfig.mergeSources) {
-                query.append(", ?"); // ID_SOURCE
-            }
-            if (!ldenConfig.computeLAEQOnly) {
-                query.append(", ?".repeat(ldenConfig.propagationProcessPathDataDay.freq_lvl.size())); // freq value
-                query.append(", ?, ?);"); // laeq, leq
-            }else{
-                query.append(", ?);"); // laeq, leq
-            }
-            PreparedStatement ps;
-            if(sqlFilePath == null) {
-                ps = connection.prepareStatement(query.toString());
-            } else {
-                ps = new StringPreparedStatements(o, query.toString());
-            }
-            int batchSize = 0;
-            while(!stack.isEmpty()) {
-                ComputeRaysOutAttenuation.VerticeSL row = stack.pop();
-                ldenData.queueSize.decrementAndGet();
-                int parameterIndex = 1;
-                ps.setLong(parameterIndex++, row.receiverId);
-                if(!ldenConfig.mergeSources) {
-                    ps.setLong(parameterIndex++, row.sourceId);
-                }
-
+        int fillBuffer(LevelsBuffer buffer) {
+            buffer.size = 0;
+            ComputeRaysOutAttenuation.VerticeSL row;
+            while(buffer.size < buffer.capacity() && (row = buffer.stack.poll()) != null) {
+                int index = buffer.size++;
+                buffer.receiverId[index] = row.receiverId;
+                buffer.sourceId[index] = row.sourceId;
                 if (!ldenConfig.computeLAEQOnly){
-                    for(int idfreq=0;idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
+                    for(int idfreq = 0; idfreq < buffer.levels.length; idfreq++) {
                         double value = row.value[idfreq];
                         if(!Double.isFinite(value)) {
                             value = -99.0;
                             row.value[idfreq] = value;
                         }
-                        ps.setDouble(parameterIndex++, value);
+                        buffer.levels[idfreq][index] = value;
                     }
-
                 }
                 // laeq value
                 double value = wToDba(sumArray(dbaToW(sumArray(row.value, a_weighting))));
                 if(!Double.isFinite(value)) {
                     value = -99;
                 }
-                ps.setDouble(parameterIndex++, value);
-
+                buffer.laeq[index] = value;
                 // leq value
                 if (!ldenConfig.computeLAEQOnly) {
-                    ps.setDouble(parameterIndex++, wToDba(sumArray(dbaToW(row.value))));
+                    buffer.leq[index] = wToDba(sumArray(dbaToW(row.value)));
                 }
+            }
+            return buffer.size;
+        }
 
-                ps.addBatch();
-                batchSize++;
+        private String forgeInsertLevels(String tableName, int rowCount) {
+            StringBuilder row = new StringBuilder("(?"); // ID_RECEIVER
+            if(!ldenConfig.mergeSources) {
+                row.append(", ?"); // ID_SOURCE
+            }
+            if (!ldenConfig.computeLAEQOnly) {
+                row.append(", ?".repeat(ldenConfig.propagationProcessPathDataDay.freq_lvl.size())); // freq value
+                row.append(", ?, ?)"); // laeq, leq
+            }else{
+                row.append(", ?)"); // laeq
+            }
+            StringBuilder query = new StringBuilder("INSERT INTO ");
+            query.append(tableName);
+            query.append(" VALUES ");
+            for(int idRow = 0; idRow < rowCount; idRow++) {
+                if(idRow > 0) {
+                    query.append(", ");
+                }
+                query.append(row);
+            }
+            query.append(";");
+            return query.toString();
+        }
+
+        private PreparedStatement prepareStatement(String query) throws SQLException {
+            if(sqlFilePath == null) {
+                return connection.prepareStatement(query);
+            } else {
+                return new StringPreparedStatements(o, query);
+            }
+        }
+
+        private int setLevelsParameters(PreparedStatement ps, LevelsBuffer buffer, int firstRow, int rowCount)
+                throws SQLException {
+            int parameterIndex = 1;
+            for(int index = firstRow; index < firstRow + rowCount; index++) {
+                ps.setLong(parameterIndex++, buffer.receiverId[index]);
+                if(!ldenConfig.mergeSources) {
+                    ps.setLong(parameterIndex++, buffer.sourceId[index]);
+                }
+                for (double[] frequencyLevels : buffer.levels) {
+                    ps.setDouble(parameterIndex++, frequencyLevels[index]);
+                }
+                ps.setDouble(parameterIndex++, buffer.laeq[index]);
+                if (!ldenConfig.computeLAEQOnly) {
+                    ps.setDouble(parameterIndex++, buffer.leq[index]);
+                }
+            }
+            return parameterIndex;
+        }
+
+        /**
+         * Write the content of the buffer using multi-rows INSERT statements
+         * @param buffer Rows to write
+         * @throws SQLException Got an error
+         */
+        void insertLevels(LevelsBuffer buffer) throws SQLException {
+            if(buffer.insertStatement == null) {
+                buffer.insertStatement = prepareStatement(forgeInsertLevels(buffer.tableName, ROWS_PER_INSERT));
+            }
+            int firstRow = 0;
+            int batchSize = 0;
+            while(buffer.size - firstRow >= ROWS_PER_INSERT) {
+                setLevelsParameters(buffer.insertStatement, buffer, firstRow, ROWS_PER_INSERT);
+                buffer.insertStatement.addBatch();
+                firstRow += ROWS_PER_INSERT;
+                batchSize += ROWS_PER_INSERT;
                 if (batchSize >= BATCH_MAX_SIZE) {
-                    ps.executeBatch();
-                    ps.clearBatch();
+                    buffer.insertStatement.executeBatch();
+                    buffer.insertStatement.clearBatch();
                     batchSize = 0;
                 }
             }
             if (batchSize > 0) {
-                ps.executeBatch();
+                buffer.insertStatement.executeBatch();
+                buffer.insertStatement.clearBatch();
+            }
+            int remainingRows = buffer.size - firstRow;
+            if(remainingRows > 0) {
+                try(PreparedStatement ps = prepareStatement(forgeInsertLevels(buffer.tableName, remainingRows))) {
+                    setLevelsParameters(ps, buffer, firstRow, remainingRows);
+                    ps.addBatch();
+                    ps.executeBatch();
+                }
+            }
+        }
+
+        /**
+         * Write the content of the buffer using the PostgreSQL COPY command
+         * @param buffer Rows to write
+         * @throws SQLException Got an error
+         */
+        void copyLevels(LevelsBuffer buffer) throws SQLException {
+            String csv = buffer.toCsv(ldenConfig.mergeSources, ldenConfig.computeLAEQOnly);
+            try {
+                copyInMethod.invoke(copyManager, "COPY " + buffer.tableName + " FROM STDIN WITH (FORMAT csv)",
+                        new StringReader(csv));
+            } catch (InvocationTargetException ex) {
+                throw new SQLException(ex.getCause().getLocalizedMessage(), ex.getCause());
+            } catch (IllegalAccessException ex) {
+                throw new SQLException(ex.getLocalizedMessage(), ex);
+            }
+        }
+
+        /**
+         * Pop values from stack and insert rows
+         * @param buffer Columnar buffer of the table to feed
+         * @return True if at least one row has been written
+         * @throws SQLException Got an error
+         */
+        boolean processStack(LevelsBuffer buffer) throws SQLException {
+            boolean written = false;
+            while(fillBuffer(buffer) > 0) {
+                // The rows have been copied, the computation threads can push new rows
+                ldenData.onRowsConsumed(buffer.size);
+                if(buffer.fileWriter != null) {
+                    buffer.fileWriter.writeBlock(buffer.size, buffer.receiverId, buffer.sourceId, buffer.fileColumns);
+                } else if(copyManager != null) {
+                    copyLevels(buffer);
+                } else {
+                    insertLevels(buffer);
+                }
+                written = true;
             }
+            return written;
         }
 
         private String forgeCreateTable(String tableName) {
@@ -447,6 +654,10 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 sb.append(");");
                 processQuery(sb.toString());
             }
+            if(ldenConfig.exportLevelsMethod == LDENConfig.ExportLevelsMethods.TO_BINARY_FILES) {
+                initLevelsFiles();
+                return;
+            }
             if(ldenConfig.computeLDay) {
                 if(ldenConfig.dropResultsTable) {
                     String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lDayTable);
@@ -481,30 +692,127 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             }
         }
 
+        /**
+         * Create the binary files of the levels, in place of the levels tables
+         */
+        void initLevelsFiles() throws IOException {
+            if(ldenConfig.levelsOutputDirectory == null) {
+                throw new IOException("The levels output directory is not defined");
+            }
+            List<String> columnNames = new ArrayList<>();
+            if (!ldenConfig.computeLAEQOnly) {
+                for (int idfreq = 0; idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
+                    columnNames.add("HZ" + ldenConfig.propagationProcessPathDataDay.freq_lvl.get(idfreq));
+                }
+                columnNames.add("LAEQ");
+                columnNames.add("LEQ");
+            } else {
+                columnNames.add("LAEQ");
+            }
+            String[] columns = columnNames.toArray(new String[0]);
+            boolean[] computePeriod = new boolean[] {ldenConfig.computeLDay, ldenConfig.computeLEvening,
+                    ldenConfig.computeLNight, ldenConfig.computeLDEN};
+            for(int idPeriod = 0; idPeriod < computePeriod.length; idPeriod++) {
+                if(computePeriod[idPeriod]) {
+                    LevelsBuffer buffer = levelsBuffers.get(idPeriod);
+                    buffer.fileWriter = new LevelsFileWriter(ldenConfig.getLevelsFile(buffer.tableName),
+                            !ldenConfig.mergeSources, columns);
+                }
+            }
+        }
+
+        /**
+         * Create the attenuation matrix file before the computation threads are started
+         */
+        void initAttenuationMatrix() throws IOException {
+            if(ldenConfig.attenuationMatrixFile != null) {
+                int[] frequencies = new int[ldenConfig.propagationProcessPathDataDay.freq_lvl.size()];
+                for (int idfreq = 0; idfreq < frequencies.length; idfreq++) {
+                    frequencies[idfreq] = ldenConfig.propagationProcessPathDataDay.freq_lvl.get(idfreq);
+                }
+                ldenData.attenuationMatrixWriter = new AttenuationMatrixWriter(ldenConfig.attenuationMatrixFile,
+                        LDENConfig.TIME_PERIOD.values().length, frequencies);
+            }
+        }
+
+        /**
+         * Create the rays binary files before the computation threads are started
+         */
+        void initRaysStore() throws IOException {
+            if(ldenConfig.getExportRaysMethod() == LDENConfig.ExportRaysMethods.TO_BINARY_FILES) {
+                if(ldenConfig.raysOutputDirectory == null) {
+                    throw new IOException("The rays output directory is not defined");
+                }
+                ldenData.rayStoreWriter = new RayStoreWriter(ldenConfig.raysOutputDirectory,
+                        ldenConfig.raysStoreCompression);
+            }
+        }
+
+        void closeLevelsFiles() {
+            for(LevelsBuffer buffer : levelsBuffers) {
+                if(buffer.fileWriter != null) {
+                    try {
+                        buffer.fileWriter.close();
+                    } catch (IOException ex) {
+                        LOGGER.error("Error while closing levels file of " + buffer.tableName, ex);
+                        ldenConfig.aborted = true;
+                    }
+                    buffer.fileWriter = null;
+                }
+            }
+            if(ldenData.attenuationMatrixWriter != null) {
+                try {
+                    ldenData.attenuationMatrixWriter.close();
+                } catch (IOException ex) {
+                    LOGGER.error("Error while closing attenuation matrix file", ex);
+                    ldenConfig.aborted = true;
+                }
+                ldenData.attenuationMatrixWriter = null;
+            }
+            if(ldenData.rayStoreWriter != null) {
+                try {
+                    ldenData.rayStoreWriter.close();
+                } catch (IOException ex) {
+                    LOGGER.error("Error while closing rays files", ex);
+                    ldenConfig.aborted = true;
+                }
+                ldenData.rayStoreWriter = null;
+            }
+        }
+
         void mainLoop() throws SQLException, IOException {
+            started = true;
+            startedSignal.countDown();
             while (!ldenConfig.aborted) {
-                started = true;
-                try {
-                    if(!ldenData.lDayLevels.isEmpty()) {
-                        processStack(ldenConfig.lDayTable, ldenData.lDayLevels);
-                    } else if(!ldenData.lEveningLevels.isEmpty()) {
-                        processStack(ldenConfig.lEveningTable, ldenData.lEveningLevels);
-                    } else if(!ldenData.lNightLevels.isEmpty()) {
-                        processStack(ldenConfig.lNightTable, ldenData.lNightLevels);
-                    } else if(!ldenData.lDenLevels.isEmpty()) {
-                        processStack(ldenConfig.lDenTable, ldenData.lDenLevels);
-                    } else if(!ldenData.rays.isEmpty()) {
-                        processRaysStack(ldenData.rays);
-                    } else {
-                        if(ldenConfig.exitWhenDone) {
-                            break;
-                        } else {
-                            Thread.sleep(50);
-                        }
+                // Read the exit flag before the queues, all the rows pushed before the flag are written
+                boolean exitWhenDone = ldenConfig.exitWhenDone;
+                boolean written = false;
+                for(LevelsBuffer buffer : levelsBuffers) {
+                    written |= processStack(buffer);
+                }
+                if(!ldenData.rays.isEmpty()) {
+                    processRaysStack(ldenData.rays);
+                    written = true;
+                }
+                if(!written) {
+                    if(exitWhenDone) {
+                        break;
+                    }
+                    try {
+                        ldenData.awaitRows(ldenConfig);
+                    } catch (InterruptedException ex) {
+                        // ignore
+                        break;
                     }
-                } catch (InterruptedException ex) {
-                    // ignore
-                    break;
+                }
+            }
+        }
+
+        void closeStatements() throws SQLException {
+            for(LevelsBuffer buffer : levelsBuffers) {
+                if(buffer.insertStatement != null) {
+                    buffer.insertStatement.close();
+                    buffer.insertStatement = null;
                 }
             }
         }
@@ -512,6 +820,9 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         void createKeys()  throws SQLException, IOException {
             // Set primary keys
             LOGGER.info("Write done, apply primary keys");
+            if(ldenConfig.exportLevelsMethod == LDENConfig.ExportLevelsMethods.TO_BINARY_FILES) {
+                return;
+            }
             if(ldenConfig.computeLDay) {
                 processQuery(forgePkTable(ldenConfig.lDayTable));
             }
@@ -540,7 +851,11 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             if(sqlFilePath == null) {
                 try {
                     init();
+                    initAttenuationMatrix();
+                    initRaysStore();
+                    initPostgreSQLCopy();
                     mainLoop();
+                    closeStatements();
                     createKeys();
                 } catch (SQLException e) {
                     LOGGER.error("SQL Writer exception", e);
@@ -549,12 +864,19 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 } catch (Throwable e) {
                     LOGGER.error("Got exception on result writer, cancel calculation", e);
                     ldenConfig.aborted = true;
+                } finally {
+                    closeLevelsFiles();
+                    startedSignal.countDown();
+                    ldenData.wakeUp();
                 }
             } else {
                 try(OutputStreamWriter bw = getStream()) {
                     o = bw;
                     init();
+                    initAttenuationMatrix();
+                    initRaysStore();
                     mainLoop();
+                    closeStatements();
                     createKeys();
                 } catch (SQLException e) {
                     LOGGER.error("SQL Writer exception", e);
@@ -563,6 +885,10 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 } catch (Throwable e) {
                     LOGGER.error("Got exception on result writer, cancel calculation", e);
                     ldenConfig.aborted = true;
+                } finally {
+                    closeLevelsFiles();
+                    startedSignal.countDown();
+                    ldenData.wakeUp();
                 }
             }
             // LOGGER.info("Exit TableWriter");
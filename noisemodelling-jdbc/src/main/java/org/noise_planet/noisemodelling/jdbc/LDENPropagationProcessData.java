@@ -221,17 +221,18 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         if(hv > 0) {
             hgvPerHour = hv;
         }
-        // Compute emission
-        int idFreq = 0;
-        for (int freq : ldenConfig.propagationProcessPathDataDay.freq_lvl) {
-            RoadSourceParametersCnossos rsParametersCnossos = new RoadSourceParametersCnossos(lv_speed, mv_speed, hgv_speed, wav_speed,
-                    wbv_speed,lvPerHour, mvPerHour, hgvPerHour, wavPerHour, wbvPerHour, freq, temperature,
-                    roadSurface, tsStud, pmStud, junctionDistance, junctionType);
-            rsParametersCnossos.setSlopePercentage(slope);
-            rsParametersCnossos.setWay(way);
-            rsParametersCnossos.setCoeffVer(ldenConfig.coefficientVersion);
-            lvl[idFreq++] = EvaluateRoadSourceCnossos.evaluate(rsParametersCnossos);
-        }
+        // Compute emission of all frequency bands
+        int[] frequencies = new int[lvl.length];
+        for (int idFreq = 0; idFreq < frequencies.length; idFreq++) {
+            frequencies[idFreq] = ldenConfig.propagationProcessPathDataDay.freq_lvl.get(idFreq);
+        }
+        RoadSourceParametersCnossos rsParametersCnossos = new RoadSourceParametersCnossos(lv_speed, mv_speed, hgv_speed, wav_speed,
+                wbv_speed,lvPerHour, mvPerHour, hgvPerHour, wavPerHour, wbvPerHour, frequencies[0], temperature,
+                roadSurface, tsStud, pmStud, junctionDistance, junctionType);
+        rsParametersCnossos.setSlopePercentage(slope);
+        rsParametersCnossos.setWay(way);
+        rsParametersCnossos.setCoeffVer(ldenConfig.coefficientVersion);
+        EvaluateRoadSourceCnossos.evaluate(new RoadSourceParametersCnossos[]{rsParametersCnossos}, 1, frequencies, lvl);
         return lvl;
     }
 
@@ -35,6 +35,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Compute noise propagation at specified receiver points.
@@ -98,7 +99,6 @@ public class PointNoiseMap extends JdbcNoiseMap {
      */
     public CnossosPropagationData prepareCell(Connection connection,int cellI, int cellJ,
                                               ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
-        ProfileBuilder builder = new ProfileBuilder();
         int ij = cellI * gridDim + cellJ + 1;
         if(verbose) {
             logger.info("Begin processing of cell " + ij + " / " + gridDim * gridDim);
@@ -110,18 +110,13 @@ public class PointNoiseMap extends JdbcNoiseMap {
         Envelope expandedCellEnvelop = new Envelope(cellEnvelope);
         expandedCellEnvelop.expandBy(maximumPropagationDistance);
 
-        // //////////////////////////////////////////////////////
-        // feed freeFieldFinder for fast intersection query
-        // optimization
-        // Fetch buildings in extendedEnvelope
-        fetchCellBuildings(connection, expandedCellEnvelop, builder);
-        //if we have topographic points data
-        fetchCellDem(connection, expandedCellEnvelop, builder);
-
-        // Fetch soil areas
-        fetchCellSoilAreas(connection, expandedCellEnvelop, builder);
-
-        builder.finishFeeding();
+        ProfileBuilder builder;
+        if(shareProfileBuilder) {
+            // Cells query the area they need in the ProfileBuilder of the whole scene
+            builder = getSceneProfileBuilder(connection);
+        } else {
+            builder = fetchProfileBuilder(connection, expandedCellEnvelop);
+        }
 
 
         CnossosPropagationData propagationProcessData;
@@ -133,6 +128,10 @@ public class PointNoiseMap extends JdbcNoiseMap {
         propagationProcessData.reflexionOrder = soundReflectionOrder;
         propagationProcessData.setBodyBarrier(bodyBarrier);
         propagationProcessData.maximumError = getMaximumError();
+        propagationProcessData.reducedFidelityError = getReducedFidelityError();
+        if(isUseMinimalAtmosphericAbsorption() && (getMaximumError() > 0 || getReducedFidelityError() > 0)) {
+            propagationProcessData.minimalAtmosphericAbsorption = getMinimalAtmosphericAbsorption();
+        }
         propagationProcessData.noiseFloor = getNoiseFloor();
         propagationProcessData.maxRefDist = maximumReflectionDistance;
         propagationProcessData.maxSrcDist = maximumPropagationDistance;
@@ -257,7 +256,21 @@ public class PointNoiseMap extends JdbcNoiseMap {
     public IComputeRaysOut evaluateCell(Connection connection, int cellI, int cellJ,
                                         ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
         CnossosPropagationData threadData = prepareCell(connection, cellI, cellJ, progression, skipReceivers);
+        return computeCell(threadData, threadCount, null);
+    }
 
+    /**
+     * Launch sound propagation on a cell already fetched with {@link #prepareCell(Connection, int, int, ProgressVisitor, Set)}.
+     * This method does not use the JDBC connection, so it can be called from another thread than the one that
+     * prepared the cell.
+     * @param threadData Cell data returned by prepareCell
+     * @param cellThreadCount Number of threads used for the receivers of this cell (0 for all available processors)
+     * @param executorService If not null, receivers computation is submitted in this shared executor instead of a new
+     *                        thread pool. cellThreadCount is then only used to split the receivers into batches
+     * @return Computation output of this cell
+     */
+    public IComputeRaysOut computeCell(CnossosPropagationData threadData, int cellThreadCount,
+                                       ExecutorService executorService) {
         if(verbose) {
             logger.info(String.format("This computation area contains %d receivers %d sound sources and %d buildings",
                     threadData.receivers.size(), threadData.sourceGeometries.size(),
@@ -277,8 +290,12 @@ public class PointNoiseMap extends JdbcNoiseMap {
             computeRays.setProfilerThread(profilerThread);
         }
 
-        if(threadCount > 0) {
-            computeRays.setThreadCount(threadCount);
+        if(cellThreadCount > 0) {
+            computeRays.setThreadCount(cellThreadCount);
+        }
+
+        if(executorService != null) {
+            computeRays.setExecutorService(executorService);
         }
 
         if(!receiverHasAbsoluteZCoordinates) {
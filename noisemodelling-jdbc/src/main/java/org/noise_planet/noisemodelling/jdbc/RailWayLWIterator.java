@@ -10,6 +10,7 @@ import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.operation.linemerge.LineMerger;
 import org.noise_planet.noisemodelling.emission.EvaluateRailwaySourceCnossos;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
+import org.noise_planet.noisemodelling.emission.RailwayEmissionCache;
 import org.noise_planet.noisemodelling.emission.RailwayTrackParametersCnossos;
 import org.noise_planet.noisemodelling.emission.RailwayVehicleParametersCnossos;
 
@@ -26,6 +27,8 @@ import static org.noise_planet.noisemodelling.jdbc.MakeParallelLines.MakeParalle
 
 public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGeom> {
     private final EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos = new EvaluateRailwaySourceCnossos();
+    /** The same rolling stock run on many sections, the spectra of a vehicle are computed once */
+    private final RailwayEmissionCache railwayEmissionCache = new RailwayEmissionCache(evaluateRailwaySourceCnossos);
     private Connection connection;
     private RailWayLWGeom railWayLWComplete = null;
     private RailWayLWGeom railWayLWIncomplete = new RailWayLWGeom();
@@ -85,6 +88,13 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
         return railWayLWComplete;
     }
 
+    /**
+     * @return Cache of the vehicle emission spectra, with the hit rate statistics
+     */
+    public RailwayEmissionCache getRailwayEmissionCache() {
+        return railwayEmissionCache;
+    }
+
     private RailWayLWGeom fetchNext(RailWayLWGeom incompleteRecord) {
         RailWayLWGeom completeRecord = null;
         try {
@@ -266,9 +276,9 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
                             vehiclePerHouri / (double) nbTrack, rollingCondition, idlingTime);
 
                     if (i == 0) {
-                        lWRailWay = evaluateRailwaySourceCnossos.evaluate(vehicleParameters, trackParameters);
+                        lWRailWay = railwayEmissionCache.evaluate(vehicleParameters, trackParameters);
                     } else {
-                        lWRailWay = RailWayLW.sumRailWayLW(lWRailWay, evaluateRailwaySourceCnossos.evaluate(vehicleParameters, trackParameters));
+                        lWRailWay = RailWayLW.sumRailWayLW(lWRailWay, railwayEmissionCache.evaluate(vehicleParameters, trackParameters));
                     }
                 }
                 i++;
@@ -278,7 +288,7 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
             if (vehiclePerHour>0) {
                 RailwayVehicleParametersCnossos vehicleParameters = new RailwayVehicleParametersCnossos(train, vehicleSpeed,
                         vehiclePerHour / (double) nbTrack, rollingCondition, idlingTime);
-                lWRailWay = evaluateRailwaySourceCnossos.evaluate(vehicleParameters, trackParameters);
+                lWRailWay = railwayEmissionCache.evaluate(vehicleParameters, trackParameters);
             }
         }
 
@@ -0,0 +1,758 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.noise_planet.noisemodelling.jdbc.utils.MatsimPlansReader.AgentPlan;
+import org.noise_planet.noisemodelling.jdbc.utils.MatsimPlansReader.PlanActivity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+/**
+ * Compute the noise exposure of MATSim agents from the sound level of the receivers of the facilities for each time
+ * bin of the day (see {@link AttenuationMatrixTimeBins}).
+ * The A-weighted level of each facility and time bin is loaded in a direct buffer. The plans are read with a streaming
+ * parser, the exposure of a chunk of agents is computed by multiple threads while the previous chunk is inserted.
+ * The memory used depends on the number of facilities and time bins, not on the number of agents. The plans file,
+ * the experienced plans and the persons csv file must be sorted by person id, as written by MATSim: numeric ids are
+ * sorted by value and the other ids by text (see {@link #comparePersonIds(String, String)}). The three files are read
+ * side by side, a person of the plans file that is missing in the other files is detected by comparing the ids.
+ */
+public class AgentExposure {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AgentExposure.class);
+    /** Number of agents computed then written at once */
+    static final int AGENT_BATCH_SIZE = 1024;
+    /** The activities before 4h belong to the previous day */
+    private static final double START_OF_DAY = 4 * 3600;
+    private static final double DAY_DURATION = AttenuationMatrixTimeBins.DAY_DURATION;
+    private static final double BACKGROUND_LEVEL = AttenuationMatrixTimeBins.BACKGROUND_LEVEL;
+    private static final String TRAVELLING = "travelling";
+    private static final String OUTSIDE = "outside";
+    private static final String EMPTY_POINT = "POINT EMPTY";
+    private static final int FETCH_SIZE = 8192;
+
+    private final int timeBinSize;
+    private final int timeBinCount;
+    private final Map<String, Integer> facilityIndex = new HashMap<>();
+    /** A-weighted level of the facilities, facilityLevels[idFacility * timeBinCount + idTimeBin], NaN if unknown */
+    private FloatBuffer facilityLevels = FloatBuffer.allocate(0);
+    private int maximumReadAhead = AGENT_BATCH_SIZE * 4;
+
+    /**
+     * @param timeBinSize Duration of a time bin in seconds
+     */
+    public AgentExposure(int timeBinSize) {
+        if (timeBinSize <= 0) {
+            throw new IllegalArgumentException("The time bin size must be greater than 0");
+        }
+        this.timeBinSize = timeBinSize;
+        timeBinCount = (int) Math.ceil(DAY_DURATION / timeBinSize);
+    }
+
+    /**
+     * Load the level of the facilities for each time bin. When a facility has more than one receiver the level of the
+     * receiver with the greatest primary key is kept.
+     * @param connection Active connection
+     * @param receiversTable Receivers table with the columns PK and FACILITY
+     * @param dataTable Levels table with the columns IDRECEIVER, TIME (start of the time bin in seconds) and LEQA
+     * @throws SQLException Error while reading the tables
+     */
+    public void loadFacilityLevels(Connection connection, String receiversTable, String dataTable)
+            throws SQLException {
+        facilityIndex.clear();
+        try (Statement st = connection.createStatement()) {
+            st.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = st.executeQuery("SELECT DISTINCT FACILITY FROM " + receiversTable +
+                    " WHERE FACILITY IS NOT NULL")) {
+                while (rs.next()) {
+                    facilityIndex.put(rs.getString(1), facilityIndex.size());
+                }
+            }
+        }
+        long size = (long) facilityIndex.size() * timeBinCount;
+        if (size > Integer.MAX_VALUE / Float.BYTES) {
+            throw new IllegalStateException("Too many facilities and time bins");
+        }
+        facilityLevels = ByteBuffer.allocateDirect((int) size * Float.BYTES).order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        for (int i = 0; i < size; i++) {
+            facilityLevels.put(i, Float.NaN);
+        }
+        try (Statement st = connection.createStatement()) {
+            st.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = st.executeQuery("SELECT R.FACILITY, D.TIME, D.LEQA FROM " + dataTable +
+                    " D INNER JOIN " + receiversTable + " R ON D.IDRECEIVER = R.PK WHERE R.FACILITY IS NOT NULL" +
+                    " ORDER BY R.PK")) {
+                while (rs.next()) {
+                    int time = rs.getInt(2);
+                    double level = rs.getDouble(3);
+                    if (rs.wasNull() || time < 0 || time >= DAY_DURATION || time % timeBinSize != 0) {
+                        continue;
+                    }
+                    int idFacility = facilityIndex.get(rs.getString(1));
+                    facilityLevels.put(idFacility * timeBinCount + time / timeBinSize, (float) level);
+                }
+            }
+        }
+        LOGGER.info(String.format("Levels of %d facilities loaded", facilityIndex.size()));
+    }
+
+    /**
+     * @return Number of facilities loaded
+     */
+    public int getFacilityCount() {
+        return facilityIndex.size();
+    }
+
+    /**
+     * @param facilityId Facility identifier
+     * @param idTimeBin Time bin index
+     * @return A-weighted level of the facility, NaN if unknown
+     */
+    public double getFacilityLevel(String facilityId, int idTimeBin) {
+        Integer idFacility = facilityId == null ? null : facilityIndex.get(facilityId);
+        return idFacility == null ? Double.NaN : facilityLevels.get(idFacility * timeBinCount + idTimeBin);
+    }
+
+    /**
+     * @return Maximum number of consecutive persons of the experienced plans or the persons csv file that are skipped
+     * because they are not in the plans file
+     */
+    public int getMaximumReadAhead() {
+        return maximumReadAhead;
+    }
+
+    /**
+     * @param maximumReadAhead Maximum number of consecutive persons of the experienced plans or the persons csv file
+     *                         that are skipped because they are not in the plans file. When it is reached the
+     *                         computation fails, the file is probably not sorted by person id.
+     */
+    public void setMaximumReadAhead(int maximumReadAhead) {
+        this.maximumReadAhead = maximumReadAhead;
+    }
+
+    private static String toPoint(PlanActivity activity) {
+        return String.format("POINT(%s %s)", Double.toString(activity.x), Double.toString(activity.y));
+    }
+
+    private static Integer parseInteger(String value) {
+        try {
+            return value == null ? null : (int) Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static Double parseDouble(String value) {
+        try {
+            return value == null ? null : Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static Boolean parseBoolean(String value) {
+        if ("true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value) || "1".equals(value)) {
+            return true;
+        } else if ("false".equalsIgnoreCase(value) || "no".equalsIgnoreCase(value) || "0".equals(value)) {
+            return false;
+        }
+        return null;
+    }
+
+    /**
+     * @return The person attribute, or the column of the persons csv file if the attribute is not set
+     */
+    private static String getAttribute(AgentPlan person, Map<String, String> csvRow, String name) {
+        String value = person.attributes.get(name);
+        if (value == null && csvRow != null) {
+            value = csvRow.get(name);
+        }
+        return value;
+    }
+
+    /**
+     * Compute the exposure of an agent
+     * @param person Person of the plans file
+     * @param experienced Same person in the experienced plans file, may be null
+     * @param csvRow Same person in the persons csv file, may be null
+     * @return Exposure of the agent
+     */
+    public AgentResult computeExposure(AgentPlan person, AgentPlan experienced, Map<String, String> csvRow) {
+        AgentResult result = new AgentResult(person.id, timeBinCount);
+        result.age = parseInteger(getAttribute(person, csvRow, "age"));
+        result.sex = getAttribute(person, csvRow, "sex");
+        result.income = parseDouble(getAttribute(person, csvRow, "householdIncome"));
+        result.employed = parseBoolean(getAttribute(person, csvRow, "employed"));
+        List<PlanActivity> plan = experienced != null && !experienced.activities.isEmpty() ?
+                experienced.activities : person.activities; // stays at home all day
+        for (PlanActivity activity : plan) {
+            String activityId = activity.facilityId == null ? "" : activity.facilityId;
+            if (activity.type != null && activity.type.contains("home")) {
+                result.homeId = activityId;
+                if (activity.hasCoord()) {
+                    result.homeGeom = toPoint(activity);
+                }
+            }
+            if (activity.type != null && activity.type.contains("work")) {
+                result.workId = activityId;
+                if (activity.hasCoord()) {
+                    result.workGeom = toPoint(activity);
+                }
+            }
+        }
+        // weight of a full time bin in the day
+        int dayTimeBins = (int) (DAY_DURATION / timeBinSize);
+        double power = dbaToW(BACKGROUND_LEVEL);
+        for (int idTimeBin = 0; idTimeBin < timeBinCount; idTimeBin++) {
+            double timeSliceStart = idTimeBin * timeBinSize;
+            double timeSliceEnd = timeSliceStart + timeBinSize;
+            if (timeSliceStart < START_OF_DAY) {
+                timeSliceStart += DAY_DURATION;
+            }
+            if (timeSliceEnd <= START_OF_DAY) {
+                timeSliceEnd += DAY_DURATION;
+            }
+            boolean hasActivity = false;
+            boolean isOutside = false;
+            // in case there is no propagation path arriving to this facility's receiver
+            boolean hasLevel = false;
+            double mainWeight = -1;
+            for (PlanActivity activity : plan) {
+                if (activity.facilityId == null) {
+                    // pt interaction
+                    continue;
+                }
+                if (OUTSIDE.equals(activity.type)) {
+                    isOutside = true;
+                    continue;
+                }
+                double activityStart = activity.startTime > 0 ? activity.startTime : 0;
+                double activityEnd = activity.endTime > 0 ? activity.endTime : DAY_DURATION + START_OF_DAY;
+                if (activityStart >= activityEnd) {
+                    continue;
+                }
+                if (activityStart >= timeSliceEnd || activityEnd <= timeSliceStart) {
+                    continue;
+                }
+                hasActivity = true;
+                String activityGeom = EMPTY_POINT;
+                if (activity.hasCoord()) {
+                    activityGeom = toPoint(activity);
+                } else if ("home".equals(activity.type)) {
+                    activityGeom = result.homeGeom;
+                }
+                double timeWeight = 0;
+                if (activityStart <= timeSliceStart) {
+                    // activity starts before the current time slice
+                    result.setSequence(idTimeBin, AgentResult.START, activity.facilityId, activity.type, activityGeom);
+                    if (activityEnd >= timeSliceEnd) {
+                        // activity ends after the current time slice
+                        timeWeight = 1.0 / dayTimeBins;
+                        result.setSequence(idTimeBin, AgentResult.END, activity.facilityId, activity.type,
+                                activityGeom);
+                    } else {
+                        // activity ends in the current time slice
+                        timeWeight = ((activityEnd - timeSliceStart) / timeBinSize) / dayTimeBins;
+                    }
+                } else {
+                    // activity starts in the current time slice
+                    if (activityEnd >= timeSliceEnd) {
+                        timeWeight = ((timeSliceEnd - activityStart) / timeBinSize) / dayTimeBins;
+                        result.setSequence(idTimeBin, AgentResult.END, activity.facilityId, activity.type,
+                                activityGeom);
+                    } else {
+                        timeWeight = ((activityEnd - activityStart) / timeBinSize) / dayTimeBins;
+                    }
+                }
+                if (timeWeight > mainWeight) {
+                    mainWeight = timeWeight;
+                    result.setSequence(idTimeBin, AgentResult.MAIN, activity.facilityId, activity.type,
+                            activityGeom);
+                }
+                double level = getFacilityLevel(activity.facilityId, idTimeBin);
+                if (!Double.isNaN(level)) {
+                    power += timeWeight * dbaToW(level);
+                    result.sequenceLevels[idTimeBin] = level;
+                    hasLevel = true;
+                }
+            }
+            if (!hasLevel) {
+                result.sequenceLevels[idTimeBin] = BACKGROUND_LEVEL;
+            }
+            if (!hasActivity && isOutside) {
+                for (int position = 0; position < 3; position++) {
+                    result.setSequence(idTimeBin, position, OUTSIDE, OUTSIDE, EMPTY_POINT);
+                }
+            }
+        }
+        result.laeq = wToDba(power);
+        return result;
+    }
+
+    /**
+     * Read the plans and write the exposure of the agents
+     * @param connection Active connection, the levels of the facilities must be loaded
+     * @param plansFile MATSim output_plans file, the agents attributes are read from this file
+     * @param experiencedPlansFile MATSim output_experienced_plans file, the activities are read from this file
+     * @param personsCsvFile MATSim output_persons csv file, may be null. Used when the plans do not contain the
+     *                       agents attributes
+     * @param outputTable Created table of the agents, the time bins of the agents are in the table outputTable
+     *                    with the suffix _SEQUENCE
+     * @param srid Projection identifier of the activities coordinates
+     * @param threadCount Number of threads, 0 for all available processors
+     * @return Number of agents written
+     * @throws SQLException Error while writing the tables
+     * @throws IOException Error while reading the files
+     */
+    public long run(Connection connection, File plansFile, File experiencedPlansFile, File personsCsvFile,
+                    String outputTable, int srid, int threadCount) throws SQLException, IOException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + outputTable);
+            st.execute("DROP TABLE IF EXISTS " + outputTable + "_SEQUENCE");
+            st.execute("CREATE TABLE " + outputTable + " (PK integer PRIMARY KEY AUTO_INCREMENT," +
+                    " PERSON_ID varchar(255), AGE int, SEX varchar, INCOME double, EMPLOYED double," +
+                    " HOME_FACILITY varchar(255), HOME_GEOM geometry, WORK_FACILITY varchar(255)," +
+                    " WORK_GEOM geometry, LAEQ real)");
+            st.execute("CREATE TABLE " + outputTable + "_SEQUENCE (PK integer PRIMARY KEY AUTO_INCREMENT," +
+                    " PERSON_ID varchar(255), TIME int, LEVEL double, START_ACTIVITY_ID varchar," +
+                    " START_ACTIVITY_TYPE varchar, START_ACTIVITY_GEOM geometry, MAIN_ACTIVITY_ID varchar," +
+                    " MAIN_ACTIVITY_TYPE varchar, MAIN_ACTIVITY_GEOM geometry, END_ACTIVITY_ID varchar," +
+                    " END_ACTIVITY_TYPE varchar, END_ACTIVITY_GEOM geometry)");
+        }
+        if (threadCount <= 0) {
+            threadCount = Runtime.getRuntime().availableProcessors();
+        }
+        String geometry = "ST_GeomFromText(?, " + srid + ")";
+        // two buffers, one is computed while the other one is written
+        AgentPlan[][] persons = new AgentPlan[2][AGENT_BATCH_SIZE];
+        AgentPlan[][] experienced = new AgentPlan[2][AGENT_BATCH_SIZE];
+        AgentResult[][] results = new AgentResult[2][AGENT_BATCH_SIZE];
+        int[] size = new int[2];
+        List<Future<?>> pending = null;
+        int buffer = 0;
+        long agentCount = 0;
+        long nextLog = 1;
+        long start = System.currentTimeMillis();
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try (MatsimPlansReader plansReader = new MatsimPlansReader(plansFile);
+             ExperiencedPlans experiencedPlans = new ExperiencedPlans(new MatsimPlansReader(experiencedPlansFile),
+                     experiencedPlansFile.getName(), maximumReadAhead);
+             PersonsCsvReader personsCsv = personsCsvFile == null ? null : new PersonsCsvReader(personsCsvFile,
+                     maximumReadAhead);
+             PreparedStatement insertAgent = connection.prepareStatement("INSERT INTO " + outputTable +
+                     " VALUES(DEFAULT, ?, ?, ?, ?, ?, ?, " + geometry + ", ?, " + geometry + ", ?)");
+             PreparedStatement insertSequence = connection.prepareStatement("INSERT INTO " + outputTable +
+                     "_SEQUENCE VALUES(DEFAULT, ?, ?, ?, ?, ?, " + geometry + ", ?, ?, " + geometry + ", ?, ?, " +
+                     geometry + ")")) {
+            boolean hasNext = true;
+            while (hasNext || pending != null) {
+                size[buffer] = 0;
+                List<Map<String, String>> bufferCsvRows = new ArrayList<>();
+                while (hasNext && size[buffer] < AGENT_BATCH_SIZE) {
+                    AgentPlan person = plansReader.next();
+                    if (person == null) {
+                        hasNext = false;
+                        break;
+                    }
+                    persons[buffer][size[buffer]] = person;
+                    experienced[buffer][size[buffer]] = experiencedPlans.find(person.id);
+                    bufferCsvRows.add(personsCsv == null ? null : personsCsv.find(person.id));
+                    size[buffer]++;
+                }
+                List<Future<?>> submitted = null;
+                if (size[buffer] > 0) {
+                    submitted = submit(executorService, threadCount, persons[buffer], experienced[buffer],
+                            bufferCsvRows, size[buffer], results[buffer]);
+                }
+                if (pending != null) {
+                    int previous = 1 - buffer;
+                    await(pending);
+                    insert(insertAgent, insertSequence, results[previous], size[previous]);
+                    agentCount += size[previous];
+                    if (agentCount >= nextLog) {
+                        nextLog *= 2;
+                        double elapsed = (System.currentTimeMillis() - start + 1) / 1000.0;
+                        LOGGER.info(String.format("Processing Person %d - elapsed : %.0fs (%.1fit/s)", agentCount,
+                                elapsed, agentCount / elapsed));
+                    }
+                }
+                pending = submitted;
+                buffer = 1 - buffer;
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        LOGGER.info(String.format("Exposure of %d agents written in %s", agentCount, outputTable));
+        return agentCount;
+    }
+
+    /**
+     * Submit the computation of a chunk of agents, split between the threads
+     */
+    private List<Future<?>> submit(ExecutorService executorService, int threadCount, AgentPlan[] persons,
+                                   AgentPlan[] experienced, List<Map<String, String>> csvRows, int size,
+                                   AgentResult[] results) {
+        List<Future<?>> futures = new ArrayList<>(threadCount);
+        int rangeSize = Math.max(1, (size + threadCount - 1) / threadCount);
+        for (int from = 0; from < size; from += rangeSize) {
+            final int rangeFrom = from;
+            final int rangeTo = Math.min(size, from + rangeSize);
+            futures.add(executorService.submit(() -> {
+                for (int i = rangeFrom; i < rangeTo; i++) {
+                    results[i] = computeExposure(persons[i], experienced[i], csvRows.get(i));
+                }
+            }));
+        }
+        return futures;
+    }
+
+    private static void await(List<Future<?>> futures) throws SQLException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException ex) {
+            throw new SQLException(ex.getCause().getLocalizedMessage(), ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(ex);
+        }
+    }
+
+    private void insert(PreparedStatement insertAgent, PreparedStatement insertSequence, AgentResult[] results,
+                        int size) throws SQLException {
+        for (int i = 0; i < size; i++) {
+            AgentResult result = results[i];
+            int cursor = 1;
+            insertAgent.setString(cursor++, result.personId);
+            if (result.age != null) {
+                insertAgent.setInt(cursor++, result.age);
+            } else {
+                insertAgent.setNull(cursor++, Types.INTEGER);
+            }
+            insertAgent.setString(cursor++, result.sex);
+            if (result.income != null) {
+                insertAgent.setDouble(cursor++, result.income);
+            } else {
+                insertAgent.setNull(cursor++, Types.DOUBLE);
+            }
+            if (result.employed != null) {
+                insertAgent.setDouble(cursor++, result.employed ? 1 : 0);
+            } else {
+                insertAgent.setNull(cursor++, Types.DOUBLE);
+            }
+            insertAgent.setString(cursor++, result.homeId);
+            insertAgent.setString(cursor++, result.homeGeom);
+            insertAgent.setString(cursor++, result.workId);
+            insertAgent.setString(cursor++, result.workGeom);
+            insertAgent.setDouble(cursor, result.laeq);
+            insertAgent.addBatch();
+            for (int idTimeBin = 0; idTimeBin < timeBinCount; idTimeBin++) {
+                cursor = 1;
+                insertSequence.setString(cursor++, result.personId);
+                insertSequence.setInt(cursor++, idTimeBin * timeBinSize);
+                insertSequence.setDouble(cursor++, result.sequenceLevels[idTimeBin]);
+                for (int position = 0; position < 3; position++) {
+                    for (int field = 0; field < 3; field++) {
+                        insertSequence.setString(cursor++, result.sequence[(idTimeBin * 3 + position) * 3 + field]);
+                    }
+                }
+                insertSequence.addBatch();
+            }
+        }
+        insertAgent.executeBatch();
+        insertSequence.executeBatch();
+    }
+
+    /**
+     * Exposure of an agent
+     */
+    public static class AgentResult {
+        static final int START = 0;
+        static final int MAIN = 1;
+        static final int END = 2;
+        public final String personId;
+        public Integer age;
+        public String sex;
+        public Double income;
+        public Boolean employed;
+        public String homeId = "";
+        public String homeGeom = EMPTY_POINT;
+        public String workId = "";
+        public String workGeom = EMPTY_POINT;
+        /** A-weighted equivalent level of the day */
+        public double laeq;
+        /** A-weighted level of each time bin */
+        public final double[] sequenceLevels;
+        /** Id, type and geometry of the start, main and end activities, sequence[(idTimeBin * 3 + position) * 3 + field] */
+        final String[] sequence;
+
+        AgentResult(String personId, int timeBinCount) {
+            this.personId = personId;
+            sequenceLevels = new double[timeBinCount];
+            sequence = new String[timeBinCount * 9];
+            for (int i = 0; i < sequence.length; i += 3) {
+                sequence[i] = TRAVELLING;
+                sequence[i + 1] = TRAVELLING;
+                sequence[i + 2] = EMPTY_POINT;
+            }
+        }
+
+        void setSequence(int idTimeBin, int position, String id, String type, String geom) {
+            int offset = (idTimeBin * 3 + position) * 3;
+            sequence[offset] = id;
+            sequence[offset + 1] = type;
+            sequence[offset + 2] = geom;
+        }
+
+        /**
+         * @param idTimeBin Time bin index
+         * @return Facility identifier of the activity that takes the longest part of the time bin
+         */
+        public String getMainActivityId(int idTimeBin) {
+            return sequence[(idTimeBin * 3 + MAIN) * 3];
+        }
+
+        /**
+         * @param idTimeBin Time bin index
+         * @return Type of the activity that takes the longest part of the time bin
+         */
+        public String getMainActivityType(int idTimeBin) {
+            return sequence[(idTimeBin * 3 + MAIN) * 3 + 1];
+        }
+    }
+
+    /**
+     * Order of the person ids in the MATSim files, numeric ids are compared by value and the other ids by text.
+     * @param id1 First person id
+     * @param id2 Second person id
+     * @return Negative if id1 is before id2, 0 if the ids are equal, positive if id1 is after id2
+     */
+    static int comparePersonIds(String id1, String id2) {
+        if (isNumeric(id1) && isNumeric(id2)) {
+            // compare the numbers of any length without parsing them
+            String number1 = stripLeadingZeros(id1);
+            String number2 = stripLeadingZeros(id2);
+            if (number1.length() != number2.length()) {
+                return Integer.compare(number1.length(), number2.length());
+            }
+            int order = number1.compareTo(number2);
+            return order != 0 ? order : id1.compareTo(id2);
+        }
+        return id1.compareTo(id2);
+    }
+
+    private static boolean isNumeric(String id) {
+        if (id.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) < '0' || id.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String stripLeadingZeros(String number) {
+        int start = 0;
+        while (start < number.length() - 1 && number.charAt(start) == '0') {
+            start++;
+        }
+        return number.substring(start);
+    }
+
+    /**
+     * Find the persons in a file that is read sequentially. The file and the requested persons are sorted by person
+     * id, so only the next person of the file is kept in memory. The persons of the file that are before the
+     * requested person are not in the plans file and are skipped.
+     */
+    private abstract static class Lookahead<T> implements Closeable {
+        private final String fileName;
+        private final int maximumReadAhead;
+        /** Next person of the file, not requested yet */
+        private T next = null;
+        private boolean exhausted = false;
+        private String previousId = null;
+
+        Lookahead(String fileName, int maximumReadAhead) {
+            this.fileName = fileName;
+            this.maximumReadAhead = maximumReadAhead;
+        }
+
+        abstract T read() throws IOException;
+
+        abstract String getId(T value);
+
+        /**
+         * @param personId Person identifier, greater than the previous requested person identifier
+         * @return The person, null if the person is not in the file
+         * @throws IOException Error while reading the file, or the files are not sorted by person id
+         */
+        T find(String personId) throws IOException {
+            if (previousId != null && comparePersonIds(previousId, personId) >= 0) {
+                throw new IOException(String.format("The person %s is placed before the person %s in the plans" +
+                        " file, the plans file must be sorted by person id", previousId, personId));
+            }
+            previousId = personId;
+            int skipped = 0;
+            while (!exhausted) {
+                if (next == null) {
+                    next = read();
+                    if (next == null) {
+                        exhausted = true;
+                        break;
+                    }
+                }
+                int order = comparePersonIds(getId(next), personId);
+                if (order == 0) {
+                    T value = next;
+                    next = null;
+                    return value;
+                } else if (order > 0) {
+                    // the file is already after this person
+                    return null;
+                }
+                // this person of the file is not in the plans file
+                if (++skipped > maximumReadAhead) {
+                    throw new IOException(String.format("The %d persons of %s before the person %s are not in the" +
+                            " plans file, the file must be sorted by person id like the plans file",
+                            skipped, fileName, personId));
+                }
+                next = null;
+            }
+            return null;
+        }
+    }
+
+    private static class ExperiencedPlans extends Lookahead<AgentPlan> {
+        private final MatsimPlansReader reader;
+
+        ExperiencedPlans(MatsimPlansReader reader, String fileName, int maximumReadAhead) {
+            super(fileName, maximumReadAhead);
+            this.reader = reader;
+        }
+
+        @Override
+        AgentPlan read() throws IOException {
+            return reader.next();
+        }
+
+        @Override
+        String getId(AgentPlan value) {
+            return value.id;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read the MATSim output_persons csv file, the separator is ';' and the person identifier is in the column person
+     */
+    static class PersonsCsvReader extends Lookahead<Map<String, String>> {
+        private final BufferedReader reader;
+        private final String[] header;
+
+        PersonsCsvReader(File file, int maximumReadAhead) throws IOException {
+            super(file.getName(), maximumReadAhead);
+            InputStream in = Files.newInputStream(file.toPath());
+            try {
+                if (file.getName().endsWith(".gz")) {
+                    in = new GZIPInputStream(in);
+                }
+                reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line = reader.readLine();
+                header = line == null ? new String[0] : parseLine(line).toArray(new String[0]);
+            } catch (IOException | RuntimeException ex) {
+                in.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Split a csv line, the fields may be quoted
+         */
+        static List<String> parseLine(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ';') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+
+        @Override
+        Map<String, String> read() throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            List<String> fields = parseLine(line);
+            Map<String, String> row = new HashMap<>();
+            for (int i = 0; i < header.length && i < fields.size(); i++) {
+                row.put(header[i], fields.get(i));
+            }
+            return row;
+        }
+
+        @Override
+        String getId(Map<String, String> value) {
+            return value.getOrDefault("person", "");
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read sequentially the receivers of a file written by {@link AttenuationMatrixWriter}.
+ * The file is mapped in memory by windows of at most {@link #MAXIMUM_WINDOW_SIZE} bytes.
+ */
+public class AttenuationMatrixReader implements Closeable {
+    static final long MAXIMUM_WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int periodCount;
+    private final int[] frequencies;
+    private MappedByteBuffer window;
+    private long windowPosition;
+    /** File position of the next receiver */
+    private long position;
+    private long receiverPk;
+    private int sourceCount;
+    private int sourcesOffset;
+
+    /**
+     * @param file File written by {@link AttenuationMatrixWriter}
+     * @throws IOException Error while reading the file, or the file is not an attenuation matrix
+     */
+    public AttenuationMatrixReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            fileSize = channel.size();
+            mapWindow(0, 4 * Integer.BYTES);
+            if (window.getInt(0) != AttenuationMatrixWriter.MAGIC) {
+                throw new IOException("Not an attenuation matrix file " + file);
+            }
+            int version = window.getInt(Integer.BYTES);
+            if (version != AttenuationMatrixWriter.VERSION) {
+                throw new IOException("Unsupported attenuation matrix file version " + version);
+            }
+            periodCount = window.getInt(2 * Integer.BYTES);
+            frequencies = new int[window.getInt(3 * Integer.BYTES)];
+            mapWindow(0, (4 + frequencies.length) * Integer.BYTES);
+            for (int idFreq = 0; idFreq < frequencies.length; idFreq++) {
+                frequencies[idFreq] = window.getInt((4 + idFreq) * Integer.BYTES);
+            }
+            position = (4 + frequencies.length) * Integer.BYTES;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Map the file region starting at the provided position
+     * @param start File position
+     * @param minimumSize The mapped region must contain at least this number of bytes
+     */
+    private void mapWindow(long start, long minimumSize) throws IOException {
+        if (start + minimumSize > fileSize) {
+            throw new IOException("Truncated attenuation matrix file");
+        }
+        if (window != null && start >= windowPosition
+                && start + minimumSize <= windowPosition + window.capacity()) {
+            return;
+        }
+        long size = Math.min(fileSize - start, Math.max(MAXIMUM_WINDOW_SIZE, minimumSize));
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowPosition = start;
+    }
+
+    /**
+     * @return Number of time periods
+     */
+    public int getPeriodCount() {
+        return periodCount;
+    }
+
+    /**
+     * @return Frequency bands
+     */
+    public int[] getFrequencies() {
+        return frequencies.clone();
+    }
+
+    /**
+     * @return Number of values stored for each source, periodCount * frequencyCount
+     */
+    public int getSpectrumSize() {
+        return periodCount * frequencies.length;
+    }
+
+    /**
+     * Move to the next receiver
+     * @return False if there is no more receivers
+     * @throws IOException Error while reading the file
+     */
+    public boolean next() throws IOException {
+        if (position >= fileSize) {
+            return false;
+        }
+        int headerSize = Long.BYTES + Integer.BYTES;
+        mapWindow(position, headerSize);
+        int offset = (int) (position - windowPosition);
+        receiverPk = window.getLong(offset);
+        sourceCount = window.getInt(offset + Long.BYTES);
+        long recordSize = headerSize + (long) sourceCount * (Long.BYTES + getSpectrumSize() * Float.BYTES);
+        mapWindow(position, recordSize);
+        sourcesOffset = (int) (position - windowPosition) + headerSize;
+        position += recordSize;
+        return true;
+    }
+
+    /**
+     * @return Primary key of the current receiver
+     */
+    public long getReceiverPk() {
+        return receiverPk;
+    }
+
+    /**
+     * @return Number of sources of the current receiver
+     */
+    public int getSourceCount() {
+        return sourceCount;
+    }
+
+    /**
+     * Copy the sources of the current receiver
+     * @param sourcesPk Sources primary key, of size {@link #getSourceCount()} or more
+     * @param attenuation Attenuation in dB, of size {@link #getSourceCount()} * {@link #getSpectrumSize()} or more
+     *                    attenuation[(idSource * periodCount + idPeriod) * frequencyCount + idFreq]
+     */
+    public void readSources(long[] sourcesPk, float[] attenuation) {
+        int spectrumSize = getSpectrumSize();
+        ByteBuffer buffer = window.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(sourcesOffset);
+        for (int idSource = 0; idSource < sourceCount; idSource++) {
+            sourcesPk[idSource] = buffer.getLong();
+            buffer.asFloatBuffer().get(attenuation, idSource * spectrumSize, spectrumSize);
+            buffer.position(buffer.position() + spectrumSize * Float.BYTES);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
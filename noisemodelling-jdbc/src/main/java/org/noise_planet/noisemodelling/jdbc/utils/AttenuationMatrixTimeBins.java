@@ -0,0 +1,357 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.utilities.SpatialResultSet;
+import org.locationtech.jts.geom.Geometry;
+import org.noise_planet.noisemodelling.emission.RoadCoefficientsCnossos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+/**
+ * Compute the sound level of the receivers for each time bin of a day, from an attenuation matrix (receiver, source)
+ * and the emission of the sources for each time bin (ex. MATSim road statistics).
+ * The emission and the attenuation are loaded in memory in the power domain. The emission is a dense array
+ * (source, time bin, frequency), the attenuation matrix is stored by receivers (compressed sparse rows), so the
+ * levels of all the time bins of a receiver are computed at once. The receivers are evaluated by chunks, split between
+ * the threads, while the levels of the previous chunk are inserted with a batch statement.
+ */
+public class AttenuationMatrixTimeBins {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AttenuationMatrixTimeBins.class);
+    /** Duration of the day in seconds */
+    public static final int DAY_DURATION = 86400;
+    /** Level in dB of a time bin without sources */
+    public static final double BACKGROUND_LEVEL = -99.0;
+    /** Number of receivers computed then written at once */
+    static final int RECEIVER_BATCH_SIZE = 256;
+    private static final int FETCH_SIZE = 8192;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int timeBinCount;
+    private final int frequencyCount = RoadCoefficientsCnossos.FREQUENCIES.length;
+    /** Sorted primary keys of the sources */
+    private long[] sourcesPk = new long[0];
+    /** Emission in W, sourcesEmission[(idSource * timeBinCount + idTimeBin) * frequencyCount + idFreq] */
+    private double[] sourcesEmission = new double[0];
+    /** Sorted primary keys of the receivers of the attenuation matrix */
+    private long[] receiversPk;
+    /** Sources of the receiver i are in [receiverOffsets[i], receiverOffsets[i + 1]) */
+    private int[] receiverOffsets;
+    private int[] matrixSource;
+    /** Attenuation in W, matrixAttenuation[idEntry * frequencyCount + idFreq] */
+    private double[] matrixAttenuation;
+
+    /**
+     * @param timeBinSize Duration of a time bin in seconds
+     */
+    public AttenuationMatrixTimeBins(int timeBinSize) {
+        if (timeBinSize <= 0) {
+            throw new IllegalArgumentException("The time bin size must be greater than 0");
+        }
+        timeBinCount = (DAY_DURATION + timeBinSize - 1) / timeBinSize;
+    }
+
+    /**
+     * Create a table with the sound level of each receiver for each time bin of the day.
+     * Only the receivers of the attenuation matrix are written.
+     * @param connection Active connection
+     * @param roadsTable Roads table with the columns PK and LINK_ID
+     * @param roadsLwTable Emission table with the columns LINK_ID, TIME (start of the time bin in seconds) and
+     *                     LW63..LW8000
+     * @param receiversTable Receivers table with the columns PK and THE_GEOM
+     * @param attenuationTable Attenuation matrix with the columns IDRECEIVER, IDSOURCE (roads PK) and HZ63..HZ8000
+     * @param outputTable Created table with the columns PK, IDRECEIVER, THE_GEOM, HZ63..HZ8000, TIME
+     * @param timeBinSize Duration of a time bin in seconds
+     * @param threadCount Number of threads, 0 for all available processors
+     * @return Number of receivers written
+     * @throws SQLException Error while reading or writing the tables
+     */
+    public static long makeTimeBinLevelsTable(Connection connection, String roadsTable, String roadsLwTable,
+                                              String receiversTable, String attenuationTable, String outputTable,
+                                              int timeBinSize, int threadCount) throws SQLException {
+        AttenuationMatrixTimeBins timeBins = new AttenuationMatrixTimeBins(timeBinSize);
+        timeBins.loadSourcesEmission(connection, roadsTable, roadsLwTable, timeBinSize);
+        timeBins.loadAttenuation(connection, attenuationTable);
+        return timeBins.writeLevels(connection, receiversTable, outputTable, timeBinSize, threadCount);
+    }
+
+    /**
+     * Read the emission of the sources for each time bin. The time values that are not the start of a time bin of the
+     * day are ignored. The emission of the rows with the same source and time are summed.
+     */
+    void loadSourcesEmission(Connection connection, String roadsTable, String roadsLwTable, int timeBinSize)
+            throws SQLException {
+        int spectrumSize = timeBinCount * frequencyCount;
+        int sourceCount = 0;
+        long[] pkList = new long[INITIAL_CAPACITY];
+        double[] emission = new double[INITIAL_CAPACITY * spectrumSize];
+        StringBuilder query = new StringBuilder("SELECT MR.PK, MRS.TIME");
+        for (int frequency : RoadCoefficientsCnossos.FREQUENCIES) {
+            query.append(", MRS.LW").append(frequency);
+        }
+        query.append(" FROM ").append(roadsLwTable).append(" MRS INNER JOIN ").append(roadsTable)
+                .append(" MR ON MR.LINK_ID = MRS.LINK_ID ORDER BY MR.PK");
+        try (Statement st = connection.createStatement()) {
+            st.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = st.executeQuery(query.toString())) {
+                while (rs.next()) {
+                    long pk = rs.getLong(1);
+                    int time = rs.getInt(2);
+                    if (sourceCount == 0 || pkList[sourceCount - 1] != pk) {
+                        if (sourceCount == pkList.length) {
+                            pkList = Arrays.copyOf(pkList, sourceCount * 2);
+                            emission = Arrays.copyOf(emission, sourceCount * 2 * spectrumSize);
+                        }
+                        pkList[sourceCount++] = pk;
+                    }
+                    if (time < 0 || time >= DAY_DURATION || time % timeBinSize != 0) {
+                        continue;
+                    }
+                    int offset = (sourceCount - 1) * spectrumSize + (time / timeBinSize) * frequencyCount;
+                    for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                        emission[offset + idFreq] += dbaToW(rs.getDouble(3 + idFreq));
+                    }
+                }
+            }
+        }
+        sourcesPk = Arrays.copyOf(pkList, sourceCount);
+        sourcesEmission = Arrays.copyOf(emission, sourceCount * spectrumSize);
+    }
+
+    /**
+     * Read the attenuation matrix and sort it by receivers. The sources without emission are dropped but their
+     * receivers are kept.
+     */
+    void loadAttenuation(Connection connection, String attenuationTable) throws SQLException {
+        int entryCount = 0;
+        long[] entryReceiverPk = new long[INITIAL_CAPACITY];
+        int[] entrySource = new int[INITIAL_CAPACITY];
+        double[] entryAttenuation = new double[INITIAL_CAPACITY * frequencyCount];
+        StringBuilder query = new StringBuilder("SELECT IDRECEIVER, IDSOURCE");
+        for (int frequency : RoadCoefficientsCnossos.FREQUENCIES) {
+            query.append(", HZ").append(frequency);
+        }
+        query.append(" FROM ").append(attenuationTable);
+        try (Statement st = connection.createStatement()) {
+            st.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = st.executeQuery(query.toString())) {
+                while (rs.next()) {
+                    if (entryCount == entryReceiverPk.length) {
+                        entryReceiverPk = Arrays.copyOf(entryReceiverPk, entryCount * 2);
+                        entrySource = Arrays.copyOf(entrySource, entryCount * 2);
+                        entryAttenuation = Arrays.copyOf(entryAttenuation, entryCount * 2 * frequencyCount);
+                    }
+                    entryReceiverPk[entryCount] = rs.getLong(1);
+                    entrySource[entryCount] = Arrays.binarySearch(sourcesPk, rs.getLong(2));
+                    for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                        entryAttenuation[entryCount * frequencyCount + idFreq] = dbaToW(rs.getDouble(3 + idFreq));
+                    }
+                    entryCount++;
+                }
+            }
+        }
+        long[] sortedReceivers = Arrays.copyOf(entryReceiverPk, entryCount);
+        Arrays.sort(sortedReceivers);
+        int receiverCount = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (receiverCount == 0 || sortedReceivers[receiverCount - 1] != sortedReceivers[i]) {
+                sortedReceivers[receiverCount++] = sortedReceivers[i];
+            }
+        }
+        receiversPk = Arrays.copyOf(sortedReceivers, receiverCount);
+        // counting sort of the entries by receiver
+        int[] entryReceiver = new int[entryCount];
+        receiverOffsets = new int[receiverCount + 1];
+        int validCount = 0;
+        for (int idEntry = 0; idEntry < entryCount; idEntry++) {
+            if (entrySource[idEntry] >= 0) {
+                entryReceiver[idEntry] = Arrays.binarySearch(receiversPk, entryReceiverPk[idEntry]);
+                receiverOffsets[entryReceiver[idEntry] + 1]++;
+                validCount++;
+            }
+        }
+        for (int idReceiver = 0; idReceiver < receiverCount; idReceiver++) {
+            receiverOffsets[idReceiver + 1] += receiverOffsets[idReceiver];
+        }
+        int[] position = Arrays.copyOf(receiverOffsets, receiverCount);
+        matrixSource = new int[validCount];
+        matrixAttenuation = new double[validCount * frequencyCount];
+        for (int idEntry = 0; idEntry < entryCount; idEntry++) {
+            if (entrySource[idEntry] >= 0) {
+                int target = position[entryReceiver[idEntry]]++;
+                matrixSource[target] = entrySource[idEntry];
+                System.arraycopy(entryAttenuation, idEntry * frequencyCount, matrixAttenuation,
+                        target * frequencyCount, frequencyCount);
+            }
+        }
+    }
+
+    /**
+     * Compute the levels of all the time bins of a range of receivers
+     * @param receivers Receivers index in receiversPk
+     * @param from First receiver in receivers
+     * @param to Last receiver in receivers (excluded)
+     * @param levels Levels in dB, levels[(i * timeBinCount + idTimeBin) * frequencyCount + idFreq]
+     */
+    void computeLevels(int[] receivers, int from, int to, double[] levels) {
+        int spectrumSize = timeBinCount * frequencyCount;
+        double background = dbaToW(BACKGROUND_LEVEL);
+        for (int i = from; i < to; i++) {
+            int idReceiver = receivers[i];
+            int levelsOffset = i * spectrumSize;
+            Arrays.fill(levels, levelsOffset, levelsOffset + spectrumSize, background);
+            for (int idEntry = receiverOffsets[idReceiver]; idEntry < receiverOffsets[idReceiver + 1]; idEntry++) {
+                int attenuationOffset = idEntry * frequencyCount;
+                int emissionOffset = matrixSource[idEntry] * spectrumSize;
+                for (int idTimeBin = 0; idTimeBin < timeBinCount; idTimeBin++) {
+                    int binOffset = idTimeBin * frequencyCount;
+                    for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                        levels[levelsOffset + binOffset + idFreq] += matrixAttenuation[attenuationOffset + idFreq] *
+                                sourcesEmission[emissionOffset + binOffset + idFreq];
+                    }
+                }
+            }
+            for (int j = levelsOffset; j < levelsOffset + spectrumSize; j++) {
+                levels[j] = wToDba(levels[j]);
+            }
+        }
+    }
+
+    /**
+     * Submit the computation of a chunk of receivers, split between the threads
+     */
+    private List<Future<?>> submit(ExecutorService executorService, int threadCount, int[] receivers, int size,
+                                   double[] levels) {
+        List<Future<?>> futures = new ArrayList<>(threadCount);
+        int rangeSize = Math.max(1, (size + threadCount - 1) / threadCount);
+        for (int from = 0; from < size; from += rangeSize) {
+            final int rangeFrom = from;
+            final int rangeTo = Math.min(size, from + rangeSize);
+            futures.add(executorService.submit(() -> computeLevels(receivers, rangeFrom, rangeTo, levels)));
+        }
+        return futures;
+    }
+
+    private static void await(List<Future<?>> futures) throws SQLException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException ex) {
+            throw new SQLException(ex.getCause().getLocalizedMessage(), ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(ex);
+        }
+    }
+
+    /**
+     * Insert the levels of a computed chunk of receivers
+     */
+    private void insert(PreparedStatement ps, long[] pk, Geometry[] geometries, int size, double[] levels,
+                        int timeBinSize) throws SQLException {
+        for (int i = 0; i < size; i++) {
+            for (int idTimeBin = 0; idTimeBin < timeBinCount; idTimeBin++) {
+                int cursor = 1;
+                ps.setLong(cursor++, pk[i]);
+                ps.setObject(cursor++, geometries[i]);
+                int offset = (i * timeBinCount + idTimeBin) * frequencyCount;
+                for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                    ps.setDouble(cursor++, levels[offset + idFreq]);
+                }
+                ps.setInt(cursor, idTimeBin * timeBinSize);
+                ps.addBatch();
+            }
+        }
+        ps.executeBatch();
+    }
+
+    /**
+     * Create the output table then compute and insert the levels of the receivers, in the order of the receivers
+     * table. The next chunk of receivers is computed while the previous one is inserted.
+     */
+    long writeLevels(Connection connection, String receiversTable, String outputTable, int timeBinSize,
+                     int threadCount) throws SQLException {
+        StringBuilder createTableQuery = new StringBuilder("CREATE TABLE " + outputTable +
+                " (PK integer PRIMARY KEY AUTO_INCREMENT, IDRECEIVER integer, THE_GEOM geometry");
+        StringBuilder insertIntoQuery = new StringBuilder("INSERT INTO " + outputTable + "(IDRECEIVER, THE_GEOM");
+        StringBuilder insertIntoValuesQuery = new StringBuilder("?,?");
+        for (int frequency : RoadCoefficientsCnossos.FREQUENCIES) {
+            createTableQuery.append(", HZ").append(frequency).append(" double precision");
+            insertIntoQuery.append(", HZ").append(frequency);
+            insertIntoValuesQuery.append(", ?");
+        }
+        createTableQuery.append(", TIME int)");
+        insertIntoQuery.append(", TIME) VALUES (").append(insertIntoValuesQuery).append(", ?)");
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + outputTable);
+            st.execute(createTableQuery.toString());
+        }
+        if (threadCount <= 0) {
+            threadCount = Runtime.getRuntime().availableProcessors();
+        }
+        int spectrumSize = timeBinCount * frequencyCount;
+        // two buffers, one is computed while the other one is written
+        int[][] receivers = new int[2][RECEIVER_BATCH_SIZE];
+        long[][] pk = new long[2][RECEIVER_BATCH_SIZE];
+        Geometry[][] geometries = new Geometry[2][RECEIVER_BATCH_SIZE];
+        double[][] levels = new double[2][RECEIVER_BATCH_SIZE * spectrumSize];
+        int[] size = new int[2];
+        List<Future<?>> pending = null;
+        int buffer = 0;
+        long receiverCount = 0;
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try (Statement st = connection.createStatement();
+             PreparedStatement ps = connection.prepareStatement(insertIntoQuery.toString())) {
+            st.setFetchSize(FETCH_SIZE);
+            try (SpatialResultSet rs = st.executeQuery("SELECT PK, THE_GEOM FROM " + receiversTable)
+                    .unwrap(SpatialResultSet.class)) {
+                boolean hasNext = rs.next();
+                while (hasNext || pending != null) {
+                    size[buffer] = 0;
+                    while (hasNext && size[buffer] < RECEIVER_BATCH_SIZE) {
+                        long receiverPk = rs.getLong(1);
+                        int idReceiver = Arrays.binarySearch(receiversPk, receiverPk);
+                        if (idReceiver >= 0) {
+                            receivers[buffer][size[buffer]] = idReceiver;
+                            pk[buffer][size[buffer]] = receiverPk;
+                            geometries[buffer][size[buffer]] = rs.getGeometry(2);
+                            size[buffer]++;
+                        }
+                        hasNext = rs.next();
+                    }
+                    List<Future<?>> submitted = size[buffer] > 0 ? submit(executorService, threadCount,
+                            receivers[buffer], size[buffer], levels[buffer]) : null;
+                    if (pending != null) {
+                        int previous = 1 - buffer;
+                        await(pending);
+                        insert(ps, pk[previous], geometries[previous], size[previous], levels[previous],
+                                timeBinSize);
+                        receiverCount += size[previous];
+                    }
+                    pending = submitted;
+                    buffer = 1 - buffer;
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        LOGGER.info(String.format("%d receivers written in %s for %d time bins", receiverCount, outputTable,
+                timeBinCount));
+        return receiverCount;
+    }
+}
@@ -0,0 +1,110 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write the attenuation between receivers and sources into a sparse binary file.
+ * Only the sources that reach a receiver are stored. The attenuation does not depend on the source emission, so the
+ * sound levels can be computed again for new emissions without computing the propagation paths.
+ * <pre>
+ * Header:   int magic, int version, int periodCount, int frequencyCount, int[frequencyCount] frequencies
+ * Receiver: long receiver pk, int sourceCount,
+ *           for each source: long source pk, float[periodCount * frequencyCount] attenuation in dB
+ * </pre>
+ * All values are little endian. The file can be read with {@link AttenuationMatrixReader}.
+ * Receivers can be written from multiple threads.
+ */
+public class AttenuationMatrixWriter implements Closeable {
+    public static final int MAGIC = 0x544D4E4E; // NNMT
+    public static final int VERSION = 1;
+
+    private final FileChannel channel;
+    private final int periodCount;
+    private final int frequencyCount;
+    private long receiverCount = 0;
+
+    /**
+     * Create or overwrite the file
+     * @param file Output file
+     * @param periodCount Number of time periods
+     * @param frequencies Frequency bands
+     * @throws IOException Error while creating the file
+     */
+    public AttenuationMatrixWriter(File file, int periodCount, int[] frequencies) throws IOException {
+        this.periodCount = periodCount;
+        this.frequencyCount = frequencies.length;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate((4 + frequencies.length) * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(periodCount);
+        header.putInt(frequencies.length);
+        for (int frequency : frequencies) {
+            header.putInt(frequency);
+        }
+        header.flip();
+        write(header);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return Number of values stored for each source, periodCount * frequencyCount
+     */
+    public int getSpectrumSize() {
+        return periodCount * frequencyCount;
+    }
+
+    /**
+     * @return Number of receivers written
+     */
+    public synchronized long getReceiverCount() {
+        return receiverCount;
+    }
+
+    /**
+     * Write the attenuation of the sources that reach a receiver
+     * @param receiverPk Receiver primary key
+     * @param sourceCount Number of sources
+     * @param sourcesPk Sources primary key
+     * @param attenuation Attenuation in dB, attenuation[(idSource * periodCount + idPeriod) * frequencyCount + idFreq]
+     * @throws IOException Error while writing the file
+     */
+    public void writeReceiver(long receiverPk, int sourceCount, long[] sourcesPk, double[] attenuation)
+            throws IOException {
+        int spectrumSize = getSpectrumSize();
+        ByteBuffer record = ByteBuffer.allocate(Long.BYTES + Integer.BYTES
+                + sourceCount * (Long.BYTES + spectrumSize * Float.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(receiverPk);
+        record.putInt(sourceCount);
+        for (int idSource = 0; idSource < sourceCount; idSource++) {
+            record.putLong(sourcesPk[idSource]);
+            int offset = idSource * spectrumSize;
+            for (int i = 0; i < spectrumSize; i++) {
+                record.putFloat((float) attenuation[offset + i]);
+            }
+        }
+        record.flip();
+        synchronized (this) {
+            write(record);
+            receiverCount++;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
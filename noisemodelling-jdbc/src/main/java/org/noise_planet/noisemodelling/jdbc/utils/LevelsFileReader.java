@@ -0,0 +1,250 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read the sound levels file written by {@link LevelsFileWriter}.
+ * The file is mapped in memory, the values are read on demand and rows can be accessed in any order.
+ * Once opened, the reader can be shared between threads.
+ */
+public class LevelsFileReader implements Closeable {
+    /** Maximum size of a mapped region of the file */
+    static final long MAXIMUM_SEGMENT_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final boolean hasSourceId;
+    private final String[] columnNames;
+    private final long rowCount;
+    private final MappedByteBuffer[] segments;
+    /** First row of each block, with the total row count at the end */
+    private final long[] blockFirstRow;
+    private final int[] blockSegment;
+    private final int[] blockOffset;
+
+    /**
+     * Open the file and index the blocks
+     * @param file File written by {@link LevelsFileWriter}
+     * @throws IOException Error while reading the file, or the file is not a levels file
+     */
+    public LevelsFileReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, 6 * Integer.BYTES);
+            if (header.getInt() != LevelsFileWriter.MAGIC) {
+                throw new IOException("Not a sound levels file " + file);
+            }
+            int version = header.getInt();
+            if (version != LevelsFileWriter.VERSION) {
+                throw new IOException("Unsupported sound levels file version " + version);
+            }
+            hasSourceId = (header.getInt() & LevelsFileWriter.FLAG_SOURCE_ID) != 0;
+            columnNames = new String[header.getInt()];
+            rowCount = header.getLong();
+            long position = header.capacity();
+            for (int idColumn = 0; idColumn < columnNames.length; idColumn++) {
+                int length = read(position, Short.BYTES).getShort() & 0xFFFF;
+                position += Short.BYTES;
+                columnNames[idColumn] = new String(read(position, length).array(), StandardCharsets.UTF_8);
+                position += length;
+            }
+            // Index blocks
+            List<Long> blockPositions = new ArrayList<>();
+            List<Long> firstRows = new ArrayList<>();
+            long readRows = 0;
+            while (readRows < rowCount) {
+                int blockRowCount = read(position, Integer.BYTES).getInt();
+                if (blockRowCount <= 0) {
+                    throw new IOException("Corrupted sound levels file " + file);
+                }
+                blockPositions.add(position);
+                firstRows.add(readRows);
+                readRows += blockRowCount;
+                position += LevelsFileWriter.getBlockSize(blockRowCount, hasSourceId, columnNames.length);
+            }
+            int blockCount = blockPositions.size();
+            blockFirstRow = new long[blockCount + 1];
+            blockSegment = new int[blockCount];
+            blockOffset = new int[blockCount];
+            blockFirstRow[blockCount] = rowCount;
+            // Map the blocks by segments of whole blocks
+            List<MappedByteBuffer> mappedSegments = new ArrayList<>();
+            int idBlock = 0;
+            while (idBlock < blockCount) {
+                long segmentStart = blockPositions.get(idBlock);
+                long segmentEnd = segmentStart;
+                int firstBlock = idBlock;
+                while (idBlock < blockCount) {
+                    long blockEnd = idBlock + 1 < blockCount ? blockPositions.get(idBlock + 1) : position;
+                    if (idBlock > firstBlock && blockEnd - segmentStart > MAXIMUM_SEGMENT_SIZE) {
+                        break;
+                    }
+                    blockFirstRow[idBlock] = firstRows.get(idBlock);
+                    blockSegment[idBlock] = mappedSegments.size();
+                    blockOffset[idBlock] = (int) (blockPositions.get(idBlock) - segmentStart);
+                    segmentEnd = blockEnd;
+                    idBlock++;
+                }
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart,
+                        segmentEnd - segmentStart);
+                segment.order(ByteOrder.LITTLE_ENDIAN);
+                mappedSegments.add(segment);
+            }
+            segments = mappedSegments.toArray(new MappedByteBuffer[0]);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return Number of rows
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return True if the rows contain the primary key of the source
+     */
+    public boolean hasSourceId() {
+        return hasSourceId;
+    }
+
+    /**
+     * @return Name of the level columns
+     */
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    /**
+     * @return Number of blocks, each block contain a contiguous range of rows
+     */
+    public int getBlockCount() {
+        return blockSegment.length;
+    }
+
+    /**
+     * @param idBlock Block index
+     * @return Index of the first row of this block
+     */
+    public long getBlockFirstRow(int idBlock) {
+        return blockFirstRow[idBlock];
+    }
+
+    /**
+     * @param idBlock Block index
+     * @return Number of rows of this block
+     */
+    public int getBlockRowCount(int idBlock) {
+        return (int) (blockFirstRow[idBlock + 1] - blockFirstRow[idBlock]);
+    }
+
+    /**
+     * @param row Row index
+     * @return Index of the block that contain this row
+     */
+    public int getBlockIndex(long row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of range [0, " + rowCount + "[");
+        }
+        int index = Arrays.binarySearch(blockFirstRow, row);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * @param row Row index
+     * @return Primary key of the receiver
+     */
+    public long getReceiverId(long row) {
+        int idBlock = getBlockIndex(row);
+        int blockRow = (int) (row - blockFirstRow[idBlock]);
+        return segments[blockSegment[idBlock]].getLong(blockOffset[idBlock] + Integer.BYTES + blockRow * Long.BYTES);
+    }
+
+    /**
+     * @param row Row index
+     * @return Primary key of the source, -1 if the file does not contain the sources
+     */
+    public long getSourceId(long row) {
+        if (!hasSourceId) {
+            return -1;
+        }
+        int idBlock = getBlockIndex(row);
+        int blockRowCount = getBlockRowCount(idBlock);
+        int blockRow = (int) (row - blockFirstRow[idBlock]);
+        return segments[blockSegment[idBlock]].getLong(blockOffset[idBlock] + Integer.BYTES
+                + (blockRowCount + blockRow) * Long.BYTES);
+    }
+
+    /**
+     * @param row Row index
+     * @param idColumn Column index
+     * @return Level value
+     */
+    public float getValue(long row, int idColumn) {
+        int idBlock = getBlockIndex(row);
+        int blockRowCount = getBlockRowCount(idBlock);
+        int blockRow = (int) (row - blockFirstRow[idBlock]);
+        return segments[blockSegment[idBlock]].getFloat(getColumnOffset(idBlock, blockRowCount, idColumn)
+                + blockRow * Float.BYTES);
+    }
+
+    private int getColumnOffset(int idBlock, int blockRowCount, int idColumn) {
+        return blockOffset[idBlock] + Integer.BYTES + blockRowCount * (hasSourceId ? 2 : 1) * Long.BYTES
+                + idColumn * blockRowCount * Float.BYTES;
+    }
+
+    /**
+     * Copy all the values of a block
+     * @param idBlock Block index
+     * @param receiverIds Receivers primary keys, of size {@link #getBlockRowCount(int)} or more
+     * @param sourceIds Sources primary keys, ignored if null or if the file does not contain the sources
+     * @param columns Destination of each column values, columns[idColumn][row]. A null column is not read.
+     */
+    public void readBlock(int idBlock, long[] receiverIds, long[] sourceIds, float[][] columns) {
+        int blockRowCount = getBlockRowCount(idBlock);
+        // Duplicate in order to not modify the position of the shared buffer
+        ByteBuffer segment = segments[blockSegment[idBlock]].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        segment.position(blockOffset[idBlock] + Integer.BYTES);
+        segment.asLongBuffer().get(receiverIds, 0, blockRowCount);
+        if (hasSourceId && sourceIds != null) {
+            segment.position(segment.position() + blockRowCount * Long.BYTES);
+            segment.asLongBuffer().get(sourceIds, 0, blockRowCount);
+        }
+        for (int idColumn = 0; idColumn < columns.length; idColumn++) {
+            if (columns[idColumn] != null) {
+                segment.position(getColumnOffset(idBlock, blockRowCount, idColumn));
+                segment.asFloatBuffer().get(columns[idColumn], 0, blockRowCount);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,138 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
+import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.ScalarFunction;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * H2 table function that expose a sound levels file written by {@link LevelsFileWriter}.
+ * The rows are read from the file while the result set is iterated.
+ * Usage:
+ * <pre>
+ * H2GISFunctions.registerFunction(connection.createStatement(), new LevelsFileTableFunction(), "");
+ * SELECT * FROM NM_READ_LEVELS('/path/LDEN_GEOM.nmlv');
+ * </pre>
+ */
+public class LevelsFileTableFunction extends AbstractFunction implements ScalarFunction {
+    /** H2 call the table function with this connection url when only the columns are required */
+    private static final String HACK_URL = "jdbc:columnlist:connection";
+
+    public LevelsFileTableFunction() {
+        addProperty(PROP_NAME, "NM_READ_LEVELS");
+        addProperty(PROP_REMARKS, "Read the sound levels binary file written by NoiseModelling." +
+                " Columns are IDRECEIVER, IDSOURCE (if the sources have not been merged) then the level columns.");
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "readLevels";
+    }
+
+    /**
+     * @param connection Active connection
+     * @param fileName Path of the sound levels file
+     * @return Table content
+     * @throws SQLException Error while reading the file
+     */
+    public static ResultSet readLevels(Connection connection, String fileName) throws SQLException {
+        File file = new File(fileName);
+        try {
+            if (HACK_URL.equals(connection.getMetaData().getURL())) {
+                // Only the columns are required, read the header
+                try (LevelsFileReader reader = new LevelsFileReader(file)) {
+                    SimpleResultSet rs = new SimpleResultSet();
+                    addColumns(rs, reader);
+                    return rs;
+                }
+            }
+            LevelsRowSource rowSource = new LevelsRowSource(new LevelsFileReader(file));
+            SimpleResultSet rs = new SimpleResultSet(rowSource);
+            addColumns(rs, rowSource.reader);
+            return rs;
+        } catch (IOException ex) {
+            throw new SQLException(ex.getLocalizedMessage(), ex);
+        }
+    }
+
+    private static void addColumns(SimpleResultSet rs, LevelsFileReader reader) {
+        rs.addColumn("IDRECEIVER", Types.BIGINT, 19, 0);
+        if (reader.hasSourceId()) {
+            rs.addColumn("IDSOURCE", Types.BIGINT, 19, 0);
+        }
+        for (String columnName : reader.getColumnNames()) {
+            rs.addColumn(columnName, Types.REAL, 24, 0);
+        }
+    }
+
+    /**
+     * Read the rows one block at a time
+     */
+    private static class LevelsRowSource implements SimpleRowSource {
+        private final LevelsFileReader reader;
+        private final long[] receiverIds;
+        private final long[] sourceIds;
+        private final float[][] columns;
+        private int idBlock = -1;
+        private int blockRowCount = 0;
+        private int blockRow = 0;
+
+        LevelsRowSource(LevelsFileReader reader) {
+            this.reader = reader;
+            int maximumBlockRowCount = 0;
+            for (int i = 0; i < reader.getBlockCount(); i++) {
+                maximumBlockRowCount = Math.max(maximumBlockRowCount, reader.getBlockRowCount(i));
+            }
+            receiverIds = new long[maximumBlockRowCount];
+            sourceIds = reader.hasSourceId() ? new long[maximumBlockRowCount] : null;
+            columns = new float[reader.getColumnNames().length][maximumBlockRowCount];
+        }
+
+        @Override
+        public Object[] readRow() {
+            if (blockRow >= blockRowCount) {
+                if (idBlock + 1 >= reader.getBlockCount()) {
+                    return null;
+                }
+                idBlock++;
+                reader.readBlock(idBlock, receiverIds, sourceIds, columns);
+                blockRowCount = reader.getBlockRowCount(idBlock);
+                blockRow = 0;
+            }
+            Object[] row = new Object[(sourceIds != null ? 2 : 1) + columns.length];
+            int idField = 0;
+            row[idField++] = receiverIds[blockRow];
+            if (sourceIds != null) {
+                row[idField++] = sourceIds[blockRow];
+            }
+            for (float[] column : columns) {
+                row[idField++] = column[blockRow];
+            }
+            blockRow++;
+            return row;
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        }
+
+        @Override
+        public void reset() {
+            idBlock = -1;
+            blockRowCount = 0;
+            blockRow = 0;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write sound levels into a binary columnar file through memory-mapped NIO.
+ * The file is made of a header followed by blocks of rows. In each block the values are stored column by column:
+ * the receivers primary keys, the optional sources primary keys, then one float32 column for each level column.
+ * <pre>
+ * Header:  int magic, int version, int flags, int columnCount, long rowCount,
+ *          for each column: short name length, UTF-8 name
+ * Block:   int blockRowCount, long[blockRowCount] receiver pk, (long[blockRowCount] source pk),
+ *          for each column: float[blockRowCount]
+ * </pre>
+ * All values are little endian. The file can be read with {@link LevelsFileReader}.
+ */
+public class LevelsFileWriter implements Closeable {
+    public static final int MAGIC = 0x564C4D4E; // NMLV
+    public static final int VERSION = 1;
+    public static final int FLAG_SOURCE_ID = 1;
+    public static final String FILE_EXTENSION = "nmlv";
+    /** Size of the file regions mapped in memory while writing */
+    static final long MAPPING_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final boolean hasSourceId;
+    private final String[] columnNames;
+    private final int headerSize;
+    private MappedByteBuffer mapped;
+    private long mappedPosition = 0;
+    private long position;
+    private long rowCount = 0;
+
+    /**
+     * Create or overwrite the file
+     * @param file Output file
+     * @param hasSourceId True if the rows contain the primary key of the source
+     * @param columnNames Name of the float columns (ex: HZ63, HZ125 ..., LAEQ, LEQ)
+     * @throws IOException Error while creating the file
+     */
+    public LevelsFileWriter(File file, boolean hasSourceId, String[] columnNames) throws IOException {
+        this.hasSourceId = hasSourceId;
+        this.columnNames = columnNames.clone();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        int size = 6 * Integer.BYTES;
+        for (String columnName : columnNames) {
+            size += Short.BYTES + columnName.getBytes(StandardCharsets.UTF_8).length;
+        }
+        headerSize = size;
+        position = headerSize;
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(hasSourceId ? FLAG_SOURCE_ID : 0);
+        header.putInt(columnNames.length);
+        header.putLong(rowCount);
+        for (String columnName : columnNames) {
+            byte[] name = columnName.getBytes(StandardCharsets.UTF_8);
+            header.putShort((short) name.length);
+            header.put(name);
+        }
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * @return Number of columns of levels
+     */
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    /**
+     * @return Number of rows written
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Map the file region where the next block is written
+     * @param size Size of the block in bytes
+     */
+    private void ensureCapacity(long size) throws IOException {
+        if (mapped == null || position + size > mappedPosition + mapped.capacity()) {
+            mappedPosition = position;
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(MAPPING_CHUNK_SIZE, size));
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        mapped.position((int) (position - mappedPosition));
+    }
+
+    /**
+     * Write a block of rows
+     * @param blockRowCount Number of rows to read in the provided arrays
+     * @param receiverIds Primary key of the receivers
+     * @param sourceIds Primary key of the sources, ignored if the file does not contain the sources
+     * @param columns Values of each column, columns[idColumn][row]
+     * @throws IOException Error while writing the file
+     */
+    public void writeBlock(int blockRowCount, long[] receiverIds, long[] sourceIds, double[][] columns)
+            throws IOException {
+        if (columns.length != columnNames.length) {
+            throw new IllegalArgumentException("Expected " + columnNames.length + " columns, got " + columns.length);
+        }
+        if (blockRowCount == 0) {
+            return;
+        }
+        long size = getBlockSize(blockRowCount, hasSourceId, columnNames.length);
+        ensureCapacity(size);
+        mapped.putInt(blockRowCount);
+        mapped.asLongBuffer().put(receiverIds, 0, blockRowCount);
+        mapped.position(mapped.position() + blockRowCount * Long.BYTES);
+        if (hasSourceId) {
+            mapped.asLongBuffer().put(sourceIds, 0, blockRowCount);
+            mapped.position(mapped.position() + blockRowCount * Long.BYTES);
+        }
+        for (double[] column : columns) {
+            for (int i = 0; i < blockRowCount; i++) {
+                mapped.putFloat((float) column[i]);
+            }
+        }
+        position += size;
+        rowCount += blockRowCount;
+    }
+
+    /**
+     * @return Size in bytes of a block
+     */
+    static long getBlockSize(int blockRowCount, boolean hasSourceId, int columnCount) {
+        return Integer.BYTES + (long) blockRowCount * ((hasSourceId ? 2L : 1L) * Long.BYTES
+                + (long) columnCount * Float.BYTES);
+    }
+
+    /**
+     * Write the final row count and release the file
+     * @throws IOException Error while writing the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (mapped != null) {
+                mapped.force();
+                mapped = null;
+            }
+            writeHeader();
+            try {
+                // Remove the unused part of the last mapped region
+                channel.truncate(position);
+            } catch (IOException ex) {
+                // Some systems do not allow to truncate a mapped file,
+                // the reader stops at the row count stored in the header
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
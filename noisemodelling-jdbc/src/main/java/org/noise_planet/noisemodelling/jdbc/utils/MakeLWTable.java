@@ -2,9 +2,14 @@ package org.noise_planet.noisemodelling.jdbc.utils;
 
 import org.h2gis.functions.spatial.convert.ST_Force3D;
 import org.h2gis.functions.spatial.edit.ST_UpdateZ;
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBUtils;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
+import org.noise_planet.noisemodelling.emission.RoadCoefficientsCnossos;
 import org.noise_planet.noisemodelling.jdbc.LDENConfig;
 import org.noise_planet.noisemodelling.jdbc.RailWayLWIterator;
 import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
@@ -12,13 +17,23 @@ import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Functions to generate Sound source table from traffic tables
  */
 public class MakeLWTable {
+    /** Number of road segments read, evaluated then written at once */
+    public static final int ROAD_BATCH_SIZE = 8192;
 
     /**
      * Generate Train emission from train geometry tracks and train traffic
@@ -161,4 +176,104 @@ public class MakeLWTable {
         // Add primary key to the LW table
         connection.createStatement().execute("ALTER TABLE "+outputTable+" ADD PK INT AUTO_INCREMENT PRIMARY KEY;");
     }
+
+    /**
+     * Generate the road emission table from the road traffic table. The traffic table is read by chunks of
+     * {@link #ROAD_BATCH_SIZE} road segments, the emission of a chunk is evaluated by multiple threads then inserted
+     * with a batch statement. The traffic columns are the ones of
+     * {@link org.noise_planet.noisemodelling.jdbc.LDENPropagationProcessData#getEmissionFromResultSet}.
+     * @param connection Connection
+     * @param roadTableName Road traffic table, with an integer primary key and a geometry column
+     * @param outputTable Created table with the columns PK, THE_GEOM, LWD63..LWD8000, LWE63..LWE8000, LWN63..LWN8000
+     * @param coefficientVersion Cnossos coefficients version (1 = 2015, 2 = 2019)
+     * @param threadCount Number of threads, 0 for all available processors
+     * @throws SQLException Error while reading or writing the tables
+     */
+    public static void makeRoadLWTable(Connection connection, String roadTableName, String outputTable,
+                                       int coefficientVersion, int threadCount) throws SQLException {
+        TableLocation roadTable = TableLocation.parse(roadTableName, DBUtils.getDBType(connection));
+        List<String> geometryFields = GeometryTableUtilities.getGeometryColumnNames(connection, roadTable);
+        if (geometryFields.isEmpty()) {
+            throw new SQLException(String.format("The table %s does not exists or does not contain a geometry field",
+                    roadTable));
+        }
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, roadTable);
+        if (pkIndex < 1) {
+            throw new SQLException(String.format("Source table %s does not contain a primary key", roadTable));
+        }
+        int[] frequencies = RoadCoefficientsCnossos.FREQUENCIES;
+        StringBuilder createTableQuery = new StringBuilder("create table " + outputTable + " (PK integer, THE_GEOM GEOMETRY");
+        StringBuilder insertIntoQuery = new StringBuilder("INSERT INTO " + outputTable + "(PK, THE_GEOM");
+        StringBuilder insertIntoValuesQuery = new StringBuilder("?,?");
+        for (String period : RoadTrafficBatch.PERIODS) {
+            for (int frequency : frequencies) {
+                createTableQuery.append(", LW").append(period).append(frequency).append(" double precision");
+                insertIntoQuery.append(", LW").append(period).append(frequency);
+                insertIntoValuesQuery.append(", ?");
+            }
+        }
+        createTableQuery.append(")");
+        insertIntoQuery.append(") VALUES (").append(insertIntoValuesQuery).append(")");
+        try (Statement st = connection.createStatement()) {
+            st.execute("drop table if exists " + outputTable);
+            st.execute(createTableQuery.toString());
+        }
+        if (threadCount <= 0) {
+            threadCount = Runtime.getRuntime().availableProcessors();
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try (Statement st = connection.createStatement();
+             PreparedStatement ps = connection.prepareStatement(insertIntoQuery.toString())) {
+            st.setFetchSize(ROAD_BATCH_SIZE);
+            try (ResultSet rs = st.executeQuery("SELECT * FROM " + roadTable)) {
+                int geometryIndex = JDBCUtilities.getFieldIndex(rs.getMetaData(), geometryFields.get(0));
+                RoadTrafficBatch batch = new RoadTrafficBatch(rs.getMetaData(), pkIndex, geometryIndex,
+                        ROAD_BATCH_SIZE);
+                double[] lw = new double[ROAD_BATCH_SIZE * RoadTrafficBatch.PERIODS.length * frequencies.length];
+                while (batch.read(rs) > 0) {
+                    evaluate(executorService, threadCount, batch, coefficientVersion, frequencies, lw);
+                    int spectrumSize = RoadTrafficBatch.PERIODS.length * frequencies.length;
+                    for (int row = 0; row < batch.size(); row++) {
+                        int cursor = 1;
+                        ps.setLong(cursor++, batch.getPk(row));
+                        ps.setObject(cursor++, batch.getGeometry(row));
+                        for (int i = row * spectrumSize; i < (row + 1) * spectrumSize; i++) {
+                            ps.setDouble(cursor++, lw[i]);
+                        }
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Evaluate the emission of a chunk of road segments, split in ranges of rows computed by the executor
+     */
+    static void evaluate(ExecutorService executorService, int threadCount, RoadTrafficBatch batch,
+                         int coefficientVersion, int[] frequencies, double[] lw) throws SQLException {
+        int rangeSize = Math.max(1, (batch.size() + threadCount - 1) / threadCount);
+        List<Callable<Void>> tasks = new ArrayList<>(threadCount);
+        for (int from = 0; from < batch.size(); from += rangeSize) {
+            final int rangeFrom = from;
+            final int rangeTo = Math.min(batch.size(), from + rangeSize);
+            tasks.add(() -> {
+                batch.evaluate(rangeFrom, rangeTo, coefficientVersion, frequencies, lw);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : executorService.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (ExecutionException ex) {
+            throw new SQLException(ex.getCause().getLocalizedMessage(), ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(ex);
+        }
+    }
 }
@@ -0,0 +1,206 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Read the persons of a MATSim population file (plans.xml or plans.xml.gz) one at a time, with a streaming parser.
+ * Only the person attributes and the activities of the selected plan are kept, so the memory used does not depend on
+ * the number of persons. The person attributes of the population_v6 format (attributes element) and of the older
+ * formats (person element attributes) are read.
+ */
+public class MatsimPlansReader implements Closeable {
+    private final InputStream inputStream;
+    private final XMLStreamReader reader;
+
+    /**
+     * @param file Population file, compressed if the name ends with .gz
+     * @throws IOException Error while opening the file
+     */
+    public MatsimPlansReader(File file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()));
+        try {
+            if (file.getName().endsWith(".gz")) {
+                in = new GZIPInputStream(in);
+            }
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            // do not download the MATSim dtd
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            reader = factory.createXMLStreamReader(in);
+        } catch (XMLStreamException | RuntimeException ex) {
+            in.close();
+            throw new IOException("Can not read the population file " + file, ex);
+        }
+        inputStream = in;
+    }
+
+    /**
+     * @return The next person, null at the end of the file
+     * @throws IOException Error while reading the file
+     */
+    public AgentPlan next() throws IOException {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "person".equals(reader.getLocalName())) {
+                    return readPerson();
+                }
+            }
+            return null;
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Read the person element, the reader is on the person start element
+     */
+    private AgentPlan readPerson() throws XMLStreamException {
+        AgentPlan person = new AgentPlan(reader.getAttributeValue(null, "id"));
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name = reader.getAttributeLocalName(i);
+            if (!"id".equals(name)) {
+                person.attributes.put(name, reader.getAttributeValue(i));
+            }
+        }
+        List<PlanActivity> plan = null;
+        boolean selectedPlan = false;
+        boolean inPlan = false;
+        boolean inPlanSelected = false;
+        int depth = 1;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = reader.getLocalName();
+                if (depth == 2 && "plan".equals(name)) {
+                    inPlan = true;
+                    inPlanSelected = "yes".equals(reader.getAttributeValue(null, "selected"));
+                    // keep the first plan if there is no selected plan
+                    if (inPlanSelected || plan == null) {
+                        plan = new ArrayList<>();
+                        selectedPlan = inPlanSelected;
+                    } else if (!selectedPlan) {
+                        inPlan = false;
+                    }
+                } else if (depth == 3 && "attribute".equals(name)) {
+                    // person attributes of the population_v6 format, parent element is attributes
+                    String attributeName = reader.getAttributeValue(null, "name");
+                    String value = reader.getElementText();
+                    depth--;
+                    if (attributeName != null) {
+                        person.attributes.put(attributeName, value.trim());
+                    }
+                } else if (depth == 3 && inPlan && (inPlanSelected || !selectedPlan) && "activity".equals(name)) {
+                    plan.add(new PlanActivity(reader.getAttributeValue(null, "type"),
+                            reader.getAttributeValue(null, "facility"),
+                            parseDouble(reader.getAttributeValue(null, "x")),
+                            parseDouble(reader.getAttributeValue(null, "y")),
+                            parseTime(reader.getAttributeValue(null, "start_time")),
+                            parseTime(reader.getAttributeValue(null, "end_time"))));
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                if (depth == 1 && "plan".equals(reader.getLocalName())) {
+                    inPlan = false;
+                } else if (depth == 0) {
+                    break;
+                }
+            }
+        }
+        if (plan != null) {
+            person.activities.addAll(plan);
+        }
+        return person;
+    }
+
+    private static double parseDouble(String value) {
+        return value == null || value.isEmpty() ? Double.NaN : Double.parseDouble(value);
+    }
+
+    /**
+     * @param time Time with the MATSim format, HH:MM:SS, HH:MM or seconds
+     * @return Time in seconds, NaN if undefined
+     */
+    static double parseTime(String time) {
+        if (time == null || time.isEmpty() || "undefined".equals(time)) {
+            return Double.NaN;
+        }
+        String[] parts = time.split(":");
+        double seconds = 0;
+        if (parts.length == 1) {
+            return Double.parseDouble(time);
+        }
+        boolean negative = parts[0].startsWith("-");
+        seconds += Math.abs(Double.parseDouble(parts[0])) * 3600 + Double.parseDouble(parts[1]) * 60;
+        if (parts.length > 2) {
+            seconds += Double.parseDouble(parts[2]);
+        }
+        return negative ? -seconds : seconds;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException ex) {
+            // ignore
+        }
+        inputStream.close();
+    }
+
+    /**
+     * Person attributes and activities of the selected plan
+     */
+    public static class AgentPlan {
+        public final String id;
+        public final Map<String, String> attributes = new HashMap<>();
+        public final List<PlanActivity> activities = new ArrayList<>();
+
+        public AgentPlan(String id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Activity of a plan, the times are NaN if not defined
+     */
+    public static class PlanActivity {
+        public final String type;
+        /** Facility identifier, null if not defined */
+        public final String facilityId;
+        public final double x;
+        public final double y;
+        public final double startTime;
+        public final double endTime;
+
+        public PlanActivity(String type, String facilityId, double x, double y, double startTime, double endTime) {
+            this.type = type;
+            this.facilityId = facilityId;
+            this.x = x;
+            this.y = y;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        /**
+         * @return True if the activity has coordinates
+         */
+        public boolean hasCoord() {
+            return !Double.isNaN(x) && !Double.isNaN(y);
+        }
+    }
+}
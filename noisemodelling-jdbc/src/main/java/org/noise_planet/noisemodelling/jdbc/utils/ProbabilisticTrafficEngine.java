@@ -0,0 +1,599 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation.VerticeSL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+/**
+ * Monte-Carlo evaluation of the sound levels of sources that have a random emission state, see
+ * <b>Aumond, P., Jacquesson, L., &amp; Can, A. (2018). Probabilistic modeling framework for multisource sound mapping.
+ * Applied Acoustics, 139, 34-43.</b>
+ * Each source has a set of emission states with their probability, the source is silent the remaining time. At each
+ * iteration the state of every source is drawn, then the level of the receivers is the energetic sum of the
+ * attenuation matrix with the drawn emissions.
+ * The attenuation matrix is stored by receivers in primitive arrays (compressed sparse rows). The iterations are
+ * computed by blocks, the source states of a block are drawn in parallel, one random stream by iteration, then the
+ * receivers are split between the threads. The results only depend on the seed, not on the number of threads.
+ * The statistics are updated at each iteration so the levels of the iterations are not stored:
+ * <ul>
+ *     <li>The energetic mean of each frequency band over the iterations</li>
+ *     <li>The histogram of the global level (energetic sum of the weighted bands) for the exceeded levels
+ *     (L10, L50, L90..)</li>
+ *     <li>The probability that the global level exceeds the provided thresholds</li>
+ * </ul>
+ */
+public class ProbabilisticTrafficEngine {
+    private static final int INITIAL_CAPACITY = 1024;
+    /** Number of iterations in a block by thread */
+    private static final int BLOCK_ITERATIONS_BY_THREAD = 8;
+
+    private final int frequencyCount;
+    private long seed = System.nanoTime();
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private double histogramResolution = 0.1;
+    private double histogramRange = 80;
+    private double[] exceedanceThresholds = new double[0];
+    /** Weight in W of each frequency band for the global level */
+    private final double[] bandWeights;
+
+    // Sources, as added
+    private final List<Long> sourcesPkList = new ArrayList<>();
+    private final List<double[]> sourcesProbabilityList = new ArrayList<>();
+    private final List<double[][]> sourcesEmissionList = new ArrayList<>();
+
+    // Attenuation matrix, as added
+    private int entryCount = 0;
+    private long[] entryReceiverPk = new long[INITIAL_CAPACITY];
+    private long[] entrySourcePk = new long[INITIAL_CAPACITY];
+    private double[] entryAttenuation;
+
+    // Sources sorted by primary key
+    private long[] sourcesPk;
+    /** States of the source i are in [sourceStateOffsets[i], sourceStateOffsets[i + 1]) */
+    private int[] sourceStateOffsets;
+    /** Cumulative probability of the states */
+    private double[] stateThresholds;
+    /** Emission in W, stateEmission[idState * frequencyCount + idFreq] */
+    private double[] stateEmission;
+
+    // Attenuation matrix sorted by receivers
+    private long[] receiversPk;
+    /** Sources of the receiver i are in [receiverOffsets[i], receiverOffsets[i + 1]) */
+    private int[] receiverOffsets;
+    private int[] matrixSource;
+    /** Attenuation in W, matrixAttenuation[idEntry * frequencyCount + idFreq] */
+    private double[] matrixAttenuation;
+
+    // Statistics
+    private int iterationCount = 0;
+    /** Sum over the iterations of the power in W, levelsSum[idReceiver * frequencyCount + idFreq] */
+    private double[] levelsSum;
+    /** Lower bound in dB of the histogram of each receiver */
+    private double[] histogramLowerBound;
+    /** Bins of the receiver i are in [histogramOffsets[i], histogramOffsets[i + 1]) */
+    private int[] histogramOffsets;
+    private int[] histogram;
+    /** Number of iterations where no source reach the receiver */
+    private int[] silentIterations;
+    /** exceedanceCount[idReceiver * exceedanceThresholds.length + idThreshold] */
+    private int[] exceedanceCount;
+
+    /**
+     * @param frequencyCount Number of frequency bands of the emission and of the attenuation
+     */
+    public ProbabilisticTrafficEngine(int frequencyCount) {
+        this.frequencyCount = frequencyCount;
+        entryAttenuation = new double[INITIAL_CAPACITY * frequencyCount];
+        bandWeights = new double[frequencyCount];
+        Arrays.fill(bandWeights, 1.0);
+    }
+
+    /**
+     * @param seed Seed of the random streams, the same seed give the same results
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param threadCount Number of threads used to draw the sources states and evaluate the receivers
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param histogramResolution Width in dB of the bins of the global level histogram
+     */
+    public void setHistogramResolution(double histogramResolution) {
+        this.histogramResolution = histogramResolution;
+    }
+
+    /**
+     * @param histogramRange Range in dB of the global level histogram below the maximum level of the receiver. The
+     *                       lower levels are counted in the first bin.
+     */
+    public void setHistogramRange(double histogramRange) {
+        this.histogramRange = histogramRange;
+    }
+
+    /**
+     * @param exceedanceThresholds Global levels in dB, the probability to exceed these levels is evaluated
+     */
+    public void setExceedanceThresholds(double... exceedanceThresholds) {
+        this.exceedanceThresholds = exceedanceThresholds.clone();
+    }
+
+    /**
+     * @param bandWeights Weighting in dB of each frequency band for the global level (ex. A-weighting), the global
+     *                    level is the energetic sum of the bands without weighting by default
+     */
+    public void setBandWeights(double[] bandWeights) {
+        if (bandWeights.length != frequencyCount) {
+            throw new IllegalArgumentException("Expected " + frequencyCount + " band weights");
+        }
+        for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+            this.bandWeights[idFreq] = dbaToW(bandWeights[idFreq]);
+        }
+    }
+
+    /**
+     * Add a source
+     * @param sourcePk Source identifier, the same as in the attenuation matrix
+     * @param statesProbability Probability of each emission state, the sum must not exceed 1. The source is silent
+     *                          the remaining time.
+     * @param statesEmission Emission spectrum in dB of each state
+     */
+    public void addSource(long sourcePk, double[] statesProbability, double[][] statesEmission) {
+        if (statesProbability.length != statesEmission.length) {
+            throw new IllegalArgumentException("Each state must have a probability and an emission");
+        }
+        double sum = 0;
+        for (int idState = 0; idState < statesProbability.length; idState++) {
+            if (statesProbability[idState] < 0) {
+                throw new IllegalArgumentException("Negative probability for the source " + sourcePk);
+            }
+            if (statesEmission[idState].length != frequencyCount) {
+                throw new IllegalArgumentException("Expected " + frequencyCount + " frequency bands for the source "
+                        + sourcePk);
+            }
+            sum += statesProbability[idState];
+        }
+        if (sum > 1 + 1e-9) {
+            throw new IllegalArgumentException("The sum of the states probability of the source " + sourcePk +
+                    " exceed 1");
+        }
+        sourcesPkList.add(sourcePk);
+        sourcesProbabilityList.add(statesProbability.clone());
+        sourcesEmissionList.add(statesEmission.clone());
+        sourcesPk = null;
+    }
+
+    /**
+     * Add an element of the attenuation matrix. Elements with NaN values are ignored.
+     * @param receiverPk Receiver identifier
+     * @param sourcePk Source identifier
+     * @param attenuation Attenuation in dB of each frequency band
+     */
+    public void addAttenuation(long receiverPk, long sourcePk, double[] attenuation) {
+        for (double value : attenuation) {
+            if (Double.isNaN(value)) {
+                return;
+            }
+        }
+        if (entryCount == entryReceiverPk.length) {
+            int capacity = entryCount * 2;
+            entryReceiverPk = Arrays.copyOf(entryReceiverPk, capacity);
+            entrySourcePk = Arrays.copyOf(entrySourcePk, capacity);
+            entryAttenuation = Arrays.copyOf(entryAttenuation, capacity * frequencyCount);
+        }
+        entryReceiverPk[entryCount] = receiverPk;
+        entrySourcePk[entryCount] = sourcePk;
+        for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+            entryAttenuation[entryCount * frequencyCount + idFreq] = dbaToW(attenuation[idFreq]);
+        }
+        entryCount++;
+        sourcesPk = null;
+    }
+
+    /**
+     * Add the elements of the attenuation matrix
+     * @param attenuation Attenuation in dB between receivers and sources
+     */
+    public void addAttenuation(Collection<VerticeSL> attenuation) {
+        for (VerticeSL verticeSL : attenuation) {
+            addAttenuation(verticeSL.receiverId, verticeSL.sourceId, verticeSL.value);
+        }
+    }
+
+    /**
+     * Sort the sources and the attenuation matrix
+     */
+    private void prepare() {
+        if (sourcesPk != null) {
+            return;
+        }
+        // Sources
+        int sourceCount = sourcesPkList.size();
+        Integer[] sourceOrder = new Integer[sourceCount];
+        for (int i = 0; i < sourceCount; i++) {
+            sourceOrder[i] = i;
+        }
+        Arrays.sort(sourceOrder, (a, b) -> Long.compare(sourcesPkList.get(a), sourcesPkList.get(b)));
+        sourcesPk = new long[sourceCount];
+        sourceStateOffsets = new int[sourceCount + 1];
+        int stateCount = 0;
+        for (int i = 0; i < sourceCount; i++) {
+            sourcesPk[i] = sourcesPkList.get(sourceOrder[i]);
+            if (i > 0 && sourcesPk[i] == sourcesPk[i - 1]) {
+                throw new IllegalArgumentException("Duplicate source " + sourcesPk[i]);
+            }
+            sourceStateOffsets[i] = stateCount;
+            stateCount += sourcesProbabilityList.get(sourceOrder[i]).length;
+        }
+        sourceStateOffsets[sourceCount] = stateCount;
+        stateThresholds = new double[stateCount];
+        stateEmission = new double[stateCount * frequencyCount];
+        for (int i = 0; i < sourceCount; i++) {
+            double[] probability = sourcesProbabilityList.get(sourceOrder[i]);
+            double[][] emission = sourcesEmissionList.get(sourceOrder[i]);
+            double threshold = 0;
+            for (int idState = 0; idState < probability.length; idState++) {
+                int state = sourceStateOffsets[i] + idState;
+                threshold += probability[idState];
+                // the rounding errors must not let the source silent
+                stateThresholds[state] = threshold > 1 - 1e-9 ? 1 : threshold;
+                for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                    stateEmission[state * frequencyCount + idFreq] = dbaToW(emission[idState][idFreq]);
+                }
+            }
+        }
+        // Attenuation matrix, the entries of unknown sources are dropped
+        int[] entrySource = new int[entryCount];
+        long[] sortedReceivers = new long[entryCount];
+        int validCount = 0;
+        for (int idEntry = 0; idEntry < entryCount; idEntry++) {
+            entrySource[idEntry] = Arrays.binarySearch(sourcesPk, entrySourcePk[idEntry]);
+            if (entrySource[idEntry] >= 0) {
+                sortedReceivers[validCount++] = entryReceiverPk[idEntry];
+            }
+        }
+        Arrays.sort(sortedReceivers, 0, validCount);
+        int receiverCount = 0;
+        for (int i = 0; i < validCount; i++) {
+            if (receiverCount == 0 || sortedReceivers[receiverCount - 1] != sortedReceivers[i]) {
+                sortedReceivers[receiverCount++] = sortedReceivers[i];
+            }
+        }
+        receiversPk = Arrays.copyOf(sortedReceivers, receiverCount);
+        // counting sort of the entries by receiver, the insertion order is kept for a receiver
+        int[] entryReceiver = new int[entryCount];
+        receiverOffsets = new int[receiverCount + 1];
+        for (int idEntry = 0; idEntry < entryCount; idEntry++) {
+            if (entrySource[idEntry] >= 0) {
+                entryReceiver[idEntry] = Arrays.binarySearch(receiversPk, entryReceiverPk[idEntry]);
+                receiverOffsets[entryReceiver[idEntry] + 1]++;
+            }
+        }
+        for (int idReceiver = 0; idReceiver < receiverCount; idReceiver++) {
+            receiverOffsets[idReceiver + 1] += receiverOffsets[idReceiver];
+        }
+        int[] position = Arrays.copyOf(receiverOffsets, receiverCount);
+        matrixSource = new int[validCount];
+        matrixAttenuation = new double[validCount * frequencyCount];
+        for (int idEntry = 0; idEntry < entryCount; idEntry++) {
+            if (entrySource[idEntry] >= 0) {
+                int target = position[entryReceiver[idEntry]]++;
+                matrixSource[target] = entrySource[idEntry];
+                System.arraycopy(entryAttenuation, idEntry * frequencyCount, matrixAttenuation,
+                        target * frequencyCount, frequencyCount);
+            }
+        }
+    }
+
+    /**
+     * Allocate the statistics, the histogram of each receiver covers its possible global levels
+     */
+    private void initStatistics() {
+        int receiverCount = receiversPk.length;
+        levelsSum = new double[receiverCount * frequencyCount];
+        silentIterations = new int[receiverCount];
+        exceedanceCount = new int[receiverCount * exceedanceThresholds.length];
+        histogramLowerBound = new double[receiverCount];
+        histogramOffsets = new int[receiverCount + 1];
+        long binCount = 0;
+        for (int idReceiver = 0; idReceiver < receiverCount; idReceiver++) {
+            double minimumPower = 0;
+            double maximumPower = 0;
+            for (int idEntry = receiverOffsets[idReceiver]; idEntry < receiverOffsets[idReceiver + 1]; idEntry++) {
+                int source = matrixSource[idEntry];
+                double sourceMinimum = sourceStateOffsets[source] == sourceStateOffsets[source + 1] ||
+                        stateThresholds[sourceStateOffsets[source + 1] - 1] < 1 ? 0 : Double.MAX_VALUE;
+                double sourceMaximum = 0;
+                for (int state = sourceStateOffsets[source]; state < sourceStateOffsets[source + 1]; state++) {
+                    double power = 0;
+                    for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                        power += bandWeights[idFreq] * matrixAttenuation[idEntry * frequencyCount + idFreq] *
+                                stateEmission[state * frequencyCount + idFreq];
+                    }
+                    sourceMinimum = Math.min(sourceMinimum, power);
+                    sourceMaximum = Math.max(sourceMaximum, power);
+                }
+                minimumPower += sourceMinimum;
+                maximumPower += sourceMaximum;
+            }
+            double upperBound = wToDba(maximumPower);
+            double lowerBound = Math.max(wToDba(minimumPower), upperBound - histogramRange);
+            int bins = 1;
+            if (maximumPower > 0 && upperBound > lowerBound) {
+                bins = (int) Math.ceil((upperBound - lowerBound) / histogramResolution) + 1;
+            }
+            // the first bin is centered on the lower bound
+            histogramLowerBound[idReceiver] = maximumPower > 0 ? lowerBound - histogramResolution / 2 :
+                    Double.NEGATIVE_INFINITY;
+            histogramOffsets[idReceiver] = (int) binCount;
+            binCount += bins;
+            if (binCount > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Too many histogram bins, increase the histogram resolution or" +
+                        " reduce the histogram range");
+            }
+        }
+        histogramOffsets[receiverCount] = (int) binCount;
+        histogram = new int[(int) binCount];
+        iterationCount = 0;
+    }
+
+    /**
+     * Compute the iterations and update the statistics, the previous statistics are cleared
+     * @param iterations Number of iterations
+     */
+    public void run(int iterations) {
+        run(iterations, null);
+    }
+
+    /**
+     * Compute the iterations and update the statistics, the previous statistics are cleared
+     * @param iterations Number of iterations
+     * @param iterationListener Receive the levels of each iteration, may be null
+     */
+    public void run(int iterations, IterationListener iterationListener) {
+        prepare();
+        initStatistics();
+        int sourceCount = sourcesPk.length;
+        int receiverCount = receiversPk.length;
+        int blockSize = Math.max(1, Math.min(iterations, threadCount * BLOCK_ITERATIONS_BY_THREAD));
+        int[] blockStates = new int[blockSize * sourceCount];
+        SplittableRandom random = new SplittableRandom(seed);
+        SplittableRandom[] iterationRandom = new SplittableRandom[blockSize];
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (int blockStart = 0; blockStart < iterations; blockStart += blockSize) {
+                final int firstIteration = blockStart;
+                final int blockIterations = Math.min(blockSize, iterations - blockStart);
+                // one random stream by iteration, split in the iteration order
+                for (int i = 0; i < blockIterations; i++) {
+                    iterationRandom[i] = random.split();
+                }
+                List<Callable<Void>> tasks = new ArrayList<>(blockIterations);
+                for (int i = 0; i < blockIterations; i++) {
+                    final int blockIteration = i;
+                    tasks.add(() -> {
+                        drawStates(iterationRandom[blockIteration], blockStates, blockIteration * sourceCount);
+                        return null;
+                    });
+                }
+                invokeAll(executorService, tasks);
+                tasks.clear();
+                int rangeSize = Math.max(1, (receiverCount + threadCount - 1) / threadCount);
+                for (int from = 0; from < receiverCount; from += rangeSize) {
+                    final int rangeFrom = from;
+                    final int rangeTo = Math.min(receiverCount, from + rangeSize);
+                    tasks.add(() -> {
+                        evaluateReceivers(rangeFrom, rangeTo, blockStates, blockIterations, firstIteration,
+                                iterationListener);
+                        return null;
+                    });
+                }
+                invokeAll(executorService, tasks);
+                iterationCount += blockIterations;
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static void invokeAll(ExecutorService executorService, List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> future : executorService.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause().getLocalizedMessage(), ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Draw the state of all the sources for one iteration
+     * @param random Random stream of the iteration
+     * @param states Drawn state index of each source, -1 if silent
+     * @param offset Position of the first source in states
+     */
+    private void drawStates(SplittableRandom random, int[] states, int offset) {
+        for (int source = 0; source < sourcesPk.length; source++) {
+            double value = random.nextDouble();
+            int drawnState = -1;
+            for (int state = sourceStateOffsets[source]; state < sourceStateOffsets[source + 1]; state++) {
+                if (value < stateThresholds[state]) {
+                    drawnState = state;
+                    break;
+                }
+            }
+            states[offset + source] = drawnState;
+        }
+    }
+
+    /**
+     * Evaluate the levels of a range of receivers for the iterations of a block and update their statistics
+     */
+    private void evaluateReceivers(int from, int to, int[] blockStates, int blockIterations, int firstIteration,
+                                   IterationListener iterationListener) {
+        int sourceCount = sourcesPk.length;
+        double[] power = new double[frequencyCount];
+        double[] levels = new double[frequencyCount];
+        for (int idReceiver = from; idReceiver < to; idReceiver++) {
+            int levelsOffset = idReceiver * frequencyCount;
+            for (int blockIteration = 0; blockIteration < blockIterations; blockIteration++) {
+                int statesOffset = blockIteration * sourceCount;
+                Arrays.fill(power, 0);
+                boolean silent = true;
+                for (int idEntry = receiverOffsets[idReceiver]; idEntry < receiverOffsets[idReceiver + 1];
+                     idEntry++) {
+                    int state = blockStates[statesOffset + matrixSource[idEntry]];
+                    if (state < 0) {
+                        continue;
+                    }
+                    silent = false;
+                    int attenuationOffset = idEntry * frequencyCount;
+                    int emissionOffset = state * frequencyCount;
+                    for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                        power[idFreq] += matrixAttenuation[attenuationOffset + idFreq] *
+                                stateEmission[emissionOffset + idFreq];
+                    }
+                }
+                if (silent) {
+                    silentIterations[idReceiver]++;
+                    continue;
+                }
+                double globalPower = 0;
+                for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                    levelsSum[levelsOffset + idFreq] += power[idFreq];
+                    globalPower += bandWeights[idFreq] * power[idFreq];
+                }
+                double globalLevel = wToDba(globalPower);
+                int bins = histogramOffsets[idReceiver + 1] - histogramOffsets[idReceiver];
+                int bin = (int) Math.floor((globalLevel - histogramLowerBound[idReceiver]) / histogramResolution);
+                histogram[histogramOffsets[idReceiver] + Math.max(0, Math.min(bins - 1, bin))]++;
+                for (int idThreshold = 0; idThreshold < exceedanceThresholds.length; idThreshold++) {
+                    if (globalLevel > exceedanceThresholds[idThreshold]) {
+                        exceedanceCount[idReceiver * exceedanceThresholds.length + idThreshold]++;
+                    }
+                }
+                if (iterationListener != null) {
+                    for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+                        levels[idFreq] = wToDba(power[idFreq]);
+                    }
+                    iterationListener.onIteration(firstIteration + blockIteration, receiversPk[idReceiver], levels);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of iterations of the last run
+     */
+    public int getIterationCount() {
+        return iterationCount;
+    }
+
+    /**
+     * @return Number of receivers reached by at least one source
+     */
+    public int getReceiverCount() {
+        prepare();
+        return receiversPk.length;
+    }
+
+    /**
+     * @param receiverIndex Receiver index in [0, getReceiverCount())
+     * @return Receiver identifier
+     */
+    public long getReceiverPk(int receiverIndex) {
+        prepare();
+        return receiversPk[receiverIndex];
+    }
+
+    /**
+     * @param receiverIndex Receiver index in [0, getReceiverCount())
+     * @return Energetic mean over the iterations of each frequency band in dB
+     */
+    public double[] getEquivalentLevels(int receiverIndex) {
+        double[] levels = new double[frequencyCount];
+        for (int idFreq = 0; idFreq < frequencyCount; idFreq++) {
+            levels[idFreq] = wToDba(levelsSum[receiverIndex * frequencyCount + idFreq] / iterationCount);
+        }
+        return levels;
+    }
+
+    /**
+     * @param receiverIndex Receiver index in [0, getReceiverCount())
+     * @param percent Percentage of the iterations, ex. 10 for L10
+     * @return Global level in dB exceeded or reached in this percentage of the iterations, with the precision of
+     * the histogram resolution. Negative infinity if no source reach the receiver in these iterations.
+     */
+    public double getExceededLevel(int receiverIndex, double percent) {
+        long rank = Math.max(1, (long) Math.ceil(percent / 100.0 * iterationCount));
+        long count = 0;
+        int firstBin = histogramOffsets[receiverIndex];
+        for (int bin = histogramOffsets[receiverIndex + 1] - 1; bin >= firstBin; bin--) {
+            count += histogram[bin];
+            if (count >= rank) {
+                return histogramLowerBound[receiverIndex] + (bin - firstBin + 0.5) * histogramResolution;
+            }
+        }
+        return Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @param receiverIndex Receiver index in [0, getReceiverCount())
+     * @param thresholdIndex Index of the threshold provided in {@link #setExceedanceThresholds(double...)}
+     * @return Ratio of the iterations where the global level is greater than the threshold
+     */
+    public double getExceedanceProbability(int receiverIndex, int thresholdIndex) {
+        return exceedanceCount[receiverIndex * exceedanceThresholds.length + thresholdIndex] /
+                (double) iterationCount;
+    }
+
+    /**
+     * @param receiverIndex Receiver index in [0, getReceiverCount())
+     * @return Ratio of the iterations where no source reach the receiver
+     */
+    public double getSilentProbability(int receiverIndex) {
+        return silentIterations[receiverIndex] / (double) iterationCount;
+    }
+
+    /**
+     * Receive the levels of the receivers at each iteration
+     */
+    public interface IterationListener {
+        /**
+         * Called by the computation threads, the implementation must be thread safe. Not called when no source reach
+         * the receiver.
+         * @param iteration Iteration index starting from 0
+         * @param receiverPk Receiver identifier
+         * @param levels Level in dB of each frequency band, the array is reused after the call
+         */
+        void onIteration(int iteration, long receiverPk, double[] levels);
+    }
+}
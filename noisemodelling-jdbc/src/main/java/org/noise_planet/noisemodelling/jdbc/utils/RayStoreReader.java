@@ -0,0 +1,337 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read the propagation paths stored by {@link RayStoreWriter}. The index is loaded in memory, sorted by receiver
+ * primary key, then the blocks are read on demand, so the paths of a receiver or of a receiver and a source are read
+ * without reading the other receivers. The reading methods can be called from multiple threads.
+ * The identifiers of the paths read are the receiver and source primary keys, an {@link IOException} is thrown when
+ * a primary key does not fit in the integer identifiers of {@link PropagationPath}.
+ */
+public class RayStoreReader implements Closeable {
+    private final File directory;
+    private final boolean compressed;
+    private final long[] receiversPk;
+    private final int[] segments;
+    private final long[] offsets;
+    private final int[] storedLengths;
+    private final int[] blockLengths;
+    private final List<FileChannel> segmentChannels = new ArrayList<>();
+
+    /**
+     * @param directory Folder of the store written by {@link RayStoreWriter}
+     * @throws IOException Error while reading the index, or the folder does not contain a ray store
+     */
+    public RayStoreReader(File directory) throws IOException {
+        this.directory = directory;
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(new File(directory,
+                RayStoreWriter.INDEX_FILE_NAME).toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        if (index.remaining() < RayStoreWriter.HEADER_SIZE || index.getInt() != RayStoreWriter.MAGIC) {
+            throw new IOException("Not a ray store " + directory);
+        }
+        int version = index.getInt();
+        if (version != RayStoreWriter.VERSION) {
+            throw new IOException("Unsupported ray store version " + version);
+        }
+        compressed = index.getInt() != 0;
+        int receiverCount = index.remaining() / RayStoreWriter.INDEX_ENTRY_SIZE;
+        // The receivers are written in the order of the computation threads, sort them by primary key
+        long[] entriesPk = new long[receiverCount];
+        Integer[] order = new Integer[receiverCount];
+        for (int i = 0; i < receiverCount; i++) {
+            entriesPk[i] = index.getLong(RayStoreWriter.HEADER_SIZE + i * RayStoreWriter.INDEX_ENTRY_SIZE);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(entriesPk[a], entriesPk[b]));
+        receiversPk = new long[receiverCount];
+        segments = new int[receiverCount];
+        offsets = new long[receiverCount];
+        storedLengths = new int[receiverCount];
+        blockLengths = new int[receiverCount];
+        for (int i = 0; i < receiverCount; i++) {
+            index.position(RayStoreWriter.HEADER_SIZE + order[i] * RayStoreWriter.INDEX_ENTRY_SIZE);
+            receiversPk[i] = index.getLong();
+            segments[i] = index.getInt();
+            offsets[i] = index.getLong();
+            storedLengths[i] = index.getInt();
+            blockLengths[i] = index.getInt();
+        }
+    }
+
+    /**
+     * @return True if the blocks are compressed
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return Number of receivers
+     */
+    public int getReceiverCount() {
+        return receiversPk.length;
+    }
+
+    /**
+     * @param idReceiver Receiver index, from 0 to {@link #getReceiverCount()}, sorted by primary key
+     * @return Receiver primary key
+     */
+    public long getReceiverPk(int idReceiver) {
+        return receiversPk[idReceiver];
+    }
+
+    private synchronized FileChannel getSegmentChannel(int segment) throws IOException {
+        while (segmentChannels.size() <= segment) {
+            segmentChannels.add(null);
+        }
+        FileChannel channel = segmentChannels.get(segment);
+        if (channel == null) {
+            channel = FileChannel.open(new File(directory, RayStoreWriter.getSegmentFileName(segment)).toPath(),
+                    StandardOpenOption.READ);
+            segmentChannels.set(segment, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Read and decompress the block of a receiver
+     * @param idReceiver Receiver index
+     * @return Block content
+     */
+    private byte[] readBlock(int idReceiver) throws IOException {
+        FileChannel channel = getSegmentChannel(segments[idReceiver]);
+        ByteBuffer stored = ByteBuffer.allocate(storedLengths[idReceiver]);
+        long position = offsets[idReceiver];
+        while (stored.hasRemaining()) {
+            // positional read, the channel is shared by the threads
+            int read = channel.read(stored, position + stored.position());
+            if (read < 0) {
+                throw new IOException("Truncated ray store segment " + segments[idReceiver]);
+            }
+        }
+        if (!compressed) {
+            return stored.array();
+        }
+        byte[] block = new byte[blockLengths[idReceiver]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored.array());
+            int length = 0;
+            while (length < block.length && !inflater.finished()) {
+                int inflated = inflater.inflate(block, length, block.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != block.length) {
+                throw new IOException("Corrupted ray store block of receiver " + receiversPk[idReceiver]);
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupted ray store block of receiver " + receiversPk[idReceiver], ex);
+        } finally {
+            inflater.end();
+        }
+        return block;
+    }
+
+    private static List<PropagationPath> readPaths(byte[] block, int position, long sourcePk, long receiverPk)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(block, position,
+                block.length - position));
+        ArrayList<PropagationPath> paths = new ArrayList<>();
+        PropagationPath.readPropagationPathListStream(in, paths);
+        int idSource = toPathId("source", sourcePk);
+        int idReceiver = toPathId("receiver", receiverPk);
+        for (PropagationPath path : paths) {
+            path.setIdSource(idSource);
+            path.setIdReceiver(idReceiver);
+        }
+        return paths;
+    }
+
+    /**
+     * @param primaryKey Source or receiver primary key
+     * @return Identifier of the propagation path
+     * @throws IOException The primary key does not fit in the integer identifier of the propagation path
+     */
+    private static int toPathId(String name, long primaryKey) throws IOException {
+        if (primaryKey < Integer.MIN_VALUE || primaryKey > Integer.MAX_VALUE) {
+            throw new IOException(String.format("The %s primary key %d of the ray store is out of the range of" +
+                    " the propagation path identifiers", name, primaryKey));
+        }
+        return (int) primaryKey;
+    }
+
+    /**
+     * @param idReceiver Receiver index
+     * @return All the records of the receiver
+     * @throws IOException Error while reading the store
+     */
+    public List<SourceRays> readReceiverAt(int idReceiver) throws IOException {
+        byte[] block = readBlock(idReceiver);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+        int recordCount = in.readInt();
+        int recordsPosition = Integer.BYTES + recordCount * (Long.BYTES + Double.BYTES + Integer.BYTES);
+        List<SourceRays> sourceRays = new ArrayList<>(recordCount);
+        for (int idRecord = 0; idRecord < recordCount; idRecord++) {
+            long sourcePk = in.readLong();
+            double sourceLi = in.readDouble();
+            int offset = in.readInt();
+            sourceRays.add(new SourceRays(sourcePk, sourceLi, readPaths(block, recordsPosition + offset,
+                    sourcePk, receiversPk[idReceiver])));
+        }
+        return sourceRays;
+    }
+
+    /**
+     * @param receiverPk Receiver primary key
+     * @return All the records of the receiver, empty if the receiver is not in the store
+     * @throws IOException Error while reading the store
+     */
+    public List<SourceRays> readReceiver(long receiverPk) throws IOException {
+        int idReceiver = Arrays.binarySearch(receiversPk, receiverPk);
+        if (idReceiver < 0) {
+            return Collections.emptyList();
+        }
+        return readReceiverAt(idReceiver);
+    }
+
+    /**
+     * Read only the paths of a source, the paths of the other sources of the receiver are not read
+     * @param receiverPk Receiver primary key
+     * @param sourcePk Source primary key
+     * @return Propagation paths between the source and the receiver, empty if there is none
+     * @throws IOException Error while reading the store
+     */
+    public List<PropagationPath> readRays(long receiverPk, long sourcePk) throws IOException {
+        int idReceiver = Arrays.binarySearch(receiversPk, receiverPk);
+        if (idReceiver < 0) {
+            return Collections.emptyList();
+        }
+        byte[] block = readBlock(idReceiver);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+        int recordCount = in.readInt();
+        int recordsPosition = Integer.BYTES + recordCount * (Long.BYTES + Double.BYTES + Integer.BYTES);
+        List<PropagationPath> paths = new ArrayList<>();
+        for (int idRecord = 0; idRecord < recordCount; idRecord++) {
+            long recordSourcePk = in.readLong();
+            in.readDouble();
+            int offset = in.readInt();
+            if (recordSourcePk == sourcePk) {
+                paths.addAll(readPaths(block, recordsPosition + offset, sourcePk, receiverPk));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Push again all the stored paths into an output, for example a
+     * {@link org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation} with other meteorological
+     * conditions. The source and receiver identifiers given to the output are the primary keys, the output must not
+     * have input data (the sources are then considered omnidirectional).
+     * @param out Output, each thread uses {@link IComputeRaysOut#subProcess()} if it is not null
+     * @param threadCount Number of threads
+     * @throws IOException Error while reading the store
+     */
+    public void replay(IComputeRaysOut out, int threadCount) throws IOException {
+        int receiverCount = getReceiverCount();
+        if (threadCount <= 1 || receiverCount < 2) {
+            IComputeRaysOut threadOut = out.subProcess();
+            replay(threadOut != null ? threadOut : out, 0, receiverCount);
+            return;
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>(threadCount);
+            int rangeSize = Math.max(1, (receiverCount + threadCount - 1) / threadCount);
+            for (int from = 0; from < receiverCount; from += rangeSize) {
+                final int rangeFrom = from;
+                final int rangeTo = Math.min(receiverCount, from + rangeSize);
+                IComputeRaysOut subProcess = out.subProcess();
+                final IComputeRaysOut threadOut = subProcess != null ? subProcess : out;
+                futures.add(executorService.submit(() -> {
+                    replay(threadOut, rangeFrom, rangeTo);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause().getLocalizedMessage(), ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private void replay(IComputeRaysOut out, int rangeFrom, int rangeTo) throws IOException {
+        for (int idReceiver = rangeFrom; idReceiver < rangeTo; idReceiver++) {
+            long receiverPk = receiversPk[idReceiver];
+            for (SourceRays sourceRays : readReceiverAt(idReceiver)) {
+                out.addPropagationPaths(sourceRays.sourcePk, sourceRays.sourceLi, receiverPk, sourceRays.paths);
+            }
+            out.finalizeReceiver(receiverPk);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException error = null;
+        for (FileChannel channel : segmentChannels) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    error = ex;
+                }
+            }
+        }
+        segmentChannels.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Propagation paths between a source and a receiver
+     */
+    public static class SourceRays {
+        public final long sourcePk;
+        /** Source power per meter coefficient */
+        public final double sourceLi;
+        public final List<PropagationPath> paths;
+
+        public SourceRays(long sourcePk, double sourceLi, List<PropagationPath> paths) {
+            this.sourcePk = sourcePk;
+            this.sourceLi = sourceLi;
+            this.paths = paths;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Write the propagation paths of each receiver into append only segment files, with an index to read the paths of a
+ * receiver, or of a receiver and a source, without reading the other ones. The paths can be evaluated again later
+ * with other meteorological conditions using {@link RayStoreReader}, without computing the propagation paths.
+ * <pre>
+ * Segment files (rays-00000.seg, rays-00001.seg..): blocks, one by receiver, optionally deflate compressed
+ * Block:       int recordCount, for each record: long source pk, double sourceLi, int record offset,
+ *              then the records: int pathCount, paths written with {@link PropagationPath#writeStream}
+ * Index file (rays.index): int magic, int version, int compressed (0 or 1),
+ *              for each receiver: long receiver pk, int segment, long block offset, int stored length,
+ *              int block length
+ * </pre>
+ * The block content is written with {@link DataOutputStream}, the index values are little endian.
+ * A source can have several records for the same receiver (one by source point of a line source).
+ * Receivers can be written from multiple threads, the encoding and the compression are done by the calling thread.
+ */
+public class RayStoreWriter implements Closeable {
+    public static final int MAGIC = 0x53524E4E; // NNRS
+    public static final int VERSION = 1;
+    public static final String INDEX_FILE_NAME = "rays.index";
+    public static final long DEFAULT_SEGMENT_SIZE = 256L << 20;
+    static final int HEADER_SIZE = 3 * Integer.BYTES;
+    static final int INDEX_ENTRY_SIZE = 2 * Long.BYTES + 3 * Integer.BYTES;
+
+    private final File directory;
+    private final boolean compress;
+    private final long segmentSize;
+    private final FileChannel indexChannel;
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel segmentChannel;
+    private int segment = 0;
+    private long segmentPosition = 0;
+    private long receiverCount = 0;
+
+    /**
+     * Create the store, the segments and the index of a previous store in the same folder are overwritten
+     * @param directory Output folder, created if it does not exist
+     * @param compress True to compress the blocks
+     * @throws IOException Error while creating the files
+     */
+    public RayStoreWriter(File directory, boolean compress) throws IOException {
+        this(directory, compress, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Create the store, the segments and the index of a previous store in the same folder are overwritten
+     * @param directory Output folder, created if it does not exist
+     * @param compress True to compress the blocks
+     * @param segmentSize A new segment file is started when this size would be exceeded
+     * @throws IOException Error while creating the files
+     */
+    public RayStoreWriter(File directory, boolean compress, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.compress = compress;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory.toPath());
+        File[] oldSegments = directory.listFiles((dir, name) -> name.startsWith("rays-") && name.endsWith(".seg"));
+        if (oldSegments != null) {
+            for (File oldSegment : oldSegments) {
+                Files.delete(oldSegment.toPath());
+            }
+        }
+        indexChannel = FileChannel.open(new File(directory, INDEX_FILE_NAME).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(compress ? 1 : 0);
+            header.flip();
+            write(indexChannel, header);
+            segmentChannel = openSegment(segment);
+        } catch (IOException ex) {
+            indexChannel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param segment Segment number
+     * @return Segment file name
+     */
+    static String getSegmentFileName(int segment) {
+        return String.format(Locale.ROOT, "rays-%05d.seg", segment);
+    }
+
+    private FileChannel openSegment(int segment) throws IOException {
+        return FileChannel.open(new File(directory, getSegmentFileName(segment)).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return Number of receivers written
+     */
+    public synchronized long getReceiverCount() {
+        return receiverCount;
+    }
+
+    /**
+     * Write the propagation paths of a receiver
+     * @param receiverPk Receiver primary key
+     * @param receiverRays Propagation paths of the receiver
+     * @throws IOException Error while writing the files
+     */
+    public void writeReceiver(long receiverPk, ReceiverRays receiverRays) throws IOException {
+        byte[] block = receiverRays.encode();
+        int blockLength = block.length;
+        int storedLength = blockLength;
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(block);
+                deflater.finish();
+                byte[] compressed = new byte[Math.max(64, blockLength / 2)];
+                storedLength = 0;
+                while (!deflater.finished()) {
+                    if (storedLength == compressed.length) {
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    }
+                    storedLength += deflater.deflate(compressed, storedLength, compressed.length - storedLength);
+                }
+                block = compressed;
+            } finally {
+                deflater.end();
+            }
+        }
+        synchronized (this) {
+            if (segmentPosition > 0 && segmentPosition + storedLength > segmentSize) {
+                segmentChannel.close();
+                segment++;
+                segmentChannel = openSegment(segment);
+                segmentPosition = 0;
+            }
+            write(segmentChannel, ByteBuffer.wrap(block, 0, storedLength));
+            indexEntry.clear();
+            indexEntry.putLong(receiverPk);
+            indexEntry.putInt(segment);
+            indexEntry.putLong(segmentPosition);
+            indexEntry.putInt(storedLength);
+            indexEntry.putInt(blockLength);
+            indexEntry.flip();
+            write(indexChannel, indexEntry);
+            segmentPosition += storedLength;
+            receiverCount++;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            segmentChannel.close();
+        } finally {
+            indexChannel.close();
+        }
+    }
+
+    /**
+     * Propagation paths of one receiver, the paths are serialized when they are added so the provided instances can
+     * be modified afterwards. An instance is used by only one thread.
+     */
+    public static class ReceiverRays {
+        private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(records);
+        private long[] sourcesPk = new long[16];
+        private double[] sourcesLi = new double[16];
+        private int[] offsets = new int[16];
+        private int recordCount = 0;
+
+        /**
+         * @param sourcePk Source primary key
+         * @param sourceLi Source power per meter coefficient
+         * @param propagationPaths Propagation paths between the source and the receiver
+         * @throws IOException Error while serializing the paths
+         */
+        public void addSource(long sourcePk, double sourceLi, List<PropagationPath> propagationPaths)
+                throws IOException {
+            if (recordCount == sourcesPk.length) {
+                sourcesPk = Arrays.copyOf(sourcesPk, recordCount * 2);
+                sourcesLi = Arrays.copyOf(sourcesLi, recordCount * 2);
+                offsets = Arrays.copyOf(offsets, recordCount * 2);
+            }
+            sourcesPk[recordCount] = sourcePk;
+            sourcesLi[recordCount] = sourceLi;
+            offsets[recordCount] = records.size();
+            recordCount++;
+            PropagationPath.writePropagationPathListStream(out, propagationPaths);
+        }
+
+        /**
+         * @return Number of records (source and source power coefficient)
+         */
+        public int getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * Remove all the records, to reuse this instance for the next receiver
+         */
+        public void clear() {
+            records.reset();
+            recordCount = 0;
+        }
+
+        /**
+         * @return Block content
+         */
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream block = new ByteArrayOutputStream(Integer.BYTES + recordCount *
+                    (Long.BYTES + Double.BYTES + Integer.BYTES) + records.size());
+            DataOutputStream blockOut = new DataOutputStream(block);
+            blockOut.writeInt(recordCount);
+            for (int idRecord = 0; idRecord < recordCount; idRecord++) {
+                blockOut.writeLong(sourcesPk[idRecord]);
+                blockOut.writeDouble(sourcesLi[idRecord]);
+                blockOut.writeInt(offsets[idRecord]);
+            }
+            records.writeTo(blockOut);
+            blockOut.flush();
+            return block.toByteArray();
+        }
+    }
+}
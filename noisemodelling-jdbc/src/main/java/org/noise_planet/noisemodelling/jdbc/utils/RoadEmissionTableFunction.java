@@ -0,0 +1,172 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
+import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.noise_planet.noisemodelling.emission.RoadCoefficientsCnossos;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * H2 table function that compute the road emission of a road traffic table.
+ * The road table is read by chunks while the result set is iterated, see
+ * {@link MakeLWTable#makeRoadLWTable(Connection, String, String, int, int)} for the traffic columns.
+ * Usage:
+ * <pre>
+ * H2GISFunctions.registerFunction(connection.createStatement(), new RoadEmissionTableFunction(), "");
+ * CREATE TABLE LW_ROADS AS SELECT * FROM NM_ROAD_EMISSION('ROADS');
+ * </pre>
+ */
+public class RoadEmissionTableFunction extends AbstractFunction implements ScalarFunction {
+    /** H2 call the table function with this connection url when only the columns are required */
+    private static final String HACK_URL = "jdbc:columnlist:connection";
+    private static final int DEFAULT_COEFFICIENT_VERSION = 2;
+
+    public RoadEmissionTableFunction() {
+        addProperty(PROP_NAME, "NM_ROAD_EMISSION");
+        addProperty(PROP_REMARKS, "Compute the CNOSSOS road emission of a traffic table." +
+                " Arguments are the road table name and optionally the coefficients version (1 = 2015, 2 = 2019)." +
+                " Columns are PK, THE_GEOM then LWD63..LWD8000, LWE63..LWE8000, LWN63..LWN8000");
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "roadEmission";
+    }
+
+    /**
+     * @param connection Active connection
+     * @param roadTableName Road traffic table
+     * @return Road emission
+     * @throws SQLException Error while reading the road table
+     */
+    public static ResultSet roadEmission(Connection connection, String roadTableName) throws SQLException {
+        return roadEmission(connection, roadTableName, DEFAULT_COEFFICIENT_VERSION);
+    }
+
+    /**
+     * @param connection Active connection
+     * @param roadTableName Road traffic table
+     * @param coefficientVersion Cnossos coefficients version (1 = 2015, 2 = 2019)
+     * @return Road emission
+     * @throws SQLException Error while reading the road table
+     */
+    public static ResultSet roadEmission(Connection connection, String roadTableName, int coefficientVersion)
+            throws SQLException {
+        if (HACK_URL.equals(connection.getMetaData().getURL())) {
+            // Only the columns are required
+            SimpleResultSet rs = new SimpleResultSet();
+            addColumns(rs);
+            return rs;
+        }
+        TableLocation roadTable = TableLocation.parse(roadTableName, DBUtils.getDBType(connection));
+        List<String> geometryFields = GeometryTableUtilities.getGeometryColumnNames(connection, roadTable);
+        if (geometryFields.isEmpty()) {
+            throw new SQLException(String.format("The table %s does not exists or does not contain a geometry field",
+                    roadTable));
+        }
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, roadTable);
+        if (pkIndex < 1) {
+            throw new SQLException(String.format("Source table %s does not contain a primary key", roadTable));
+        }
+        Statement st = connection.createStatement();
+        try {
+            st.setFetchSize(MakeLWTable.ROAD_BATCH_SIZE);
+            ResultSet roads = st.executeQuery("SELECT * FROM " + roadTable);
+            RoadTrafficBatch batch = new RoadTrafficBatch(roads.getMetaData(), pkIndex,
+                    JDBCUtilities.getFieldIndex(roads.getMetaData(), geometryFields.get(0)), MakeLWTable.ROAD_BATCH_SIZE);
+            SimpleResultSet rs = new SimpleResultSet(new RoadEmissionRowSource(st, roads, batch, coefficientVersion));
+            addColumns(rs);
+            return rs;
+        } catch (SQLException | RuntimeException ex) {
+            st.close();
+            throw ex;
+        }
+    }
+
+    private static void addColumns(SimpleResultSet rs) {
+        rs.addColumn("PK", Types.BIGINT, 19, 0);
+        rs.addColumn("THE_GEOM", Types.JAVA_OBJECT, "GEOMETRY", 0, 0);
+        for (String period : RoadTrafficBatch.PERIODS) {
+            for (int frequency : RoadCoefficientsCnossos.FREQUENCIES) {
+                rs.addColumn("LW" + period + frequency, Types.DOUBLE, 17, 0);
+            }
+        }
+    }
+
+    /**
+     * Read and evaluate the road segments one chunk at a time
+     */
+    private static class RoadEmissionRowSource implements SimpleRowSource {
+        private final Statement statement;
+        private final ResultSet roads;
+        private final RoadTrafficBatch batch;
+        private final int coefficientVersion;
+        private final int threadCount = Runtime.getRuntime().availableProcessors();
+        private final double[] lw;
+        private ExecutorService executorService;
+        private int row = 0;
+
+        RoadEmissionRowSource(Statement statement, ResultSet roads, RoadTrafficBatch batch, int coefficientVersion) {
+            this.statement = statement;
+            this.roads = roads;
+            this.batch = batch;
+            this.coefficientVersion = coefficientVersion;
+            lw = new double[MakeLWTable.ROAD_BATCH_SIZE * RoadTrafficBatch.PERIODS.length *
+                    RoadCoefficientsCnossos.FREQUENCIES.length];
+        }
+
+        @Override
+        public Object[] readRow() throws SQLException {
+            if (row >= batch.size()) {
+                if (batch.read(roads) == 0) {
+                    return null;
+                }
+                if (executorService == null) {
+                    executorService = Executors.newFixedThreadPool(threadCount);
+                }
+                MakeLWTable.evaluate(executorService, threadCount, batch, coefficientVersion,
+                        RoadCoefficientsCnossos.FREQUENCIES, lw);
+                row = 0;
+            }
+            int spectrumSize = RoadTrafficBatch.PERIODS.length * RoadCoefficientsCnossos.FREQUENCIES.length;
+            Object[] values = new Object[2 + spectrumSize];
+            values[0] = batch.getPk(row);
+            values[1] = batch.getGeometry(row);
+            for (int i = 0; i < spectrumSize; i++) {
+                values[2 + i] = lw[row * spectrumSize + i];
+            }
+            row++;
+            return values;
+        }
+
+        @Override
+        public void close() {
+            if (executorService != null) {
+                executorService.shutdown();
+            }
+            try {
+                statement.close();
+            } catch (SQLException ex) {
+                // ignore
+            }
+        }
+
+        @Override
+        public void reset() throws SQLException {
+            throw new SQLException("The road emission can not be read again");
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.utilities.SpatialResultSet;
+import org.locationtech.jts.geom.Geometry;
+import org.noise_planet.noisemodelling.emission.EvaluateRoadSourceCnossos;
+import org.noise_planet.noisemodelling.emission.RoadSourceParametersCnossos;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Traffic of a chunk of road segments stored by columns. The columns are the same as the ones read by
+ * {@link org.noise_planet.noisemodelling.jdbc.LDENPropagationProcessData#getEmissionFromResultSet}, their position in
+ * the result set is resolved once. The emission of the day, evening and night periods is evaluated on a range of rows,
+ * so distinct ranges can be evaluated by distinct threads.
+ */
+public class RoadTrafficBatch {
+    public static final String[] PERIODS = new String[]{"D", "E", "N"};
+    private static final String[] PERIOD_FIELDS = new String[]{"LV_SPD_", "MV_SPD_", "HGV_SPD_", "WAV_SPD_",
+            "WBV_SPD_", "LV_", "MV_", "HGV_", "WAV_", "WBV_", "TEMP_", "TV_", "HV_", "HV_SPD_"};
+    private static final int LV_SPD = 0;
+    private static final int MV_SPD = 1;
+    private static final int HGV_SPD = 2;
+    private static final int WAV_SPD = 3;
+    private static final int WBV_SPD = 4;
+    private static final int LV = 5;
+    private static final int MV = 6;
+    private static final int HGV = 7;
+    private static final int WAV = 8;
+    private static final int WBV = 9;
+    private static final int TEMP = 10;
+    private static final int TV = 11;
+    private static final int HV = 12;
+    private static final int HV_SPD = 13;
+    private static final String DEFAULT_ROAD_SURFACE = "NL08";
+
+    private final int capacity;
+    private final int pkColumn;
+    private final int geometryColumn;
+    /** Result set column of each period field, 0 if the field does not exists */
+    private final int[][] periodColumns = new int[PERIODS.length][PERIOD_FIELDS.length];
+    private final int pvmtColumn;
+    private final int tsStudColumn;
+    private final int pmStudColumn;
+    private final int junctionDistanceColumn;
+    private final int junctionTypeColumn;
+    private final int wayColumn;
+    private final int slopeColumn;
+
+    private int size = 0;
+    private final long[] pk;
+    private final Geometry[] geometries;
+    /** periodValues[period][field][row] */
+    private final double[][][] periodValues;
+    private final String[] roadSurfaces;
+    private final double[] tsStud;
+    private final double[] pmStud;
+    private final double[] junctionDistance;
+    private final int[] junctionType;
+    private final int[] way;
+    private final double[] slope;
+
+    /**
+     * @param metaData Road table result set meta data
+     * @param pkColumn Primary key column index
+     * @param geometryColumn Geometry column index, 0 to skip the geometries
+     * @param capacity Maximum number of road segments in this chunk
+     * @throws SQLException Error while reading the meta data
+     */
+    public RoadTrafficBatch(ResultSetMetaData metaData, int pkColumn, int geometryColumn, int capacity)
+            throws SQLException {
+        this.capacity = capacity;
+        this.pkColumn = pkColumn;
+        this.geometryColumn = geometryColumn;
+        for (int idPeriod = 0; idPeriod < PERIODS.length; idPeriod++) {
+            for (int idField = 0; idField < PERIOD_FIELDS.length; idField++) {
+                periodColumns[idPeriod][idField] = findColumn(metaData, PERIOD_FIELDS[idField] + PERIODS[idPeriod]);
+            }
+        }
+        pvmtColumn = findColumn(metaData, "PVMT");
+        tsStudColumn = findColumn(metaData, "TS_STUD");
+        pmStudColumn = findColumn(metaData, "PM_STUD");
+        junctionDistanceColumn = findColumn(metaData, "JUNC_DIST");
+        junctionTypeColumn = findColumn(metaData, "JUNC_TYPE");
+        wayColumn = findColumn(metaData, "WAY");
+        slopeColumn = findColumn(metaData, "SLOPE");
+        pk = new long[capacity];
+        geometries = new Geometry[capacity];
+        periodValues = new double[PERIODS.length][PERIOD_FIELDS.length][capacity];
+        roadSurfaces = new String[capacity];
+        tsStud = new double[capacity];
+        pmStud = new double[capacity];
+        junctionDistance = new double[capacity];
+        junctionType = new int[capacity];
+        way = new int[capacity];
+        slope = new double[capacity];
+    }
+
+    private static int findColumn(ResultSetMetaData metaData, String fieldName) throws SQLException {
+        for (int column = 1; column <= metaData.getColumnCount(); column++) {
+            if (fieldName.equalsIgnoreCase(metaData.getColumnLabel(column))) {
+                return column;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Replace the content of this chunk by the next rows of the result set
+     * @param rs Road table result set
+     * @return Number of road segments read, 0 if the result set is exhausted
+     * @throws SQLException Error while reading the result set
+     */
+    public int read(ResultSet rs) throws SQLException {
+        size = 0;
+        SpatialResultSet spatialResultSet = geometryColumn > 0 && rs.isWrapperFor(SpatialResultSet.class) ?
+                rs.unwrap(SpatialResultSet.class) : null;
+        while (size < capacity && rs.next()) {
+            int row = size++;
+            pk[row] = rs.getLong(pkColumn);
+            if (spatialResultSet != null) {
+                geometries[row] = spatialResultSet.getGeometry(geometryColumn);
+            } else if (geometryColumn > 0) {
+                Object geometry = rs.getObject(geometryColumn);
+                geometries[row] = geometry instanceof Geometry ? (Geometry) geometry : null;
+            }
+            for (int idPeriod = 0; idPeriod < PERIODS.length; idPeriod++) {
+                int[] columns = periodColumns[idPeriod];
+                double[][] values = periodValues[idPeriod];
+                for (int idField = 0; idField < columns.length; idField++) {
+                    values[idField][row] = columns[idField] > 0 ? rs.getDouble(columns[idField]) : 0;
+                }
+                if (columns[TEMP] == 0) {
+                    values[TEMP][row] = 20.0;
+                }
+            }
+            roadSurfaces[row] = pvmtColumn > 0 ? rs.getString(pvmtColumn) : DEFAULT_ROAD_SURFACE;
+            tsStud[row] = tsStudColumn > 0 ? rs.getDouble(tsStudColumn) : 0;
+            pmStud[row] = pmStudColumn > 0 ? rs.getDouble(pmStudColumn) : 0;
+            // no acceleration of deceleration changes with dist >= 100
+            junctionDistance[row] = junctionDistanceColumn > 0 ? rs.getDouble(junctionDistanceColumn) : 100;
+            junctionType[row] = junctionTypeColumn > 0 ? rs.getInt(junctionTypeColumn) : 2;
+            // default value 2-way road, also when the slope is not provided
+            way[row] = wayColumn > 0 && slopeColumn > 0 ? rs.getInt(wayColumn) : 3;
+            slope[row] = slopeColumn > 0 ? rs.getDouble(slopeColumn) : 0;
+        }
+        return size;
+    }
+
+    /**
+     * @return Number of road segments in this chunk
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param row Row index in this chunk
+     * @return Primary key of the road segment
+     */
+    public long getPk(int row) {
+        return pk[row];
+    }
+
+    /**
+     * @param row Row index in this chunk
+     * @return Geometry of the road segment, null if not read
+     */
+    public Geometry getGeometry(int row) {
+        return geometries[row];
+    }
+
+    /**
+     * Evaluate the emission of the day, evening and night periods of a range of rows
+     * @param from First row
+     * @param to Last row (excluded)
+     * @param coefficientVersion Cnossos coefficients version (1 = 2015, 2 = 2019)
+     * @param frequencies Octave frequency bands in Hz
+     * @param lw Emission in dB, lw[(row * PERIODS.length + idPeriod) * frequencies.length + idFrequency]
+     * @throws IOException Error while evaluating the emission
+     */
+    public void evaluate(int from, int to, int coefficientVersion, int[] frequencies, double[] lw) throws IOException {
+        RoadSourceParametersCnossos[] parameters = new RoadSourceParametersCnossos[(to - from) * PERIODS.length];
+        for (int row = from; row < to; row++) {
+            for (int idPeriod = 0; idPeriod < PERIODS.length; idPeriod++) {
+                double[][] values = periodValues[idPeriod];
+                double lvPerHour = values[LV][row];
+                double hgvPerHour = values[HGV][row];
+                double hgvSpeed = periodColumns[idPeriod][HV_SPD] > 0 ? values[HV_SPD][row] : values[HGV_SPD][row];
+                // old fields, total vehicles and heavy vehicles
+                double tv = values[TV][row];
+                double hv = values[HV][row];
+                if (tv > 0) {
+                    lvPerHour = tv - (hv + values[MV][row] + hgvPerHour + values[WAV][row] + values[WBV][row]);
+                }
+                if (hv > 0) {
+                    hgvPerHour = hv;
+                }
+                RoadSourceParametersCnossos rsParametersCnossos = new RoadSourceParametersCnossos(values[LV_SPD][row],
+                        values[MV_SPD][row], hgvSpeed, values[WAV_SPD][row], values[WBV_SPD][row], lvPerHour,
+                        values[MV][row], hgvPerHour, values[WAV][row], values[WBV][row], frequencies[0],
+                        values[TEMP][row], roadSurfaces[row], tsStud[row], pmStud[row], junctionDistance[row],
+                        junctionType[row]);
+                rsParametersCnossos.setSlopePercentage(slope[row]);
+                rsParametersCnossos.setWay(way[row]);
+                rsParametersCnossos.setCoeffVer(coefficientVersion);
+                parameters[(row - from) * PERIODS.length + idPeriod] = rsParametersCnossos;
+            }
+        }
+        double[] spectrum = new double[parameters.length * frequencies.length];
+        EvaluateRoadSourceCnossos.evaluate(parameters, parameters.length, frequencies, spectrum);
+        System.arraycopy(spectrum, 0, lw, from * PERIODS.length * frequencies.length, spectrum.length);
+    }
+}
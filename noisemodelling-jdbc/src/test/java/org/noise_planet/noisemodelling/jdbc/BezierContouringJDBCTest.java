@@ -6,19 +6,39 @@ import org.h2gis.functions.io.geojson.GeoJsonRead;
 import org.h2gis.functions.io.shp.SHPRead;
 import org.h2gis.functions.io.shp.SHPWrite;
 import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.jts_utils.Contouring;
+import org.h2gis.utilities.jts_utils.TriMarkers;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.index.quadtree.Quadtree;
+import org.locationtech.jts.operation.union.CascadedPolygonUnion;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
 import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
 
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.noise_planet.noisemodelling.emission.Utils.dbaToW;
 
 public class BezierContouringJDBCTest {
 
@@ -72,4 +92,206 @@ public class BezierContouringJDBCTest {
 
         SHPWrite.exportTable(connection, "target/contouring.shp", "CONTOURING_NOISE_MAP","UTF-8",true);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParallelBezierContouring() throws SQLException, IOException {
+        GeoJsonRead.importTable(connection, BezierContouringJDBCTest.class.getResource("lden_geom.geojson").getFile());
+        GeoJsonRead.importTable(connection, BezierContouringJDBCTest.class.getResource("triangles.geojson").getFile());
+        try(Statement st = connection.createStatement()) {
+            st.execute("ALTER TABLE LDEN_GEOM ALTER COLUMN IDRECEIVER INTEGER NOT NULL");
+            st.execute("ALTER TABLE LDEN_GEOM ADD PRIMARY KEY (IDRECEIVER)");
+            st.execute("ALTER TABLE TRIANGLES ALTER COLUMN PK INTEGER NOT NULL");
+            st.execute("ALTER TABLE TRIANGLES ADD PRIMARY KEY (PK)");
+            st.execute("CREATE INDEX ON TRIANGLES(CELL_ID)");
+        }
+        BezierContouring reference = new BezierContouring(BezierContouring.NF31_133_ISO, 2154);
+        reference.setPointTable("LDEN_GEOM");
+        reference.setPointTableField("LAEQ");
+        reference.setSmooth(true);
+        reference.setOutputTable("CONTOURING_REFERENCE");
+        createReferenceTable(connection, reference);
+        for(int threadCount : new int[] {1, 4}) {
+            BezierContouring bezierContouring = new BezierContouring(BezierContouring.NF31_133_ISO, 2154);
+            bezierContouring.setPointTable("LDEN_GEOM");
+            bezierContouring.setPointTableField("LAEQ");
+            bezierContouring.setSmooth(true);
+            bezierContouring.setThreadCount(threadCount);
+            bezierContouring.setOutputTable("CONTOURING_" + threadCount);
+            bezierContouring.createTable(connection);
+        }
+        try(Statement st = connection.createStatement()) {
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM CONTOURING_REFERENCE")) {
+                assertTrue(rs.next());
+                assertTrue(rs.getInt(1) > 0);
+            }
+            // The polygons are the same and are inserted in the same order as the sequential reference
+            // The reference wrote the polygons of a cell with the id of the next cell, so CELL_ID is not compared
+            for(String table : new String[] {"CONTOURING_1", "CONTOURING_4"}) {
+                try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM CONTOURING_REFERENCE A FULL OUTER JOIN " +
+                        table + " B ON A.PK = B.PK WHERE A.PK IS NULL OR B.PK IS NULL" +
+                        " OR A.ISOLVL != B.ISOLVL OR NOT ST_EQUALS(A.THE_GEOM, B.THE_GEOM)")) {
+                    assertTrue(rs.next());
+                    assertEquals(table, 0, rs.getInt(1));
+                }
+            }
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM CONTOURING_1 A FULL OUTER JOIN CONTOURING_4 B" +
+                    " ON A.PK = B.PK WHERE A.PK IS NULL OR B.PK IS NULL OR A.CELL_ID != B.CELL_ID")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testMergeCells() throws SQLException, IOException {
+        GeoJsonRead.importTable(connection, BezierContouringJDBCTest.class.getResource("lden_geom.geojson").getFile());
+        GeoJsonRead.importTable(connection, BezierContouringJDBCTest.class.getResource("triangles.geojson").getFile());
+        try(Statement st = connection.createStatement()) {
+            st.execute("ALTER TABLE LDEN_GEOM ALTER COLUMN IDRECEIVER INTEGER NOT NULL");
+            st.execute("ALTER TABLE LDEN_GEOM ADD PRIMARY KEY (IDRECEIVER)");
+            st.execute("ALTER TABLE TRIANGLES ALTER COLUMN PK INTEGER NOT NULL");
+            st.execute("ALTER TABLE TRIANGLES ADD PRIMARY KEY (PK)");
+            st.execute("CREATE INDEX ON TRIANGLES(CELL_ID)");
+        }
+        for(boolean mergeCells : new boolean[] {false, true}) {
+            BezierContouring bezierContouring = new BezierContouring(BezierContouring.NF31_133_ISO, 2154);
+            bezierContouring.setPointTable("LDEN_GEOM");
+            bezierContouring.setPointTableField("LAEQ");
+            bezierContouring.setSmooth(true);
+            bezierContouring.setThreadCount(2);
+            bezierContouring.setMergeCells(mergeCells);
+            bezierContouring.setOutputTable(mergeCells ? "CONTOURING_MERGED" : "CONTOURING_CELLS");
+            bezierContouring.createTable(connection);
+        }
+        try(Statement st = connection.createStatement()) {
+            try(ResultSet rs = st.executeQuery("SELECT (SELECT COUNT(*) FROM CONTOURING_CELLS)," +
+                    " (SELECT COUNT(*) FROM CONTOURING_MERGED)")) {
+                assertTrue(rs.next());
+                assertTrue(rs.getInt(2) < rs.getInt(1));
+            }
+            // The merged polygons cover the same area
+            try(ResultSet rs = st.executeQuery("SELECT A.ISOLVL, A.AREA, B.AREA FROM" +
+                    " (SELECT ISOLVL, SUM(ST_AREA(THE_GEOM)) AREA FROM CONTOURING_CELLS GROUP BY ISOLVL) A," +
+                    " (SELECT ISOLVL, SUM(ST_AREA(THE_GEOM)) AREA FROM CONTOURING_MERGED GROUP BY ISOLVL) B" +
+                    " WHERE A.ISOLVL = B.ISOLVL")) {
+                int isoLevels = 0;
+                while (rs.next()) {
+                    assertEquals(rs.getDouble(2), rs.getDouble(3), rs.getDouble(2) * 1e-6);
+                    isoLevels++;
+                }
+                assertTrue(isoLevels >= 10);
+            }
+            // No polygon of the same iso level shares a border with another one
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM CONTOURING_MERGED A, CONTOURING_MERGED B" +
+                    " WHERE A.PK < B.PK AND A.ISOLVL = B.ISOLVL AND A.THE_GEOM && B.THE_GEOM" +
+                    " AND ST_LENGTH(ST_INTERSECTION(A.THE_GEOM, B.THE_GEOM)) > 0.1")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Sequential contouring as it was done before the cells were processed in parallel, the output is the
+     * reference of the parallel processing
+     */
+    private static void createReferenceTable(Connection connection, BezierContouring contouring) throws SQLException {
+        String pkField = JDBCUtilities.getColumnNames(connection,
+                TableLocation.parse(contouring.pointTable).toString()).get(
+                JDBCUtilities.getIntegerPrimaryKey(connection, TableLocation.parse(contouring.pointTable)) - 1);
+        GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), contouring.srid);
+        Map<Short, ArrayList<Geometry>> polyMap = new HashMap<>();
+        int lastCellId = -1;
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + contouring.outputTable);
+            st.execute("CREATE TABLE " + contouring.outputTable + "(PK SERIAL, CELL_ID INTEGER, THE_GEOM GEOMETRY," +
+                    " ISOLVL INTEGER, ISOLABEL VARCHAR);");
+            String field = contouring.pointTableField;
+            try(ResultSet rs = st.executeQuery("SELECT CELL_ID, ST_X(p1.the_geom) xa,ST_Y(p1.the_geom) ya," +
+                    "ST_X(p2.the_geom) xb,ST_Y(p2.the_geom) yb,ST_X(p3.the_geom) xc,ST_Y(p3.the_geom) yc, p1." +
+                    field + " lvla, p2." + field + " lvlb, p3." + field + " lvlc FROM " + contouring.triangleTable +
+                    " t, " + contouring.pointTable + " p1," + contouring.pointTable + " p2," +
+                    contouring.pointTable + " p3 WHERE t.PK_1 = p1." + pkField + " and t.PK_2 = p2." + pkField +
+                    " AND t.PK_3 = p3." + pkField + " order by cell_id;")) {
+                while(rs.next()) {
+                    int cellId = rs.getInt("CELL_ID");
+                    if(cellId != lastCellId && lastCellId != -1) {
+                        processReferenceCell(connection, contouring, cellId, polyMap);
+                        polyMap.clear();
+                    }
+                    lastCellId = cellId;
+                    Coordinate a = new Coordinate(rs.getDouble("XA"), rs.getDouble("YA"));
+                    Coordinate b = new Coordinate(rs.getDouble("XB"), rs.getDouble("YB"));
+                    Coordinate c = new Coordinate(rs.getDouble("XC"), rs.getDouble("YC"));
+                    TriMarkers triMarkers = new TriMarkers(a, b, c, dbaToW(rs.getDouble("LVLA")),
+                            dbaToW(rs.getDouble("LVLB")), dbaToW(rs.getDouble("LVLC")));
+                    Map<Short, Deque<TriMarkers>> res = Contouring.processTriangle(triMarkers, contouring.isoLevels);
+                    for(Map.Entry<Short, Deque<TriMarkers>> entry : res.entrySet()) {
+                        ArrayList<Geometry> polygonsArray = polyMap.computeIfAbsent(entry.getKey(),
+                                k -> new ArrayList<>());
+                        for(TriMarkers tri : entry.getValue()) {
+                            polygonsArray.add(geometryFactory.createPolygon(
+                                    new Coordinate[]{tri.p0, tri.p1, tri.p2, tri.p0}));
+                        }
+                    }
+                }
+            }
+            if(!polyMap.isEmpty()) {
+                processReferenceCell(connection, contouring, lastCellId, polyMap);
+            }
+        }
+    }
+
+    private static void processReferenceCell(Connection connection, BezierContouring contouring, int cellId,
+                                             Map<Short, ArrayList<Geometry>> polys) throws SQLException {
+        GeometryFactory factory = new GeometryFactory(new PrecisionModel(), contouring.srid);
+        Quadtree segmentTree = new Quadtree();
+        for (Map.Entry<Short, ArrayList<Geometry>> entry : polys.entrySet()) {
+            Geometry mergeTriangles = new CascadedPolygonUnion(entry.getValue()).union();
+            ArrayList<Polygon> polygons = new ArrayList<>();
+            contouring.explode(mergeTriangles, polygons);
+            for(Polygon polygon : polygons) {
+                BezierContouring.computeBezierControlPoints(polygon.getExteriorRing().getCoordinates(),
+                        contouring.smoothCoefficient, segmentTree);
+                for(int idHole = 0; idHole < polygon.getNumInteriorRing(); idHole++) {
+                    BezierContouring.computeBezierControlPoints(polygon.getInteriorRingN(idHole).getCoordinates(),
+                            contouring.smoothCoefficient, segmentTree);
+                }
+            }
+            entry.getValue().clear();
+            entry.getValue().add(mergeTriangles);
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + contouring.outputTable
+                + "(cell_id, the_geom, ISOLVL, ISOLABEL) VALUES (?, ?, ?, ?);")) {
+            for (Map.Entry<Short, ArrayList<Geometry>> entry : polys.entrySet()) {
+                ArrayList<Polygon> polygons = new ArrayList<>();
+                contouring.explode(entry.getValue().get(0), polygons);
+                for(Polygon polygon : polygons) {
+                    if(polygon.isEmpty()) {
+                        continue;
+                    }
+                    Coordinate[] extRing = BezierContouring.generateBezierCurves(
+                            polygon.getExteriorRing().getCoordinates(), segmentTree, contouring.deltaPoints);
+                    LinearRing[] holes = new LinearRing[polygon.getNumInteriorRing()];
+                    for (int idHole = 0; idHole < holes.length; idHole++) {
+                        holes[idHole] = factory.createLinearRing(BezierContouring.generateBezierCurves(
+                                polygon.getInteriorRingN(idHole).getCoordinates(), segmentTree,
+                                contouring.deltaPoints));
+                    }
+                    polygon = factory.createPolygon(factory.createLinearRing(extRing), holes);
+                    TopologyPreservingSimplifier simplifier = new TopologyPreservingSimplifier(polygon);
+                    simplifier.setDistanceTolerance(contouring.epsilon);
+                    Geometry res = simplifier.getResultGeometry();
+                    if (res instanceof Polygon) {
+                        polygon = (Polygon) res;
+                    }
+                    ps.setInt(1, cellId);
+                    ps.setObject(2, polygon);
+                    ps.setInt(3, entry.getKey());
+                    ps.setString(4, contouring.isoLabels.get(entry.getKey()));
+                    ps.execute();
+                }
+            }
+        }
+    }
+}
@@ -76,6 +76,18 @@ public class DirectivityTableLoaderTest {
             double[] attSpectrum = att.getAttenuationArray(freqTest, directivityRecord.getPhi(), directivityRecord.getTheta());
             assertArrayEquals(attSpectrum, directivityRecord.getAttenuation(), 1e-2);
         }
+
+        // Same directivity stored into a grid
+        Map<Integer, DiscreteDirectionAttributes> compiledDirectivities = DirectivityTableLoader.loadTable(connection,
+                "DIRTEST", 1, 1e-6);
+        DiscreteDirectionAttributes compiled = compiledDirectivities.get(1);
+        assertNotNull(compiled.getGrid());
+        for(int yaw = -180; yaw < 360; yaw += 7) {
+            for (int pitch = -90; pitch <= 90; pitch += 7) {
+                assertArrayEquals(d.getAttenuationArray(freqTest, Math.toRadians(yaw), Math.toRadians(pitch)),
+                        compiled.getAttenuationArray(freqTest, Math.toRadians(yaw), Math.toRadians(pitch)), 1e-6);
+            }
+        }
     }
 
 }
\ No newline at end of file
@@ -8,6 +8,8 @@ import org.locationtech.jts.math.Vector3D;
 import org.noise_planet.noisemodelling.pathfinder.*;
 import org.noise_planet.noisemodelling.pathfinder.utils.AlphaUtils;
 import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
+import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
+import org.noise_planet.noisemodelling.pathfinder.utils.SourcePruningMetric;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.EvaluateAttenuationCnossos;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
@@ -16,6 +18,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.stream.IntStream;
@@ -5508,6 +5511,69 @@ public class EvaluateAttenuationCnossosTest {
         assertEquals(44.07, wToDba(sumArray(roadLvl.length, dbaToW(propDataOut.getVerticesSoundLevel().get(0).value))), 3);
     }
 
+    /**
+     * Test optimisation feature {@link CnossosPropagationData#reducedFidelityError}
+     */
+    @Test
+    public void testReducedFidelityWeakSources() throws LayerDelaunayError {
+        for (boolean reducedFidelity : new boolean[]{false, true}) {
+            GeometryFactory factory = new GeometryFactory();
+            ProfileBuilder builder = new ProfileBuilder();
+            // Reflective facade along the path of the far source
+            builder.addBuilding(factory.toGeometry(new Envelope(50, 250, 20, 30)), 10, -1);
+            builder.finishFeeding();
+
+            double[] roadLvl = new double[]{25.65, 38.15, 54.35, 60.35, 74.65, 66.75, 59.25, 53.95};
+            double[] weakRoadLvl = new double[roadLvl.length];
+            for (int i = 0; i < roadLvl.length; i++) {
+                roadLvl[i] = dbaToW(roadLvl[i]);
+                weakRoadLvl[i] = roadLvl[i] * dbaToW(-20);
+            }
+
+            DirectPropagationProcessData rayData = new DirectPropagationProcessData(builder);
+            rayData.addReceiver(new Coordinate(0, 0, 4));
+            rayData.addSource(factory.createPoint(new Coordinate(10, 10, 1)), roadLvl);
+            rayData.addSource(factory.createPoint(new Coordinate(200, 0, 1)), weakRoadLvl);
+            rayData.setComputeHorizontalDiffraction(true);
+            rayData.setComputeVerticalDiffraction(true);
+            rayData.reflexionOrder = 1;
+            rayData.maxSrcDist = 1000;
+            rayData.maxRefDist = 100;
+            PropagationProcessPathData attData = new PropagationProcessPathData();
+            rayData.minimalAtmosphericAbsorption = attData.getAlpha_atmo();
+            if (reducedFidelity) {
+                rayData.reducedFidelityError = 3;
+            }
+
+            RayOut propDataOut = new RayOut(true, attData, rayData);
+            ComputeCnossosRays computeRays = new ComputeCnossosRays(rayData);
+            ProfilerThread profilerThread = new ProfilerThread(new File("target/testReducedFidelity.csv"));
+            profilerThread.addMetric(new SourcePruningMetric());
+            computeRays.setProfilerThread(profilerThread);
+            computeRays.setThreadCount(1);
+            computeRays.run(propDataOut);
+
+            boolean weakSourceReflection = false;
+            for (PropagationPath path : propDataOut.getPropagationPaths()) {
+                if (path.getIdSource() == 1) {
+                    for (PointPath pointPath : path.getPointList()) {
+                        weakSourceReflection |= pointPath.type == PointPath.POINT_TYPE.REFL;
+                    }
+                }
+            }
+            // The reflection on the facade is only computed with the full fidelity
+            assertEquals(!reducedFidelity, weakSourceReflection);
+            String[] stats = profilerThread.getMetric(SourcePruningMetric.class).getCurrentValues();
+            assertEquals(reducedFidelity ? "1" : "2", stats[0]);
+            assertEquals(reducedFidelity ? "1" : "0", stats[1]);
+            assertEquals("0", stats[2]);
+            if (reducedFidelity) {
+                assertTrue(Double.parseDouble(stats[4]) < 3);
+                assertTrue(Double.parseDouble(stats[4]) > 0);
+            }
+        }
+    }
+
     @Test
     public void testRoseIndex() {
         double angle_section = (2 * Math.PI) / PropagationProcessPathData.DEFAULT_WIND_ROSE.length;
@@ -5840,8 +5906,7 @@ public class EvaluateAttenuationCnossosTest {
         propPath.readStream(new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(path))));
 
         PropagationProcessPathData pathData = new PropagationProcessPathData();
-        EvaluateAttenuationCnossos.evaluate(propPath, pathData);
-        double[] aGlobalMeteoHom = EvaluateAttenuationCnossos.getaGlobal();
+        double[] aGlobalMeteoHom = EvaluateAttenuationCnossos.evaluate(propPath, pathData);
         for (int i = 0; i < aGlobalMeteoHom.length; i++) {
             assertFalse(String.format("freq %d Hz with nan value", pathData.freq_lvl.get(i)),
                     Double.isNaN(aGlobalMeteoHom[i]));
@@ -5,19 +5,26 @@ import org.cts.op.CoordinateOperationException;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ProgressVisitor;
 import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
 import org.h2gis.functions.io.dbf.DBFRead;
 import org.h2gis.functions.io.shp.SHPDriverFunction;
 import org.h2gis.functions.io.shp.SHPRead;
 import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.LineString;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
+import org.noise_planet.noisemodelling.jdbc.utils.LevelsFileTableFunction;
 import org.noise_planet.noisemodelling.jdbc.utils.MakeLWTable;
+import org.noise_planet.noisemodelling.jdbc.utils.RayStoreReader;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
 import org.noise_planet.noisemodelling.pathfinder.RootProgressVisitor;
 import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
@@ -34,6 +41,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.*;
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.sumArray;
@@ -45,6 +55,9 @@ public class LDENPointNoiseMapFactoryTest {
 
     private Connection connection;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Before
     public void tearUp() throws Exception {
         connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(LDENPointNoiseMapFactoryTest.class.getSimpleName(), true, ""));
@@ -495,6 +508,169 @@ public class LDENPointNoiseMapFactoryTest {
 
     }
 
+    @Test
+    public void testCellSchedulerFromTraffic() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true); // No idsource column
+
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF",
+                "RECEIVERS");
+
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+
+        // Set of already processed receivers
+        Set<Long> receivers = new HashSet<>();
+        Set<PointNoiseMap.CellIndex> computedCells = Collections.synchronizedSet(new HashSet<>());
+
+        try {
+            RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1);
+
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+
+            factory.start();
+
+            pointNoiseMap.setGridDim(4); // force grid size
+
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+            CellScheduler cellScheduler = new CellScheduler(pointNoiseMap);
+            cellScheduler.setThreadCount(4);
+            cellScheduler.setMaximumConcurrentCells(3);
+            cellScheduler.setCellListener((cellIndex, computeRaysOut) -> computedCells.add(cellIndex));
+            cellScheduler.run(connection, new TreeSet<>(cells.keySet()), progressVisitor, receivers);
+            assertEquals(cells.keySet(), computedCells);
+        }finally {
+            factory.stop();
+        }
+        connection.commit();
+
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) CPT FROM " + ldenConfig.lDayTable)) {
+            assertTrue(rs.next());
+            assertEquals(830, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void testAttenuationMatrixUpdate() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        File attenuationMatrixFile = folder.newFile("testAttenuationMatrixUpdate.bin");
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true); // No idsource column
+        ldenConfig.setAttenuationMatrixFile(attenuationMatrixFile);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF",
+                "RECEIVERS");
+
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+
+        Set<Long> receivers = new HashSet<>();
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(4);
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(),
+                        new EmptyProgressVisitor(), receivers);
+            }
+        } finally {
+            factory.stop();
+        }
+
+        // Same emission, the levels must be the same
+        LDENConfig updateConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        updateConfig.setComputeLDay(true);
+        updateConfig.setComputeLEvening(false);
+        updateConfig.setComputeLNight(false);
+        updateConfig.setComputeLDEN(false);
+        updateConfig.setMergeSources(true);
+        updateConfig.setlDayTable("LDAY_UPDATE");
+        AttenuationMatrixUpdate update = new AttenuationMatrixUpdate(updateConfig, attenuationMatrixFile);
+        update.loadSourcesEmission(connection, "ROADS_TRAFF");
+        assertEquals(830, update.run(connection));
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), MAX(ABS(A.LAEQ - B.LAEQ))" +
+                " FROM " + ldenConfig.lDayTable + " A, LDAY_UPDATE B WHERE A.IDRECEIVER = B.IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertEquals(830, rs.getInt(1));
+            assertEquals(0, rs.getDouble(2), 0.02);
+        }
+
+        // Increase the traffic of one road, only the rows of the receivers near this road are replaced
+        connection.createStatement().execute("CREATE TABLE LDAY_BEFORE AS SELECT * FROM LDAY_UPDATE");
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, new TableLocation("ROADS_TRAFF"));
+        String pkName = JDBCUtilities.getColumnName(connection, "ROADS_TRAFF", pkIndex);
+        long changedSource;
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT MIN(" + pkName + ") FROM ROADS_TRAFF")) {
+            assertTrue(rs.next());
+            changedSource = rs.getLong(1);
+        }
+        connection.createStatement().execute("UPDATE ROADS_TRAFF SET TV_D = TV_D * 10, HV_D = HV_D * 10 WHERE "
+                + pkName + " = " + changedSource);
+        update = new AttenuationMatrixUpdate(updateConfig, attenuationMatrixFile);
+        update.setChangedSources(Collections.singleton(changedSource));
+        update.loadSourcesEmission(connection, "ROADS_TRAFF");
+        long updatedReceivers = update.run(connection);
+        assertTrue(updatedReceivers > 0);
+        assertTrue(updatedReceivers < 830);
+        assertFalse(JDBCUtilities.tableExists(connection, "LDAY_UPDATE" +
+                AttenuationMatrixUpdate.CHANGED_TABLE_SUFFIX));
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), MIN(B.LAEQ - A.LAEQ)," +
+                " SUM(CASE WHEN B.LAEQ - A.LAEQ > 0.02 THEN 1 ELSE 0 END)" +
+                " FROM LDAY_BEFORE A, LDAY_UPDATE B WHERE A.IDRECEIVER = B.IDRECEIVER")) {
+            assertTrue(rs.next());
+            // The other receivers are kept
+            assertEquals(830, rs.getInt(1));
+            assertTrue(rs.getDouble(2) > -0.02);
+            long louderReceivers = rs.getLong(3);
+            assertTrue(louderReceivers > 0);
+            assertTrue(louderReceivers <= updatedReceivers);
+        }
+
+        // The changed sources can not be updated in a table that does not exist
+        updateConfig.setlDayTable("LDAY_MISSING");
+        update = new AttenuationMatrixUpdate(updateConfig, attenuationMatrixFile);
+        update.setChangedSources(Collections.singleton(changedSource));
+        update.loadSourcesEmission(connection, "ROADS_TRAFF");
+        try {
+            update.run(connection);
+            fail("The table does not exist");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
     @Test
     public void testTableGenerationFromTraffic() throws SQLException, IOException {
         SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
@@ -1178,6 +1354,364 @@ public class LDENPointNoiseMapFactoryTest {
 
     }
 
+    /**
+     * Compute the levels of the receivers table with the traffic of ROADS_TRAFF
+     * @param ldenConfig Output configuration
+     * @return Output of each computation cell
+     */
+    private List<IComputeRaysOut> computeTrafficLevels(LDENConfig ldenConfig) throws SQLException, IOException {
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF", "RECEIVERS");
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        Set<Long> receivers = new HashSet<>();
+        List<IComputeRaysOut> cellsOut = new ArrayList<>();
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(4);
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                cellsOut.add(pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(),
+                        cellIndex.getLongitudeIndex(), new EmptyProgressVisitor(), receivers));
+            }
+        } finally {
+            factory.stop();
+        }
+        return cellsOut;
+    }
+
+    /**
+     * The levels written in binary files and read with NM_READ_LEVELS are the levels written in the tables
+     */
+    @Test
+    public void testLevelsBinaryFiles() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig tablesConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        tablesConfig.setComputeLDay(true);
+        tablesConfig.setComputeLEvening(false);
+        tablesConfig.setComputeLNight(false);
+        tablesConfig.setComputeLDEN(false);
+        tablesConfig.setMergeSources(true);
+        computeTrafficLevels(tablesConfig);
+        assertFalse(tablesConfig.aborted);
+
+        File levelsDirectory = folder.newFolder("levels");
+        LDENConfig filesConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        filesConfig.setComputeLDay(true);
+        filesConfig.setComputeLEvening(false);
+        filesConfig.setComputeLNight(false);
+        filesConfig.setComputeLDEN(false);
+        filesConfig.setMergeSources(true);
+        filesConfig.setlDayTable("LDAY_FILES");
+        filesConfig.setExportLevelsMethod(LDENConfig.ExportLevelsMethods.TO_BINARY_FILES);
+        filesConfig.setLevelsOutputDirectory(levelsDirectory);
+        computeTrafficLevels(filesConfig);
+        assertFalse(filesConfig.aborted);
+        assertFalse(JDBCUtilities.tableExists(connection, "LDAY_FILES"));
+        File levelsFile = filesConfig.getLevelsFile("LDAY_FILES");
+        assertTrue(levelsFile.exists());
+
+        try(Statement st = connection.createStatement()) {
+            H2GISFunctions.registerFunction(st, new LevelsFileTableFunction(), "");
+            st.execute("CREATE TABLE LDAY_READ AS SELECT * FROM NM_READ_LEVELS('" + levelsFile.getAbsolutePath() +
+                    "')");
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM LDAY_READ")) {
+                assertTrue(rs.next());
+                assertEquals(830, rs.getInt(1));
+            }
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*), MAX(ABS(A.LAEQ - B.LAEQ)), " +
+                    "MAX(ABS(A.LEQ - B.LEQ)), MAX(ABS(A.HZ63 - B.HZ63)), MAX(ABS(A.HZ8000 - B.HZ8000)) FROM " +
+                    tablesConfig.lDayTable + " A, LDAY_READ B WHERE A.IDRECEIVER = B.IDRECEIVER")) {
+                assertTrue(rs.next());
+                assertEquals(830, rs.getInt(1));
+                // The tables keep 2 decimals, the files keep single precision floats
+                for (int idColumn = 2; idColumn <= 5; idColumn++) {
+                    assertEquals(0, rs.getDouble(idColumn), 0.01);
+                }
+            }
+        }
+    }
+
+    /**
+     * The binary levels output requires an output folder
+     */
+    @Test
+    public void testLevelsBinaryFilesWithoutDirectory() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setExportLevelsMethod(LDENConfig.ExportLevelsMethods.TO_BINARY_FILES);
+        computeTrafficLevels(ldenConfig);
+        // The result writer has failed, the computation is cancelled
+        assertTrue(ldenConfig.aborted);
+        assertFalse(ldenConfig.getLevelsFile(ldenConfig.lDenTable).exists());
+    }
+
+    /**
+     * The rays written in the binary store are the rays kept in memory, identified by the receiver and source
+     * primary keys
+     */
+    @Test
+    public void testRaysBinaryFiles() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+        // The primary keys are not the indexes of the computation cells
+        try(Statement st = connection.createStatement()) {
+            String sourcePk = JDBCUtilities.getIntegerPrimaryKeyNameAndIndex(connection,
+                    TableLocation.parse("ROADS_TRAFF")).first();
+            st.execute("UPDATE ROADS_TRAFF SET " + sourcePk + " = " + sourcePk + " + 1000");
+            String receiverPk = JDBCUtilities.getIntegerPrimaryKeyNameAndIndex(connection,
+                    TableLocation.parse("RECEIVERS")).first();
+            st.execute("UPDATE RECEIVERS SET " + receiverPk + " = " + receiverPk + " + 5000");
+        }
+
+        LDENConfig memoryConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        memoryConfig.setComputeLDay(true);
+        memoryConfig.setComputeLEvening(false);
+        memoryConfig.setComputeLNight(false);
+        memoryConfig.setComputeLDEN(false);
+        memoryConfig.setExportRaysMethod(LDENConfig.ExportRaysMethods.TO_MEMORY);
+        // Number of rays by receiver and source primary keys
+        Map<String, Integer> expected = new HashMap<>();
+        for(IComputeRaysOut out : computeTrafficLevels(memoryConfig)) {
+            for(PropagationPath path : ((ComputeRaysOutAttenuation) out).getPropagationPaths()) {
+                expected.merge(path.getIdReceiver() + ":" + path.getIdSource(), 1, Integer::sum);
+            }
+        }
+        assertFalse(memoryConfig.aborted);
+        assertFalse(expected.isEmpty());
+
+        File raysDirectory = folder.newFolder("rays");
+        LDENConfig filesConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        filesConfig.setComputeLDay(true);
+        filesConfig.setComputeLEvening(false);
+        filesConfig.setComputeLNight(false);
+        filesConfig.setComputeLDEN(false);
+        filesConfig.setExportRaysMethod(LDENConfig.ExportRaysMethods.TO_BINARY_FILES);
+        filesConfig.setRaysOutputDirectory(raysDirectory);
+        for(IComputeRaysOut out : computeTrafficLevels(filesConfig)) {
+            // The rays are not kept in memory
+            assertTrue(((ComputeRaysOutAttenuation) out).getPropagationPaths().isEmpty());
+        }
+        assertFalse(filesConfig.aborted);
+
+        Map<String, Integer> got = new ConcurrentHashMap<>();
+        try(RayStoreReader reader = new RayStoreReader(raysDirectory)) {
+            assertTrue(reader.getReceiverPk(0) > 5000);
+            reader.replay(new IComputeRaysOut() {
+                @Override
+                public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                                    List<PropagationPath> propagationPath) {
+                    for(PropagationPath path : propagationPath) {
+                        assertEquals(receiverId, path.getIdReceiver());
+                        assertEquals(sourceId, path.getIdSource());
+                        got.merge(receiverId + ":" + sourceId, 1, Integer::sum);
+                    }
+                    return new double[0];
+                }
+
+                @Override
+                public void finalizeReceiver(long receiverId) {
+
+                }
+
+                @Override
+                public IComputeRaysOut subProcess() {
+                    return null;
+                }
+            }, 2);
+        }
+        assertEquals(expected, got);
+    }
+
+    /**
+     * The rays binary files are closed when the computation is cancelled, the receivers already written can be read
+     */
+    @Test
+    public void testRaysBinaryFilesCancel() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+        File raysDirectory = folder.newFolder("rays");
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setExportRaysMethod(LDENConfig.ExportRaysMethods.TO_BINARY_FILES);
+        ldenConfig.setRaysOutputDirectory(raysDirectory);
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF", "RECEIVERS");
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+        factory.start();
+        assertNotNull(factory.getLdenData().rayStoreWriter);
+        try {
+            pointNoiseMap.setGridDim(4);
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            // Compute only the cell with the most receivers, then cancel
+            PointNoiseMap.CellIndex cellIndex = Collections.max(cells.entrySet(),
+                    Map.Entry.comparingByValue()).getKey();
+            pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(),
+                    new EmptyProgressVisitor(), new HashSet<>());
+        } finally {
+            factory.cancel();
+        }
+        assertTrue(ldenConfig.aborted);
+        assertNull(factory.getLdenData().rayStoreWriter);
+        try(RayStoreReader reader = new RayStoreReader(raysDirectory)) {
+            assertTrue(reader.getReceiverCount() > 0);
+            assertFalse(reader.readReceiverAt(0).isEmpty());
+        }
+    }
+
+    /**
+     * The rays binary files require an output folder
+     */
+    @Test
+    public void testRaysBinaryFilesWithoutDirectory() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setExportRaysMethod(LDENConfig.ExportRaysMethods.TO_BINARY_FILES);
+        computeTrafficLevels(ldenConfig);
+        // The result writer has failed, the computation is cancelled
+        assertTrue(ldenConfig.aborted);
+    }
+
+    /**
+     * The computation threads are blocked while the result queue is full, and all the rows pushed are written
+     */
+    @Test
+    public void testLevelsQueueBackPressure() throws InterruptedException {
+        final int producerCount = 4;
+        final int rowsPerProducer = LDENPointNoiseMapFactory.LEVELS_BUFFER_SIZE;
+        final int maximumQueue = 100;
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY, new PropagationProcessPathData());
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.EVENING, new PropagationProcessPathData());
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.NIGHT, new PropagationProcessPathData());
+        ldenConfig.setOutputMaximumQueue(maximumQueue);
+        LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
+        LDENComputeRaysOut computeRaysOut = new LDENComputeRaysOut(new PropagationProcessPathData(),
+                new PropagationProcessPathData(), new PropagationProcessPathData(),
+                new LDENPropagationProcessData(null, ldenConfig), ldenData, ldenConfig);
+        Thread[] producers = new Thread[producerCount];
+        for (int idProducer = 0; idProducer < producerCount; idProducer++) {
+            final long firstReceiver = (long) idProducer * rowsPerProducer;
+            final LDENComputeRaysOut.ThreadComputeRaysOut threadOut =
+                    (LDENComputeRaysOut.ThreadComputeRaysOut) computeRaysOut.subProcess();
+            producers[idProducer] = new Thread(() -> {
+                for (long idReceiver = firstReceiver; idReceiver < firstReceiver + rowsPerProducer; idReceiver++) {
+                    threadOut.pushInStack(ldenData.lDenLevels, new ComputeRaysOutAttenuation.VerticeSL(idReceiver,
+                            -1, new double[]{50}));
+                }
+            });
+            producers[idProducer].start();
+        }
+        // No writer yet, all the producers must be blocked on the full queue
+        long deadline = System.currentTimeMillis() + 10000;
+        boolean allBlocked = false;
+        while (!allBlocked && System.currentTimeMillis() < deadline) {
+            allBlocked = true;
+            for (Thread producer : producers) {
+                allBlocked &= producer.getState() == Thread.State.WAITING;
+            }
+            Thread.sleep(5);
+        }
+        assertTrue(allBlocked);
+        assertTrue(ldenData.queueSize.get() > maximumQueue);
+        assertTrue(ldenData.queueSize.get() <= maximumQueue + producerCount);
+
+        // Slow writer, consume a few rows at a time
+        Set<Long> written = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        AtomicLong maximumQueueSize = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            try {
+                while (true) {
+                    ldenData.awaitRows(ldenConfig);
+                    maximumQueueSize.accumulateAndGet(ldenData.queueSize.get(), Math::max);
+                    int count = 0;
+                    ComputeRaysOutAttenuation.VerticeSL row;
+                    while (count < 50 && (row = ldenData.lDenLevels.poll()) != null) {
+                        written.add(row.receiverId);
+                        count++;
+                    }
+                    if (count == 0 && ldenConfig.exitWhenDone) {
+                        break;
+                    }
+                    ldenData.onRowsConsumed(count);
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        writer.start();
+        for (Thread producer : producers) {
+            producer.join(60000);
+            assertFalse(producer.isAlive());
+        }
+        ldenConfig.exitWhenDone = true;
+        ldenData.wakeUp();
+        writer.join(60000);
+        assertFalse(writer.isAlive());
+        assertFalse(ldenConfig.aborted);
+        assertEquals(producerCount * rowsPerProducer, written.size());
+        assertEquals(0, ldenData.queueSize.get());
+        assertTrue(maximumQueueSize.get() <= maximumQueue + producerCount);
+    }
+
+    @Test
+    public void testLevelsCsv() {
+        Locale defaultLocale = Locale.getDefault();
+        // The decimal separator of the default locale must not be used
+        Locale.setDefault(Locale.FRANCE);
+        try {
+            LDENPointNoiseMapFactory.LevelsBuffer buffer = new LDENPointNoiseMapFactory.LevelsBuffer("LDAY",
+                    new ConcurrentLinkedDeque<>(), 2, 4);
+            buffer.size = 2;
+            buffer.receiverId[0] = 1;
+            buffer.sourceId[0] = 2;
+            buffer.levels[0][0] = 50.25;
+            buffer.levels[1][0] = Double.NEGATIVE_INFINITY;
+            buffer.laeq[0] = 60.125;
+            buffer.leq[0] = 61;
+            buffer.receiverId[1] = 3;
+            buffer.sourceId[1] = 4;
+            buffer.levels[0][1] = Double.NaN;
+            buffer.levels[1][1] = 0.5;
+            buffer.laeq[1] = 40;
+            buffer.leq[1] = Double.NaN;
+            assertEquals("1,2,50.25,-99.0,60.125,61.0\n3,4,-99.0,0.5,40.0,-99.0\n",
+                    buffer.toCsv(false, false));
+            assertEquals("1,50.25,-99.0,60.125,61.0\n3,-99.0,0.5,40.0,-99.0\n", buffer.toCsv(true, false));
+
+            LDENPointNoiseMapFactory.LevelsBuffer laeqBuffer = new LDENPointNoiseMapFactory.LevelsBuffer("LDAY",
+                    new ConcurrentLinkedDeque<>(), 0, 4);
+            laeqBuffer.size = 1;
+            laeqBuffer.receiverId[0] = 12345678901L;
+            laeqBuffer.laeq[0] = 1234567.5;
+            assertEquals("12345678901,1234567.5\n", laeqBuffer.toCsv(true, true));
+            laeqBuffer.size = 0;
+            assertEquals("", laeqBuffer.toCsv(true, true));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
     public static void exportScene(String name, ProfileBuilder builder, ComputeRaysOutAttenuation result) throws IOException {
         try {
             //List<PropagationPath> propagationPaths = new ArrayList<>();
@@ -144,6 +144,61 @@ public class PointNoiseMapTest {
         }
     }
 
+    private Map<String, double[]> computeLevels(PointNoiseMap pointNoiseMap) throws Exception {
+        pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+        pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+        Map<String, double[]> levels = new HashMap<>();
+        Set<Long> receivers = new HashSet<>();
+        pointNoiseMap.setThreadCount(1);
+        RootProgressVisitor progressVisitor = new RootProgressVisitor(pointNoiseMap.getGridDim() * pointNoiseMap.getGridDim(), true, 5);
+        for(int i=0; i < pointNoiseMap.getGridDim(); i++) {
+            for(int j=0; j < pointNoiseMap.getGridDim(); j++) {
+                IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, i, j, progressVisitor, receivers);
+                if(out instanceof ComputeRaysOutAttenuation) {
+                    for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                        levels.put(v.receiverId + "_" + v.sourceId, v.value);
+                    }
+                }
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * The ProfileBuilder of the whole scene shared by all cells must give the same levels than a ProfileBuilder per cell
+     */
+    @Test
+    public void testSharedProfileBuilder() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'LANDCOVER2000')", PointNoiseMapTest.class.getResource("landcover2000.shp").getFile()));
+            st.execute(getRunScriptRes("scene_with_landcover.sql"));
+        }
+        Map<String, double[]> expectedLevels = null;
+        for(boolean shareProfileBuilder : new boolean[] {false, true}) {
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_GEOM", "RECEIVERS");
+            pointNoiseMap.setComputeHorizontalDiffraction(false);
+            pointNoiseMap.setComputeVerticalDiffraction(true);
+            pointNoiseMap.setSoundReflectionOrder(1);
+            pointNoiseMap.setReceiverHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setSourceHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setSoilTableName("LAND_G");
+            pointNoiseMap.setShareProfileBuilder(shareProfileBuilder);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(2);
+            Map<String, double[]> levels = computeLevels(pointNoiseMap);
+            if(expectedLevels == null) {
+                expectedLevels = levels;
+            } else {
+                assertEquals(expectedLevels.keySet(), levels.keySet());
+                for(Map.Entry<String, double[]> entry : expectedLevels.entrySet()) {
+                    assertArrayEquals(entry.getKey(), entry.getValue(), levels.get(entry.getKey()), 0.1);
+                }
+            }
+        }
+        assertFalse(expectedLevels.isEmpty());
+    }
+
     @Test
     public void testNoiseMapBuilding() throws Exception {
         try(Statement st = connection.createStatement()) {
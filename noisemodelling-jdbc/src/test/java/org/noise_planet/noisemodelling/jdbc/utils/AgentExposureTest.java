@@ -0,0 +1,265 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.noise_planet.noisemodelling.jdbc.utils.MatsimPlansReader.AgentPlan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+public class AgentExposureTest {
+    private static final String PLANS = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<!DOCTYPE population SYSTEM \"http://www.matsim.org/files/dtd/population_v6.dtd\">\n" +
+            "<population>\n" +
+            "  <person id=\"p1\">\n" +
+            "    <attributes>\n" +
+            "      <attribute name=\"age\" class=\"java.lang.Integer\">42</attribute>\n" +
+            "      <attribute name=\"sex\" class=\"java.lang.String\">f</attribute>\n" +
+            "    </attributes>\n" +
+            "    <plan score=\"10\" selected=\"no\">\n" +
+            "      <activity type=\"home\" facility=\"h1\" x=\"0.0\" y=\"0.0\" end_time=\"12:00:00\"/>\n" +
+            "    </plan>\n" +
+            "    <plan score=\"12\" selected=\"yes\">\n" +
+            "      <activity type=\"home\" facility=\"h1\" x=\"1.0\" y=\"2.0\" end_time=\"08:00:00\"/>\n" +
+            "      <leg mode=\"car\"/>\n" +
+            "      <activity type=\"work\" facility=\"w1\" x=\"10.0\" y=\"20.0\" start_time=\"09:00:00\"" +
+            " end_time=\"17:00:00\"/>\n" +
+            "      <leg mode=\"car\"/>\n" +
+            "      <activity type=\"home\" facility=\"h1\" x=\"1.0\" y=\"2.0\" start_time=\"18:00\"/>\n" +
+            "    </plan>\n" +
+            "  </person>\n" +
+            "  <person id=\"p2\" age=\"30\" employed=\"no\">\n" +
+            "    <plan selected=\"yes\">\n" +
+            "      <activity type=\"home\" facility=\"h2\" end_time=\"undefined\"/>\n" +
+            "    </plan>\n" +
+            "  </person>\n" +
+            "</population>\n";
+
+    private static final String EXPERIENCED_PLANS = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<population>\n" +
+            "  <person id=\"p1\">\n" +
+            "    <plan selected=\"yes\">\n" +
+            "      <activity type=\"home\" facility=\"h1\" x=\"1.0\" y=\"2.0\" end_time=\"08:00:00\"/>\n" +
+            "      <leg mode=\"car\"/>\n" +
+            "      <activity type=\"work\" facility=\"w1\" x=\"10.0\" y=\"20.0\" start_time=\"09:00:00\"" +
+            " end_time=\"17:00:00\"/>\n" +
+            "      <leg mode=\"car\"/>\n" +
+            "      <activity type=\"home\" facility=\"h1\" x=\"1.0\" y=\"2.0\" start_time=\"18:00:00\"/>\n" +
+            "    </plan>\n" +
+            "  </person>\n" +
+            "</population>\n";
+
+    private static final String PERSONS = "person;age;sex;householdIncome;employed\n" +
+            "p1;50;m;2000;yes\n" +
+            "p2;31;m;\"1500.5\";true\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Connection connection;
+
+    @Before
+    public void tearUp() throws Exception {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                AgentExposureTest.class.getSimpleName(), true, ""));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testReadPlans() throws IOException {
+        try (MatsimPlansReader reader = new MatsimPlansReader(write("plans.xml", PLANS))) {
+            AgentPlan person = reader.next();
+            assertNotNull(person);
+            assertEquals("p1", person.id);
+            assertEquals("42", person.attributes.get("age"));
+            assertEquals("f", person.attributes.get("sex"));
+            // activities of the selected plan only
+            assertEquals(3, person.activities.size());
+            assertEquals("w1", person.activities.get(1).facilityId);
+            assertEquals(9 * 3600, person.activities.get(1).startTime, 0);
+            assertEquals(17 * 3600, person.activities.get(1).endTime, 0);
+            assertEquals(10, person.activities.get(1).x, 0);
+            assertTrue(Double.isNaN(person.activities.get(0).startTime));
+            assertEquals(18 * 3600, person.activities.get(2).startTime, 0);
+            person = reader.next();
+            assertNotNull(person);
+            assertEquals("p2", person.id);
+            assertEquals("30", person.attributes.get("age"));
+            assertEquals(1, person.activities.size());
+            assertFalse(person.activities.get(0).hasCoord());
+            assertTrue(Double.isNaN(person.activities.get(0).endTime));
+            assertNull(reader.next());
+        }
+        assertEquals(-1800, MatsimPlansReader.parseTime("-00:30:00"), 0);
+        assertEquals(90000, MatsimPlansReader.parseTime("25:00"), 0);
+        assertEquals(12.5, MatsimPlansReader.parseTime("12.5"), 0);
+    }
+
+    @Test
+    public void testAgentExposure() throws SQLException, IOException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE RECEIVERS(PK integer PRIMARY KEY, FACILITY varchar)");
+            st.execute("INSERT INTO RECEIVERS VALUES (1, 'h1'), (2, 'w1'), (3, 'w1'), (4, NULL)");
+            st.execute("CREATE TABLE DATA(IDRECEIVER integer, TIME int, LEQA double)");
+        }
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO DATA VALUES (?, ?, ?)")) {
+            for (int time = 0; time < AttenuationMatrixTimeBins.DAY_DURATION; time += 3600) {
+                // the receiver 2 is ignored, the receiver 3 of the same facility has a greater primary key
+                double[] levels = new double[]{50, 10, 70, 80};
+                for (int pk = 1; pk <= 4; pk++) {
+                    ps.setInt(1, pk);
+                    ps.setInt(2, time);
+                    ps.setDouble(3, levels[pk - 1]);
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+        AgentExposure agentExposure = new AgentExposure(3600);
+        agentExposure.loadFacilityLevels(connection, "RECEIVERS", "DATA");
+        assertEquals(2, agentExposure.getFacilityCount());
+        assertEquals(70, agentExposure.getFacilityLevel("w1", 10), 1e-6);
+        assertTrue(Double.isNaN(agentExposure.getFacilityLevel("h2", 10)));
+
+        long agentCount = agentExposure.run(connection, write("plans.xml", PLANS),
+                write("experienced_plans.xml", EXPERIENCED_PLANS), write("persons.csv", PERSONS), "EXPOSURE",
+                2154, 2);
+        assertEquals(2, agentCount);
+        try (Statement st = connection.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT * FROM EXPOSURE ORDER BY PERSON_ID")) {
+                assertTrue(rs.next());
+                assertEquals("p1", rs.getString("PERSON_ID"));
+                // the plans attributes have priority over the persons csv file
+                assertEquals(42, rs.getInt("AGE"));
+                assertEquals("f", rs.getString("SEX"));
+                assertEquals(2000, rs.getDouble("INCOME"), 0);
+                assertEquals(1, rs.getDouble("EMPLOYED"), 0);
+                assertEquals("h1", rs.getString("HOME_FACILITY"));
+                assertEquals("w1", rs.getString("WORK_FACILITY"));
+                // at home 14 hours, at work 8 hours
+                double expected = wToDba((14 * dbaToW(50) + 8 * dbaToW(70)) / 24 + dbaToW(-99));
+                assertEquals(expected, rs.getDouble("LAEQ"), 1e-4);
+                assertTrue(rs.next());
+                assertEquals("p2", rs.getString("PERSON_ID"));
+                assertEquals(30, rs.getInt("AGE"));
+                assertEquals(1500.5, rs.getDouble("INCOME"), 0);
+                assertEquals(0, rs.getDouble("EMPLOYED"), 0);
+                // no level for this facility
+                assertEquals(-99, rs.getDouble("LAEQ"), 1e-4);
+                assertFalse(rs.next());
+            }
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM EXPOSURE_SEQUENCE")) {
+                assertTrue(rs.next());
+                assertEquals(48, rs.getInt(1));
+            }
+            try (ResultSet rs = st.executeQuery("SELECT *, ST_X(MAIN_ACTIVITY_GEOM) X, ST_SRID(MAIN_ACTIVITY_GEOM)" +
+                    " SRID FROM EXPOSURE_SEQUENCE WHERE PERSON_ID = 'p1' ORDER BY TIME")) {
+                for (int idTimeBin = 0; idTimeBin < 24; idTimeBin++) {
+                    assertTrue(rs.next());
+                    assertEquals(idTimeBin * 3600, rs.getInt("TIME"));
+                    if (idTimeBin >= 9 && idTimeBin < 17) {
+                        assertEquals("w1", rs.getString("MAIN_ACTIVITY_ID"));
+                        assertEquals(70, rs.getDouble("LEVEL"), 1e-4);
+                        assertEquals(10, rs.getDouble("X"), 0);
+                    } else if (idTimeBin < 8 || idTimeBin >= 18) {
+                        assertEquals("home", rs.getString("MAIN_ACTIVITY_TYPE"));
+                        assertEquals("h1", rs.getString("START_ACTIVITY_ID"));
+                        assertEquals("h1", rs.getString("END_ACTIVITY_ID"));
+                        assertEquals(50, rs.getDouble("LEVEL"), 1e-4);
+                        assertEquals(1, rs.getDouble("X"), 0);
+                        assertEquals(2154, rs.getInt("SRID"));
+                    }
+                }
+                assertFalse(rs.next());
+            }
+        }
+    }
+
+    private static String plans(String... personIds) {
+        StringBuilder plans = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<population>\n");
+        for (String personId : personIds) {
+            plans.append("  <person id=\"").append(personId).append("\">\n")
+                    .append("    <plan selected=\"yes\">\n")
+                    .append("      <activity type=\"home\" facility=\"h1\" x=\"1.0\" y=\"2.0\"/>\n")
+                    .append("    </plan>\n")
+                    .append("  </person>\n");
+        }
+        return plans.append("</population>\n").toString();
+    }
+
+    @Test
+    public void testMissingExperiencedPerson() throws SQLException, IOException {
+        File plansFile = write("plans.xml", plans("p1", "p2", "p3", "p4"));
+        // p2 is not in the experienced plans
+        File experiencedPlansFile = write("experienced_plans.xml", plans("p1", "p3", "p4"));
+        AgentExposure agentExposure = new AgentExposure(3600);
+        assertEquals(4, agentExposure.run(connection, plansFile, experiencedPlansFile, null, "EXPOSURE", 2154, 2));
+        // more persons than the default limit are not in the plans file, the file is not sorted like the plans
+        List<String> experiencedIds = new ArrayList<>();
+        experiencedIds.add("p1");
+        for (int i = 0; i <= agentExposure.getMaximumReadAhead(); i++) {
+            experiencedIds.add(String.format("p2_%05d", i));
+        }
+        experiencedIds.add("p3");
+        experiencedIds.add("p4");
+        experiencedPlansFile = write("other_plans.xml", plans(experiencedIds.toArray(new String[0])));
+        try {
+            agentExposure.run(connection, plansFile, experiencedPlansFile, null, "EXPOSURE", 2154, 2);
+            fail("The persons that are not in the plans file must be reported");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("p3"));
+            assertTrue(ex.getMessage(), ex.getMessage().contains("other_plans.xml"));
+        }
+    }
+
+    @Test
+    public void testUnsortedPlans() throws SQLException, IOException {
+        File plansFile = write("plans.xml", plans("p2", "p1"));
+        File experiencedPlansFile = write("experienced_plans.xml", plans("p2", "p1"));
+        try {
+            new AgentExposure(3600).run(connection, plansFile, experiencedPlansFile, null, "EXPOSURE", 2154, 2);
+            fail("The plans file must be sorted by person id");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("p2"));
+        }
+    }
+
+    @Test
+    public void testComparePersonIds() {
+        assertTrue(AgentExposure.comparePersonIds("9", "10") < 0);
+        assertTrue(AgentExposure.comparePersonIds("10", "9") > 0);
+        assertEquals(0, AgentExposure.comparePersonIds("42", "42"));
+        assertTrue(AgentExposure.comparePersonIds("p10", "p9") < 0);
+        assertTrue(AgentExposure.comparePersonIds("123456789012345678901", "99") > 0);
+    }
+}
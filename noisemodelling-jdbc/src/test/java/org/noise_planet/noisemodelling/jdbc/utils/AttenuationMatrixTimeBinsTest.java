@@ -0,0 +1,159 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+public class AttenuationMatrixTimeBinsTest {
+    private static final int[] FREQUENCIES = new int[]{63, 125, 250, 500, 1000, 2000, 4000, 8000};
+
+    private Connection connection;
+
+    @Before
+    public void tearUp() throws Exception {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                AttenuationMatrixTimeBinsTest.class.getSimpleName(), true, ""));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    private void createTables(int timeBinSize) throws SQLException {
+        SplittableRandom random = new SplittableRandom(5);
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE ROADS(PK integer PRIMARY KEY, LINK_ID varchar, THE_GEOM geometry)");
+            st.execute("CREATE TABLE ROADS_LW(PK integer PRIMARY KEY AUTO_INCREMENT, LINK_ID varchar, LW63 double," +
+                    " LW125 double, LW250 double, LW500 double, LW1000 double, LW2000 double, LW4000 double," +
+                    " LW8000 double, TIME int)");
+            st.execute("CREATE TABLE RECEIVERS(PK integer PRIMARY KEY, THE_GEOM geometry)");
+            st.execute("CREATE TABLE ATTENUATION(IDRECEIVER integer, IDSOURCE integer, HZ63 double, HZ125 double," +
+                    " HZ250 double, HZ500 double, HZ1000 double, HZ2000 double, HZ4000 double, HZ8000 double)");
+        }
+        try (PreparedStatement road = connection.prepareStatement("INSERT INTO ROADS VALUES (?, ?, ?)");
+             PreparedStatement roadLw = connection.prepareStatement("INSERT INTO ROADS_LW(LINK_ID, LW63, LW125," +
+                     " LW250, LW500, LW1000, LW2000, LW4000, LW8000, TIME) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int pk = 1; pk <= 20; pk++) {
+                road.setInt(1, pk);
+                road.setString(2, "link_" + pk);
+                road.setString(3, "LINESTRING(" + pk + " 0, " + pk + " 10)");
+                road.execute();
+                // the road 20 has no emission
+                for (int time = 0; pk < 20 && time < AttenuationMatrixTimeBins.DAY_DURATION; time += timeBinSize) {
+                    // some time bins are empty, some have two rows
+                    int rowCount = random.nextInt(3);
+                    for (int row = 0; row < rowCount; row++) {
+                        roadLw.setString(1, "link_" + pk);
+                        for (int idFreq = 0; idFreq < 8; idFreq++) {
+                            roadLw.setDouble(2 + idFreq, 60 + random.nextDouble(40));
+                        }
+                        roadLw.setInt(10, time);
+                        roadLw.execute();
+                    }
+                }
+            }
+        }
+        try (PreparedStatement receiver = connection.prepareStatement("INSERT INTO RECEIVERS VALUES (?, ?)");
+             PreparedStatement attenuation = connection.prepareStatement("INSERT INTO ATTENUATION VALUES (?, ?, ?," +
+                     " ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int pk = 1; pk <= 600; pk++) {
+                receiver.setInt(1, pk);
+                receiver.setString(2, "POINT(" + pk + " 5 4)");
+                receiver.execute();
+                // the receivers 1 to 10 have no sources
+                for (int source = 1; pk > 10 && source <= 20; source += 1 + pk % 4) {
+                    attenuation.setInt(1, pk);
+                    attenuation.setInt(2, source);
+                    for (int idFreq = 0; idFreq < 8; idFreq++) {
+                        attenuation.setDouble(3 + idFreq, -30 - random.nextDouble(40));
+                    }
+                    attenuation.execute();
+                }
+            }
+        }
+    }
+
+    /**
+     * Expected levels computed with one query by receiver and by source
+     */
+    private double[] expectedLevels(long receiverPk, int timeBinSize) throws SQLException {
+        int timeBinCount = AttenuationMatrixTimeBins.DAY_DURATION / timeBinSize;
+        double[] levels = new double[timeBinCount * 8];
+        Arrays.fill(levels, AttenuationMatrixTimeBins.BACKGROUND_LEVEL);
+        try (PreparedStatement attenuation = connection.prepareStatement(
+                "SELECT * FROM ATTENUATION WHERE IDRECEIVER = ?");
+             PreparedStatement roadLw = connection.prepareStatement("SELECT MRS.* FROM ROADS_LW MRS INNER JOIN" +
+                     " ROADS MR ON MR.LINK_ID = MRS.LINK_ID WHERE MR.PK = ?")) {
+            attenuation.setLong(1, receiverPk);
+            try (ResultSet att = attenuation.executeQuery()) {
+                while (att.next()) {
+                    roadLw.setLong(1, att.getLong("IDSOURCE"));
+                    try (ResultSet lw = roadLw.executeQuery()) {
+                        while (lw.next()) {
+                            int timeBin = lw.getInt("TIME") / timeBinSize;
+                            for (int idFreq = 0; idFreq < 8; idFreq++) {
+                                double level = lw.getDouble("LW" + FREQUENCIES[idFreq]) +
+                                        att.getDouble("HZ" + FREQUENCIES[idFreq]);
+                                int index = timeBin * 8 + idFreq;
+                                levels[index] = 10 * Math.log10(Math.pow(10, levels[index] / 10) +
+                                        Math.pow(10, level / 10));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return levels;
+    }
+
+    @Test
+    public void testTimeBinLevels() throws SQLException {
+        int timeBinSize = 3600;
+        createTables(timeBinSize);
+        long receiverCount = AttenuationMatrixTimeBins.makeTimeBinLevelsTable(connection, "ROADS", "ROADS_LW",
+                "RECEIVERS", "ATTENUATION", "RESULT", timeBinSize, 4);
+        assertEquals(590, receiverCount);
+        try (Statement st = connection.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*), COUNT(DISTINCT IDRECEIVER) FROM RESULT")) {
+                assertTrue(rs.next());
+                assertEquals(590 * 24, rs.getInt(1));
+                assertEquals(590, rs.getInt(2));
+            }
+            int checkedRows = 0;
+            try (ResultSet rs = st.executeQuery("SELECT R.*, ST_X(R.THE_GEOM) X FROM RESULT R" +
+                    " WHERE MOD(IDRECEIVER, 37) = 0 ORDER BY PK")) {
+                long receiverPk = -1;
+                double[] expected = null;
+                while (rs.next()) {
+                    if (rs.getLong("IDRECEIVER") != receiverPk) {
+                        receiverPk = rs.getLong("IDRECEIVER");
+                        expected = expectedLevels(receiverPk, timeBinSize);
+                    }
+                    assertEquals(receiverPk, rs.getDouble("X"), 0);
+                    int timeBin = rs.getInt("TIME") / timeBinSize;
+                    for (int idFreq = 0; idFreq < 8; idFreq++) {
+                        assertEquals(expected[timeBin * 8 + idFreq], rs.getDouble("HZ" + FREQUENCIES[idFreq]),
+                                1e-6);
+                    }
+                    checkedRows++;
+                }
+            }
+            assertEquals(16 * 24, checkedRows);
+        }
+    }
+}
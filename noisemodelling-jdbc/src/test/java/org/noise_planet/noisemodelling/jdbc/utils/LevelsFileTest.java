@@ -0,0 +1,96 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class LevelsFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static File writeFile(File file, boolean hasSourceId, int blockCount, int blockSize) throws IOException {
+        try (LevelsFileWriter writer = new LevelsFileWriter(file, hasSourceId, new String[]{"HZ63", "LAEQ", "LEQ"})) {
+            long[] receiverIds = new long[blockSize];
+            long[] sourceIds = new long[blockSize];
+            double[][] columns = new double[3][blockSize];
+            long row = 0;
+            for (int idBlock = 0; idBlock < blockCount; idBlock++) {
+                // Last block is not full
+                int rowCount = idBlock == blockCount - 1 ? blockSize / 2 : blockSize;
+                for (int i = 0; i < rowCount; i++) {
+                    receiverIds[i] = row;
+                    sourceIds[i] = row * 10;
+                    columns[0][i] = row * 0.5;
+                    columns[1][i] = -row;
+                    columns[2][i] = row + 0.25;
+                    row++;
+                }
+                writer.writeBlock(rowCount, receiverIds, sourceIds, columns);
+            }
+            assertEquals(row, writer.getRowCount());
+        }
+        return file;
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        File file = writeFile(folder.newFile("LDEN_GEOM.nmlv"), true, 5, 100);
+        try (LevelsFileReader reader = new LevelsFileReader(file)) {
+            assertEquals(450, reader.getRowCount());
+            assertEquals(5, reader.getBlockCount());
+            assertTrue(reader.hasSourceId());
+            assertArrayEquals(new String[]{"HZ63", "LAEQ", "LEQ"}, reader.getColumnNames());
+            // random access
+            for (long row = reader.getRowCount() - 1; row >= 0; row -= 7) {
+                assertEquals(row, reader.getReceiverId(row));
+                assertEquals(row * 10, reader.getSourceId(row));
+                assertEquals(row * 0.5, reader.getValue(row, 0), 1e-6);
+                assertEquals(-row, reader.getValue(row, 1), 1e-6);
+                assertEquals(row + 0.25, reader.getValue(row, 2), 1e-6);
+            }
+            // block access
+            long[] receiverIds = new long[100];
+            float[][] columns = new float[][]{null, new float[100], null};
+            reader.readBlock(4, receiverIds, null, columns);
+            assertEquals(400, reader.getBlockFirstRow(4));
+            assertEquals(50, reader.getBlockRowCount(4));
+            assertEquals(449, receiverIds[49]);
+            assertEquals(-449, columns[1][49], 1e-6);
+        }
+    }
+
+    @Test
+    public void testTableFunction() throws IOException, SQLException {
+        File file = writeFile(folder.newFile("LDAY_GEOM.nmlv"), false, 3, 10);
+        try (Connection connection = H2GISDBFactory.createSpatialDataBase(LevelsFileTest.class.getSimpleName(),
+                true, "");
+             Statement st = connection.createStatement()) {
+            H2GISFunctions.registerFunction(st, new LevelsFileTableFunction(), "");
+            try (ResultSet rs = st.executeQuery("SELECT * FROM NM_READ_LEVELS('" + file.getAbsolutePath()
+                    + "') ORDER BY IDRECEIVER")) {
+                assertEquals(4, rs.getMetaData().getColumnCount());
+                assertEquals("IDRECEIVER", rs.getMetaData().getColumnName(1));
+                assertEquals("LEQ", rs.getMetaData().getColumnName(4));
+                int count = 0;
+                while (rs.next()) {
+                    assertEquals(count, rs.getLong("IDRECEIVER"));
+                    assertEquals(count * 0.5, rs.getDouble("HZ63"), 1e-6);
+                    count++;
+                }
+                assertEquals(25, count);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.h2gis.functions.io.shp.SHPRead;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.noise_planet.noisemodelling.jdbc.LDENConfig;
+import org.noise_planet.noisemodelling.jdbc.LDENPropagationProcessData;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+public class MakeLWTableTest {
+
+    private Connection connection;
+
+    @Before
+    public void tearUp() throws Exception {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                MakeLWTableTest.class.getSimpleName(), true, ""));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testRoadLWTable() throws SQLException, IOException {
+        SHPRead.importTable(connection, MakeLWTableTest.class.getResource(
+                "/org/noise_planet/noisemodelling/jdbc/roads_traff.shp").getFile());
+        MakeLWTable.makeRoadLWTable(connection, "ROADS_TRAFF", "LW_ROADS", 2, 3);
+
+        // Compare with the emission computed row by row
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setCoefficientVersion(2);
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY, new PropagationProcessPathData(false));
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.EVENING, new PropagationProcessPathData(false));
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.NIGHT, new PropagationProcessPathData(false));
+        LDENPropagationProcessData ldenData = new LDENPropagationProcessData(null, ldenConfig);
+        int rowCount = 0;
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT R.*, L.* FROM ROADS_TRAFF R, LW_ROADS L WHERE R.PK = L.PK")) {
+            SpatialResultSet spatialResultSet = rs.unwrap(SpatialResultSet.class);
+            while (rs.next()) {
+                double[][] expected = ldenData.computeLw(spatialResultSet);
+                for (int idPeriod = 0; idPeriod < RoadTrafficBatch.PERIODS.length; idPeriod++) {
+                    double[] expectedLevels = wToDba(expected[idPeriod]);
+                    for (int idFreq = 0; idFreq < expectedLevels.length; idFreq++) {
+                        assertEquals(expectedLevels[idFreq], rs.getDouble("LW" + RoadTrafficBatch.PERIODS[idPeriod]
+                                + ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY).freq_lvl
+                                .get(idFreq)), 1e-6);
+                    }
+                }
+                rowCount++;
+            }
+        }
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM ROADS_TRAFF")) {
+            assertTrue(rs.next());
+            assertEquals(rs.getInt(1), rowCount);
+        }
+    }
+
+    @Test
+    public void testRoadEmissionTableFunction() throws SQLException {
+        SHPRead.importTable(connection, MakeLWTableTest.class.getResource(
+                "/org/noise_planet/noisemodelling/jdbc/roads_traff.shp").getFile());
+        MakeLWTable.makeRoadLWTable(connection, "ROADS_TRAFF", "LW_ROADS", 1, 1);
+        try (Statement st = connection.createStatement()) {
+            H2GISFunctions.registerFunction(st, new RoadEmissionTableFunction(), "");
+            st.execute("CREATE TABLE LW_ROADS_FUNCTION AS SELECT * FROM NM_ROAD_EMISSION('ROADS_TRAFF', 1)");
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM LW_ROADS_FUNCTION F, LW_ROADS L" +
+                    " WHERE F.PK = L.PK AND ABS(F.LWD63 - L.LWD63) < 1e-9 AND ABS(F.LWN8000 - L.LWN8000) < 1e-9" +
+                    " AND ST_EQUALS(F.THE_GEOM, L.THE_GEOM)")) {
+                assertTrue(rs.next());
+                int matchingRows = rs.getInt(1);
+                try (ResultSet count = st.executeQuery("SELECT COUNT(*) FROM ROADS_TRAFF")) {
+                    assertTrue(count.next());
+                    assertEquals(count.getInt(1), matchingRows);
+                }
+            }
+        }
+    }
+}
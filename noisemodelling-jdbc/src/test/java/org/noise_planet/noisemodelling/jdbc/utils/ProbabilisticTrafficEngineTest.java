@@ -0,0 +1,126 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.sumDbArray;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+public class ProbabilisticTrafficEngineTest {
+
+    @Test
+    public void testDeterministicSources() {
+        ProbabilisticTrafficEngine engine = new ProbabilisticTrafficEngine(2);
+        engine.setSeed(42);
+        engine.setExceedanceThresholds(70, 90);
+        engine.addSource(1, new double[]{1.0}, new double[][]{{100, 90}});
+        engine.addSource(2, new double[]{0.5, 0.5}, new double[][]{{95, 95}, {95, 95}});
+        // never emit
+        engine.addSource(3, new double[]{0}, new double[][]{{120, 120}});
+        engine.addAttenuation(20, 1, new double[]{-20, -25});
+        engine.addAttenuation(20, 2, new double[]{-30, -30});
+        engine.addAttenuation(10, 1, new double[]{-40, -40});
+        engine.addAttenuation(10, 3, new double[]{-10, -10});
+        // NaN attenuation and unknown sources are ignored
+        engine.addAttenuation(10, 2, new double[]{Double.NaN, -10});
+        engine.addAttenuation(30, 4, new double[]{-10, -10});
+        engine.run(100);
+
+        assertEquals(100, engine.getIterationCount());
+        assertEquals(2, engine.getReceiverCount());
+        assertEquals(10, engine.getReceiverPk(0));
+        assertEquals(20, engine.getReceiverPk(1));
+
+        double[] expected10 = new double[]{60, 50};
+        assertArrayEquals(expected10, engine.getEquivalentLevels(0), 1e-6);
+        double global10 = wToDba(dbaToW(expected10[0]) + dbaToW(expected10[1]));
+        assertEquals(global10, engine.getExceededLevel(0, 10), 1e-6);
+        assertEquals(global10, engine.getExceededLevel(0, 90), 1e-6);
+        assertEquals(0, engine.getExceedanceProbability(0, 0), 0);
+        assertEquals(0, engine.getSilentProbability(0), 0);
+
+        double[] expected20 = sumDbArray(new double[]{80, 65}, new double[]{65, 65});
+        assertArrayEquals(expected20, engine.getEquivalentLevels(1), 1e-6);
+        double global20 = wToDba(dbaToW(expected20[0]) + dbaToW(expected20[1]));
+        assertEquals(global20, engine.getExceededLevel(1, 50), 1e-6);
+        assertEquals(1, engine.getExceedanceProbability(1, 0), 0);
+        assertEquals(0, engine.getExceedanceProbability(1, 1), 0);
+    }
+
+    @Test
+    public void testProbabilisticSource() {
+        ProbabilisticTrafficEngine engine = new ProbabilisticTrafficEngine(1);
+        engine.setSeed(7);
+        engine.setExceedanceThresholds(55);
+        engine.addSource(1, new double[]{0.3}, new double[][]{{100}});
+        engine.addSource(2, new double[]{0.05}, new double[][]{{110}});
+        engine.addAttenuation(1, 1, new double[]{-40});
+        engine.addAttenuation(1, 2, new double[]{-40});
+        int iterations = 20000;
+        engine.run(iterations);
+        // 60 dB with a probability of 0.3, 70 dB or more with a probability of 0.05
+        assertEquals(1 - 0.7 * 0.95, engine.getExceedanceProbability(0, 0), 0.01);
+        assertEquals(0.7 * 0.95, engine.getSilentProbability(0), 0.01);
+        assertEquals(60, engine.getExceededLevel(0, 10), 0.1);
+        assertTrue(engine.getExceededLevel(0, 1) >= 70);
+        assertEquals(Double.NEGATIVE_INFINITY, engine.getExceededLevel(0, 50), 0);
+        double expectedLeq = wToDba(0.3 * dbaToW(60) + 0.05 * dbaToW(70));
+        assertEquals(expectedLeq, engine.getEquivalentLevels(0)[0], 0.2);
+    }
+
+    @Test
+    public void testSameResultsWithThreads() {
+        List<double[]> results = new ArrayList<>();
+        for (int threadCount : new int[]{1, 4}) {
+            ProbabilisticTrafficEngine engine = new ProbabilisticTrafficEngine(3);
+            engine.setSeed(1234);
+            engine.setThreadCount(threadCount);
+            engine.setBandWeights(new double[]{-10, 0, 1});
+            engine.setExceedanceThresholds(40, 50);
+            // same matrix for both engines
+            SplittableRandom matrixRandom = new SplittableRandom(3);
+            for (int sourcePk = 0; sourcePk < 50; sourcePk++) {
+                engine.addSource(sourcePk, new double[]{0.1, 0.2}, new double[][]{
+                        {90 + matrixRandom.nextDouble(10), 95, 80}, {100, 98, 92 + matrixRandom.nextDouble(5)}});
+            }
+            for (int receiverPk = 0; receiverPk < 30; receiverPk++) {
+                for (int sourcePk = 0; sourcePk < 50; sourcePk += 1 + receiverPk % 3) {
+                    engine.addAttenuation(receiverPk, sourcePk, new double[]{-40 - matrixRandom.nextDouble(20),
+                            -45 - matrixRandom.nextDouble(20), -50 - matrixRandom.nextDouble(20)});
+                }
+            }
+            List<double[]> iterationLevels = Collections.synchronizedList(new ArrayList<>());
+            engine.run(500, (iteration, receiverPk, levels) -> {
+                if (receiverPk == 5) {
+                    iterationLevels.add(new double[]{iteration, levels[0], levels[1], levels[2]});
+                }
+            });
+            assertEquals(30, engine.getReceiverCount());
+            double[] result = new double[engine.getReceiverCount() * 8 + 1];
+            for (int idReceiver = 0; idReceiver < engine.getReceiverCount(); idReceiver++) {
+                double[] leq = engine.getEquivalentLevels(idReceiver);
+                System.arraycopy(leq, 0, result, idReceiver * 8, leq.length);
+                result[idReceiver * 8 + 3] = engine.getExceededLevel(idReceiver, 10);
+                result[idReceiver * 8 + 4] = engine.getExceededLevel(idReceiver, 50);
+                result[idReceiver * 8 + 5] = engine.getExceededLevel(idReceiver, 90);
+                result[idReceiver * 8 + 6] = engine.getExceedanceProbability(idReceiver, 0);
+                result[idReceiver * 8 + 7] = engine.getExceedanceProbability(idReceiver, 1);
+            }
+            // Leq of the receiver 5 from the levels of each iteration
+            double sum = 0;
+            for (double[] levels : iterationLevels) {
+                sum += dbaToW(levels[2]);
+            }
+            assertEquals(engine.getEquivalentLevels(5)[1], wToDba(sum / 500), 1e-6);
+            result[result.length - 1] = iterationLevels.size();
+            results.add(result);
+        }
+        assertArrayEquals(results.get(0), results.get(1), 0);
+    }
+}
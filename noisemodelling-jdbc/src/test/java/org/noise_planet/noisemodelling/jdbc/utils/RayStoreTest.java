@@ -0,0 +1,225 @@
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.PropagationDataBuilder;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.sumDbArray;
+
+public class RayStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static CnossosPropagationData makeScene() {
+        ProfileBuilder profileBuilder = new ProfileBuilder()
+                .addBuilding(new Coordinate[]{
+                        new Coordinate(10, -5),
+                        new Coordinate(20, -5),
+                        new Coordinate(20, 5),
+                        new Coordinate(10, 5)
+                }, 6.0)
+                .addGroundEffect(-60, 60, -60, 60, 0.5)
+                .finishFeeding();
+        CnossosPropagationData rayData = new PropagationDataBuilder(profileBuilder)
+                .addSource(0, 0, 1)
+                .addSource(0, 20, 1)
+                // line source, one record by source point
+                .addSource(new GeometryFactory().createLineString(new Coordinate[]{
+                        new Coordinate(-10, -20, 0.5),
+                        new Coordinate(10, -20, 0.5)}))
+                .addReceiver(30, 0, 2)
+                .addReceiver(40, 10, 4)
+                .addReceiver(-30, 5, 2)
+                .setGs(0.5)
+                .build();
+        rayData.reflexionOrder = 1;
+        return rayData;
+    }
+
+    private static PropagationProcessPathData makePathData(double temperature, double humidity,
+                                                           double favorable) {
+        PropagationProcessPathData pathData = new PropagationProcessPathData();
+        pathData.setTemperature(temperature);
+        pathData.setHumidity(humidity);
+        double[] windRose = new double[PropagationProcessPathData.DEFAULT_WIND_ROSE.length];
+        Arrays.fill(windRose, favorable);
+        pathData.setWindRose(windRose);
+        return pathData;
+    }
+
+    /**
+     * @return Attenuation by receiver and source, the levels of the points of a line source are merged
+     */
+    private static Map<String, double[]> getLevels(ComputeRaysOutAttenuation out) {
+        Map<String, double[]> levels = new HashMap<>();
+        for (ComputeRaysOutAttenuation.VerticeSL lvl : out.receiversAttenuationLevels) {
+            levels.merge(lvl.receiverId + ":" + lvl.sourceId, lvl.value, (a, b) -> sumDbArray(a, b));
+        }
+        return levels;
+    }
+
+    private static void writeStore(File directory, boolean compress, long segmentSize) throws IOException {
+        try (RayStoreWriter writer = new RayStoreWriter(directory, compress, segmentSize)) {
+            ComputeCnossosRays computeRays = new ComputeCnossosRays(makeScene());
+            computeRays.setThreadCount(2);
+            computeRays.run(new StoreOut(writer));
+            assertEquals(3, writer.getReceiverCount());
+        }
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        File compressed = folder.newFolder("compressed");
+        File raw = folder.newFolder("raw");
+        writeStore(compressed, true, RayStoreWriter.DEFAULT_SEGMENT_SIZE);
+        // one segment file by receiver
+        writeStore(raw, false, 1);
+        assertTrue(new File(raw, RayStoreWriter.getSegmentFileName(2)).exists());
+        assertFalse(new File(compressed, RayStoreWriter.getSegmentFileName(1)).exists());
+
+        // Evaluate the stored rays with other meteorological conditions
+        PropagationProcessPathData newPathData = makePathData(25, 40, 0.8);
+        ComputeRaysOutAttenuation expectedOut = new ComputeRaysOutAttenuation(false, newPathData);
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(makeScene());
+        computeRays.setThreadCount(1);
+        computeRays.run(expectedOut);
+        Map<String, double[]> expected = getLevels(expectedOut);
+        assertFalse(expected.isEmpty());
+
+        for (File directory : new File[]{compressed, raw}) {
+            try (RayStoreReader reader = new RayStoreReader(directory)) {
+                assertEquals(directory == compressed, reader.isCompressed());
+                ComputeRaysOutAttenuation replayOut = new ComputeRaysOutAttenuation(false, newPathData);
+                reader.replay(replayOut, 2);
+                Map<String, double[]> got = getLevels(replayOut);
+                assertEquals(expected.keySet(), got.keySet());
+                for (Map.Entry<String, double[]> entry : expected.entrySet()) {
+                    assertArrayEquals(entry.getKey(), entry.getValue(), got.get(entry.getKey()), 1e-6);
+                }
+            }
+        }
+        // The attenuation depends on the meteorological conditions
+        ComputeRaysOutAttenuation defaultOut = new ComputeRaysOutAttenuation(false, makePathData(15, 70, 0.5));
+        try (RayStoreReader reader = new RayStoreReader(compressed)) {
+            reader.replay(defaultOut, 1);
+        }
+        double[] defaultLevels = getLevels(defaultOut).get("0:0");
+        assertNotNull(defaultLevels);
+        assertNotEquals(expected.get("0:0")[7], defaultLevels[7], 1e-3);
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        File directory = folder.newFolder("rays");
+        writeStore(directory, true, RayStoreWriter.DEFAULT_SEGMENT_SIZE);
+        try (RayStoreReader reader = new RayStoreReader(directory)) {
+            assertEquals(3, reader.getReceiverCount());
+            for (int idReceiver = 0; idReceiver < reader.getReceiverCount(); idReceiver++) {
+                // sorted by primary key
+                assertEquals(idReceiver, reader.getReceiverPk(idReceiver));
+            }
+            List<RayStoreReader.SourceRays> receiverRays = reader.readReceiver(1);
+            int lineSourceRecords = 0;
+            int lineSourcePaths = 0;
+            for (RayStoreReader.SourceRays sourceRays : receiverRays) {
+                if (sourceRays.sourcePk == 2) {
+                    lineSourceRecords++;
+                    lineSourcePaths += sourceRays.paths.size();
+                    assertTrue(sourceRays.sourceLi > 0);
+                }
+            }
+            assertTrue(lineSourceRecords > 1);
+            List<PropagationPath> paths = reader.readRays(1, 2);
+            assertEquals(lineSourcePaths, paths.size());
+            for (PropagationPath path : paths) {
+                assertEquals(1, path.getIdReceiver());
+                assertEquals(2, path.getIdSource());
+                assertNotNull(path.getSRSegment());
+                assertFalse(path.getPointList().isEmpty());
+            }
+            assertTrue(reader.readRays(1, 99).isEmpty());
+            assertTrue(reader.readReceiver(99).isEmpty());
+        }
+    }
+
+    @Test
+    public void testPrimaryKeyOutOfRange() throws IOException {
+        File directory = folder.newFolder("rays");
+        long receiverPk = Integer.MAX_VALUE + 1L;
+        try (RayStoreWriter writer = new RayStoreWriter(directory, true, RayStoreWriter.DEFAULT_SEGMENT_SIZE)) {
+            RayStoreWriter.ReceiverRays receiverRays = new RayStoreWriter.ReceiverRays();
+            receiverRays.addSource(3, 1.0, new ArrayList<>());
+            writer.writeReceiver(receiverPk, receiverRays);
+        }
+        try (RayStoreReader reader = new RayStoreReader(directory)) {
+            assertEquals(receiverPk, reader.getReceiverPk(0));
+            try {
+                reader.readRays(receiverPk, 3);
+                fail("The receiver primary key must not be truncated");
+            } catch (IOException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains(Long.toString(receiverPk)));
+            }
+        }
+    }
+
+    /**
+     * Write the rays in the store without evaluating them
+     */
+    private static class StoreOut implements IComputeRaysOut {
+        private final RayStoreWriter writer;
+        private final RayStoreWriter.ReceiverRays receiverRays = new RayStoreWriter.ReceiverRays();
+
+        StoreOut(RayStoreWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                            List<PropagationPath> propagationPath) {
+            try {
+                receiverRays.addSource(sourceId, sourceLi, propagationPath);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return new double[0];
+        }
+
+        @Override
+        public void finalizeReceiver(long receiverId) {
+            try {
+                if (receiverRays.getRecordCount() > 0) {
+                    writer.writeReceiver(receiverId, receiverRays);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } finally {
+                receiverRays.clear();
+            }
+        }
+
+        @Override
+        public IComputeRaysOut subProcess() {
+            return new StoreOut(writer);
+        }
+    }
+}
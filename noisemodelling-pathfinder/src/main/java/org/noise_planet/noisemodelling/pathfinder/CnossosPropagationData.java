@@ -118,6 +118,18 @@ public class CnossosPropagationData {
     /** maximum dB Error, stop calculation if the sum of further sources contributions are smaller than this value */
     public double maximumError = Double.NEGATIVE_INFINITY;
 
+    /**
+     * maximum dB Error, compute the further sources without reflections and lateral diffraction if the sum of
+     * their contributions are smaller than this value
+     */
+    public double reducedFidelityError = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Lowest atmospheric absorption coefficient (dB/km) of each frequency band over the computed periods. It bounds
+     * the maximal contribution of the sources (see {@link #maximumError}), null to ignore the atmospheric absorption.
+     */
+    public double[] minimalAtmosphericAbsorption = null;
+
     /** stop calculation if the sum of further sources contributions are smaller than this value */
     public double noiseFloor = Double.NEGATIVE_INFINITY;
 
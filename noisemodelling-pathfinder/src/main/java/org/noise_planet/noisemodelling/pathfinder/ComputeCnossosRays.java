@@ -40,19 +40,25 @@ import org.locationtech.jts.algorithm.*;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.impl.CoordinateArraySequence;
 import org.locationtech.jts.geom.prep.PreparedLineString;
-import org.locationtech.jts.index.ItemVisitor;
 import org.locationtech.jts.math.Vector2D;
 import org.locationtech.jts.math.Vector3D;
 import org.locationtech.jts.triangulate.quadedge.Vertex;
+import org.noise_planet.noisemodelling.pathfinder.utils.LruCache;
+import org.noise_planet.noisemodelling.pathfinder.utils.ProfileCacheMetric;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
 import org.noise_planet.noisemodelling.pathfinder.utils.ReceiverStatsMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.SourcePruningMetric;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
 import static java.lang.Double.isInfinite;
@@ -78,6 +84,8 @@ public class ComputeCnossosRays {
     private static final double epsilon = 1e-7;
     private static final double MAX_RATIO_HULL_DIRECT_PATH = 4;
     private static final Logger LOGGER = LoggerFactory.getLogger(ComputeCnossosRays.class);
+    /** Default maximum number of line source points kept in memory, for all the line sources */
+    public static final long DEFAULT_MAXIMUM_CACHED_LINE_POINTS = 1 << 18;
 
     private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
 
@@ -87,6 +95,19 @@ public class ComputeCnossosRays {
     /** Number of thread used for ray computation. */
     private int threadCount ;
     private ProfilerThread profilerThread;
+    /** Optional executor shared with other computations, if null a thread pool is created for each run */
+    private ExecutorService executorService;
+    /** Sort the receivers by estimated cost and dispatch them by small chunks to the threads */
+    private boolean balanceReceivers = true;
+    /** Minimum number of receivers fetched at once by a thread when balanceReceivers is enabled */
+    private int minimumReceiverChunk = 1;
+    /** Reflection walls shared by the receivers, created on the first receiver */
+    private volatile ReflectionCandidateIndex reflectionCandidateIndex;
+    /** Line sources subdivisions shared by the receivers, indexed by source index */
+    private volatile AtomicReferenceArray<LineSourceSubdivision[]> lineSourceSubdivisions;
+    /** Point sources of the line sources subdivisions, the weight is the number of point sources */
+    private final LruCache<SubdivisionKey, SubdivisionLevel> subdivisionLevels =
+            new LruCache<>(DEFAULT_MAXIMUM_CACHED_LINE_POINTS, level -> Math.max(1, level.orientations.length), 16);
 
     /**
      * Create new instance from the propagation data.
@@ -123,30 +144,104 @@ public class ComputeCnossosRays {
         this.threadCount = threadCount;
     }
 
+    /**
+     * @return Executor shared with other computations or null
+     */
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Submit the receivers computation into this executor instead of creating a new thread pool. The executor is
+     * not shut down at the end of {@link #run(IComputeRaysOut)} so it can be shared by several cells.
+     * @param executorService Shared executor or null
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * @return True if the receivers are sorted by estimated cost and dispatched by small chunks to the threads
+     */
+    public boolean isBalanceReceivers() {
+        return balanceReceivers;
+    }
+
+    /**
+     * @param balanceReceivers If true the receivers are sorted by estimated cost (sources and walls in range) and
+     *                         dispatched by chunks of decreasing size to the idle threads. If false each thread
+     *                         compute a contiguous range of receivers.
+     */
+    public void setBalanceReceivers(boolean balanceReceivers) {
+        this.balanceReceivers = balanceReceivers;
+    }
+
+    /**
+     * @return Minimum number of receivers fetched at once by a thread
+     */
+    public int getMinimumReceiverChunk() {
+        return minimumReceiverChunk;
+    }
+
+    /**
+     * @param minimumReceiverChunk Minimum number of receivers fetched at once by a thread
+     */
+    public void setMinimumReceiverChunk(int minimumReceiverChunk) {
+        this.minimumReceiverChunk = Math.max(1, minimumReceiverChunk);
+    }
+
+    /**
+     * The line sources are split into point sources according to the receiver distance, the point sources are
+     * shared by the receivers until this bound is reached, then the least recently used are removed.
+     * @param maximumCachedLinePoints Maximum number of point sources kept in memory for all the line sources,
+     *                                0 to split the line sources for each receiver
+     */
+    public void setMaximumCachedLinePoints(long maximumCachedLinePoints) {
+        subdivisionLevels.setMaximumWeight(maximumCachedLinePoints);
+    }
+
+    /**
+     * @return Number of line source point sources kept in memory
+     */
+    long getCachedLinePointCount() {
+        return subdivisionLevels.getWeight();
+    }
+
+    /**
+     * @return Number of line source subdivisions removed from the memory
+     */
+    long getCachedLineEvictionCount() {
+        return subdivisionLevels.getEvictionCount();
+    }
+
     /**
      * Run computation and store the results in the given output.
      * @param computeRaysOut Result output.
      */
     public void run(IComputeRaysOut computeRaysOut) {
+        if(profilerThread != null && data.profileBuilder != null &&
+                profilerThread.getMetric(ProfileCacheMetric.class) != null) {
+            data.profileBuilder.setProfileCacheMetric(profilerThread.getMetric(ProfileCacheMetric.class));
+        }
+        if(executorService != null) {
+            runInExecutor(computeRaysOut);
+            return;
+        }
         ProgressVisitor visitor = data.cellProg;
+        ReceiverQueue receiverQueue = createReceiverQueue();
+        if (threadCount <= 1) {
+            new ReceiversComputation(receiverQueue, this, visitor, computeRaysOut, data).run();
+            return;
+        }
         ThreadPool threadManager = new ThreadPool(threadCount, threadCount + 1, Long.MAX_VALUE, TimeUnit.SECONDS);
-        int maximumReceiverBatch = (int) Math.ceil(data.receivers.size() / (double) threadCount);
-        int endReceiverRange = 0;
-        //Launch execution of computation by batch
-        while (endReceiverRange < data.receivers.size()) {
+        //Launch the workers, each one fetch receivers until the queue is empty
+        for (int idThread = 0; idThread < threadCount; idThread++) {
             //Break if the progress visitor is cancelled
             if (visitor != null && visitor.isCanceled()) {
                 break;
             }
-            int newEndReceiver = Math.min(endReceiverRange + maximumReceiverBatch, data.receivers.size());
-            RangeReceiversComputation batchThread = new RangeReceiversComputation(endReceiverRange, newEndReceiver,
-                    this, visitor, computeRaysOut, data);
-            if (threadCount != 1) {
-                threadManager.executeBlocking(batchThread);
-            } else {
-                batchThread.run();
-            }
-            endReceiverRange = newEndReceiver;
+            threadManager.executeBlocking(new ReceiversComputation(receiverQueue, this, visitor, computeRaysOut,
+                    data));
         }
         //Once the execution ends, shutdown the thread manager and await termination
         threadManager.shutdown();
@@ -159,21 +254,143 @@ public class ComputeCnossosRays {
         }
     }
 
+    /**
+     * Submit the receivers workers into the shared executor and wait for their completion.
+     * @param computeRaysOut Result output.
+     */
+    private void runInExecutor(IComputeRaysOut computeRaysOut) {
+        ProgressVisitor visitor = data.cellProg;
+        ReceiverQueue receiverQueue = createReceiverQueue();
+        List<Future<?>> batches = new ArrayList<>();
+        for (int idThread = 0; idThread < threadCount; idThread++) {
+            if (visitor != null && visitor.isCanceled()) {
+                break;
+            }
+            batches.add(executorService.submit(new ReceiversComputation(receiverQueue, this, visitor,
+                    computeRaysOut, data)));
+        }
+        for(Future<?> batch : batches) {
+            try {
+                batch.get();
+            } catch (InterruptedException ex) {
+                LOGGER.error(ex.getLocalizedMessage(), ex);
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ex) {
+                // Already logged by ReceiversComputation
+                if(visitor != null) {
+                    visitor.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Receivers dispatching queue shared by the computation threads
+     */
+    private ReceiverQueue createReceiverQueue() {
+        int receiverCount = data.receivers.size();
+        if (!balanceReceivers || threadCount <= 1) {
+            // Contiguous ranges of receivers, one per thread
+            return new ReceiverQueue(null, receiverCount,
+                    (int) Math.ceil(receiverCount / (double) Math.max(1, threadCount)), Integer.MAX_VALUE);
+        } else {
+            // Guided scheduling, the chunk size decrease with the remaining receivers count
+            return new ReceiverQueue(sortReceiversByCost(), receiverCount, minimumReceiverChunk, threadCount * 2);
+        }
+    }
+
+    /**
+     * Estimate the computation cost of each receiver from the number of sources and walls in range.
+     * In order to keep the estimation cheap, the receivers are grouped into tiles and the cost is evaluated once
+     * for each tile.
+     * @return Estimated cost of each receiver
+     */
+    double[] estimateReceiversCost() {
+        int receiverCount = data.receivers.size();
+        double tileSize = Math.max(1.0, data.maxSrcDist / 4);
+        Map<Long, Double> tileCost = new HashMap<>();
+        double[] receiverCost = new double[receiverCount];
+        for (int idReceiver = 0; idReceiver < receiverCount; idReceiver++) {
+            Coordinate receiver = data.receivers.get(idReceiver);
+            long tileX = (long) Math.floor(receiver.x / tileSize);
+            long tileY = (long) Math.floor(receiver.y / tileSize);
+            long tileKey = ReflectionCandidateIndex.getTileKey(tileX, tileY);
+            Double cost = tileCost.get(tileKey);
+            if (cost == null) {
+                Envelope tileRange = new Envelope(new Coordinate((tileX + 0.5) * tileSize, (tileY + 0.5) * tileSize));
+                tileRange.expandBy(data.maxSrcDist);
+                int sourceCount = 0;
+                Iterator<Integer> sources = data.sourcesIndex.query(tileRange);
+                while (sources.hasNext()) {
+                    sources.next();
+                    sourceCount++;
+                }
+                int wallCount = data.profileBuilder != null ? data.profileBuilder.getWallsIn(tileRange).size() : 0;
+                cost = sourceCount * (1.0 + wallCount);
+                tileCost.put(tileKey, cost);
+            }
+            receiverCost[idReceiver] = cost;
+        }
+        return receiverCost;
+    }
+
+    /**
+     * @return Receivers index, the most expensive first according to {@link #estimateReceiversCost()}. The receivers
+     * of the same tile of {@link ReflectionCandidateIndex} are consecutive, so the tile stays in its cache.
+     */
+    int[] sortReceiversByCost() {
+        int receiverCount = data.receivers.size();
+        double[] receiverCost = estimateReceiversCost();
+        double tileSize = Math.max(1.0, data.maxSrcDist / 4);
+        long[] receiverTile = new long[receiverCount];
+        Integer[] order = new Integer[receiverCount];
+        for (int idReceiver = 0; idReceiver < receiverCount; idReceiver++) {
+            order[idReceiver] = idReceiver;
+            receiverTile[idReceiver] = ReflectionCandidateIndex.getTileKey(data.receivers.get(idReceiver), tileSize);
+        }
+        Arrays.sort(order, (a, b) -> {
+            int compare = Double.compare(receiverCost[b], receiverCost[a]);
+            return compare != 0 ? compare : Long.compare(receiverTile[a], receiverTile[b]);
+        });
+        int[] sortedReceivers = new int[receiverCount];
+        for (int i = 0; i < receiverCount; i++) {
+            sortedReceivers[i] = order[i];
+        }
+        return sortedReceivers;
+    }
+
+    /**
+     * @return Reflection walls shared by all the receivers of this computation
+     */
+    public ReflectionCandidateIndex getReflectionCandidateIndex() {
+        ReflectionCandidateIndex index = reflectionCandidateIndex;
+        if(index == null) {
+            synchronized (this) {
+                index = reflectionCandidateIndex;
+                if(index == null) {
+                    index = new ReflectionCandidateIndex(data.profileBuilder, data.maxSrcDist, data.reflexionOrder);
+                    reflectionCandidateIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
     /**
      * Compute the rays to the given receiver.
      * @param rcv     Receiver point.
      * @param dataOut Computation output.
      * @param visitor Progress visitor used for cancellation and progression managing.
      */
-    private void computeRaysAtPosition(ReceiverPointInfo rcv, IComputeRaysOut dataOut, ProgressVisitor visitor) {
+    private void computeRaysAtPosition(ReceiverPointInfo rcv, IComputeRaysOut dataOut, ProgressVisitor visitor,
+                                       ProfileBuilder.CutProfile directProfile,
+                                       ProfileBuilder.CutProfile segmentProfile) {
         MirrorReceiverResultIndex receiverMirrorIndex = null;
 
         if(data.reflexionOrder > 0) {
-            Envelope receiverPropagationEnvelope = new Envelope(rcv.getCoord());
-            receiverPropagationEnvelope.expandBy(data.maxSrcDist);
-            List<ProfileBuilder.Wall> buildWalls = data.profileBuilder.getWallsIn(receiverPropagationEnvelope);
-            receiverMirrorIndex = new MirrorReceiverResultIndex(buildWalls, rcv.position, data.reflexionOrder,
-                    data.maxSrcDist, data.maxRefDist);
+            receiverMirrorIndex = new MirrorReceiverResultIndex(getReflectionCandidateIndex(), rcv.position,
+                    data.reflexionOrder, data.maxSrcDist, data.maxRefDist);
         }
 
         //Compute the source search area
@@ -206,16 +423,12 @@ public class ComputeCnossosRays {
                         if(orientation == null) {
                             orientation = new Orientation(0,0, 0);
                         }
-                        totalPowerRemaining += insertPtSource((Point) source, rcv.getCoord(), srcIndex, sourceList, wj, 1., orientation);
+                        totalPowerRemaining += insertPtSource((Point) source, rcv.getCoord(), srcIndex, sourceList, wj, 1.,
+                                orientation, data.minimalAtmosphericAbsorption);
                     }
-                } else if (source instanceof LineString) {
-                    totalPowerRemaining += addLineSource((LineString) source, rcv.getCoord(), srcIndex, sourceList, wj);
-                } else if (source instanceof MultiLineString) {
-                    for (int id = 0; id < source.getNumGeometries(); id++) {
-                        Geometry subGeom = source.getGeometryN(id);
-                        if (subGeom instanceof LineString) {
-                            totalPowerRemaining += addLineSource((LineString) subGeom, rcv.getCoord(), srcIndex, sourceList, wj);
-                        }
+                } else if (source instanceof LineString || source instanceof MultiLineString) {
+                    for (LineSourceSubdivision lineSource : getLineSourceSubdivisions(srcIndex, source)) {
+                        totalPowerRemaining += addLineSource(lineSource, rcv.getCoord(), srcIndex, sourceList, wj);
                     }
                 } else {
                     throw new IllegalArgumentException(
@@ -226,10 +439,22 @@ public class ComputeCnossosRays {
         // Sort sources by power contribution descending
         Collections.sort(sourceList);
         double powerAtSource = 0;
+        // Further sources are computed without reflections and lateral diffraction
+        boolean reducedFidelity = false;
+        double reducedFidelityErrorBound = 0;
+        double pruningErrorBound = 0;
+        int reducedFidelityCouples = 0;
+        int computedCouples = 0;
         // For each Pt Source - Pt Receiver
         AtomicInteger raysCount = new AtomicInteger(0);
         for (SourcePointInfo src : sourceList) {
-            double[] power = rcvSrcPropagation(src, src.li, rcv, dataOut, raysCount, receiverMirrorIndex);
+            double[] power = rcvSrcPropagation(src, src.li, rcv, dataOut, raysCount, receiverMirrorIndex,
+                    reducedFidelity, directProfile, segmentProfile);
+            if (reducedFidelity) {
+                reducedFidelityCouples++;
+            } else {
+                computedCouples++;
+            }
             double global = sumArray(power.length, dbaToW(power));
             totalPowerRemaining -= src.globalWj;
             if (power.length > 0) {
@@ -238,17 +463,30 @@ public class ComputeCnossosRays {
                 powerAtSource += src.globalWj;
             }
             totalPowerRemaining = max(0, totalPowerRemaining);
+            double errorBound = wToDba(powerAtSource + totalPowerRemaining) - wToDba(powerAtSource);
             // If the delta between already received power and maximal potential power received is inferior than than data.maximumError
             if ((visitor != null && visitor.isCanceled()) || (data.maximumError > 0 &&
-                            wToDba(powerAtSource + totalPowerRemaining) - wToDba(powerAtSource) < data.maximumError)) {
+                            errorBound < data.maximumError)) {
+                pruningErrorBound = errorBound;
                 break; //Stop looking for more rays
             }
+            if (!reducedFidelity && data.reducedFidelityError > 0 && errorBound < data.reducedFidelityError) {
+                // The paths that are not computed are part of the maximal potential power of the remaining sources
+                reducedFidelity = true;
+                reducedFidelityErrorBound = errorBound;
+            }
         }
 
         if(profilerThread != null &&
                 profilerThread.getMetric(ReceiverStatsMetric.class) != null) {
             profilerThread.getMetric(ReceiverStatsMetric.class).onReceiverRays(rcv.getId(), raysCount.get());
         }
+        if(profilerThread != null &&
+                profilerThread.getMetric(SourcePruningMetric.class) != null) {
+            profilerThread.getMetric(SourcePruningMetric.class).onReceiverSources(computedCouples,
+                    reducedFidelityCouples, sourceList.size() - computedCouples - reducedFidelityCouples,
+                    pruningErrorBound, reducedFidelityErrorBound);
+        }
 
         // No more rays for this receiver
         dataOut.finalizeReceiver(rcv.getId());
@@ -261,21 +499,28 @@ public class ComputeCnossosRays {
      * @param srcLi   Source power per meter coefficient.
      * @param rcv     Receiver point.
      * @param dataOut Output.
+     * @param reducedFidelity If true do not compute the reflections and the lateral diffraction
+     * @param directProfile Profile reused by the thread for the source-receiver profiles
+     * @param segmentProfile Profile reused by the thread for the diffraction and reflection sub-profiles
      * @return
      */
     private double[] rcvSrcPropagation(SourcePointInfo src, double srcLi, ReceiverPointInfo rcv,
                                        IComputeRaysOut dataOut, AtomicInteger raysCount,
-                                       MirrorReceiverResultIndex receiverMirrorIndex) {
+                                       MirrorReceiverResultIndex receiverMirrorIndex, boolean reducedFidelity,
+                                       ProfileBuilder.CutProfile directProfile,
+                                       ProfileBuilder.CutProfile segmentProfile) {
 
         double propaDistance = src.getCoord().distance(rcv.getCoord());
         if (propaDistance < data.maxSrcDist) {
             // Process direct : horizontal and vertical diff
-            List<PropagationPath> propagationPaths = new ArrayList<>(directPath(src, rcv,
-                    data.computeVerticalDiffraction, data.computeHorizontalDiffraction, data.isBodyBarrier()));
+            List<PropagationPath> propagationPaths = new ArrayList<>(directPath(src.getCoord(), src.getId(),
+                    src.getOrientation(), rcv.getCoord(), rcv.getId(), data.computeVerticalDiffraction,
+                    data.computeHorizontalDiffraction && !reducedFidelity, data.isBodyBarrier(), directProfile,
+                    segmentProfile));
             // Process reflection
-            if (data.reflexionOrder > 0) {
+            if (data.reflexionOrder > 0 && !reducedFidelity) {
                 propagationPaths.addAll(computeReflexion(rcv.getCoord(), src.getCoord(), false,
-                        src.getOrientation(), receiverMirrorIndex));
+                        src.getOrientation(), receiverMirrorIndex, directProfile, segmentProfile));
             }
             if (!propagationPaths.isEmpty()) {
                 if(raysCount != null) {
@@ -308,8 +553,29 @@ public class ComputeCnossosRays {
      * @return Calculated propagation paths.
      */
     public List<PropagationPath> directPath(Coordinate srcCoord, int srcId, Orientation orientation, Coordinate rcvCoord, int rcvId, boolean verticalDiffraction, boolean horizontalDiffraction, boolean bodyBarrier) {
+        return directPath(srcCoord, srcId, orientation, rcvCoord, rcvId, verticalDiffraction, horizontalDiffraction,
+                bodyBarrier, new ProfileBuilder.CutProfile(), new ProfileBuilder.CutProfile());
+    }
+
+    /**
+     * Direct Path computation, using profile instances reused by the calling thread. The propagation paths keep a
+     * copy of the cut points, so the profiles can be reused on the next call.
+     * @param srcCoord Source point coordinate.
+     * @param srcId    Source point identifier.
+     * @param rcvCoord Receiver point coordinate.
+     * @param rcvId    Receiver point identifier.
+     * @param directProfile Profile filled with the source-receiver profile
+     * @param segmentProfile Profile filled with the diffraction sub-profiles
+     * @return Calculated propagation paths.
+     */
+    public List<PropagationPath> directPath(Coordinate srcCoord, int srcId, Orientation orientation,
+                                            Coordinate rcvCoord, int rcvId, boolean verticalDiffraction,
+                                            boolean horizontalDiffraction, boolean bodyBarrier,
+                                            ProfileBuilder.CutProfile directProfile,
+                                            ProfileBuilder.CutProfile segmentProfile) {
         List<PropagationPath> propagationPaths = new ArrayList<>();
-        ProfileBuilder.CutProfile cutProfile = data.profileBuilder.getProfile(srcCoord, rcvCoord, data.gS);
+        ProfileBuilder.CutProfile cutProfile = data.profileBuilder.getProfile(srcCoord, rcvCoord, data.gS,
+                directProfile);
         cutProfile.setSrcOrientation(orientation);
         //If the field is free, simplify the computation
         if(cutProfile.isFreeField()) {
@@ -317,17 +583,19 @@ public class ComputeCnossosRays {
         }
         else if(verticalDiffraction || horizontalDiffraction) {
             if (verticalDiffraction) {
-                PropagationPath propagationPath = computeHEdgeDiffraction(cutProfile, bodyBarrier);
+                PropagationPath propagationPath = computeHEdgeDiffraction(cutProfile, bodyBarrier, segmentProfile);
                 if(propagationPath != null) {
                     propagationPaths.add(propagationPath);
                 }
             }
             if (horizontalDiffraction) {
-                PropagationPath propagationPath = computeVEdgeDiffraction(srcCoord, rcvCoord, data, LEFT, orientation);
+                PropagationPath propagationPath = computeVEdgeDiffraction(srcCoord, rcvCoord, data, LEFT, orientation,
+                        segmentProfile);
                 if (propagationPath != null && propagationPath.getPointList() != null) {
                     propagationPaths.add(propagationPath);
                 }
-                propagationPath = computeVEdgeDiffraction(srcCoord, rcvCoord, data, RIGHT, orientation);
+                propagationPath = computeVEdgeDiffraction(srcCoord, rcvCoord, data, RIGHT, orientation,
+                        segmentProfile);
                 if (propagationPath != null && propagationPath.getPointList() != null) {
                     propagationPaths.add(propagationPath);
                 }
@@ -395,6 +663,18 @@ public class ComputeCnossosRays {
         return pts2D;
     }
 
+    /**
+     * @param profile Profile that will be reused
+     * @return Copy of the cut points of the profile
+     */
+    private static List<ProfileBuilder.CutPoint> copyCutPoints(ProfileBuilder.CutProfile profile) {
+        List<ProfileBuilder.CutPoint> cutPoints = new ArrayList<>(profile.getCutPoints().size());
+        for (ProfileBuilder.CutPoint cutPoint : profile.getCutPoints()) {
+            cutPoints.add(new ProfileBuilder.CutPoint(cutPoint));
+        }
+        return cutPoints;
+    }
+
     private static List<Coordinate> computePts2DGround(ProfileBuilder.CutProfile cutProfile, CnossosPropagationData data) {
         List<Coordinate> pts2D = cutProfile.getCutPoints().stream()
                 .filter(cut -> cut.getType() != GROUND_EFFECT)
@@ -448,8 +728,10 @@ public class ComputeCnossosRays {
         ProfileBuilder.CutPoint srcCut = cutProfile.getSource();
         ProfileBuilder.CutPoint rcvCut = cutProfile.getReceiver();
 
+        // copy the cut points kept by the propagation path, the profile may be reused
         List<ProfileBuilder.CutPoint> cuts = cutProfile.getCutPoints().stream()
                 .filter(cut -> cut.getType() != GROUND_EFFECT)
+                .map(ProfileBuilder.CutPoint::new)
                 .collect(Collectors.toList());
         List<Coordinate> pts2DGround = computePts2DGround(cutProfile, data);
         Coordinate src = new Coordinate(pts2DGround.get(0));
@@ -602,6 +884,21 @@ public class ComputeCnossosRays {
      */
     public PropagationPath computeVEdgeDiffraction(Coordinate rcvCoord, Coordinate srcCoord,
                                                    CnossosPropagationData data, ComputationSide side, Orientation orientation) {
+        return computeVEdgeDiffraction(rcvCoord, srcCoord, data, side, orientation, new ProfileBuilder.CutProfile());
+    }
+
+    /**
+     * Compute horizontal diffraction (diffraction of vertical edge.)
+     * @param rcvCoord Receiver coordinates.
+     * @param srcCoord Source coordinates.
+     * @param data     Propagation data.
+     * @param side     Side to compute.
+     * @param profile  Profile reused for the segments of the path
+     * @return The propagation path of the horizontal diffraction.
+     */
+    public PropagationPath computeVEdgeDiffraction(Coordinate rcvCoord, Coordinate srcCoord,
+                                                   CnossosPropagationData data, ComputationSide side,
+                                                   Orientation orientation, ProfileBuilder.CutProfile profile) {
 
         PropagationPath path = null;
         List<Coordinate> coordinates = computeSideHull(side != LEFT, new Coordinate(rcvCoord), new Coordinate(srcCoord), data.profileBuilder);
@@ -615,16 +912,18 @@ public class ComputeCnossosRays {
                 double d = 0;
                 List<ProfileBuilder.CutPoint> allCutPoints = new ArrayList<>();
                 for(int i=0; i<coordinates.size()-1; i++) {
-                    ProfileBuilder.CutProfile profile = data.profileBuilder.getProfile(coordinates.get(i), coordinates.get(i+1), data.gS);
+                    data.profileBuilder.getProfile(coordinates.get(i), coordinates.get(i+1), data.gS, profile);
                     profile.setSrcOrientation(orientation);
                     double dist = dist2D(coordinates.get(i), coordinates.get(i+1));
                     g+=profile.getGPath()*dist;
                     d+=dist;
-                    topoPts.addAll(profile.getCutPoints().stream()
+                    // copy the cut points kept by the propagation path, the profile is reused for the next segment
+                    List<ProfileBuilder.CutPoint> cutPoints = copyCutPoints(profile);
+                    topoPts.addAll(cutPoints.stream()
                             .filter(cut -> cut.getType().equals(BUILDING) || cut.getType().equals(TOPOGRAPHY) || cut.getType().equals(RECEIVER))
                             .map(ProfileBuilder.CutPoint::getCoordinate)
                             .collect(Collectors.toList()));
-                    allCutPoints.addAll(profile.getCutPoints());
+                    allCutPoints.addAll(cutPoints);
                 }
                 g/=d;
                 //Filter bridge
@@ -727,10 +1026,23 @@ public class ComputeCnossosRays {
     }
 
     public PropagationPath computeHEdgeDiffraction(ProfileBuilder.CutProfile cutProfile , boolean bodyBarrier) {
+        return computeHEdgeDiffraction(cutProfile, bodyBarrier, new ProfileBuilder.CutProfile());
+    }
+
+    /**
+     * @param cutProfile Profile between the source and the receiver
+     * @param bodyBarrier Body barrier effect
+     * @param segmentProfile Profile reused for the segments between the diffraction edges
+     * @return The propagation path over the diffraction edges, or null
+     */
+    public PropagationPath computeHEdgeDiffraction(ProfileBuilder.CutProfile cutProfile , boolean bodyBarrier,
+                                                   ProfileBuilder.CutProfile segmentProfile) {
         List<SegmentPath> segments = new ArrayList<>();
         List<PointPath> points = new ArrayList<>();
+        // copy the cut points kept by the propagation path, the profile may be reused
         List<ProfileBuilder.CutPoint> cutPts = cutProfile.getCutPoints().stream()
                 .filter(cutPoint -> cutPoint.getType() != GROUND_EFFECT)
+                .map(ProfileBuilder.CutPoint::new)
                 .collect(Collectors.toList());
 
         List<Coordinate> pts2D = computePts2D(cutPts);
@@ -806,7 +1118,8 @@ public class ComputeCnossosRays {
             int i1 = pts2D.indexOf(pts.get(i));
             ProfileBuilder.CutPoint cutPt0 = cutPts.get(i0);
             ProfileBuilder.CutPoint cutPt1 = cutPts.get(i1);
-            ProfileBuilder.CutProfile profile = data.profileBuilder.getProfile(cutPt0, cutPt1, data.gS);
+            ProfileBuilder.CutProfile profile = data.profileBuilder.getProfile(cutPt0, cutPt1, data.gS,
+                    segmentProfile);
             List<Coordinate> subList = pts2D.subList(i0, i1+1).stream().map(Coordinate::new).collect(Collectors.toList());
             for(int j=0; j<=i1-i0; j++){
                 if(!cutPts.get(j+i0).getType().equals(BUILDING) && !cutPts.get(j+i0).getType().equals(TOPOGRAPHY)){
@@ -948,14 +1261,14 @@ public class ComputeCnossosRays {
         Plane cutPlane = computeZeroRadPlane(p1, p2);
 
         BuildingIntersectionRayVisitor buildingIntersectionRayVisitor = new BuildingIntersectionRayVisitor(
-                profileBuilder.getBuildings(), p1, p2, profileBuilder, input, buildingInHull, cutPlane);
+                profileBuilder, input, buildingInHull, cutPlane);
 
-        data.profileBuilder.getBuildingsOnPath(p1, p2, buildingIntersectionRayVisitor);
+        buildingIntersectionRayVisitor.visitItems(profileBuilder.getBuildingsIntersectingSegment(p1, p2));
 
         WallIntersectionRayVisitor wallIntersectionRayVisitor = new WallIntersectionRayVisitor(
-                profileBuilder.getWalls(), p1, p2, profileBuilder, input, wallInHull, cutPlane);
+                profileBuilder, input, wallInHull, cutPlane);
 
-        data.profileBuilder.getWallsOnPath(p1, p2, wallIntersectionRayVisitor);
+        wallIntersectionRayVisitor.visitItems(profileBuilder.getWallsIntersectingSegment(p1, p2));
 
         int k;
         while (convexHullIntersects) {
@@ -1012,12 +1325,14 @@ public class ComputeCnossosRays {
                 if (left && k < indexp2 || !left && k >= indexp2) {
                     if (!freeFieldSegments.contains(freeFieldTestSegment)) {
                         // Check if we still are in the propagation domain
-                        buildingIntersectionRayVisitor = new BuildingIntersectionRayVisitor(profileBuilder.getBuildings(),
-                                coordinates[k], coordinates[k + 1], profileBuilder, input, buildingInHull, cutPlane);
-                        profileBuilder.getBuildingsOnPath(coordinates[k], coordinates[k + 1], buildingIntersectionRayVisitor);
-                        wallIntersectionRayVisitor = new WallIntersectionRayVisitor(profileBuilder.getWalls(),
-                                coordinates[k], coordinates[k + 1], profileBuilder, input, wallInHull, cutPlane);
-                        profileBuilder.getWallsOnPath(coordinates[k], coordinates[k + 1], wallIntersectionRayVisitor);
+                        buildingIntersectionRayVisitor = new BuildingIntersectionRayVisitor(profileBuilder, input,
+                                buildingInHull, cutPlane);
+                        buildingIntersectionRayVisitor.visitItems(
+                                profileBuilder.getBuildingsIntersectingSegment(coordinates[k], coordinates[k + 1]));
+                        wallIntersectionRayVisitor = new WallIntersectionRayVisitor(profileBuilder, input,
+                                wallInHull, cutPlane);
+                        wallIntersectionRayVisitor.visitItems(
+                                profileBuilder.getWallsIntersectingSegment(coordinates[k], coordinates[k + 1]));
                         if (!buildingIntersectionRayVisitor.doContinue() || !wallIntersectionRayVisitor.doContinue()) {
                             convexHullIntersects = true;
                         }
@@ -1061,104 +1376,101 @@ public class ComputeCnossosRays {
     }
 
 
-    private static final class BuildingIntersectionRayVisitor implements ItemVisitor {
-        Set<Integer> itemProcessed = new HashSet<>();
-        List<ProfileBuilder.Building> buildings;
-        Coordinate p1;
-        Coordinate p2;
-        PreparedLineString seg;
+    /**
+     * Add to the convex hull input the cut of the first building, intersected by a segment, that is not already in the
+     * convex hull
+     */
+    private static final class BuildingIntersectionRayVisitor {
         Set<Integer> buildingsInIntersection;
         ProfileBuilder profileBuilder;
         Plane cutPlane;
         List<Coordinate> input;
         boolean foundIntersection = false;
 
-        public BuildingIntersectionRayVisitor(List<ProfileBuilder.Building> buildings, Coordinate p1,
-                                              Coordinate p2, ProfileBuilder profileBuilder, List<Coordinate> input, Set<Integer> buildingsInIntersection, Plane cutPlane) {
+        public BuildingIntersectionRayVisitor(ProfileBuilder profileBuilder, List<Coordinate> input,
+                                              Set<Integer> buildingsInIntersection, Plane cutPlane) {
             this.profileBuilder = profileBuilder;
             this.input = input;
             this.buildingsInIntersection = buildingsInIntersection;
             this.cutPlane = cutPlane;
-            this.buildings = buildings;
-            this.p1 = p1;
-            this.p2 = p2;
-            seg = new PreparedLineString(GEOMETRY_FACTORY.createLineString(new Coordinate[]{p1, p2}));
         }
 
-        @Override
-        public void visitItem(Object item) {
-            int id = (Integer) item;
-            if(!itemProcessed.contains(id)) {
-                itemProcessed.add(id);
-                final ProfileBuilder.Building b = buildings.get(id - 1);
-                RectangleLineIntersector rect = new RectangleLineIntersector(b.getGeometry().getEnvelopeInternal());
-                if (rect.intersects(p1, p2) && seg.intersects(b.getGeometry())) {
-                    addItem(id);
+        /**
+         * @param ids Buildings intersected by the segment, see
+         * {@link ProfileBuilder#getBuildingsIntersectingSegment(Coordinate, Coordinate)}
+         */
+        public void visitItems(int[] ids) {
+            for (int id : ids) {
+                if (addItem(id)) {
+                    // Stop iterating buildings
+                    foundIntersection = true;
+                    return;
                 }
             }
         }
 
-        public void addItem(int id) {
+        public boolean addItem(int id) {
             if (buildingsInIntersection.contains(id)) {
-                return;
+                return false;
             }
             List<Coordinate> roofPoints = profileBuilder.getPrecomputedWideAnglePoints(id);
-            // Create a cut of the building volume
-            roofPoints = cutRoofPointsWithPlane(cutPlane, roofPoints);
-            if (!roofPoints.isEmpty()) {
+            if (isAbovePlane(cutPlane, roofPoints)) {
+                // The roof is not cut, only the vertices of the 2D convex hull of the building can be vertices of the
+                // side hull. The cut keep the x and y of the points, so the side hull does not change.
+                input.addAll(cutRoofPointsWithPlane(cutPlane, profileBuilder.getPrecomputedWideAngleHullPoints(id)));
+            } else {
+                // Create a cut of the building volume
+                roofPoints = cutRoofPointsWithPlane(cutPlane, roofPoints);
+                if (roofPoints.isEmpty()) {
+                    return false;
+                }
                 input.addAll(roofPoints.subList(0, roofPoints.size() - 1));
-                buildingsInIntersection.add(id);
-                foundIntersection = true;
-                // Stop iterating bounding boxes
-                throw new IllegalStateException();
             }
+            buildingsInIntersection.add(id);
+            return true;
         }
 
         public boolean doContinue() {
             return !foundIntersection;
         }
     }
-    private static final class WallIntersectionRayVisitor implements ItemVisitor {
-        Set<Integer> itemProcessed = new HashSet<>();
-        List<ProfileBuilder.Wall> walls;
-        Coordinate p1;
-        Coordinate p2;
-        PreparedLineString seg;
+
+    /**
+     * Add to the convex hull input the cut of the first wall, intersected by a segment, that is not already in the
+     * convex hull
+     */
+    private static final class WallIntersectionRayVisitor {
         Set<Integer> wallsInIntersection;
         ProfileBuilder profileBuilder;
         Plane cutPlane;
         List<Coordinate> input;
         boolean foundIntersection = false;
 
-        public WallIntersectionRayVisitor(List<ProfileBuilder.Wall> walls, Coordinate p1,
-                                              Coordinate p2, ProfileBuilder profileBuilder, List<Coordinate> input,
+        public WallIntersectionRayVisitor(ProfileBuilder profileBuilder, List<Coordinate> input,
                                           Set<Integer> wallsInIntersection, Plane cutPlane) {
             this.profileBuilder = profileBuilder;
             this.input = input;
             this.wallsInIntersection = wallsInIntersection;
             this.cutPlane = cutPlane;
-            this.walls = walls;
-            this.p1 = p1;
-            this.p2 = p2;
-            seg = new PreparedLineString(GEOMETRY_FACTORY.createLineString(new Coordinate[]{p1, p2}));
         }
 
-        @Override
-        public void visitItem(Object item) {
-            int id = (Integer) item;
-            if(!itemProcessed.contains(id)) {
-                itemProcessed.add(id);
-                final ProfileBuilder.Wall w = walls.get(id-1);
-                RectangleLineIntersector rect = new RectangleLineIntersector(w.getLine().getEnvelopeInternal());
-                if (rect.intersects(p1, p2) && seg.intersects(w.getLine())) {
-                    addItem(id);
+        /**
+         * @param ids Walls intersected by the segment, see
+         * {@link ProfileBuilder#getWallsIntersectingSegment(Coordinate, Coordinate)}
+         */
+        public void visitItems(int[] ids) {
+            for (int id : ids) {
+                if (addItem(id)) {
+                    // Stop iterating walls
+                    foundIntersection = true;
+                    return;
                 }
             }
         }
 
-        public void addItem(int id) {
+        public boolean addItem(int id) {
             if (wallsInIntersection.contains(id)) {
-                return;
+                return false;
             }
             List<Coordinate> roofPoints = Arrays.asList(profileBuilder.getWall(id-1).getLine().getCoordinates());
             // Create a cut of the building volume
@@ -1166,10 +1478,9 @@ public class ComputeCnossosRays {
             if (!roofPoints.isEmpty()) {
                 input.addAll(roofPoints);
                 wallsInIntersection.add(id);
-                foundIntersection = true;
-                // Stop iterating bounding boxes
-                throw new IllegalStateException();
+                return true;
             }
+            return false;
         }
 
         public boolean doContinue() {
@@ -1177,6 +1488,20 @@ public class ComputeCnossosRays {
         }
     }
 
+    /**
+     * @param plane Cut plane
+     * @param roofPts Points
+     * @return True if all the points are on or above the plane
+     */
+    private static boolean isAbovePlane(Plane plane, List<Coordinate> roofPts) {
+        for (Coordinate p : roofPts) {
+            if (plane.getOffset(coordinateToVector(p)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static List<Coordinate> cutRoofPointsWithPlane(Plane plane, List<Coordinate> roofPts) {
         List<Coordinate> polyCut = new ArrayList<>(roofPts.size());
         double lastOffset = 0;
@@ -1203,6 +1528,19 @@ public class ComputeCnossosRays {
 
     public List<PropagationPath> computeReflexion(Coordinate rcvCoord, Coordinate srcCoord, boolean favorable,
                                                   Orientation orientation, MirrorReceiverResultIndex receiverMirrorIndex) {
+        return computeReflexion(rcvCoord, srcCoord, favorable, orientation, receiverMirrorIndex,
+                new ProfileBuilder.CutProfile(), new ProfileBuilder.CutProfile());
+    }
+
+    /**
+     * @param directProfile Profile reused for the direct paths between the reflection points
+     * @param segmentProfile Profile reused for the segments of the reflection paths
+     * @return The propagation paths with reflections
+     */
+    public List<PropagationPath> computeReflexion(Coordinate rcvCoord, Coordinate srcCoord, boolean favorable,
+                                                  Orientation orientation, MirrorReceiverResultIndex receiverMirrorIndex,
+                                                  ProfileBuilder.CutProfile directProfile,
+                                                  ProfileBuilder.CutProfile segmentProfile) {
 
         // Compute receiver mirror
         LineIntersector linters = new RobustLineIntersector();
@@ -1287,10 +1625,11 @@ public class ComputeCnossosRays {
             }
             if (validReflection) {
                 // Check intermediate reflections
+                ProfileBuilder.CutProfile profile = segmentProfile;
                 for (int idPt = 0; idPt < rayPath.size() - 1; idPt++) {
                     Coordinate firstPt = rayPath.get(idPt).getReceiverPos();
                     MirrorReceiverResult refl = rayPath.get(idPt + 1);
-                    ProfileBuilder.CutProfile profile = data.profileBuilder.getProfile(firstPt, refl.getReceiverPos(), data.gS);
+                    data.profileBuilder.getProfile(firstPt, refl.getReceiverPos(), data.gS, profile);
                     if (profile.intersectTopography() || profile.intersectBuilding() ) {
                         validReflection = false;
                         break;
@@ -1307,7 +1646,8 @@ public class ComputeCnossosRays {
                 PropagationPath proPath = new PropagationPath(favorable, points, segments, srPath, Angle.angle(rcvCoord, srcCoord));
                 proPath.refPoints = reflIdx;
                 // Compute direct path between source and first reflection point, add profile to the data
-                computeReflexionOverBuildings(srcCoord, rayPath.get(0).getReceiverPos(), points, segments, data, orientation, proPath.difHPoints, proPath.difVPoints);
+                computeReflexionOverBuildings(srcCoord, rayPath.get(0).getReceiverPos(), points, segments, data, orientation, proPath.difHPoints, proPath.difVPoints,
+                        directProfile, segmentProfile);
                 if (points.isEmpty()) {
                     continue;
                 }
@@ -1345,7 +1685,8 @@ public class ComputeCnossosRays {
                 }
                 // Compute direct path between receiver and last reflection point, add profile to the data
                 List<PointPath> lastPts = new ArrayList<>();
-                computeReflexionOverBuildings(rayPath.get(rayPath.size() - 1).getReceiverPos(), rcvCoord, lastPts, segments, data, orientation, proPath.difHPoints, proPath.difVPoints);
+                computeReflexionOverBuildings(rayPath.get(rayPath.size() - 1).getReceiverPos(), rcvCoord, lastPts, segments, data, orientation, proPath.difHPoints, proPath.difVPoints,
+                        directProfile, segmentProfile);
                 if (lastPts.isEmpty()) {
                     continue;
                 }
@@ -1398,12 +1739,14 @@ public class ComputeCnossosRays {
                     double d = 0;
                     List<ProfileBuilder.CutPoint> allCutPoints = new ArrayList<>();
                     for(int i=0; i<pts.size()-1; i++) {
-                        ProfileBuilder.CutProfile profile = data.profileBuilder.getProfile(pts.get(i), pts.get(i+1), data.gS);
-                        topoPts.addAll(profile.getCutPoints().stream()
+                        data.profileBuilder.getProfile(pts.get(i), pts.get(i+1), data.gS, profile);
+                        // copy the cut points kept by the propagation path, the profile is reused for the next segment
+                        List<ProfileBuilder.CutPoint> cutPoints = copyCutPoints(profile);
+                        topoPts.addAll(cutPoints.stream()
                                 .filter(cut -> cut.getType().equals(BUILDING) || cut.getType().equals(TOPOGRAPHY) || cut.getType().equals(RECEIVER))
                                 .map(ProfileBuilder.CutPoint::getCoordinate)
                                 .collect(Collectors.toList()));
-                        allCutPoints.addAll(profile.getCutPoints());
+                        allCutPoints.addAll(cutPoints);
                         if(i<pts.size()-2){
                             topoPts.add(topoPts.get(topoPts.size()-1));
                             topoPts.add(topoPts.get(topoPts.size()-1));
@@ -1442,8 +1785,17 @@ public class ComputeCnossosRays {
     public void computeReflexionOverBuildings(Coordinate p0, Coordinate p1, List<PointPath> points,
                                               List<SegmentPath> segments, CnossosPropagationData data,
                                               Orientation orientation, List<Integer> diffHPts, List<Integer> diffVPts) {
+        computeReflexionOverBuildings(p0, p1, points, segments, data, orientation, diffHPts, diffVPts,
+                new ProfileBuilder.CutProfile(), new ProfileBuilder.CutProfile());
+    }
+
+    private void computeReflexionOverBuildings(Coordinate p0, Coordinate p1, List<PointPath> points,
+                                               List<SegmentPath> segments, CnossosPropagationData data,
+                                               Orientation orientation, List<Integer> diffHPts, List<Integer> diffVPts,
+                                               ProfileBuilder.CutProfile directProfile,
+                                               ProfileBuilder.CutProfile segmentProfile) {
         List<PropagationPath> propagationPaths = directPath(p0, -1, orientation, p1, -1,
-                data.isComputeHEdgeDiffraction(), false, false);
+                data.isComputeHEdgeDiffraction(), false, false, directProfile, segmentProfile);
         if (!propagationPaths.isEmpty()) {
             PropagationPath propagationPath = propagationPaths.get(0);
             points.addAll(propagationPath.getPointList());
@@ -1464,74 +1816,94 @@ public class ComputeCnossosRays {
         // source and the receiver then it can be modelled as a single point source
         double geomLength = geom.getLength();
         if (geomLength < segmentSizeConstraint) {
-            // Return mid point
-            Coordinate[] points = geom.getCoordinates();
-            double segmentLength = 0;
-            final double targetSegmentSize = geomLength / 2.0;
-            for (int i = 0; i < points.length - 1; i++) {
-                Coordinate a = points[i];
-                final Coordinate b = points[i + 1];
-                double length = a.distance3D(b);
-                if (length + segmentLength > targetSegmentSize) {
-                    double segmentLengthFraction = (targetSegmentSize - segmentLength) / length;
-                    Coordinate midPoint = new Coordinate(a.x + segmentLengthFraction * (b.x - a.x),
-                            a.y + segmentLengthFraction * (b.y - a.y),
-                            a.z + segmentLengthFraction * (b.z - a.z));
-                    pts.add(midPoint);
-                    break;
-                }
-                segmentLength += length;
-            }
-            return geom.getLength();
+            return splitLineStringMidPoint(geom, pts);
         } else {
-            double targetSegmentSize = geomLength / Math.ceil(geomLength / segmentSizeConstraint);
-            Coordinate[] points = geom.getCoordinates();
-            double segmentLength = 0.;
-
-            // Mid point of segmented line source
-            Coordinate midPoint = null;
-            for (int i = 0; i < points.length - 1; i++) {
-                Coordinate a = points[i];
-                final Coordinate b = points[i + 1];
-                double length = a.distance3D(b);
-                if (isNaN(length)) {
-                    length = a.distance(b);
-                }
-                while (length + segmentLength > targetSegmentSize) {
-                    //LineSegment segment = new LineSegment(a, b);
-                    double segmentLengthFraction = (targetSegmentSize - segmentLength) / length;
-                    Coordinate splitPoint = new Coordinate();
-                    splitPoint.x = a.x + segmentLengthFraction * (b.x - a.x);
-                    splitPoint.y = a.y + segmentLengthFraction * (b.y - a.y);
-                    splitPoint.z = a.z + segmentLengthFraction * (b.z - a.z);
-                    if (midPoint == null && length + segmentLength > targetSegmentSize / 2) {
-                        segmentLengthFraction = (targetSegmentSize / 2.0 - segmentLength) / length;
-                        midPoint = new Coordinate(a.x + segmentLengthFraction * (b.x - a.x),
-                                a.y + segmentLengthFraction * (b.y - a.y),
-                                a.z + segmentLengthFraction * (b.z - a.z));
-                    }
-                    pts.add(midPoint);
-                    a = splitPoint;
-                    length = a.distance3D(b);
-                    if (isNaN(length)) {
-                        length = a.distance(b);
-                    }
-                    segmentLength = 0;
-                    midPoint = null;
-                }
+            return splitLineStringIntoSegments(geom.getCoordinates(),
+                    geomLength / Math.ceil(geomLength / segmentSizeConstraint), pts);
+        }
+    }
+
+    /**
+     * @param geom Geometry
+     * @return Length of the geometry
+     * @param[out] pts Mid point of the geometry
+     */
+    private static double splitLineStringMidPoint(LineString geom, List<Coordinate> pts) {
+        double geomLength = geom.getLength();
+        // Return mid point
+        Coordinate[] points = geom.getCoordinates();
+        double segmentLength = 0;
+        final double targetSegmentSize = geomLength / 2.0;
+        for (int i = 0; i < points.length - 1; i++) {
+            Coordinate a = points[i];
+            final Coordinate b = points[i + 1];
+            double length = a.distance3D(b);
+            if (length + segmentLength > targetSegmentSize) {
+                double segmentLengthFraction = (targetSegmentSize - segmentLength) / length;
+                Coordinate midPoint = new Coordinate(a.x + segmentLengthFraction * (b.x - a.x),
+                        a.y + segmentLengthFraction * (b.y - a.y),
+                        a.z + segmentLengthFraction * (b.z - a.z));
+                pts.add(midPoint);
+                break;
+            }
+            segmentLength += length;
+        }
+        return geom.getLength();
+    }
+
+    /**
+     * @param points            Line coordinates
+     * @param targetSegmentSize Distance between points
+     * @return Distance between points
+     * @param[out] pts Mid point of each segment
+     */
+    private static double splitLineStringIntoSegments(Coordinate[] points, double targetSegmentSize,
+                                                      List<Coordinate> pts) {
+        double segmentLength = 0.;
+
+        // Mid point of segmented line source
+        Coordinate midPoint = null;
+        for (int i = 0; i < points.length - 1; i++) {
+            Coordinate a = points[i];
+            final Coordinate b = points[i + 1];
+            double length = a.distance3D(b);
+            if (isNaN(length)) {
+                length = a.distance(b);
+            }
+            while (length + segmentLength > targetSegmentSize) {
+                //LineSegment segment = new LineSegment(a, b);
+                double segmentLengthFraction = (targetSegmentSize - segmentLength) / length;
+                Coordinate splitPoint = new Coordinate();
+                splitPoint.x = a.x + segmentLengthFraction * (b.x - a.x);
+                splitPoint.y = a.y + segmentLengthFraction * (b.y - a.y);
+                splitPoint.z = a.z + segmentLengthFraction * (b.z - a.z);
                 if (midPoint == null && length + segmentLength > targetSegmentSize / 2) {
-                    double segmentLengthFraction = (targetSegmentSize / 2.0 - segmentLength) / length;
+                    segmentLengthFraction = (targetSegmentSize / 2.0 - segmentLength) / length;
                     midPoint = new Coordinate(a.x + segmentLengthFraction * (b.x - a.x),
                             a.y + segmentLengthFraction * (b.y - a.y),
                             a.z + segmentLengthFraction * (b.z - a.z));
                 }
-                segmentLength += length;
-            }
-            if (midPoint != null) {
                 pts.add(midPoint);
+                a = splitPoint;
+                length = a.distance3D(b);
+                if (isNaN(length)) {
+                    length = a.distance(b);
+                }
+                segmentLength = 0;
+                midPoint = null;
             }
-            return targetSegmentSize;
+            if (midPoint == null && length + segmentLength > targetSegmentSize / 2) {
+                double segmentLengthFraction = (targetSegmentSize / 2.0 - segmentLength) / length;
+                midPoint = new Coordinate(a.x + segmentLengthFraction * (b.x - a.x),
+                        a.y + segmentLengthFraction * (b.y - a.y),
+                        a.z + segmentLengthFraction * (b.z - a.z));
+            }
+            segmentLength += length;
+        }
+        if (midPoint != null) {
+            pts.add(midPoint);
         }
+        return targetSegmentSize;
     }
 
     private static LineString splitLineString(LineString lineString, ProfileBuilder profileBuilder) {
@@ -1605,79 +1977,296 @@ public class ComputeCnossosRays {
         data.receivers = Arrays.asList(sequence.toCoordinateArray());
     }
 
+    /**
+     * @param alphaAtmosphere Lowest atmospheric absorption coefficient (dB/km) of each frequency band, may be null
+     */
     private static double insertPtSource(Coordinate source, Coordinate receiverPos, Integer sourceId,
-                                         List<SourcePointInfo> sourceList, double[] wj, double li, Orientation orientation) {
+                                         List<SourcePointInfo> sourceList, double[] wj, double li, Orientation orientation,
+                                         double[] alphaAtmosphere) {
         // Compute maximal power at freefield at the receiver position with reflective ground
-        double aDiv = -getADiv(CGAlgorithms3D.distance(receiverPos, source));
+        double distance = CGAlgorithms3D.distance(receiverPos, source);
+        double aDiv = -getADiv(distance);
         double[] srcWJ = new double[wj.length];
         for (int idFreq = 0; idFreq < srcWJ.length; idFreq++) {
             srcWJ[idFreq] = wj[idFreq] * li * dbaToW(aDiv) * dbaToW(3);
         }
+        if (alphaAtmosphere != null && alphaAtmosphere.length == srcWJ.length) {
+            // All the paths (diffracted, reflected) are at least as long as the direct path
+            for (int idFreq = 0; idFreq < srcWJ.length; idFreq++) {
+                srcWJ[idFreq] *= dbaToW(-alphaAtmosphere[idFreq] * distance / 1000.);
+            }
+        }
         sourceList.add(new SourcePointInfo(srcWJ, sourceId, source, li, orientation));
         return sumArray(srcWJ.length, srcWJ);
     }
 
     private static double insertPtSource(Point source, Coordinate receiverPos, Integer sourceId,
-                                         List<SourcePointInfo> sourceList, double[] wj, double li, Orientation orientation) {
-        // Compute maximal power at freefield at the receiver position with reflective ground
-        double aDiv = -getADiv(CGAlgorithms3D.distance(receiverPos, source.getCoordinate()));
-        double[] srcWJ = new double[wj.length];
-        for (int idFreq = 0; idFreq < srcWJ.length; idFreq++) {
-            srcWJ[idFreq] = wj[idFreq] * li * dbaToW(aDiv) * dbaToW(3);
-        }
-        sourceList.add(new SourcePointInfo(srcWJ, sourceId, source.getCoordinate(), li, orientation));
-        return sumArray(srcWJ.length, srcWJ);
+                                         List<SourcePointInfo> sourceList, double[] wj, double li, Orientation orientation,
+                                         double[] alphaAtmosphere) {
+        return insertPtSource(source.getCoordinate(), receiverPos, sourceId, sourceList, wj, li, orientation,
+                alphaAtmosphere);
     }
 
-    private double addLineSource(LineString source, Coordinate receiverCoord, int srcIndex, List<SourcePointInfo> sourceList, double[] wj) {
+    private double addLineSource(LineSourceSubdivision lineSource, Coordinate receiverCoord, int srcIndex,
+                                 List<SourcePointInfo> sourceList, double[] wj) {
         double totalPowerRemaining = 0;
-        ArrayList<Coordinate> pts = new ArrayList<>();
         // Compute li to equation 4.1 NMPB 2008 (June 2009)
-        Coordinate nearestPoint = JTSUtility.getNearestPoint(receiverCoord, source);
+        Coordinate nearestPoint = JTSUtility.getNearestPoint(receiverCoord, lineSource.line);
         double segmentSizeConstraint = max(1, receiverCoord.distance3D(nearestPoint) / 2.0);
         if (isNaN(segmentSizeConstraint)) {
             segmentSizeConstraint = max(1, receiverCoord.distance(nearestPoint) / 2.0);
         }
-        double li = splitLineStringIntoPoints(source, segmentSizeConstraint, pts);
-        for (int ptIndex = 0; ptIndex < pts.size(); ptIndex++) {
-            Coordinate pt = pts.get(ptIndex);
-            if (pt.distance(receiverCoord) < data.maxSrcDist) {
+        SubdivisionLevel level = lineSource.getLevel(segmentSizeConstraint);
+        final double[] coordinates = level.coordinates;
+        for (int ptIndex = 0; ptIndex < level.orientations.length; ptIndex++) {
+            final int offset = ptIndex * 3;
+            if (Math.hypot(coordinates[offset] - receiverCoord.x, coordinates[offset + 1] - receiverCoord.y)
+                    < data.maxSrcDist) {
+                Coordinate pt = new Coordinate(coordinates[offset], coordinates[offset + 1], coordinates[offset + 2]);
+                totalPowerRemaining += insertPtSource(pt, receiverCoord, srcIndex, sourceList, wj, level.li,
+                        level.orientations[ptIndex], data.minimalAtmosphericAbsorption);
+            }
+        }
+        return totalPowerRemaining;
+    }
+
+    /**
+     * @param srcIndex Source index
+     * @param source Line or multi line source geometry
+     * @return Subdivisions of each line of the source, shared by all the receivers of this computation
+     */
+    LineSourceSubdivision[] getLineSourceSubdivisions(int srcIndex, Geometry source) {
+        AtomicReferenceArray<LineSourceSubdivision[]> cache = lineSourceSubdivisions;
+        if(cache == null || cache.length() != data.sourceGeometries.size()) {
+            synchronized (this) {
+                cache = lineSourceSubdivisions;
+                if(cache == null || cache.length() != data.sourceGeometries.size()) {
+                    if(cache != null) {
+                        subdivisionLevels.clear();
+                    }
+                    cache = new AtomicReferenceArray<>(data.sourceGeometries.size());
+                    lineSourceSubdivisions = cache;
+                }
+            }
+        }
+        LineSourceSubdivision[] lines = cache.get(srcIndex);
+        if(lines == null || lines.length == 0 || lines[0].sourceGeometry != source) {
+            if(lines != null && lines.length > 0) {
+                // the source geometry has been replaced, the point sources of the index are obsolete
+                subdivisionLevels.clear();
+            }
+            Orientation sourceOrientation = null;
+            if(data.sourcesPk.size() > srcIndex) {
+                sourceOrientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
+            }
+            List<LineSourceSubdivision> lineList = new ArrayList<>(source.getNumGeometries());
+            for (int id = 0; id < source.getNumGeometries(); id++) {
+                Geometry subGeom = source.getGeometryN(id);
+                if (subGeom instanceof LineString) {
+                    lineList.add(new LineSourceSubdivision(source, (LineString) subGeom, sourceOrientation,
+                            srcIndex, id, subdivisionLevels));
+                }
+            }
+            lines = lineList.toArray(new LineSourceSubdivision[0]);
+            cache.set(srcIndex, lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Point sources of a line source for a given number of segments.
+     */
+    static final class SubdivisionLevel {
+        /** Length of the line source represented by each point source */
+        private final double li;
+        /** x, y, z of the point sources */
+        private final double[] coordinates;
+        private final Orientation[] orientations;
+
+        SubdivisionLevel(double li, double[] coordinates, Orientation[] orientations) {
+            this.li = li;
+            this.coordinates = coordinates;
+            this.orientations = orientations;
+        }
+    }
+
+    /**
+     * Key of a line source subdivision in the cache shared by all the line sources.
+     */
+    static final class SubdivisionKey {
+        private final int sourceIndex;
+        /** Index of the line in the source geometry */
+        private final int lineIndex;
+        /** Segment count, 0 when the line source is modelled as a single point source */
+        private final int segmentCount;
+
+        SubdivisionKey(int sourceIndex, int lineIndex, int segmentCount) {
+            this.sourceIndex = sourceIndex;
+            this.lineIndex = lineIndex;
+            this.segmentCount = segmentCount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SubdivisionKey that = (SubdivisionKey) o;
+            return sourceIndex == that.sourceIndex && lineIndex == that.lineIndex &&
+                    segmentCount == that.segmentCount;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * sourceIndex + lineIndex) * 31 + segmentCount;
+        }
+    }
+
+    /**
+     * Subdivisions of a line source into point sources. The segment count depends on the receiver distance, the
+     * subdivision of a segment count is computed on its first use and then shared by the receivers. The subdivisions
+     * of all the line sources are kept in the same cache, the least recently used subdivisions are removed when the
+     * point sources exceed the bound of the cache.
+     */
+    static final class LineSourceSubdivision {
+        private final Geometry sourceGeometry;
+        private final LineString line;
+        private final double length;
+        private final Orientation sourceOrientation;
+        private final int sourceIndex;
+        private final int lineIndex;
+        private final LruCache<SubdivisionKey, SubdivisionLevel> levels;
+
+        /**
+         * @param sourceGeometry Source geometry
+         * @param line Line of the source geometry
+         * @param sourceOrientation Orientation provided with the line source, or null
+         * @param sourceIndex Source index
+         * @param lineIndex Index of the line in the source geometry
+         * @param levels Subdivisions shared by the line sources
+         */
+        LineSourceSubdivision(Geometry sourceGeometry, LineString line, Orientation sourceOrientation,
+                              int sourceIndex, int lineIndex, LruCache<SubdivisionKey, SubdivisionLevel> levels) {
+            this.sourceGeometry = sourceGeometry;
+            this.line = line;
+            this.length = line.getLength();
+            this.sourceOrientation = sourceOrientation;
+            this.sourceIndex = sourceIndex;
+            this.lineIndex = lineIndex;
+            this.levels = levels;
+        }
+
+        /**
+         * @param segmentSizeConstraint Maximal distance between points
+         * @return Point sources, same as {@link ComputeCnossosRays#splitLineStringIntoPoints(LineString, double, List)}
+         */
+        SubdivisionLevel getLevel(double segmentSizeConstraint) {
+            int segmentCount = length < segmentSizeConstraint ? 0 : (int) Math.ceil(length / segmentSizeConstraint);
+            return levels.computeIfAbsent(new SubdivisionKey(sourceIndex, lineIndex, segmentCount),
+                    key -> createLevel(key.segmentCount));
+        }
+
+        private SubdivisionLevel createLevel(int segmentCount) {
+            List<Coordinate> pts = new ArrayList<>();
+            double li;
+            if(segmentCount == 0) {
+                li = splitLineStringMidPoint(line, pts);
+            } else {
+                li = splitLineStringIntoSegments(line.getCoordinates(), length / segmentCount, pts);
+            }
+            double[] coordinates = new double[pts.size() * 3];
+            Orientation[] orientations = new Orientation[pts.size()];
+            for (int ptIndex = 0; ptIndex < pts.size(); ptIndex++) {
+                Coordinate pt = pts.get(ptIndex);
+                coordinates[ptIndex * 3] = pt.x;
+                coordinates[ptIndex * 3 + 1] = pt.y;
+                coordinates[ptIndex * 3 + 2] = pt.z;
                 // use the orientation computed from the line source coordinates
                 Vector3D v;
                 if(ptIndex == 0) {
-                    v = new Vector3D(source.getCoordinates()[0], pts.get(ptIndex));
+                    v = new Vector3D(line.getCoordinateN(0), pt);
                 } else {
-                    v = new Vector3D(pts.get(ptIndex - 1), pts.get(ptIndex));
+                    v = new Vector3D(pts.get(ptIndex - 1), pt);
                 }
-                Orientation orientation;
-                if(data.sourcesPk.size() > srcIndex && data.sourceOrientation.containsKey(data.sourcesPk.get(srcIndex))) {
+                if(sourceOrientation != null) {
                     // If the line source already provide an orientation then alter the line orientation
-                    orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
-                    orientation = Orientation.fromVector(
-                            Orientation.rotate(new Orientation(orientation.yaw, orientation.roll, 0),
-                                    v.normalize()), orientation.roll);
+                    orientations[ptIndex] = Orientation.fromVector(
+                            Orientation.rotate(new Orientation(sourceOrientation.yaw, sourceOrientation.roll, 0),
+                                    v.normalize()), sourceOrientation.roll);
                 } else {
-                    orientation = Orientation.fromVector(Orientation.rotate(new Orientation(0,0,0), v.normalize()), 0);
+                    orientations[ptIndex] = Orientation.fromVector(Orientation.rotate(new Orientation(0,0,0),
+                            v.normalize()), 0);
                 }
-                totalPowerRemaining += insertPtSource(pt, receiverCoord, srcIndex, sourceList, wj, li, orientation);
             }
+            return new SubdivisionLevel(li, coordinates, orientations);
         }
-        return totalPowerRemaining;
     }
 
-    private static final class RangeReceiversComputation implements Runnable {
-        private final int startReceiver; // Included
-        private final int endReceiver; // Excluded
+    /**
+     * Receivers shared by the computation threads. Each thread fetch a chunk of receivers when it is idle.
+     * The chunk size is the remaining receivers count divided by chunkDivisor, with a minimum of minimumChunk.
+     */
+    private static final class ReceiverQueue {
+        /** Receivers index in computation order, null for the natural order */
+        private final int[] order;
+        private final int size;
+        private final int minimumChunk;
+        private final int chunkDivisor;
+        private final AtomicInteger next = new AtomicInteger(0);
+
+        ReceiverQueue(int[] order, int size, int minimumChunk, int chunkDivisor) {
+            this.order = order;
+            this.size = size;
+            this.minimumChunk = Math.max(1, minimumChunk);
+            this.chunkDivisor = Math.max(1, chunkDivisor);
+        }
+
+        /**
+         * @return Position of the first receiver of the fetched chunk, -1 if there is no more receivers
+         */
+        int fetchChunk() {
+            while (true) {
+                int start = next.get();
+                if (start >= size) {
+                    return -1;
+                }
+                if (next.compareAndSet(start, getChunkEnd(start))) {
+                    return start;
+                }
+            }
+        }
+
+        /**
+         * @param start Position of the first receiver of the chunk
+         * @return Position of the receiver following the chunk (excluded)
+         */
+        int getChunkEnd(int start) {
+            int chunkSize = Math.max(minimumChunk, (size - start) / chunkDivisor);
+            return (int) Math.min(size, (long) start + chunkSize);
+        }
+
+        /**
+         * @param position Position in the queue
+         * @return Receiver index
+         */
+        int getReceiver(int position) {
+            return order == null ? position : order[position];
+        }
+    }
+
+    private static final class ReceiversComputation implements Runnable {
+        private final ReceiverQueue receiverQueue;
         private final ComputeCnossosRays propagationProcess;
         private final ProgressVisitor visitor;
         private final IComputeRaysOut dataOut;
         private final CnossosPropagationData data;
-
-        public RangeReceiversComputation(int startReceiver, int endReceiver, ComputeCnossosRays propagationProcess,
-                                         ProgressVisitor visitor, IComputeRaysOut dataOut,
-                                         CnossosPropagationData data) {
-            this.startReceiver = startReceiver;
-            this.endReceiver = endReceiver;
+        /** Profiles reused by this thread for all its rays */
+        private final ProfileBuilder.CutProfile directProfile = new ProfileBuilder.CutProfile();
+        private final ProfileBuilder.CutProfile segmentProfile = new ProfileBuilder.CutProfile();
+
+        public ReceiversComputation(ReceiverQueue receiverQueue, ComputeCnossosRays propagationProcess,
+                                    ProgressVisitor visitor, IComputeRaysOut dataOut,
+                                    CnossosPropagationData data) {
+            this.receiverQueue = receiverQueue;
             this.propagationProcess = propagationProcess;
             this.visitor = visitor;
             this.dataOut = dataOut.subProcess();
@@ -1687,30 +2276,36 @@ public class ComputeCnossosRays {
         @Override
         public void run() {
             try {
-                for (int idReceiver = startReceiver; idReceiver < endReceiver; idReceiver++) {
-                    if (visitor != null) {
-                        if (visitor.isCanceled()) {
-                            break;
+                int start;
+                while ((start = receiverQueue.fetchChunk()) >= 0) {
+                    int end = receiverQueue.getChunkEnd(start);
+                    for (int position = start; position < end; position++) {
+                        if (visitor != null) {
+                            if (visitor.isCanceled()) {
+                                return;
+                            }
                         }
-                    }
-                    ReceiverPointInfo rcv = new ReceiverPointInfo(idReceiver, data.receivers.get(idReceiver));
+                        int idReceiver = receiverQueue.getReceiver(position);
+                        ReceiverPointInfo rcv = new ReceiverPointInfo(idReceiver, data.receivers.get(idReceiver));
 
-                    long start = 0;
-                    if(propagationProcess.profilerThread != null) {
-                        start = propagationProcess.profilerThread.timeTracker.get();
-                    }
+                        long startTime = 0;
+                        if (propagationProcess.profilerThread != null) {
+                            startTime = propagationProcess.profilerThread.timeTracker.get();
+                        }
 
-                    propagationProcess.computeRaysAtPosition(rcv, dataOut, visitor);
+                        propagationProcess.computeRaysAtPosition(rcv, dataOut, visitor, directProfile,
+                                segmentProfile);
 
-                    // Save computation time for this receiver
-                    if(propagationProcess.profilerThread != null &&
-                            propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class) != null) {
-                        propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class).onEndComputation(idReceiver,
-                                (int) (propagationProcess.profilerThread.timeTracker.get() - start));
-                    }
+                        // Save computation time for this receiver
+                        if (propagationProcess.profilerThread != null &&
+                                propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class) != null) {
+                            propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class).onEndComputation(idReceiver,
+                                    (int) (propagationProcess.profilerThread.timeTracker.get() - startTime));
+                        }
 
-                    if (visitor != null) {
-                        visitor.endStep();
+                        if (visitor != null) {
+                            visitor.endStep();
+                        }
                     }
                 }
             } catch (Exception ex) {
@@ -1788,7 +2383,7 @@ public class ComputeCnossosRays {
         }
     }
 
-    enum ComputationSide {LEFT, RIGHT}
+    public enum ComputationSide {LEFT, RIGHT}
 
 
     public static final class AbsoluteCoordinateSequenceFilter implements CoordinateSequenceFilter {
@@ -60,16 +60,19 @@ public class MirrorReceiverResultIndex {
     private final double maximumPropagationDistance;
     int numberOfImageReceivers = 0;
 
-    public static Polygon createWallReflectionVisibilityCone(Coordinate receiverImage, LineSegment wall,
-                                                             double maximumPropagationDistance,
-                                                             double maximumDistanceFromWall) {
+    /**
+     * Compute the closed ring of the visibility cone of a receiver image
+     * @return Ring coordinates or an empty list if the wall is not visible
+     */
+    private static List<Coordinate> computeWallReflectionVisibilityCone(Coordinate receiverImage, LineSegment wall,
+                                                                       double maximumPropagationDistance,
+                                                                       double maximumDistanceFromWall) {
         double distanceMin = wall.distance(receiverImage);
 
-        GeometryFactory factory = new GeometryFactory();
+        ArrayList<Coordinate> circleSegmentPoints = new ArrayList<>();
         if(distanceMin > maximumPropagationDistance) {
-            return factory.createPolygon();
+            return circleSegmentPoints;
         }
-        ArrayList<Coordinate> circleSegmentPoints = new ArrayList<>();
 
         Vector2D rP0 = new Vector2D(receiverImage, wall.p0).normalize();
         Vector2D rP1 = new Vector2D(receiverImage, wall.p1).normalize();
@@ -101,12 +104,39 @@ public class MirrorReceiverResultIndex {
         if(!circleSegmentPoints.isEmpty()) {
             circleSegmentPoints.add(lastWallIntersectionPoint);
             circleSegmentPoints.add(circleSegmentPoints.get(0));
-            Coordinate[] conePolygon = circleSegmentPoints.toArray(new Coordinate[0]);
-            return factory.createPolygon(conePolygon);
+        }
+        return circleSegmentPoints;
+    }
+
+    public static Polygon createWallReflectionVisibilityCone(Coordinate receiverImage, LineSegment wall,
+                                                             double maximumPropagationDistance,
+                                                             double maximumDistanceFromWall) {
+        GeometryFactory factory = new GeometryFactory();
+        List<Coordinate> conePolygon = computeWallReflectionVisibilityCone(receiverImage, wall,
+                maximumPropagationDistance, maximumDistanceFromWall);
+        if(!conePolygon.isEmpty()) {
+            return factory.createPolygon(conePolygon.toArray(new Coordinate[0]));
         } else {
             return factory.createPolygon();
         }
     }
+
+    /**
+     * Same as {@link #createWallReflectionVisibilityCone(Coordinate, LineSegment, double, double)} but only the
+     * envelope is computed, without creating the polygon.
+     * @return Envelope of the visibility cone, null envelope if the wall is not visible
+     */
+    public static Envelope createWallReflectionVisibilityConeEnvelope(Coordinate receiverImage, LineSegment wall,
+                                                                      double maximumPropagationDistance,
+                                                                      double maximumDistanceFromWall) {
+        Envelope envelope = new Envelope();
+        for(Coordinate coordinate : computeWallReflectionVisibilityCone(receiverImage, wall,
+                maximumPropagationDistance, maximumDistanceFromWall)) {
+            envelope.expandToInclude(coordinate);
+        }
+        return envelope;
+    }
+
     /**
      * Generate all image receivers from the provided list of walls
      * @param buildWalls
@@ -139,22 +169,11 @@ public class MirrorReceiverResultIndex {
                     } else {
                         receiverImage = receiverCoordinates;
                     }
-                    //Calculate the coordinate of projection
-                    Coordinate proj = wall.getLineSegment().project(receiverImage);
-                    Coordinate rcvMirror = new Coordinate(2 * proj.x - receiverImage.x,
-                            2 * proj.y - receiverImage.y, receiverImage.z);
-                    if(wall.getLineSegment().distance(rcvMirror) > maximumPropagationDistance) {
-                        // wall is too far from the receiver image, there is no receiver image
+                    MirrorReceiverResult receiverResult = addMirrorReceiver(receiverImage, parent, wall);
+                    if(receiverResult == null) {
                         continue;
                     }
-                    MirrorReceiverResult receiverResult = new MirrorReceiverResult(rcvMirror, parent, wall,
-                            wall.getOriginId(), wall.getType());
-                    // create the visibility cone of this receiver image
-                    Polygon imageReceiverVisibilityCone = createWallReflectionVisibilityCone(rcvMirror,
-                            wall.getLineSegment(), maximumPropagationDistance, maximumDistanceFromWall);
-                    mirrorReceiverTree.insert(imageReceiverVisibilityCone.getEnvelopeInternal(), receiverResult);
                     nextParentsToProcess.add(receiverResult);
-                    numberOfImageReceivers++;
                     if(numberOfImageReceivers >= mirrorReceiverCapacity) {
                         return;
                     }
@@ -165,6 +184,120 @@ public class MirrorReceiverResultIndex {
         mirrorReceiverTree.build();
     }
 
+    /**
+     * Generate the image receivers using the walls of the shared reflection candidates. Only the walls that can
+     * reflect the ray coming from the previous image receiver are mirrored (the next wall must have a point in
+     * front of the side of the previous wall where the ray comes from, and conversely).
+     * @param candidateIndex Walls shared by the receivers of the cell
+     * @param receiverCoordinates Receiver position
+     * @param reflectionOrder Maximum reflection order
+     * @param maximumPropagationDistance Maximum distance between the receiver and the walls
+     * @param maximumDistanceFromWall Maximum distance between the walls and the source-receiver segment
+     */
+    public MirrorReceiverResultIndex(ReflectionCandidateIndex candidateIndex, Coordinate receiverCoordinates,
+                                     int reflectionOrder, double maximumPropagationDistance,
+                                     double maximumDistanceFromWall) {
+        this.receiverCoordinate = receiverCoordinates;
+        this.maximumDistanceFromWall = maximumDistanceFromWall;
+        this.maximumPropagationDistance = maximumPropagationDistance;
+        mirrorReceiverTree = new STRtree();
+        ReflectionCandidateIndex.WallTile tile = candidateIndex.getTile(receiverCoordinates);
+        // Keep only the walls of the tile that are in range of this receiver
+        Envelope receiverPropagationEnvelope = new Envelope(receiverCoordinates);
+        receiverPropagationEnvelope.expandBy(maximumPropagationDistance);
+        boolean[] inRange = new boolean[tile.size()];
+        int[] wallsInRange = new int[tile.size()];
+        int wallsInRangeCount = 0;
+        List<ProfileBuilder.Wall> receiverWalls = new ArrayList<>();
+        for(int wallIndex = 0; wallIndex < tile.size(); wallIndex++) {
+            ProfileBuilder.Wall wall = tile.getWall(wallIndex);
+            if(receiverPropagationEnvelope.intersects(wall.p0, wall.p1)) {
+                inRange[wallIndex] = true;
+                wallsInRange[wallsInRangeCount++] = wallIndex;
+                receiverWalls.add(wall);
+            }
+        }
+        this.buildWalls = receiverWalls;
+        ArrayList<ParentImage> parentsToProcess = new ArrayList<>();
+        for(int currentDepth = 0; currentDepth < reflectionOrder; currentDepth++) {
+            ArrayList<ParentImage> nextParentsToProcess = new ArrayList<>();
+            if(currentDepth == 0) {
+                for(int i = 0; i < wallsInRangeCount; i++) {
+                    int wallIndex = wallsInRange[i];
+                    MirrorReceiverResult receiverResult = addMirrorReceiver(receiverCoordinates, null,
+                            tile.getWall(wallIndex));
+                    if(receiverResult == null) {
+                        continue;
+                    }
+                    nextParentsToProcess.add(new ParentImage(receiverResult, wallIndex,
+                            tile.getSide(wallIndex, receiverCoordinates)));
+                    if(numberOfImageReceivers >= mirrorReceiverCapacity) {
+                        return;
+                    }
+                }
+            } else {
+                for (ParentImage parent : parentsToProcess) {
+                    Coordinate receiverImage = parent.image.getReceiverPos();
+                    int[] candidates = tile.getFrontWalls(parent.wallIndex, parent.side);
+                    int candidatesCount = candidates == null ? wallsInRangeCount : candidates.length;
+                    for (int i = 0; i < candidatesCount; i++) {
+                        int wallIndex = candidates == null ? wallsInRange[i] : candidates[i];
+                        if (wallIndex == parent.wallIndex || !inRange[wallIndex]) {
+                            continue;
+                        }
+                        // The reflection point on this wall must be in front of the previous wall
+                        if (candidates == null && !tile.hasPointOnSide(wallIndex, parent.wallIndex, parent.side)) {
+                            continue;
+                        }
+                        // The reflection point on the previous wall must be in front of this wall
+                        int side = tile.getSide(wallIndex, receiverImage);
+                        if (!tile.hasPointOnSide(parent.wallIndex, wallIndex, side)) {
+                            continue;
+                        }
+                        MirrorReceiverResult receiverResult = addMirrorReceiver(receiverImage, parent.image,
+                                tile.getWall(wallIndex));
+                        if (receiverResult == null) {
+                            continue;
+                        }
+                        nextParentsToProcess.add(new ParentImage(receiverResult, wallIndex, side));
+                        if (numberOfImageReceivers >= mirrorReceiverCapacity) {
+                            return;
+                        }
+                    }
+                }
+            }
+            parentsToProcess = nextParentsToProcess;
+        }
+        mirrorReceiverTree.build();
+    }
+
+    /**
+     * Mirror the receiver image on the wall and insert the new receiver image into the index
+     * @param receiverImage Receiver or previous receiver image
+     * @param parent Previous receiver image or null
+     * @param wall Reflection wall
+     * @return The new receiver image or null if the wall is too far
+     */
+    private MirrorReceiverResult addMirrorReceiver(Coordinate receiverImage, MirrorReceiverResult parent,
+                                                   ProfileBuilder.Wall wall) {
+        //Calculate the coordinate of projection
+        Coordinate proj = wall.getLineSegment().project(receiverImage);
+        Coordinate rcvMirror = new Coordinate(2 * proj.x - receiverImage.x,
+                2 * proj.y - receiverImage.y, receiverImage.z);
+        if(wall.getLineSegment().distance(rcvMirror) > maximumPropagationDistance) {
+            // wall is too far from the receiver image, there is no receiver image
+            return null;
+        }
+        MirrorReceiverResult receiverResult = new MirrorReceiverResult(rcvMirror, parent, wall,
+                wall.getOriginId(), wall.getType());
+        // create the visibility cone of this receiver image
+        Envelope imageReceiverVisibilityCone = createWallReflectionVisibilityConeEnvelope(rcvMirror,
+                wall.getLineSegment(), maximumPropagationDistance, maximumDistanceFromWall);
+        mirrorReceiverTree.insert(imageReceiverVisibilityCone, receiverResult);
+        numberOfImageReceivers++;
+        return receiverResult;
+    }
+
     public int getMirrorReceiverCapacity() {
         return mirrorReceiverCapacity;
     }
@@ -184,6 +317,21 @@ public class MirrorReceiverResultIndex {
         return receiverImageVisitor.result;
     }
 
+    /**
+     * Receiver image to mirror again, with the side of its wall where the mirrored point is
+     */
+    private static final class ParentImage {
+        final MirrorReceiverResult image;
+        final int wallIndex;
+        final int side;
+
+        ParentImage(MirrorReceiverResult image, int wallIndex, int side) {
+            this.image = image;
+            this.wallIndex = wallIndex;
+            this.side = side;
+        }
+    }
+
     private static class ReceiverImageVisitor implements ItemVisitor {
         List<MirrorReceiverResult> result = new ArrayList<>();
         List<ProfileBuilder.Wall> buildWalls;
@@ -113,7 +113,12 @@ public class PointPath {
             out.writeDouble(bandAlpha);
         }
         out.writeInt(buildingId);
-        out.writeInt(type.ordinal());
+        out.writeInt(wallId);
+        out.writeInt(type == null ? -1 : type.ordinal());
+        out.writeDouble(e);
+        PropagationPath.writeOrientation(out, orientation);
+        out.writeDouble(buildingHeight);
+        out.writeBoolean(bodyBarrier);
     }
 
     /**
@@ -133,7 +138,13 @@ public class PointPath {
         }
         this.alphaWall = readAlpha;
         buildingId = in.readInt();
-        type = POINT_TYPE.values()[in.readInt()];
+        wallId = in.readInt();
+        int typeOrdinal = in.readInt();
+        type = typeOrdinal < 0 ? null : POINT_TYPE.values()[typeOrdinal];
+        e = in.readDouble();
+        orientation = PropagationPath.readOrientation(in);
+        buildingHeight = in.readDouble();
+        bodyBarrier = in.readBoolean();
     }
 
     public void setType(POINT_TYPE type) {
@@ -35,6 +35,8 @@ package org.noise_planet.noisemodelling.pathfinder;
 
 import org.locationtech.jts.algorithm.Angle;
 import org.locationtech.jts.algorithm.CGAlgorithms3D;
+import org.locationtech.jts.algorithm.ConvexHull;
+import org.locationtech.jts.algorithm.RectangleLineIntersector;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.CoordinateSequenceFilter;
@@ -47,10 +49,13 @@ import org.locationtech.jts.geom.LinearRing;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedLineString;
 import org.locationtech.jts.index.ItemVisitor;
 import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.operation.distance.DistanceOp;
 import org.locationtech.jts.triangulate.quadedge.Vertex;
+import org.noise_planet.noisemodelling.pathfinder.utils.LruCache;
+import org.noise_planet.noisemodelling.pathfinder.utils.ProfileCacheMetric;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -100,6 +105,8 @@ public class ProfileBuilder {
     private boolean isFeedingFinished = false;
     /** Wide angle points of a building polygon */
     private Map<Integer, ArrayList<Coordinate>> buildingsWideAnglePoints = new HashMap<>();
+    /** Wide angle points of a building polygon that are vertices of the 2D convex hull of the building */
+    private Map<Integer, List<Coordinate>> buildingsWideAngleHullPoints = new HashMap<>();
     /** Building RTree node capacity. */
     private int buildingNodeCapacity = TREE_NODE_CAPACITY;
     /** Topographic RTree node capacity. */
@@ -122,6 +129,32 @@ public class ProfileBuilder {
     /** Global RTree. */
     private STRtree rtree;
     private STRtree groundEffectsRtree = new STRtree(TREE_NODE_CAPACITY);
+    /**
+     * Global RTree query results, for segments with end points in the same pair of cells.
+     * @see ProfileBuilder#setWallQueryCacheCellSize(double)
+     */
+    private final LruCache<SegmentCellsKey, int[]> wallQueryCache = new LruCache<>(50000);
+    /** Size of the cells used to quantize the segments end points, 0 to disable the cache */
+    private double wallQueryCacheCellSize = 10;
+    /** Maximum number of queries kept in the cache, the least recently used queries are evicted */
+    private int wallQueryCacheMaximumSize = 50000;
+    /** Optional cache hit/miss statistics */
+    private ProfileCacheMetric profileCacheMetric;
+    /**
+     * Buildings intersected by the segments of the lateral diffraction convex hulls.
+     * @see ProfileBuilder#getBuildingsIntersectingSegment(Coordinate, Coordinate)
+     */
+    private final LruCache<SegmentKey, int[]> buildingSegmentCache = new LruCache<>(50000);
+    /**
+     * Walls intersected by the segments of the lateral diffraction convex hulls.
+     * @see ProfileBuilder#getWallsIntersectingSegment(Coordinate, Coordinate)
+     */
+    private final LruCache<SegmentKey, int[]> wallSegmentCache = new LruCache<>(50000);
+    /**
+     * Maximum number of segments kept in each lateral diffraction cache, the least recently used segments are
+     * evicted. 0 to disable the caches
+     */
+    private int sideHullCacheMaximumSize = 50000;
 
 
     /** List of topographic points. */
@@ -136,6 +169,8 @@ public class ProfileBuilder {
     private List<Coordinate> vertices = new ArrayList<>();
     /** Topographic RTree. */
     private STRtree topoTree;
+    /** Ground elevation, the triangulated topographic points and lines or an external provider. */
+    private TopographyProvider topography;
 
     /** List of ground effects. */
     private final List<GroundEffect> groundEffects = new ArrayList<>();
@@ -161,6 +196,75 @@ public class ProfileBuilder {
         return this;
     }
 
+    /**
+     * The walls and ground effects candidates of the profile segments are fetched from the RTree using the cells of
+     * the segment end points. The candidates are then filtered with the segment envelope, so the profile is the same
+     * with or without cache, but close segments (densified line sources, receivers grid) share the same RTree query.
+     * @param wallQueryCacheCellSize Size of the cells in meters, 0 to disable the cache
+     */
+    public ProfileBuilder setWallQueryCacheCellSize(double wallQueryCacheCellSize) {
+        this.wallQueryCacheCellSize = wallQueryCacheCellSize;
+        wallQueryCache.clear();
+        return this;
+    }
+
+    /**
+     * @return Size of the cells in meters used by the RTree query cache, 0 if disabled
+     */
+    public double getWallQueryCacheCellSize() {
+        return wallQueryCacheCellSize;
+    }
+
+    /**
+     * @param wallQueryCacheMaximumSize Maximum number of queries kept in the cache
+     */
+    public ProfileBuilder setWallQueryCacheMaximumSize(int wallQueryCacheMaximumSize) {
+        this.wallQueryCacheMaximumSize = wallQueryCacheMaximumSize;
+        wallQueryCache.setMaximumWeight(wallQueryCacheMaximumSize);
+        return this;
+    }
+
+    /**
+     * @return Maximum number of queries kept in the cache
+     */
+    public int getWallQueryCacheMaximumSize() {
+        return wallQueryCacheMaximumSize;
+    }
+
+    /**
+     * The segments of the lateral diffraction convex hulls that link two building corners or a source and a building
+     * corner are the same for a lot of receivers. The buildings and walls intersected by these segments are kept.
+     * @param sideHullCacheMaximumSize Maximum number of segments kept in the cache, the least recently used segments
+     *                                 are evicted. 0 to disable the cache
+     */
+    public ProfileBuilder setSideHullCacheMaximumSize(int sideHullCacheMaximumSize) {
+        this.sideHullCacheMaximumSize = sideHullCacheMaximumSize;
+        buildingSegmentCache.setMaximumWeight(sideHullCacheMaximumSize);
+        wallSegmentCache.setMaximumWeight(sideHullCacheMaximumSize);
+        return this;
+    }
+
+    /**
+     * @return Maximum number of segments kept in the lateral diffraction cache, 0 if disabled
+     */
+    public int getSideHullCacheMaximumSize() {
+        return sideHullCacheMaximumSize;
+    }
+
+    /**
+     * @param profileCacheMetric Cache hit/miss statistics, may be null
+     */
+    public void setProfileCacheMetric(ProfileCacheMetric profileCacheMetric) {
+        this.profileCacheMetric = profileCacheMetric;
+    }
+
+    /**
+     * @return Cache hit/miss statistics, may be null
+     */
+    public ProfileCacheMetric getProfileCacheMetric() {
+        return profileCacheMetric;
+    }
+
 
     /**
      * Main empty constructor.
@@ -542,6 +646,27 @@ public class ProfileBuilder {
         return addWall(FACTORY.createLineString(coords), 0.0, alphas, id);
     }
 
+    /**
+     * Use an external ground elevation, such as {@link RasterTopography}, instead of the triangulation of the
+     * topographic points and lines. The provider can be shared by multiple ProfileBuilder.
+     * @param topography Ground elevation provider, null to use the topographic points and lines.
+     * @throws IllegalStateException If {@link #finishFeeding()} has already been called
+     */
+    public ProfileBuilder setTopography(TopographyProvider topography) {
+        if(isFeedingFinished) {
+            throw new IllegalStateException("Cannot set the topography, feeding is finished.");
+        }
+        this.topography = topography;
+        return this;
+    }
+
+    /**
+     * @return Ground elevation provider, null if there is no topography
+     */
+    public TopographyProvider getTopography() {
+        return topography;
+    }
+
     /**
      * Add the topographic point in the data, to complete the topographic data.
      * @param point Topographic point.
@@ -764,7 +889,11 @@ public class ProfileBuilder {
         isFeedingFinished = true;
 
         //Process topographic points and lines
-        if(topoPoints.size()+topoLines.size() > 1) {
+        if(topography != null) {
+            if(topoPoints.size()+topoLines.size() > 0) {
+                LOGGER.warn("The topographic points and lines are ignored, a topography provider is set.");
+            }
+        } else if(topoPoints.size()+topoLines.size() > 1) {
             //Feed the Delaunay layer
             LayerDelaunay layerDelaunay = new LayerTinfour();
             layerDelaunay.setRetrieveNeighbors(true);
@@ -828,6 +957,7 @@ public class ProfileBuilder {
                 topoTree.insert(env, i);
             }
             topoTree.build();
+            topography = new TinTopography();
             //TODO : Seems to be useless, to check
             /*for (IntegerTuple wallId : wallIndex) {
                 Coordinate vA = vertices.get(wallId.nodeIndexA);
@@ -837,7 +967,7 @@ public class ProfileBuilder {
             }*/
         }
         //Update building z
-        if(topoTree != null) {
+        if(topography != null) {
             for (Building b : buildings) {
                 if(isNaN(b.poly.getCoordinate().z) || b.poly.getCoordinate().z == 0.0 || !zBuildings) {
                     b.poly2D_3D();
@@ -875,10 +1005,12 @@ public class ProfileBuilder {
         //Process buildings
         rtree = new STRtree(buildingNodeCapacity);
         buildingsWideAnglePoints.clear();
+        buildingsWideAngleHullPoints.clear();
         for (int j = 0; j < buildings.size(); j++) {
             Building building = buildings.get(j);
-            buildingsWideAnglePoints.put(j + 1,
-                    getWideAnglePointsByBuilding(j + 1, 0, 2 * Math.PI));
+            ArrayList<Coordinate> wideAnglePoints = getWideAnglePointsByBuilding(j + 1, 0, 2 * Math.PI);
+            buildingsWideAnglePoints.put(j + 1, wideAnglePoints);
+            buildingsWideAngleHullPoints.put(j + 1, getConvexHullPoints(wideAnglePoints));
             List<Wall> walls = new ArrayList<>();
             Coordinate[] coords = building.poly.getCoordinates();
             for (int i = 0; i < coords.length - 1; i++) {
@@ -927,7 +1059,13 @@ public class ProfileBuilder {
             }
         }
         rtree.build();
+        wallQueryCache.clear();
+        buildingSegmentCache.clear();
+        wallSegmentCache.clear();
         groundEffectsRtree.build();
+        // Build now the lazy trees, queries can then be done by multiple threads without modifying the index
+        buildingTree.build();
+        wallTree.build();
         return this;
     }
 
@@ -1016,7 +1154,19 @@ public class ProfileBuilder {
      * @return Cutting profile.
      */
     public CutProfile getProfile(CutPoint c0, CutPoint c1, double gS) {
-        CutProfile profile = getProfile(c0.getCoordinate(), c1.getCoordinate(), gS);
+        return getProfile(c0, c1, gS, new CutProfile());
+    }
+
+    /**
+     * Retrieve the cutting profile following the line build from the given cut points.
+     * @param c0 Starting point.
+     * @param c1 Ending point.
+     * @param gS Default ground coefficient.
+     * @param profile Profile instance to fill, see {@link #getProfile(Coordinate, Coordinate, double, CutProfile)}
+     * @return The provided profile.
+     */
+    public CutProfile getProfile(CutPoint c0, CutPoint c1, double gS, CutProfile profile) {
+        getProfile(c0.getCoordinate(), c1.getCoordinate(), gS, profile);
 
         profile.source.buildingId = c0.buildingId;
         profile.source.groundCoef = c0.groundCoef;
@@ -1057,10 +1207,25 @@ public class ProfileBuilder {
      * @return Cutting profile.
      */
     public CutProfile getProfile(Coordinate c0, Coordinate c1, double gS) {
-        CutProfile profile = new CutProfile();
+        return getProfile(c0, c1, gS, new CutProfile());
+    }
+
+    /**
+     * Retrieve the cutting profile following the line build from the given coordinates.
+     * The provided profile is cleared and filled, its internal buffers and cut points are reused in order to limit
+     * the allocations when a lot of profiles are computed by the same thread. The cut points belong to the profile
+     * and are overwritten by the next call, copy the cut points that must be kept.
+     * @param c0 Starting point.
+     * @param c1 Ending point.
+     * @param gS Default ground coefficient.
+     * @param profile Profile instance to fill, must not be in use by the caller anymore.
+     * @return The provided profile.
+     */
+    public CutProfile getProfile(Coordinate c0, Coordinate c1, double gS, CutProfile profile) {
+        profile.reset();
 
         //Topography
-        if(topoTree != null) {
+        if(topography != null) {
             addTopoCutPts(c0, c1, profile);
         }
         // Split line into segments for structures based on RTree in order to limit the number of queries
@@ -1226,15 +1391,18 @@ public class ProfileBuilder {
     }
 
     private void addBuildingBaseCutPts(CutProfile profile, Coordinate c0, Coordinate c1) {
-        ArrayList<CutPoint> pts = new ArrayList<>(profile.pts.size());
+        ArrayList<CutPoint> pts = profile.swapPts;
+        pts.clear();
+        pts.ensureCapacity(profile.pts.size());
         int buildId = -1;
         CutPoint lastBuild = null;
+        int lastBuildIndex = -1;
         for(int i=0; i<profile.pts.size(); i++) {
             ProfileBuilder.CutPoint cut = profile.pts.get(i);
             if(cut.getType().equals(BUILDING)) {
                 if (buildId == -1) {
                     buildId = cut.getId();
-                    CutPoint grd = new CutPoint(cut);
+                    CutPoint grd = profile.copyCutPoint(cut);
                     grd.getCoordinate().z = getZGround(cut);
                     pts.add(grd);
                     pts.add(cut);
@@ -1243,21 +1411,22 @@ public class ProfileBuilder {
                     pts.add(cut);
                 }
                 else {
-                    CutPoint grd0 = new CutPoint(lastBuild);
+                    CutPoint grd0 = profile.copyCutPoint(lastBuild);
                     grd0.getCoordinate().z = getZGround(grd0);
-                    pts.add(pts.indexOf(lastBuild)+1, grd0);
-                    CutPoint grd1 = new CutPoint(cut);
+                    pts.add(lastBuildIndex+1, grd0);
+                    CutPoint grd1 = profile.copyCutPoint(cut);
                     grd1.getCoordinate().z = getZGround(grd1);
                     pts.add(grd1);
                     pts.add(cut);
                     buildId = cut.getId();
                 }
                 lastBuild = cut;
+                lastBuildIndex = pts.size() - 1;
             }
             else if(cut.getType().equals(RECEIVER)) {
                 if(buildId != -1) {
                     buildId = -1;
-                    CutPoint grd0 = new CutPoint(pts.get(pts.size()-1));
+                    CutPoint grd0 = profile.copyCutPoint(pts.get(pts.size()-1));
                     grd0.getCoordinate().z = getZGround(grd0);
                     pts.add(grd0);
                 }
@@ -1268,19 +1437,66 @@ public class ProfileBuilder {
             }
         }
         if(buildId != -1) {
-            CutPoint grd0 = new CutPoint(lastBuild);
+            CutPoint grd0 = profile.copyCutPoint(lastBuild);
             grd0.getCoordinate().z = getZGround(grd0);
-            pts.add(pts.indexOf(lastBuild)+1, grd0);
+            pts.add(lastBuildIndex+1, grd0);
         }
+        // Swap the two lists, the previous one will be reused on the next call
+        profile.swapPts = profile.pts;
         profile.pts = pts;
         profile.addSource(c0);
         profile.addReceiver(c1);
     }
 
+    /**
+     * Fetch the global RTree items that intersects the envelope of the segment p0 p1, in the RTree order.
+     * @param p0 First point of the segment
+     * @param p1 Last point of the segment
+     * @param indexes Where to add the processed walls indexes
+     */
+    private void queryWalls(Coordinate p0, Coordinate p1, List<Integer> indexes) {
+        final double cellSize = wallQueryCacheCellSize;
+        if(cellSize <= 0) {
+            indexes.addAll(rtree.query(new Envelope(p0, p1)));
+            return;
+        }
+        SegmentCellsKey key = new SegmentCellsKey((long) Math.floor(p0.x / cellSize),
+                (long) Math.floor(p0.y / cellSize), (long) Math.floor(p1.x / cellSize),
+                (long) Math.floor(p1.y / cellSize));
+        int[] candidates = wallQueryCache.get(key);
+        if(candidates == null) {
+            // The segment envelope is contained by the envelope of the two cells
+            Envelope cellsEnvelope = new Envelope(key.x0 * cellSize, (key.x0 + 1) * cellSize,
+                    key.y0 * cellSize, (key.y0 + 1) * cellSize);
+            cellsEnvelope.expandToInclude(new Envelope(key.x1 * cellSize, (key.x1 + 1) * cellSize,
+                    key.y1 * cellSize, (key.y1 + 1) * cellSize));
+            // Avoid rounding issues on the cells border
+            cellsEnvelope.expandBy(cellSize * 1e-6);
+            List<Integer> result = (List<Integer>) rtree.query(cellsEnvelope);
+            candidates = new int[result.size()];
+            for(int i = 0; i < candidates.length; i++) {
+                candidates[i] = result.get(i);
+            }
+            wallQueryCache.put(key, candidates);
+            if(profileCacheMetric != null) {
+                profileCacheMetric.onMiss();
+            }
+        } else if(profileCacheMetric != null) {
+            profileCacheMetric.onHit();
+        }
+        // Keep only the items that would have been returned by the RTree for this segment
+        for(int candidate : candidates) {
+            Wall wall = processedWalls.get(candidate);
+            if(Envelope.intersects(p0, p1, wall.ls.p0, wall.ls.p1)) {
+                indexes.add(candidate);
+            }
+        }
+    }
+
     private void addGroundBuildingCutPts(List<LineSegment> lines, LineSegment fullLine, CutProfile profile) {
         List<Integer> indexes = new ArrayList<>();
         for (LineSegment line : lines) {
-            indexes.addAll(rtree.query(new Envelope(line.p0, line.p1)));
+            queryWalls(line.p0, line.p1, indexes);
         }
         indexes = indexes.stream().distinct().collect(Collectors.toList());
         Map<Integer, Coordinate> processedGround = new HashMap<>();
@@ -1297,7 +1513,7 @@ public class ProfileBuilder {
                         intersection.z = facetLine.p0.z + ((intersection.x - facetLine.p0.x) / (facetLine.p1.x - facetLine.p0.x) * (facetLine.p1.z - facetLine.p0.z));
                     }
                 }
-                else if(topoTree == null) {
+                else if(topography == null) {
                     intersection.z = NaN;
                 }
                 else {
@@ -1534,9 +1750,19 @@ public class ProfileBuilder {
     }
 
     public List<Coordinate> getTopographicProfile(Coordinate p1, Coordinate p2) {
-        if(topoTree == null) {
+        if(topography == null) {
             return new ArrayList<>();
         }
+        return topography.getTopographicProfile(p1, p2);
+    }
+
+    /**
+     * Walk through the triangles crossed by the segment
+     * @param p1 First point of the segment
+     * @param p2 Last point of the segment
+     * @return Intersections of the segment with the triangles sides
+     */
+    private List<Coordinate> getTinTopographicProfile(Coordinate p1, Coordinate p2) {
         List<Coordinate> outputPoints = new ArrayList<>();
         //get origin triangle id
         int curTriP1 = getTriangleIdByCoordinate(p1);
@@ -1583,32 +1809,54 @@ public class ProfileBuilder {
      * @return True if digital elevation model has been added
      */
     public boolean hasDem() {
-        return topoTree != null && topoTree.size() > 0;
+        return topography != null && (topoTree == null || topoTree.size() > 0);
     }
 
     public double getZGround(CutPoint cut) {
         if(!Double.isNaN(cut.zGround)) {
             return cut.zGround;
         }
-        if(topoTree == null) {
+        if(topography == null) {
             cut.zGround = NaN;
             return 0.0;
         }
-        Envelope env = new Envelope(cut.coordinate);
+        double z = topography.getZGround(cut.coordinate);
+        cut.zGround = z;
+        return isNaN(z) ? 0.0 : z;
+    }
+
+    /**
+     * @param c Coordinate of the point.
+     * @return Elevation of the triangle containing the point, NaN if there is no triangle
+     */
+    private double getTinZGround(Coordinate c) {
+        Envelope env = new Envelope(c);
         List<Integer> list = (List<Integer>)topoTree.query(env);
         for (int i : list) {
             final Triangle tri = topoTriangles.get(i);
             final Coordinate p1 = vertices.get(tri.getA());
             final Coordinate p2 = vertices.get(tri.getB());
             final Coordinate p3 = vertices.get(tri.getC());
-            if(JTSUtility.dotInTri(cut.coordinate, p1, p2, p3)) {
-                double z = Vertex.interpolateZ(cut.coordinate, p1, p2, p3);
-                cut.zGround = z;
-                return z;
+            if(JTSUtility.dotInTri(c, p1, p2, p3)) {
+                return Vertex.interpolateZ(c, p1, p2, p3);
             }
         }
-        cut.zGround = NaN;
-        return 0.0;
+        return NaN;
+    }
+
+    /**
+     * Ground elevation of the triangulated topographic points and lines
+     */
+    private final class TinTopography implements TopographyProvider {
+        @Override
+        public double getZGround(Coordinate c) {
+            return getTinZGround(c);
+        }
+
+        @Override
+        public List<Coordinate> getTopographicProfile(Coordinate p1, Coordinate p2) {
+            return getTinTopographicProfile(p1, p2);
+        }
     }
 
     /**
@@ -1635,6 +1883,17 @@ public class ProfileBuilder {
     public static class CutProfile {
         /** List of cut points. */
         private ArrayList<CutPoint> pts = new ArrayList<>();
+        /** Second list of cut points, used while inserting the building base cut points. */
+        private ArrayList<CutPoint> swapPts = new ArrayList<>();
+        /** Sort keys of the cut points, as primitive arrays reused from one sort to the next. */
+        private double[] sortKeyX = new double[0];
+        private double[] sortKeyY = new double[0];
+        private int[] sortOrder = new int[0];
+        private int[] sortBuffer = new int[0];
+        private CutPoint[] sortPts = new CutPoint[0];
+        /** Cut points created by this profile, the first cutPointPoolSize points are in use. */
+        private final ArrayList<CutPoint> cutPointPool = new ArrayList<>();
+        private int cutPointPoolSize = 0;
         /** Source cut point. */
         private CutPoint source;
         /** Receiver cut point. */
@@ -1649,12 +1908,60 @@ public class ProfileBuilder {
         private Boolean isFreeField;
         private Orientation srcOrientation;
 
+        /**
+         * Remove all the cut points and properties of this profile, the allocated buffers are kept for the next use.
+         */
+        public void reset() {
+            pts.clear();
+            swapPts.clear();
+            cutPointPoolSize = 0;
+            Arrays.fill(sortPts, null);
+            source = null;
+            receiver = null;
+            hasBuildingInter = false;
+            hasTopographyInter = false;
+            hasGroundEffectInter = false;
+            isFreeField = null;
+            srcOrientation = null;
+        }
+
+        /**
+         * @return A cut point of this profile, a previous cut point is reused if the profile has been reset.
+         */
+        private CutPoint newCutPoint(Coordinate coord, IntersectionType type, int id, boolean corner) {
+            CutPoint cut;
+            if(cutPointPoolSize < cutPointPool.size()) {
+                cut = cutPointPool.get(cutPointPoolSize);
+                cut.set(coord, type, id, corner);
+            } else {
+                cut = new CutPoint(coord, type, id, corner);
+                cutPointPool.add(cut);
+            }
+            cutPointPoolSize++;
+            return cut;
+        }
+
+        /**
+         * @param cut Cut point to copy
+         * @return A copy of the cut point that belongs to this profile.
+         */
+        CutPoint copyCutPoint(CutPoint cut) {
+            CutPoint copy = newCutPoint(cut.coordinate, cut.type, cut.id, cut.corner);
+            copy.buildingId = cut.buildingId;
+            copy.wallId = cut.wallId;
+            copy.groundCoef = cut.groundCoef;
+            copy.wallAlpha = cut.wallAlpha.isEmpty() ? Collections.emptyList() : new ArrayList<>(cut.wallAlpha);
+            copy.height = cut.height;
+            copy.zGround = cut.zGround;
+            return copy;
+        }
+
         /**
          * Add the source point.
          * @param coord Coordinate of the source point.
          */
         public void addSource(Coordinate coord) {
-            source = new CutPoint(coord, SOURCE, -1);
+            source = newCutPoint(coord, SOURCE, -1, false);
             pts.add(0, source);
         }
 
@@ -1663,7 +1970,7 @@ public class ProfileBuilder {
          * @param coord Coordinate of the receiver point.
          */
         public void addReceiver(Coordinate coord) {
-            receiver = new CutPoint(coord, RECEIVER, -1);
+            receiver = newCutPoint(coord, RECEIVER, -1, false);
             pts.add(receiver);
         }
 
@@ -1673,7 +1980,7 @@ public class ProfileBuilder {
          * @param buildingId Id of the cut building.
          */
         public void addBuildingCutPt(Coordinate coord, int buildingId, int wallId, boolean corner) {
-            CutPoint cut = new CutPoint(coord, IntersectionType.BUILDING, buildingId, corner);
+            CutPoint cut = newCutPoint(coord, IntersectionType.BUILDING, buildingId, corner);
             cut.wallId = wallId;
             pts.add(cut);
             pts.get(pts.size()-1).buildingId = buildingId;
@@ -1686,7 +1993,7 @@ public class ProfileBuilder {
          * @param id    Id of the cut building.
          */
         public void addWallCutPt(Coordinate coord, int id, boolean corner) {
-            pts.add(new CutPoint(coord, IntersectionType.WALL, id, corner));
+            pts.add(newCutPoint(coord, IntersectionType.WALL, id, corner));
             pts.get(pts.size()-1).wallId = id;
             hasBuildingInter = true;
         }
@@ -1697,7 +2004,7 @@ public class ProfileBuilder {
          * @param id    Id of the cut building.
          */
         public void addWallCutPt(Coordinate coord, int id, boolean corner, List<Double> alphas) {
-            pts.add(new CutPoint(coord, IntersectionType.WALL, id, corner));
+            pts.add(newCutPoint(coord, IntersectionType.WALL, id, corner));
             pts.get(pts.size()-1).wallId = id;
             pts.get(pts.size()-1).setWallAlpha(alphas);
             hasBuildingInter = true;
@@ -1709,7 +2016,7 @@ public class ProfileBuilder {
          * @param id    Id of the cut topography.
          */
         public void addTopoCutPt(Coordinate coord, int id) {
-            pts.add(new CutPoint(coord, TOPOGRAPHY, id));
+            pts.add(newCutPoint(coord, TOPOGRAPHY, id, false));
             hasTopographyInter = true;
         }
 
@@ -1727,7 +2034,7 @@ public class ProfileBuilder {
          * @param id    Id of the cut topography.
          */
         public void addGroundCutPt(Coordinate coord, int id) {
-            pts.add(new CutPoint(coord, IntersectionType.GROUND_EFFECT, id));
+            pts.add(newCutPoint(coord, IntersectionType.GROUND_EFFECT, id, false));
             hasGroundEffectInter = true;
         }
 
@@ -1759,20 +2066,72 @@ public class ProfileBuilder {
          * Sort the CutPoints by there coordinates
          */
         public void sort(Coordinate c0, Coordinate c1) {
-            if(c0.x<=c1.x){
-                if(c0.y<=c1.y){
-                    pts.sort(CutPoint::compareTox01y01);
-                }
-                else {
-                    pts.sort(CutPoint::compareTox01y10);
-                }
+            // Same order as CutPoint#compareTox01y01, compareTox01y10, compareTox10y01 and compareTox10y10
+            // the keys are negated for the descending axis
+            final double signX = c0.x <= c1.x ? 1 : -1;
+            final double signY = c0.y <= c1.y ? 1 : -1;
+            final int size = pts.size();
+            if(sortOrder.length < size) {
+                int capacity = Math.max(size, sortOrder.length * 2);
+                sortKeyX = new double[capacity];
+                sortKeyY = new double[capacity];
+                sortOrder = new int[capacity];
+                sortBuffer = new int[capacity];
+                sortPts = new CutPoint[capacity];
+            }
+            for(int i = 0; i < size; i++) {
+                Coordinate coordinate = pts.get(i).coordinate;
+                sortKeyX[i] = signX * coordinate.x;
+                sortKeyY[i] = signY * coordinate.y;
+                sortOrder[i] = i;
+                sortPts[i] = pts.get(i);
+            }
+            mergeSort(0, size);
+            for(int i = 0; i < size; i++) {
+                pts.set(i, sortPts[sortOrder[i]]);
+                sortPts[sortOrder[i]] = null;
             }
-            if(c0.x>c1.x){
-                if(c0.y<=c1.y){
-                    pts.sort(CutPoint::compareTox10y01);
+        }
+
+        /**
+         * @return True if the cut point at index i1 must be placed before the cut point at index i2
+         */
+        private boolean isBefore(int i1, int i2) {
+            return sortKeyX[i1] < sortKeyX[i2] || (sortKeyX[i1] == sortKeyX[i2] && sortKeyY[i1] < sortKeyY[i2]);
+        }
+
+        /**
+         * Stable sort of sortOrder indexes in [from, to[ using the primitive sort keys
+         */
+        private void mergeSort(int from, int to) {
+            if(to - from <= 16) {
+                // insertion sort for small ranges
+                for(int i = from + 1; i < to; i++) {
+                    int index = sortOrder[i];
+                    int j = i - 1;
+                    while(j >= from && isBefore(index, sortOrder[j])) {
+                        sortOrder[j + 1] = sortOrder[j];
+                        j--;
+                    }
+                    sortOrder[j + 1] = index;
                 }
-                else {
-                    pts.sort(CutPoint::compareTox10y10);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            mergeSort(from, middle);
+            mergeSort(middle, to);
+            if(!isBefore(sortOrder[middle], sortOrder[middle - 1])) {
+                // already ordered
+                return;
+            }
+            System.arraycopy(sortOrder, from, sortBuffer, from, to - from);
+            int left = from;
+            int right = middle;
+            for(int i = from; i < to; i++) {
+                if(right >= to || (left < middle && !isBefore(sortBuffer[right], sortBuffer[left]))) {
+                    sortOrder[i] = sortBuffer[left++];
+                } else {
+                    sortOrder[i] = sortBuffer[right++];
                 }
             }
         }
@@ -1847,26 +2206,20 @@ public class ProfileBuilder {
                 isFreeField = true;
                 Coordinate s = getSource().getCoordinate();
                 Coordinate r = getReceiver().getCoordinate();
-                List<CutPoint> tmp = new ArrayList<>();
                 boolean allMatch = true;
                 for(CutPoint cut : pts) {
-                    if(cut.getType() == BUILDING || cut.getType() == WALL) {
-                        tmp.add(cut);
-                    }
-                    else if(cut.getType() == TOPOGRAPHY) {
-                        tmp.add(cut);
-                    }
                     if(!(cut.getCoordinate().equals(s) || cut.getCoordinate().equals(r))) {
                         allMatch = false;
+                        break;
                     }
                 }
                 if(allMatch) {
                     return true;
                 }
-                List<CutPoint> ptsWithouGroundEffect = pts.stream()
-                        .filter(cut -> !cut.getType().equals(GROUND_EFFECT))
-                        .collect(Collectors.toList());
-                for(CutPoint pt : ptsWithouGroundEffect) {
+                for(CutPoint pt : pts) {
+                    if(pt.type == GROUND_EFFECT) {
+                        continue;
+                    }
                     double frac = (pt.coordinate.x-s.x)/(r.x-s.x);
                     double z = source.getCoordinate().z + frac * (receiver.getCoordinate().z-source.getCoordinate().z);
                     if(z < pt.getCoordinate().z && !pt.isCorner()) {
@@ -1924,7 +2277,7 @@ public class ProfileBuilder {
             this.buildingId = -1;
             this.wallId = -1;
             this.groundCoef = 0;
-            this.wallAlpha = new ArrayList<>();
+            this.wallAlpha = Collections.emptyList();
             this.height = 0;
             this.corner = corner;
         }
@@ -1932,6 +2285,24 @@ public class ProfileBuilder {
             this(coord, type, id, false);
         }
 
+        /**
+         * Reinitialize a cut point reused by its {@link CutProfile}, same as the constructor.
+         */
+        private void set(Coordinate coord, IntersectionType type, int id, boolean corner) {
+            this.coordinate.x = coord.x;
+            this.coordinate.y = coord.y;
+            this.coordinate.z = coord.z;
+            this.type = type;
+            this.id = id;
+            this.buildingId = -1;
+            this.wallId = -1;
+            this.groundCoef = 0;
+            this.wallAlpha = Collections.emptyList();
+            this.height = 0;
+            this.zGround = Double.NaN;
+            this.corner = corner;
+        }
+
         public CutPoint() {
             coordinate = new Coordinate();
         }
@@ -1947,7 +2318,7 @@ public class ProfileBuilder {
             this.buildingId = cut.buildingId;
             this.wallId = cut.wallId;
             this.groundCoef = cut.groundCoef;
-            this.wallAlpha = new ArrayList<>(cut.wallAlpha);
+            this.wallAlpha = cut.wallAlpha.isEmpty() ? Collections.emptyList() : new ArrayList<>(cut.wallAlpha);
             this.height = cut.height;
             this.zGround = cut.zGround;
             this.corner = cut.corner;
@@ -2530,6 +2901,33 @@ public class ProfileBuilder {
         return buildingsWideAnglePoints.get(build);
     }
 
+    /**
+     * @param build 1-n based building identifier
+     * @return Wide angle points (without the closing point) that are vertices of the 2D convex hull of the building,
+     * in the same order as {@link #getPrecomputedWideAnglePoints(int)}
+     */
+    public List<Coordinate> getPrecomputedWideAngleHullPoints(int build) {
+        return buildingsWideAngleHullPoints.get(build);
+    }
+
+    /**
+     * @param ring Closed ring
+     * @return Points of the ring (without the closing point) that are vertices of the 2D convex hull of the ring
+     */
+    private static List<Coordinate> getConvexHullPoints(List<Coordinate> ring) {
+        List<Coordinate> ringPoints = ring.subList(0, ring.size() - 1);
+        Set<Coordinate> hullVertices = new HashSet<>(Arrays.asList(new ConvexHull(
+                ringPoints.toArray(new Coordinate[0]), FACTORY).getConvexHull().getCoordinates()));
+        List<Coordinate> hullPoints = new ArrayList<>(hullVertices.size());
+        for (Coordinate p : ringPoints) {
+            // Coordinate equality is 2D, all the points at the location of a hull vertex are kept
+            if (hullVertices.contains(p)) {
+                hullPoints.add(p);
+            }
+        }
+        return hullPoints;
+    }
+
     public ArrayList<Coordinate> getWideAnglePointsByBuilding(int build, double minAngle, double maxAngle) {
         ArrayList <Coordinate> verticesBuilding = new ArrayList<>();
         Coordinate[] ring = getBuilding(build-1).getGeometry().getExteriorRing().getCoordinates().clone();
@@ -2596,6 +2994,146 @@ public class ProfileBuilder {
         }
     }
 
+    /**
+     * Buildings that 2D intersect the segment p1 p2. The result does not depend on the z of the points, it is cached
+     * for the segments of the lateral diffraction convex hulls.
+     * @param p1 first point of line
+     * @param p2 second point of line
+     * @return Building identifiers (1-n) in the order of {@link #getBuildingsOnPath(Coordinate, Coordinate, ItemVisitor)}
+     */
+    public int[] getBuildingsIntersectingSegment(Coordinate p1, Coordinate p2) {
+        return getIntersectingItems(buildingSegmentCache, p1, p2, true);
+    }
+
+    /**
+     * Walls that 2D intersect the segment p1 p2. The result does not depend on the z of the points, it is cached
+     * for the segments of the lateral diffraction convex hulls.
+     * @param p1 first point of line
+     * @param p2 second point of line
+     * @return Wall identifiers (1-n) in the order of {@link #getWallsOnPath(Coordinate, Coordinate, ItemVisitor)}
+     */
+    public int[] getWallsIntersectingSegment(Coordinate p1, Coordinate p2) {
+        return getIntersectingItems(wallSegmentCache, p1, p2, false);
+    }
+
+    private int[] getIntersectingItems(LruCache<SegmentKey, int[]> cache, Coordinate p1, Coordinate p2,
+                                       boolean fetchBuildings) {
+        if(sideHullCacheMaximumSize <= 0) {
+            return fetchIntersectingItems(p1, p2, fetchBuildings);
+        }
+        return cache.computeIfAbsent(new SegmentKey(p1, p2), key -> fetchIntersectingItems(p1, p2, fetchBuildings));
+    }
+
+    private int[] fetchIntersectingItems(Coordinate p1, Coordinate p2, boolean fetchBuildings) {
+        SegmentIntersectionVisitor visitor = new SegmentIntersectionVisitor(p1, p2, fetchBuildings);
+        if(fetchBuildings) {
+            getBuildingsOnPath(p1, p2, visitor);
+        } else {
+            getWallsOnPath(p1, p2, visitor);
+        }
+        return visitor.items.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Collect the buildings or walls whose geometry intersects a segment, in the visit order
+     */
+    private final class SegmentIntersectionVisitor implements ItemVisitor {
+        final Set<Integer> itemProcessed = new HashSet<>();
+        final List<Integer> items = new ArrayList<>();
+        final Coordinate p1;
+        final Coordinate p2;
+        final PreparedLineString seg;
+        final boolean fetchBuildings;
+
+        SegmentIntersectionVisitor(Coordinate p1, Coordinate p2, boolean fetchBuildings) {
+            this.p1 = p1;
+            this.p2 = p2;
+            this.fetchBuildings = fetchBuildings;
+            seg = new PreparedLineString(FACTORY.createLineString(new Coordinate[]{p1, p2}));
+        }
+
+        @Override
+        public void visitItem(Object item) {
+            int id = (Integer) item;
+            if(itemProcessed.add(id)) {
+                Geometry geometry = fetchBuildings ? buildings.get(id - 1).getGeometry() : walls.get(id - 1).getLine();
+                RectangleLineIntersector rect = new RectangleLineIntersector(geometry.getEnvelopeInternal());
+                if (rect.intersects(p1, p2) && seg.intersects(geometry)) {
+                    items.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * 2D end points of a segment
+     */
+    private static final class SegmentKey {
+        final double x0;
+        final double y0;
+        final double x1;
+        final double y1;
+
+        SegmentKey(Coordinate p0, Coordinate p1) {
+            this.x0 = p0.x;
+            this.y0 = p0.y;
+            this.x1 = p1.x;
+            this.y1 = p1.y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SegmentKey that = (SegmentKey) o;
+            return Double.compare(x0, that.x0) == 0 && Double.compare(y0, that.y0) == 0 &&
+                    Double.compare(x1, that.x1) == 0 && Double.compare(y1, that.y1) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Double.hashCode(x0);
+            result = 31 * result + Double.hashCode(y0);
+            result = 31 * result + Double.hashCode(x1);
+            result = 31 * result + Double.hashCode(y1);
+            return result;
+        }
+    }
+
+
+    /**
+     * Cells of the two end points of a segment
+     */
+    private static final class SegmentCellsKey {
+        final long x0;
+        final long y0;
+        final long x1;
+        final long y1;
+
+        SegmentCellsKey(long x0, long y0, long x1, long y1) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SegmentCellsKey that = (SegmentCellsKey) o;
+            return x0 == that.x0 && y0 == that.y0 && x1 == that.x1 && y1 == that.y1;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Long.hashCode(x0);
+            result = 31 * result + Long.hashCode(y0);
+            result = 31 * result + Long.hashCode(x1);
+            result = 31 * result + Long.hashCode(y1);
+            return result;
+        }
+    }
 
     /**
      * Hold two integers. Used to store unique triangle segments
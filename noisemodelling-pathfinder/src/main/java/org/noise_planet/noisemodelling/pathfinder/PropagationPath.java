@@ -311,30 +311,53 @@ public class PropagationPath {
     }
 
     /**
-     * Writes the content of this object into <code>out</code>.
+     * Writes the content of this object into <code>out</code>. All the fields computed by the path finder are
+     * written, so the attenuation of the path read with {@link #readStream(DataInputStream)} is the same. The cut
+     * points (ground profile) are not written.
      * @param out the stream to write into
      * @throws java.io.IOException if an I/O-error occurs
      */
-    /*
     public void writeStream( DataOutputStream out ) throws IOException {
         out.writeBoolean(favorable);
         out.writeInt(idSource);
-        out.writeFloat(sourceOrientation.yaw);
-        out.writeFloat(sourceOrientation.pitch);
-        out.writeFloat(sourceOrientation.roll);
-        out.writeFloat((float) gs);
         out.writeInt(idReceiver);
-        out.writeInt(pointList.size());
-        for(PointPath pointPath : pointList) {
-            pointPath.writeStream(out);
+        writeOrientation(out, sourceOrientation);
+        writeOrientation(out, raySourceReceiverDirectivity);
+        out.writeDouble(gs);
+        out.writeDouble(angle);
+        out.writeDouble(e);
+        out.writeUTF(timePeriod == null ? "" : timePeriod);
+        writeIntegerList(out, difHPoints);
+        writeIntegerList(out, difVPoints);
+        writeIntegerList(out, refPoints);
+        out.writeDouble(deltaH);
+        out.writeDouble(deltaF);
+        out.writeDouble(deltaPrimeH);
+        out.writeDouble(deltaPrimeF);
+        out.writeDouble(deltaSPrimeRH);
+        out.writeDouble(deltaSRPrimeH);
+        out.writeDouble(deltaSPrimeRF);
+        out.writeDouble(deltaSRPrimeF);
+        out.writeDouble(deltaRetroH);
+        out.writeDouble(deltaRetroF);
+        out.writeInt(pointList == null ? 0 : pointList.size());
+        if(pointList != null) {
+            for (PointPath pointPath : pointList) {
+                pointPath.writeStream(out);
+            }
+        }
+        out.writeInt(segmentList == null ? 0 : segmentList.size());
+        if(segmentList != null) {
+            for (SegmentPath segmentPath : segmentList) {
+                segmentPath.writeStream(out);
+            }
         }
-        out.writeInt(segmentList.size());
-        for(SegmentPath segmentPath : segmentList) {
-            segmentPath.writeStream(out);
+        out.writeBoolean(srSegment != null);
+        if(srSegment != null) {
+            srSegment.writeStream(out);
         }
-        srSegment.writeStream(out);
     }
-*/
+
     /**
      * Reads the content of this object from <code>out</code>. All
      * properties should be set to their default value or to the value read
@@ -345,14 +368,26 @@ public class PropagationPath {
     public void readStream( DataInputStream in ) throws IOException {
         favorable = in.readBoolean();
         idSource = in.readInt();
-        float bearing = in.readFloat();
-        float inclination = in.readFloat();
-        float roll = in.readFloat();
-        double gs = in.readFloat();
-        setGs(gs);
-        setSourceOrientation(new Orientation(bearing, inclination, roll));
-
         idReceiver = in.readInt();
+        setSourceOrientation(readOrientation(in));
+        raySourceReceiverDirectivity = readOrientation(in);
+        setGs(in.readDouble());
+        angle = in.readDouble();
+        e = in.readDouble();
+        timePeriod = in.readUTF();
+        difHPoints = readIntegerList(in);
+        difVPoints = readIntegerList(in);
+        refPoints = readIntegerList(in);
+        deltaH = in.readDouble();
+        deltaF = in.readDouble();
+        deltaPrimeH = in.readDouble();
+        deltaPrimeF = in.readDouble();
+        deltaSPrimeRH = in.readDouble();
+        deltaSRPrimeH = in.readDouble();
+        deltaSPrimeRF = in.readDouble();
+        deltaSRPrimeF = in.readDouble();
+        deltaRetroH = in.readDouble();
+        deltaRetroF = in.readDouble();
         int pointListSize = in.readInt();
         pointList = new ArrayList<>(pointListSize);
         for(int i=0; i < pointListSize; i++) {
@@ -367,8 +402,11 @@ public class PropagationPath {
             segmentPath.readStream(in);
             segmentList.add(segmentPath);
         }
-        SegmentPath srSegment = new SegmentPath();
-        srSegment.readStream(in);
+        srSegment = null;
+        if(in.readBoolean()) {
+            srSegment = new SegmentPath();
+            srSegment.readStream(in);
+        }
     }
 
     public List<PointPath> getPointList() {return pointList;}
@@ -464,18 +502,81 @@ public class PropagationPath {
         return new Vector3D(in.readDouble(), in.readDouble(), in.readDouble());
     }
 
+    public static void writeNullableCoordinate(DataOutputStream out, Coordinate p) throws IOException {
+        out.writeBoolean(p != null);
+        if(p != null) {
+            writeCoordinate(out, p);
+        }
+    }
+
+    public static Coordinate readNullableCoordinate(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readCoordinate(in) : null;
+    }
+
+    public static void writeNullableVector(DataOutputStream out, Vector3D p) throws IOException {
+        out.writeBoolean(p != null);
+        if(p != null) {
+            writeVector(out, p);
+        }
+    }
+
+    public static Vector3D readNullableVector(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readVector(in) : null;
+    }
+
+    public static void writeNullableDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if(value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    public static Double readNullableDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    public static void writeOrientation(DataOutputStream out, Orientation orientation) throws IOException {
+        out.writeBoolean(orientation != null);
+        if(orientation != null) {
+            out.writeDouble(orientation.yaw);
+            out.writeDouble(orientation.pitch);
+            out.writeDouble(orientation.roll);
+        }
+    }
+
+    public static Orientation readOrientation(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new Orientation(in.readDouble(), in.readDouble(), in.readDouble()) : null;
+    }
+
+    private static void writeIntegerList(DataOutputStream out, List<Integer> values) throws IOException {
+        out.writeInt(values == null ? 0 : values.size());
+        if(values != null) {
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    private static List<Integer> readIntegerList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<Integer> values = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            values.add(in.readInt());
+        }
+        return values;
+    }
+
     /**
      * Writes the content of this object into <code>out</code>.
      * @param out the stream to write into
      * @throws java.io.IOException if an I/O-error occurs
      */
-    /*
     public static void writePropagationPathListStream( DataOutputStream out, List<PropagationPath> propagationPaths ) throws IOException {
         out.writeInt(propagationPaths.size());
         for(PropagationPath propagationPath : propagationPaths) {
             propagationPath.writeStream(out);
         }
-    }*/
+    }
 
     /**
      * Reads the content of this object from <code>out</code>. All
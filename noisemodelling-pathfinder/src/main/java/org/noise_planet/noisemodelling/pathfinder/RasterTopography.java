@@ -0,0 +1,520 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Digital elevation model stored as a regular grid of float values, the ground elevation is the bilinear
+ * interpolation of the cells values given at the cells center.
+ * The grid is stored by square tiles of {@link #TILE_SIZE} cells in a binary file, the file is mapped in memory so
+ * only the tiles crossed by the propagation paths are loaded.
+ * <pre>
+ * Header: int magic, int version, int columns, int rows, int tileSize, int unused,
+ *         double west border, double north border, double cell size
+ * Tiles:  row by row from the north west tile, float[tileSize * tileSize] cells of the tile row by row
+ * </pre>
+ * All values are little endian. No data cells are NaN.
+ */
+public class RasterTopography implements TopographyProvider, Closeable {
+    public static final int MAGIC = 0x4D444E4E; // NNDM
+    public static final int VERSION = 1;
+    private static final int TILE_SHIFT = 8;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    private static final int TILE_CELLS = TILE_SIZE * TILE_SIZE;
+    private static final long TILE_BYTES = (long) TILE_CELLS * Float.BYTES;
+    static final int HEADER_SIZE = 64;
+    static final long MAXIMUM_SEGMENT_SIZE = 1L << 30;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final int tilesPerSegment;
+    private final int columns;
+    private final int rows;
+    private final int tileColumns;
+    private final double minX;
+    private final double maxY;
+    private final double cellSize;
+
+    /**
+     * Open a grid file written by {@link #convertAsc(InputStream, File)}
+     * @param gridFile Grid file
+     * @throws IOException Error while reading the file, or the file is not a grid file
+     */
+    public RasterTopography(File gridFile) throws IOException {
+        channel = FileChannel.open(gridFile.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated grid file " + gridFile);
+                }
+            }
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a grid file " + gridFile);
+            }
+            int version = header.getInt(Integer.BYTES);
+            if (version != VERSION) {
+                throw new IOException("Unsupported grid file version " + version);
+            }
+            columns = header.getInt(2 * Integer.BYTES);
+            rows = header.getInt(3 * Integer.BYTES);
+            if (header.getInt(4 * Integer.BYTES) != TILE_SIZE) {
+                throw new IOException("Unsupported grid tile size " + header.getInt(4 * Integer.BYTES));
+            }
+            minX = header.getDouble(6 * Integer.BYTES);
+            maxY = header.getDouble(6 * Integer.BYTES + Double.BYTES);
+            cellSize = header.getDouble(6 * Integer.BYTES + 2 * Double.BYTES);
+            tileColumns = (columns + TILE_MASK) >> TILE_SHIFT;
+            int tileRows = (rows + TILE_MASK) >> TILE_SHIFT;
+            long tileCount = (long) tileColumns * tileRows;
+            if (channel.size() < HEADER_SIZE + tileCount * TILE_BYTES) {
+                throw new IOException("Truncated grid file " + gridFile);
+            }
+            tilesPerSegment = (int) (MAXIMUM_SEGMENT_SIZE / TILE_BYTES);
+            segments = new MappedByteBuffer[(int) ((tileCount + tilesPerSegment - 1) / tilesPerSegment)];
+            for (int idSegment = 0; idSegment < segments.length; idSegment++) {
+                long firstTile = (long) idSegment * tilesPerSegment;
+                long segmentTiles = Math.min(tilesPerSegment, tileCount - firstTile);
+                segments[idSegment] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + firstTile * TILE_BYTES, segmentTiles * TILE_BYTES);
+                segments[idSegment].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Convert an ESRI ASCII grid into a grid file then open it
+     * @param ascFile ESRI ASCII grid file, gz compressed if the file name ends with .gz
+     * @param gridFile Grid file to create or overwrite
+     * @return Opened topography
+     * @throws IOException Error while reading or writing files
+     */
+    public static RasterTopography fromAsc(File ascFile, File gridFile) throws IOException {
+        try (InputStream inputStream = openAsc(ascFile)) {
+            convertAsc(inputStream, gridFile);
+        }
+        return new RasterTopography(gridFile);
+    }
+
+    /**
+     * Convert an ESRI ASCII grid into a temporary grid file then open it
+     * @param ascFile ESRI ASCII grid file, gz compressed if the file name ends with .gz
+     * @return Opened topography
+     * @throws IOException Error while reading or writing files
+     */
+    public static RasterTopography fromAsc(File ascFile) throws IOException {
+        File gridFile = File.createTempFile("dem", ".nmdem");
+        gridFile.deleteOnExit();
+        return fromAsc(ascFile, gridFile);
+    }
+
+    private static InputStream openAsc(File ascFile) throws IOException {
+        InputStream inputStream = new FileInputStream(ascFile);
+        if (ascFile.getName().toLowerCase(Locale.ROOT).endsWith(".gz")) {
+            inputStream = new GZIPInputStream(inputStream, READ_BUFFER_SIZE);
+        }
+        return new BufferedInputStream(inputStream, READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Read an ESRI ASCII grid and write the grid file. Only one row of tiles is kept in memory.
+     * @param inputStream ESRI ASCII grid content
+     * @param gridFile Grid file to create or overwrite
+     * @throws IOException Error while reading or writing, or unexpected ASCII grid content
+     */
+    public static void convertAsc(InputStream inputStream, File gridFile) throws IOException {
+        AscTokenizer tokenizer = new AscTokenizer(inputStream);
+        int columns = -1;
+        int rows = -1;
+        double x = Double.NaN;
+        double y = Double.NaN;
+        boolean xCenter = false;
+        boolean yCenter = false;
+        double cellSize = Double.NaN;
+        double noData = -9999;
+        String word = tokenizer.next();
+        // Header keywords are followed by their value, the first numeric word is the first cell value
+        while (word != null && Character.isLetter(word.charAt(0))) {
+            String key = word.toLowerCase(Locale.ROOT);
+            String value = tokenizer.next();
+            if (value == null) {
+                throw new IOException("Missing value of " + word);
+            }
+            switch (key) {
+                case "ncols":
+                    columns = Integer.parseInt(value);
+                    break;
+                case "nrows":
+                    rows = Integer.parseInt(value);
+                    break;
+                case "xllcorner":
+                case "xllcenter":
+                    x = Double.parseDouble(value);
+                    xCenter = key.equals("xllcenter");
+                    break;
+                case "yllcorner":
+                case "yllcenter":
+                    y = Double.parseDouble(value);
+                    yCenter = key.equals("yllcenter");
+                    break;
+                case "cellsize":
+                    cellSize = Double.parseDouble(value);
+                    break;
+                case "nodata_value":
+                    noData = Double.parseDouble(value);
+                    break;
+                default:
+                    throw new IOException("Unexpected word " + word);
+            }
+            word = tokenizer.next();
+        }
+        if (columns <= 0 || rows <= 0 || Double.isNaN(x) || Double.isNaN(y) || !(cellSize > 0)) {
+            throw new IOException("Incomplete ASCII grid header");
+        }
+        double minX = xCenter ? x - cellSize / 2 : x;
+        double maxY = (yCenter ? y - cellSize / 2 : y) + cellSize * rows;
+        int tileColumns = (columns + TILE_MASK) >> TILE_SHIFT;
+        try (FileChannel output = FileChannel.open(gridFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(columns);
+            header.putInt(rows);
+            header.putInt(TILE_SIZE);
+            header.putInt(0);
+            header.putDouble(minX);
+            header.putDouble(maxY);
+            header.putDouble(cellSize);
+            header.rewind();
+            write(output, header);
+            // One row of tiles
+            ByteBuffer tileRow = ByteBuffer.allocate((int) (tileColumns * TILE_BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+            for (int row = 0; row < rows; row++) {
+                if ((row & TILE_MASK) == 0) {
+                    fillNaN(tileRow);
+                }
+                int rowOffset = (row & TILE_MASK) << TILE_SHIFT;
+                for (int column = 0; column < columns; column++) {
+                    if (word == null) {
+                        throw new IOException("Unexpected end of ASCII grid at row " + row + " column " + column);
+                    }
+                    double value = Double.parseDouble(word);
+                    int cell = (column >> TILE_SHIFT) * TILE_CELLS + rowOffset + (column & TILE_MASK);
+                    tileRow.putFloat(cell * Float.BYTES, Double.compare(value, noData) == 0 ? Float.NaN
+                            : (float) value);
+                    word = tokenizer.next();
+                }
+                if ((row & TILE_MASK) == TILE_MASK || row == rows - 1) {
+                    tileRow.rewind();
+                    write(output, tileRow);
+                }
+            }
+        } catch (NumberFormatException ex) {
+            throw new IOException("Unexpected ASCII grid value", ex);
+        }
+    }
+
+    private static void fillNaN(ByteBuffer buffer) {
+        for (int i = 0; i < buffer.capacity(); i += Float.BYTES) {
+            buffer.putFloat(i, Float.NaN);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return Number of columns of the grid
+     */
+    public int getColumnCount() {
+        return columns;
+    }
+
+    /**
+     * @return Number of rows of the grid
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @return Size of a cell
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return Extent of the grid
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(minX, minX + columns * cellSize, maxY - rows * cellSize, maxY);
+    }
+
+    /**
+     * @param column Column index from west
+     * @param row Row index from north
+     * @return Cell value, NaN for no data
+     */
+    public float getCellValue(int column, int row) {
+        long tile = (long) (row >> TILE_SHIFT) * tileColumns + (column >> TILE_SHIFT);
+        int cell = ((row & TILE_MASK) << TILE_SHIFT) | (column & TILE_MASK);
+        MappedByteBuffer segment = segments[(int) (tile / tilesPerSegment)];
+        return segment.getFloat((int) ((tile % tilesPerSegment) * TILE_BYTES) + cell * Float.BYTES);
+    }
+
+    /**
+     * Bilinear interpolation of the cells centers, the no data cells are ignored
+     * @param gx Column coordinate, 0 is the center of the first column
+     * @param gy Row coordinate, 0 is the center of the first row
+     * @return Interpolated value, NaN if all the surrounding cells have no data
+     */
+    private double interpolate(double gx, double gy) {
+        int column = Math.min((int) gx, Math.max(0, columns - 2));
+        int row = Math.min((int) gy, Math.max(0, rows - 2));
+        double fx = gx - column;
+        double fy = gy - row;
+        int nextColumn = Math.min(column + 1, columns - 1);
+        int nextRow = Math.min(row + 1, rows - 1);
+        double weightSum = 0;
+        double z = 0;
+        double w = (1 - fx) * (1 - fy);
+        if (w > 0) {
+            float v = getCellValue(column, row);
+            if (!Float.isNaN(v)) {
+                z += w * v;
+                weightSum += w;
+            }
+        }
+        w = fx * (1 - fy);
+        if (w > 0) {
+            float v = getCellValue(nextColumn, row);
+            if (!Float.isNaN(v)) {
+                z += w * v;
+                weightSum += w;
+            }
+        }
+        w = (1 - fx) * fy;
+        if (w > 0) {
+            float v = getCellValue(column, nextRow);
+            if (!Float.isNaN(v)) {
+                z += w * v;
+                weightSum += w;
+            }
+        }
+        w = fx * fy;
+        if (w > 0) {
+            float v = getCellValue(nextColumn, nextRow);
+            if (!Float.isNaN(v)) {
+                z += w * v;
+                weightSum += w;
+            }
+        }
+        return weightSum > 0 ? z / weightSum : Double.NaN;
+    }
+
+    private double toGridX(double x) {
+        return (x - minX) / cellSize - 0.5;
+    }
+
+    private double toGridY(double y) {
+        return (maxY - y) / cellSize - 0.5;
+    }
+
+    @Override
+    public double getZGround(Coordinate c) {
+        double gx = toGridX(c.x);
+        double gy = toGridY(c.y);
+        if (!(gx >= -0.5 && gx <= columns - 0.5 && gy >= -0.5 && gy <= rows - 0.5)) {
+            return Double.NaN;
+        }
+        // The border half cell takes the value of the nearest cells center
+        return interpolate(Math.min(Math.max(0, gx), columns - 1), Math.min(Math.max(0, gy), rows - 1));
+    }
+
+    /**
+     * Walk through the grid cells crossed by the segment. The ground points are the intersections of the segment
+     * with the lines joining the cells centers, where the interpolated ground is linear between two cells values.
+     * @param p1 First point of the segment
+     * @param p2 Last point of the segment
+     * @return Ground points along the segment
+     */
+    @Override
+    public List<Coordinate> getTopographicProfile(Coordinate p1, Coordinate p2) {
+        List<Coordinate> outputPoints = new ArrayList<>();
+        double gx1 = toGridX(p1.x);
+        double gy1 = toGridY(p1.y);
+        double dx = toGridX(p2.x) - gx1;
+        double dy = toGridY(p2.y) - gy1;
+        // Clip the segment to the extent of the cells centers
+        double[] range = new double[]{0, 1};
+        if (!clip(-dx, gx1, range) || !clip(dx, columns - 1 - gx1, range) || !clip(-dy, gy1, range)
+                || !clip(dy, rows - 1 - gy1, range)) {
+            return outputPoints;
+        }
+        double tStart = range[0];
+        double tEnd = range[1];
+        if (tStart > 0) {
+            addProfilePoint(outputPoints, p1, p2, tStart, gx1 + tStart * dx, gy1 + tStart * dy);
+        }
+        // Next vertical and horizontal lines crossed by the segment
+        double startX = gx1 + tStart * dx;
+        double startY = gy1 + tStart * dy;
+        double lineX = dx > 0 ? Math.floor(startX) + 1 : Math.ceil(startX) - 1;
+        double lineY = dy > 0 ? Math.floor(startY) + 1 : Math.ceil(startY) - 1;
+        double stepX = dx > 0 ? 1 : -1;
+        double stepY = dy > 0 ? 1 : -1;
+        double tLineX = dx != 0 ? (lineX - gx1) / dx : Double.POSITIVE_INFINITY;
+        double tLineY = dy != 0 ? (lineY - gy1) / dy : Double.POSITIVE_INFINITY;
+        while (true) {
+            double t = Math.min(tLineX, tLineY);
+            if (!(t < tEnd)) {
+                break;
+            }
+            double gx = gx1 + t * dx;
+            double gy = gy1 + t * dy;
+            if (tLineX == t) {
+                gx = lineX;
+                lineX += stepX;
+                tLineX = (lineX - gx1) / dx;
+            }
+            if (tLineY == t) {
+                gy = lineY;
+                lineY += stepY;
+                tLineY = (lineY - gy1) / dy;
+            }
+            addProfilePoint(outputPoints, p1, p2, t, gx, gy);
+        }
+        if (tEnd < 1) {
+            addProfilePoint(outputPoints, p1, p2, tEnd, gx1 + tEnd * dx, gy1 + tEnd * dy);
+        }
+        return outputPoints;
+    }
+
+    private void addProfilePoint(List<Coordinate> outputPoints, Coordinate p1, Coordinate p2, double t,
+                                 double gx, double gy) {
+        double z = interpolate(Math.min(Math.max(0, gx), columns - 1), Math.min(Math.max(0, gy), rows - 1));
+        if (!Double.isNaN(z)) {
+            outputPoints.add(new Coordinate(p1.x + t * (p2.x - p1.x), p1.y + t * (p2.y - p1.y), z));
+        }
+    }
+
+    /**
+     * Liang-Barsky clipping against one boundary
+     * @param p Negative of the direction component toward the boundary
+     * @param q Distance to the boundary
+     * @param range Parametric range [tStart, tEnd] updated by this boundary
+     * @return False if the segment is outside
+     */
+    private static boolean clip(double p, double q, double[] range) {
+        if (p == 0) {
+            return q >= 0;
+        }
+        double t = q / p;
+        if (p < 0) {
+            if (t > range[1]) {
+                return false;
+            }
+            range[0] = Math.max(range[0], t);
+        } else {
+            if (t < range[0]) {
+                return false;
+            }
+            range[1] = Math.min(range[1], t);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(segments, null);
+        channel.close();
+    }
+
+    /**
+     * Split the ASCII grid content into words separated by white spaces
+     */
+    private static final class AscTokenizer {
+        private final InputStream inputStream;
+        private final StringBuilder word = new StringBuilder(32);
+
+        AscTokenizer(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        /**
+         * @return Next word, null at the end of the stream
+         */
+        String next() throws IOException {
+            word.setLength(0);
+            int c = inputStream.read();
+            while (c != -1 && Character.isWhitespace(c)) {
+                c = inputStream.read();
+            }
+            while (c != -1 && !Character.isWhitespace(c)) {
+                word.append((char) c);
+                c = inputStream.read();
+            }
+            return word.length() == 0 ? null : word.toString();
+        }
+    }
+}
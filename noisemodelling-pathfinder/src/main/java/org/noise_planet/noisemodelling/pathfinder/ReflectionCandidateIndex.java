@@ -0,0 +1,320 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.utils.LruCache;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reflection candidates shared by all the receivers of a cell.
+ * The walls are grouped by square tiles of receivers. For each tile the walls in range of any receiver of the tile
+ * are fetched once, and for each wall the list of the walls that can be the next reflection (the walls that have at
+ * least one point in front of a side of the wall) is evaluated once. The image receivers of each receiver are then
+ * generated from this shared structure by {@link MirrorReceiverResultIndex}.
+ * The tiles are kept in a least recently used cache bounded by their estimated memory size.
+ * @author Nicolas Fortin
+ */
+public class ReflectionCandidateIndex {
+    /** Tolerance in meter of the side tests, the walls near the limit are kept */
+    static final double SIDE_EPSILON = 1e-6;
+    private final ProfileBuilder profileBuilder;
+    private final double maximumPropagationDistance;
+    private final boolean computeWallPairs;
+    private final double tileSize;
+    private long maximumWallPairs = 4000000;
+    private final LruCache<Long, WallTile> tiles = new LruCache<>(128L << 20, WallTile::getMemorySize, 4);
+    private final AtomicLong tileHitCount = new AtomicLong();
+    private final AtomicLong tileMissCount = new AtomicLong();
+
+    /**
+     * @param profileBuilder Walls and buildings of the cell
+     * @param maximumPropagationDistance Maximum distance between the receiver and the walls
+     * @param reflectionOrder Maximum reflection order, the wall pairs are evaluated only for orders greater than 1
+     */
+    public ReflectionCandidateIndex(ProfileBuilder profileBuilder, double maximumPropagationDistance,
+                                    int reflectionOrder) {
+        this.profileBuilder = profileBuilder;
+        this.maximumPropagationDistance = maximumPropagationDistance;
+        this.computeWallPairs = reflectionOrder > 1;
+        this.tileSize = Math.max(1.0, maximumPropagationDistance / 4);
+    }
+
+    /**
+     * @param tileX Tile column
+     * @param tileY Tile row
+     * @return Key of the tile
+     */
+    static long getTileKey(long tileX, long tileY) {
+        return (tileX << 32) ^ (tileY & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param receiver Receiver coordinate
+     * @param tileSize Size in meter of the side of a tile
+     * @return Key of the tile containing the receiver
+     */
+    static long getTileKey(Coordinate receiver, double tileSize) {
+        return getTileKey((long) Math.floor(receiver.x / tileSize), (long) Math.floor(receiver.y / tileSize));
+    }
+
+    /**
+     * @return Estimated memory size in bytes of the tiles kept in memory
+     */
+    public long getMaximumCachedTilesMemory() {
+        return tiles.getMaximumWeight();
+    }
+
+    /**
+     * @param maximumCachedTilesMemory Estimated memory size in bytes of the tiles kept in memory, the least recently
+     *                                 used tiles are removed above this size. 0 to disable the cache
+     */
+    public void setMaximumCachedTilesMemory(long maximumCachedTilesMemory) {
+        tiles.setMaximumWeight(maximumCachedTilesMemory);
+    }
+
+    /**
+     * @return Number of calls to {@link #getTile(Coordinate)} that found the tile in memory
+     */
+    public long getTileHitCount() {
+        return tileHitCount.get();
+    }
+
+    /**
+     * @return Number of calls to {@link #getTile(Coordinate)} that had to create the tile
+     */
+    public long getTileMissCount() {
+        return tileMissCount.get();
+    }
+
+    /**
+     * @return Above this number of wall pairs in a tile, the next reflection walls are evaluated for each receiver
+     */
+    public long getMaximumWallPairs() {
+        return maximumWallPairs;
+    }
+
+    /**
+     * @param maximumWallPairs Above this number of wall pairs in a tile, the next reflection walls are evaluated for
+     *                         each receiver instead of being stored in the tile
+     */
+    public void setMaximumWallPairs(long maximumWallPairs) {
+        this.maximumWallPairs = maximumWallPairs;
+    }
+
+    /**
+     * @return Size in meter of the side of a tile
+     */
+    public double getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Fetch or create the tile containing this receiver
+     * @param receiver Receiver coordinate
+     * @return Walls in range of all the receivers of the tile
+     */
+    public WallTile getTile(Coordinate receiver) {
+        long tileX = (long) Math.floor(receiver.x / tileSize);
+        long tileY = (long) Math.floor(receiver.y / tileSize);
+        long tileKey = getTileKey(tileX, tileY);
+        WallTile tile = tiles.get(tileKey);
+        if(tile != null) {
+            tileHitCount.incrementAndGet();
+            return tile;
+        }
+        tileMissCount.incrementAndGet();
+        // Another thread may have created the same tile, the first one is kept
+        return tiles.computeIfAbsent(tileKey, key -> {
+            Envelope tileEnvelope = new Envelope(tileX * tileSize, (tileX + 1) * tileSize, tileY * tileSize,
+                    (tileY + 1) * tileSize);
+            tileEnvelope.expandBy(maximumPropagationDistance);
+            List<ProfileBuilder.Wall> walls = profileBuilder.getWallsIn(tileEnvelope);
+            return new WallTile(walls, computeWallPairs &&
+                    (long) walls.size() * walls.size() <= maximumWallPairs);
+        });
+    }
+
+    /**
+     * Walls with their line coefficients stored in primitive arrays, and optionally the next reflection candidates
+     * of each side of each wall.
+     */
+    public static class WallTile {
+        final ProfileBuilder.Wall[] walls;
+        private final double[] x0;
+        private final double[] y0;
+        private final double[] dx;
+        private final double[] dy;
+        private final double[] length;
+        /** For each wall and side (left then right), the index of the walls having a point on this side */
+        private final int[][] frontWalls;
+        private final long memorySize;
+
+        /**
+         * @param walls Walls of the tile
+         * @param computeWallPairs Evaluate and store the next reflection candidates of each wall
+         */
+        public WallTile(List<ProfileBuilder.Wall> walls, boolean computeWallPairs) {
+            int wallCount = walls.size();
+            this.walls = walls.toArray(new ProfileBuilder.Wall[0]);
+            x0 = new double[wallCount];
+            y0 = new double[wallCount];
+            dx = new double[wallCount];
+            dy = new double[wallCount];
+            length = new double[wallCount];
+            for(int i = 0; i < wallCount; i++) {
+                ProfileBuilder.Wall wall = this.walls[i];
+                x0[i] = wall.p0.x;
+                y0[i] = wall.p0.y;
+                dx[i] = wall.p1.x - wall.p0.x;
+                dy[i] = wall.p1.y - wall.p0.y;
+                length[i] = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+            }
+            if(computeWallPairs) {
+                frontWalls = new int[wallCount * 2][];
+                int[] buffer = new int[wallCount];
+                for(int i = 0; i < wallCount; i++) {
+                    for(int side = 1; side >= -1; side -= 2) {
+                        int count = 0;
+                        for(int j = 0; j < wallCount; j++) {
+                            if(j != i && hasPointOnSide(j, i, side)) {
+                                buffer[count++] = j;
+                            }
+                        }
+                        int[] candidates = new int[count];
+                        System.arraycopy(buffer, 0, candidates, 0, count);
+                        frontWalls[sideIndex(i, side)] = candidates;
+                    }
+                }
+            } else {
+                frontWalls = null;
+            }
+            // wall reference and 5 doubles by wall, arrays headers
+            long size = 7 * 16 + (long) wallCount * (Long.BYTES + 5 * Double.BYTES);
+            if(frontWalls != null) {
+                size += 16 + (long) frontWalls.length * Long.BYTES;
+                for(int[] candidates : frontWalls) {
+                    size += 16 + (long) candidates.length * Integer.BYTES;
+                }
+            }
+            memorySize = size;
+        }
+
+        /**
+         * @return Estimated memory size in bytes of this tile, the walls themselves are not included
+         */
+        public long getMemorySize() {
+            return memorySize;
+        }
+
+        private static int sideIndex(int wallIndex, int side) {
+            return wallIndex * 2 + (side > 0 ? 0 : 1);
+        }
+
+        /**
+         * @return Number of walls in this tile
+         */
+        public int size() {
+            return walls.length;
+        }
+
+        /**
+         * @param wallIndex Wall index in this tile
+         * @return The wall
+         */
+        public ProfileBuilder.Wall getWall(int wallIndex) {
+            return walls[wallIndex];
+        }
+
+        /**
+         * Signed distance between the point and the line of the wall
+         */
+        private double signedDistance(int wallIndex, double x, double y) {
+            return (dx[wallIndex] * (y - y0[wallIndex]) - dy[wallIndex] * (x - x0[wallIndex])) / length[wallIndex];
+        }
+
+        /**
+         * @param wallIndex Wall index in this tile
+         * @param point Point location
+         * @return 1 if the point is on the left side of the wall line, -1 on the right side, 0 if it is on the line
+         * (or the wall is degenerated)
+         */
+        public int getSide(int wallIndex, Coordinate point) {
+            if(!(length[wallIndex] > 0)) {
+                return 0;
+            }
+            double distance = signedDistance(wallIndex, point.x, point.y);
+            if(distance > SIDE_EPSILON) {
+                return 1;
+            } else if(distance < -SIDE_EPSILON) {
+                return -1;
+            } else {
+                return 0;
+            }
+        }
+
+        /**
+         * @param wallIndex Wall index in this tile
+         * @param otherWallIndex Other wall index in this tile
+         * @param side 1 for the left side of otherWallIndex, -1 for the right side
+         * @return True if the wall have at least one point on the provided side of the line of otherWall
+         * (points on the line included)
+         */
+        public boolean hasPointOnSide(int wallIndex, int otherWallIndex, int side) {
+            if(side == 0 || !(length[otherWallIndex] > 0)) {
+                return true;
+            }
+            double d0 = side * signedDistance(otherWallIndex, x0[wallIndex], y0[wallIndex]);
+            double d1 = side * signedDistance(otherWallIndex, x0[wallIndex] + dx[wallIndex],
+                    y0[wallIndex] + dy[wallIndex]);
+            return Math.max(d0, d1) >= -SIDE_EPSILON;
+        }
+
+        /**
+         * @param wallIndex Wall index in this tile
+         * @param side 1 for the left side of the wall, -1 for the right side
+         * @return The walls index having at least one point on this side of the wall, or null if the wall pairs
+         * have not been evaluated for this tile
+         */
+        public int[] getFrontWalls(int wallIndex, int side) {
+            if(frontWalls == null || side == 0) {
+                return null;
+            }
+            return frontWalls[sideIndex(wallIndex, side)];
+        }
+    }
+}
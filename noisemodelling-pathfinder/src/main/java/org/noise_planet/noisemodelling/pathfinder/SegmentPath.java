@@ -80,8 +80,35 @@ public class SegmentPath {
      */
     public void writeStream( DataOutputStream out ) throws IOException {
         out.writeDouble(gPath);
-        PropagationPath.writeVector(out, meanGdPlane);
-        PropagationPath.writeCoordinate(out, pInit);
+        PropagationPath.writeNullableVector(out, meanGdPlane);
+        PropagationPath.writeNullableCoordinate(out, pInit);
+        PropagationPath.writeNullableCoordinate(out, s);
+        PropagationPath.writeNullableCoordinate(out, r);
+        out.writeDouble(a);
+        out.writeDouble(b);
+        out.writeInt(idPtStart);
+        out.writeInt(idPtFinal);
+        PropagationPath.writeNullableDouble(out, gPathPrime);
+        PropagationPath.writeNullableDouble(out, gw);
+        PropagationPath.writeNullableDouble(out, gm);
+        PropagationPath.writeNullableDouble(out, zsH);
+        PropagationPath.writeNullableDouble(out, zrH);
+        PropagationPath.writeNullableDouble(out, testFormH);
+        PropagationPath.writeNullableCoordinate(out, sMeanPlane);
+        PropagationPath.writeNullableCoordinate(out, rMeanPlane);
+        PropagationPath.writeNullableCoordinate(out, sPrime);
+        PropagationPath.writeNullableCoordinate(out, rPrime);
+        PropagationPath.writeNullableDouble(out, zsF);
+        PropagationPath.writeNullableDouble(out, zrF);
+        PropagationPath.writeNullableDouble(out, testFormF);
+        PropagationPath.writeNullableDouble(out, dPath);
+        PropagationPath.writeNullableDouble(out, d);
+        PropagationPath.writeNullableDouble(out, dc);
+        PropagationPath.writeNullableDouble(out, dp);
+        PropagationPath.writeNullableDouble(out, eLength);
+        PropagationPath.writeNullableDouble(out, delta);
+        out.writeDouble(dPrime);
+        out.writeDouble(deltaPrime);
     }
 
     /**
@@ -93,8 +120,35 @@ public class SegmentPath {
      */
     public void readStream( DataInputStream in ) throws IOException {
         gPath = in.readDouble();
-        meanGdPlane = PropagationPath.readVector(in);
-        pInit = PropagationPath.readCoordinate(in);
+        meanGdPlane = PropagationPath.readNullableVector(in);
+        pInit = PropagationPath.readNullableCoordinate(in);
+        s = PropagationPath.readNullableCoordinate(in);
+        r = PropagationPath.readNullableCoordinate(in);
+        a = in.readDouble();
+        b = in.readDouble();
+        idPtStart = in.readInt();
+        idPtFinal = in.readInt();
+        gPathPrime = PropagationPath.readNullableDouble(in);
+        gw = PropagationPath.readNullableDouble(in);
+        gm = PropagationPath.readNullableDouble(in);
+        zsH = PropagationPath.readNullableDouble(in);
+        zrH = PropagationPath.readNullableDouble(in);
+        testFormH = PropagationPath.readNullableDouble(in);
+        sMeanPlane = PropagationPath.readNullableCoordinate(in);
+        rMeanPlane = PropagationPath.readNullableCoordinate(in);
+        sPrime = PropagationPath.readNullableCoordinate(in);
+        rPrime = PropagationPath.readNullableCoordinate(in);
+        zsF = PropagationPath.readNullableDouble(in);
+        zrF = PropagationPath.readNullableDouble(in);
+        testFormF = PropagationPath.readNullableDouble(in);
+        dPath = PropagationPath.readNullableDouble(in);
+        d = PropagationPath.readNullableDouble(in);
+        dc = PropagationPath.readNullableDouble(in);
+        dp = PropagationPath.readNullableDouble(in);
+        eLength = PropagationPath.readNullableDouble(in);
+        delta = PropagationPath.readNullableDouble(in);
+        dPrime = in.readDouble();
+        deltaPrime = in.readDouble();
     }
 
 
@@ -0,0 +1,59 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.List;
+
+/**
+ * Ground elevation used by {@link ProfileBuilder}. The topography is either the triangulation of the topographic
+ * points and lines added to the ProfileBuilder, or an external provider such as {@link RasterTopography}.
+ * Implementations are queried by multiple threads once the ProfileBuilder feeding is finished.
+ */
+public interface TopographyProvider {
+
+    /**
+     * @param c Coordinate of the point.
+     * @return Ground elevation of the point, NaN if the point is outside of the topography
+     */
+    double getZGround(Coordinate c);
+
+    /**
+     * @param p1 First point of the segment
+     * @param p2 Last point of the segment
+     * @return Ground points where the slope changes along the segment, ordered from p1 to p2
+     */
+    List<Coordinate> getTopographicProfile(Coordinate p1, Coordinate p2);
+}
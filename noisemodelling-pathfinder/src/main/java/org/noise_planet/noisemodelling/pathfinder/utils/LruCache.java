@@ -0,0 +1,312 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded cache that evicts the least recently used entries, so a working set larger than the cache only loses its
+ * oldest entries instead of the whole cache. The bound is a total weight, by default the number of entries.
+ * The cache can be used by multiple threads, the entries are split into segments with their own lock and their
+ * own share of the maximum weight. An entry heavier than the share of its segment is not cached, so the sum of the
+ * entries weight never exceeds the maximum weight.
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class LruCache<K, V> {
+    private final ToLongFunction<V> weigher;
+    private final int concurrencyLevel;
+    private volatile Segment<K, V>[] segments;
+    private volatile long maximumWeight;
+    /** Evictions of the segments replaced by {@link #setMaximumWeight(long)} */
+    private long previousEvictionCount = 0;
+
+    /**
+     * @param maximumSize Maximum number of entries
+     */
+    public LruCache(long maximumSize) {
+        this(maximumSize, value -> 1, 16);
+    }
+
+    /**
+     * @param maximumWeight Maximum sum of the entries weight
+     * @param weigher Weight of an entry, for example its memory size in bytes
+     * @param concurrencyLevel Number of segments, rounded up to a power of two and reduced so that each segment can
+     *                         hold at least a weight of 1. Use a small value when the cache holds a few heavy
+     *                         entries
+     */
+    public LruCache(long maximumWeight, ToLongFunction<V> weigher, int concurrencyLevel) {
+        this.concurrencyLevel = concurrencyLevel <= 1 ? 1 :
+                Integer.highestOneBit(Math.max(1, concurrencyLevel - 1)) << 1;
+        this.weigher = weigher;
+        this.maximumWeight = maximumWeight;
+        segments = createSegments(getSegmentCount(maximumWeight));
+    }
+
+    /**
+     * @return Number of segments so that each segment can hold at least a weight of 1
+     */
+    private int getSegmentCount(long maximumWeight) {
+        if (maximumWeight <= 0) {
+            return 1;
+        }
+        return (int) Math.min(concurrencyLevel, Long.highestOneBit(maximumWeight));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Segment<K, V>[] createSegments(int segmentCount) {
+        Segment<K, V>[] segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>();
+        }
+        return segments;
+    }
+
+    private static <K, V> Segment<K, V> segmentFor(Segment<K, V>[] segments, Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    /**
+     * @param key Key
+     * @return The value, or null if it is not in the cache
+     */
+    public V get(K key) {
+        return segmentFor(segments, key).get(key);
+    }
+
+    /**
+     * Add or replace an entry, then evict the least recently used entries of the segment until the weight bound is
+     * respected. An entry heavier than the share of the segment is not added, and the previous value of the key is
+     * removed.
+     * @param key Key
+     * @param value Value
+     */
+    public void put(K key, V value) {
+        long maximumWeight = this.maximumWeight;
+        if (maximumWeight <= 0) {
+            return;
+        }
+        Segment<K, V>[] segments = this.segments;
+        segmentFor(segments, key).put(key, value, weigher.applyAsLong(value), maximumWeight / segments.length,
+                false);
+    }
+
+    /**
+     * Return the cached value, or compute and add it. The value is computed without holding the lock, so two
+     * threads may compute the same value, the first value added is then kept and returned to both.
+     * @param key Key
+     * @param loader Compute the value of a missing key
+     * @return The cached or computed value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        Segment<K, V>[] segments = this.segments;
+        Segment<K, V> segment = segmentFor(segments, key);
+        V value = segment.get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            long maximumWeight = this.maximumWeight;
+            if (maximumWeight > 0) {
+                V previous = segment.put(key, value, weigher.applyAsLong(value), maximumWeight / segments.length,
+                        true);
+                if (previous != null) {
+                    value = previous;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Change the bound and evict the exceeding entries. When the new bound is lower than the number of segments the
+     * segments are merged. The entries added by other threads while the segments are merged may be lost.
+     * @param maximumWeight Maximum sum of the entries weight, 0 to disable the cache
+     */
+    public synchronized void setMaximumWeight(long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+        if (maximumWeight <= 0) {
+            clear();
+            return;
+        }
+        Segment<K, V>[] current = segments;
+        int segmentCount = getSegmentCount(maximumWeight);
+        long segmentMaximumWeight = maximumWeight / segmentCount;
+        if (segmentCount == current.length) {
+            for (Segment<K, V> segment : current) {
+                segment.evict(segmentMaximumWeight);
+            }
+            return;
+        }
+        Segment<K, V>[] resized = createSegments(segmentCount);
+        for (Segment<K, V> segment : current) {
+            previousEvictionCount += segment.getEvictionCount();
+            // the least recently used entries first, so they are evicted first
+            segment.forEachEntry((key, entry) -> segmentFor(resized, key).put(key, entry.value, entry.weight,
+                    segmentMaximumWeight, false));
+        }
+        segments = resized;
+    }
+
+    /**
+     * @return Number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return Sum of the entries weight
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            weight += segment.getWeight();
+        }
+        return weight;
+    }
+
+    /**
+     * @return Number of entries evicted since the creation of the cache
+     */
+    public synchronized long getEvictionCount() {
+        long evictionCount = previousEvictionCount;
+        for (Segment<K, V> segment : segments) {
+            evictionCount += segment.getEvictionCount();
+        }
+        return evictionCount;
+    }
+
+    /**
+     * Remove all the entries
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Entries in access order, the first entry is the least recently used
+     */
+    private static final class Segment<K, V> {
+        private final LinkedHashMap<K, WeightedValue<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight = 0;
+        private long evictionCount = 0;
+
+        synchronized V get(K key) {
+            WeightedValue<V> entry = entries.get(key);
+            return entry == null ? null : entry.value;
+        }
+
+        /**
+         * @return The value already in the cache if keepExisting is true, null otherwise
+         */
+        synchronized V put(K key, V value, long valueWeight, long maximumWeight, boolean keepExisting) {
+            WeightedValue<V> previous = entries.get(key);
+            if (previous != null) {
+                if (keepExisting) {
+                    return previous.value;
+                }
+                entries.remove(key);
+                weight -= previous.weight;
+            }
+            if (valueWeight > maximumWeight) {
+                return null;
+            }
+            entries.put(key, new WeightedValue<>(value, valueWeight));
+            weight += valueWeight;
+            evict(maximumWeight);
+            return null;
+        }
+
+        /**
+         * Remove the least recently used entries until the weight does not exceed the maximum weight
+         */
+        synchronized void evict(long maximumWeight) {
+            Iterator<Map.Entry<K, WeightedValue<V>>> it = entries.entrySet().iterator();
+            while (weight > maximumWeight && it.hasNext()) {
+                WeightedValue<V> eldest = it.next().getValue();
+                it.remove();
+                weight -= eldest.weight;
+                evictionCount++;
+            }
+        }
+
+        /**
+         * @param consumer Called for each entry, from the least recently used to the most recently used
+         */
+        synchronized void forEachEntry(BiConsumer<K, WeightedValue<V>> consumer) {
+            for (Map.Entry<K, WeightedValue<V>> entry : entries.entrySet()) {
+                consumer.accept(entry.getKey(), entry.getValue());
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized long getWeight() {
+            return weight;
+        }
+
+        synchronized long getEvictionCount() {
+            return evictionCount;
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    private static final class WeightedValue<V> {
+        final V value;
+        final long weight;
+
+        WeightedValue(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -38,10 +38,18 @@ public class PowerUtils {
      * @return
      */
     public static double[] sumArrayWithPonderation(double[] array1, double[] array2, double p) {
-        if (array1.length != array2.length) {
+        return sumArrayWithPonderation(array1, array2, p, new double[array1.length]);
+    }
+
+    /**
+     * Same as {@link #sumArrayWithPonderation(double[], double[], double)} without allocation
+     * @param sum Destination array, can be one of the source arrays
+     * @return sum
+     */
+    public static double[] sumArrayWithPonderation(double[] array1, double[] array2, double p, double[] sum) {
+        if (array1.length != array2.length || array1.length != sum.length) {
             throw new IllegalArgumentException("Not same size array");
         }
-        double[] sum = new double[array1.length];
         for (int i = 0; i < array1.length; i++) {
             sum[i] = wToDba(p * dbaToW(array1[i]) + (1 - p) * dbaToW(array2[i]));
         }
@@ -56,10 +64,18 @@ public class PowerUtils {
      * @return
      */
     public static double[] sumDbArray(double[] array1, double[] array2) {
-        if (array1.length != array2.length) {
+        return sumDbArray(array1, array2, new double[array1.length]);
+    }
+
+    /**
+     * Same as {@link #sumDbArray(double[], double[])} without allocation
+     * @param sum Destination array, can be one of the source arrays
+     * @return sum
+     */
+    public static double[] sumDbArray(double[] array1, double[] array2, double[] sum) {
+        if (array1.length != array2.length || array1.length != sum.length) {
             throw new IllegalArgumentException("Not same size array");
         }
-        double[] sum = new double[array1.length];
         for (int i = 0; i < array1.length; i++) {
             sum[i] = wToDba(dbaToW(array1[i]) + dbaToW(array2[i]));
         }
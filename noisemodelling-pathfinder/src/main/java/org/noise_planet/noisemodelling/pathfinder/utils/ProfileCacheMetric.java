@@ -0,0 +1,79 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder.utils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generate stats about the RTree query cache of the cutting profiles
+ * @see org.noise_planet.noisemodelling.pathfinder.ProfileBuilder#setWallQueryCacheCellSize(double)
+ */
+public class ProfileCacheMetric implements ProfilerThread.Metric {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ProfileCacheMetric() {
+    }
+
+    public void onHit() {
+        hits.increment();
+    }
+
+    public void onMiss() {
+        misses.increment();
+    }
+
+    @Override
+    public void tick(long currentMillis) {
+
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return new String[] {"profile_cache_hits", "profile_cache_misses", "profile_cache_hit_ratio"};
+    }
+
+    @Override
+    public String[] getCurrentValues() {
+        long intervalHits = hits.sumThenReset();
+        long intervalMisses = misses.sumThenReset();
+        long total = intervalHits + intervalMisses;
+        return new String[] {
+                Long.toString(intervalHits),
+                Long.toString(intervalMisses),
+                String.format(Locale.ROOT, "%.2f", total > 0 ? intervalHits / (double) total : 0)
+        };
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * NoiseMap is a scientific computation plugin for OrbisGIS developed in order to
+ * evaluate the noise impact on urban mobility plans. This model is
+ * based on the French standard method NMPB2008. It includes traffic-to-noise
+ * sources evaluation and sound propagation processing.
+ * <p>
+ * This version is developed at French IRSTV Institute and at IFSTTAR
+ * (http://www.ifsttar.fr/) as part of the Eval-PDU project, funded by the
+ * French Agence Nationale de la Recherche (ANR) under contract ANR-08-VILL-0005-01.
+ * <p>
+ * Noisemap is distributed under GPL 3 license. Its reference contact is Judicaël
+ * Picaut <judicael.picaut@ifsttar.fr>. It is maintained by Nicolas Fortin
+ * as part of the "Atelier SIG" team of the IRSTV Institute <http://www.irstv.fr/>.
+ * <p>
+ * Copyright (C) 2011 IFSTTAR
+ * Copyright (C) 2011-2012 IRSTV (FR CNRS 2488)
+ * <p>
+ * Noisemap is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * <p>
+ * Noisemap is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Noisemap. If not, see <http://www.gnu.org/licenses/>.
+ * <p>
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.noise_planet.noisemodelling.pathfinder.utils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generate stats about the source-receiver couples skipped or computed at reduced fidelity
+ * @see org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData#maximumError
+ * @see org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData#reducedFidelityError
+ */
+public class SourcePruningMetric implements ProfilerThread.Metric {
+    private final LongAdder computedCouples = new LongAdder();
+    private final LongAdder reducedFidelityCouples = new LongAdder();
+    private final LongAdder prunedCouples = new LongAdder();
+    private final DoubleAccumulator maximumPruningError = new DoubleAccumulator(Math::max, 0);
+    private final DoubleAccumulator maximumReducedFidelityError = new DoubleAccumulator(Math::max, 0);
+
+    public SourcePruningMetric() {
+    }
+
+    /**
+     * @param computedCouples Number of source-receiver couples computed with all the paths
+     * @param reducedFidelityCouples Number of source-receiver couples computed without reflections and lateral
+     *                               diffraction
+     * @param prunedCouples Number of source-receiver couples skipped
+     * @param pruningError Upper bound in dB of the level of the skipped couples relative to the computed level
+     * @param reducedFidelityError Upper bound in dB of the level of the reduced fidelity couples relative to the
+     *                             computed level
+     */
+    public void onReceiverSources(int computedCouples, int reducedFidelityCouples, int prunedCouples,
+                                  double pruningError, double reducedFidelityError) {
+        this.computedCouples.add(computedCouples);
+        this.reducedFidelityCouples.add(reducedFidelityCouples);
+        this.prunedCouples.add(prunedCouples);
+        maximumPruningError.accumulate(pruningError);
+        maximumReducedFidelityError.accumulate(reducedFidelityError);
+    }
+
+    @Override
+    public void tick(long currentMillis) {
+
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return new String[] {"computed_couples", "reduced_fidelity_couples", "pruned_couples", "pruning_error_max_db",
+                "reduced_fidelity_error_max_db"};
+    }
+
+    @Override
+    public String[] getCurrentValues() {
+        return new String[] {
+                Long.toString(computedCouples.sumThenReset()),
+                Long.toString(reducedFidelityCouples.sumThenReset()),
+                Long.toString(prunedCouples.sumThenReset()),
+                String.format(Locale.ROOT, "%.3f", maximumPruningError.getThenReset()),
+                String.format(Locale.ROOT, "%.3f", maximumReducedFidelityError.getThenReset())
+        };
+    }
+}
@@ -9,16 +9,19 @@ import org.locationtech.jts.io.WKTReader;
 import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.pathfinder.utils.GeoJSONDocument;
 import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument;
+import org.noise_planet.noisemodelling.pathfinder.utils.ProfileCacheMetric;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -405,4 +408,136 @@ public class ProfileBuilderTest {
                 .map(coordinate -> coordinate.z).max(Double::compareTo).get();
         assertEquals(3.05, maxZ, 1e-6);
     }
+
+    private static ProfileBuilder makeCacheTestBuilder(double cacheCellSize) throws ParseException {
+        ProfileBuilder profileBuilder = new ProfileBuilder(3, 3, 3, 20);
+        profileBuilder.setWallQueryCacheCellSize(cacheCellSize);
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                profileBuilder.addBuilding(READER.read(String.format(Locale.ROOT,
+                        "POLYGON((%d %d,%d %d,%d %d,%d %d,%d %d))", i * 12, j * 12, i * 12 + 8, j * 12,
+                        i * 12 + 8, j * 12 + 8, i * 12, j * 12 + 8, i * 12, j * 12)), 5 + i);
+            }
+        }
+        profileBuilder.addGroundEffect(20, 60, -10, 110, 0.7);
+        return profileBuilder.finishFeeding();
+    }
+
+    /**
+     * The RTree query cache must not change the cutting profiles
+     */
+    @Test
+    public void wallQueryCacheTest() throws ParseException {
+        ProfileBuilder noCache = makeCacheTestBuilder(0);
+        ProfileBuilder cached = makeCacheTestBuilder(5);
+        ProfileCacheMetric metric = new ProfileCacheMetric();
+        cached.setProfileCacheMetric(metric);
+        for (int idSource = 0; idSource < 40; idSource++) {
+            Coordinate source = new Coordinate(-5 + idSource * 0.5, -5, 0.05);
+            for (int idReceiver = 0; idReceiver < 20; idReceiver++) {
+                Coordinate receiver = new Coordinate(idReceiver * 5 + 1.5, 101, 4);
+                List<ProfileBuilder.CutPoint> expected = noCache.getProfile(source, receiver, 0).getCutPoints();
+                List<ProfileBuilder.CutPoint> actual = cached.getProfile(source, receiver, 0).getCutPoints();
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getType(), actual.get(i).getType());
+                    assertEquals(expected.get(i).getId(), actual.get(i).getId());
+                    assertTrue(expected.get(i).getCoordinate().equals3D(actual.get(i).getCoordinate()));
+                }
+            }
+        }
+        String[] stats = metric.getCurrentValues();
+        assertTrue(Long.parseLong(stats[0]) > 0);
+        assertTrue(Long.parseLong(stats[1]) > 0);
+    }
+
+    /**
+     * Only the wide angle points on the convex hull of the building are kept
+     */
+    @Test
+    public void wideAngleHullPointsTest() throws ParseException {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(READER.read("POLYGON((0 0,12 0,12 5,5 5,5 20,0 20,0 0))"), 10, -1);
+        profileBuilder.finishFeeding();
+        List<Coordinate> wideAnglePoints = profileBuilder.getPrecomputedWideAnglePoints(1);
+        List<Coordinate> hullPoints = profileBuilder.getPrecomputedWideAngleHullPoints(1);
+        // 6 corners and the closing point
+        assertEquals(7, wideAnglePoints.size());
+        // the inner corner (5 5) is removed
+        assertEquals(5, hullPoints.size());
+        for (Coordinate hullPoint : hullPoints) {
+            assertTrue(wideAnglePoints.contains(hullPoint));
+            assertTrue(hullPoint.distance(new Coordinate(5, 5)) > 1);
+        }
+        Geometry expected = new GeometryFactory().createMultiPointFromCoords(
+                wideAnglePoints.toArray(new Coordinate[0])).convexHull();
+        Geometry actual = new GeometryFactory().createMultiPointFromCoords(
+                hullPoints.toArray(new Coordinate[0])).convexHull();
+        assertTrue(expected.equalsExact(actual));
+    }
+
+    /**
+     * The primitive keys sort of CutProfile must give the same order as the CutPoint comparators
+     */
+    @Test
+    public void cutProfileSortTest() {
+        Random random = new Random(42);
+        Coordinate[][] directions = new Coordinate[][]{
+                {new Coordinate(0, 0), new Coordinate(1, 1)}, {new Coordinate(0, 1), new Coordinate(1, 0)},
+                {new Coordinate(1, 0), new Coordinate(0, 1)}, {new Coordinate(1, 1), new Coordinate(0, 0)}};
+        ProfileBuilder.CutProfile profile = new ProfileBuilder.CutProfile();
+        for (Coordinate[] direction : directions) {
+            for (int size : new int[]{5, 40, 300}) {
+                profile.reset();
+                for (int i = 0; i < size; i++) {
+                    // few distinct values in order to have a lot of equal keys
+                    profile.addTopoCutPt(new Coordinate(random.nextInt(10), random.nextInt(10)), i);
+                }
+                List<ProfileBuilder.CutPoint> expected = new ArrayList<>(profile.getCutPoints());
+                if (direction[0].x <= direction[1].x) {
+                    expected.sort(direction[0].y <= direction[1].y ? ProfileBuilder.CutPoint::compareTox01y01 :
+                            ProfileBuilder.CutPoint::compareTox01y10);
+                } else {
+                    expected.sort(direction[0].y <= direction[1].y ? ProfileBuilder.CutPoint::compareTox10y01 :
+                            ProfileBuilder.CutPoint::compareTox10y10);
+                }
+                profile.sort(direction[0], direction[1]);
+                List<ProfileBuilder.CutPoint> actual = profile.getCutPoints();
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertSame(expected.get(i), actual.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * A reused CutProfile instance must give the same cut points than a new instance
+     */
+    @Test
+    public void reuseCutProfileTest() throws ParseException {
+        ProfileBuilder profileBuilder = makeCacheTestBuilder(5);
+        ProfileBuilder.CutProfile reused = new ProfileBuilder.CutProfile();
+        for (int idSource = 0; idSource < 10; idSource++) {
+            Coordinate source = new Coordinate(-5 + idSource * 2, -5, 0.05);
+            for (int idReceiver = 0; idReceiver < 10; idReceiver++) {
+                // alternate the direction of the profiles
+                Coordinate receiver = new Coordinate(idReceiver * 10 + 1.5, idSource % 2 == 0 ? 101 : -20, 4);
+                ProfileBuilder.CutProfile expected = profileBuilder.getProfile(receiver, source, 0.5);
+                profileBuilder.getProfile(receiver, source, 0.5, reused);
+                assertEquals(expected.intersectBuilding(), reused.intersectBuilding());
+                assertEquals(expected.isFreeField(), reused.isFreeField());
+                assertEquals(expected.getGPath(), reused.getGPath(), 1e-12);
+                assertEquals(expected.getCutPoints().size(), reused.getCutPoints().size());
+                for (int i = 0; i < expected.getCutPoints().size(); i++) {
+                    ProfileBuilder.CutPoint expectedPt = expected.getCutPoints().get(i);
+                    ProfileBuilder.CutPoint actualPt = reused.getCutPoints().get(i);
+                    assertEquals(expectedPt.getType(), actualPt.getType());
+                    assertEquals(expectedPt.getId(), actualPt.getId());
+                    assertEquals(expectedPt.getGroundCoef(), actualPt.getGroundCoef(), 1e-12);
+                    assertTrue(expectedPt.getCoordinate().equals3D(actualPt.getCoordinate()));
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineSegment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RasterTopographyTest {
+    private static final double X_CORNER = 1000;
+    private static final double Y_CORNER = 2000;
+    private static final double CELL_SIZE = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static double plane(double x, double y) {
+        return 10 + 0.01 * (x - X_CORNER) + 0.005 * (y - Y_CORNER);
+    }
+
+    /**
+     * Write an ESRI ASCII grid of a plane, the cell at noDataColumn, noDataRow has no data
+     */
+    private static File writeAsc(File file, int columns, int rows, int noDataColumn, int noDataRow)
+            throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            outputStream = new GZIPOutputStream(outputStream);
+        }
+        try (Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)) {
+            writer.write(String.format(Locale.ROOT, "ncols %d\nnrows %d\nxllcorner %f\nyllcorner %f\n" +
+                    "cellsize %f\nNODATA_value -9999\n", columns, rows, X_CORNER, Y_CORNER, CELL_SIZE));
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    double x = X_CORNER + (column + 0.5) * CELL_SIZE;
+                    double y = Y_CORNER + (rows - row - 0.5) * CELL_SIZE;
+                    if (column == noDataColumn && row == noDataRow) {
+                        writer.write("-9999 ");
+                    } else {
+                        writer.write(String.format(Locale.ROOT, "%.4f ", plane(x, y)));
+                    }
+                }
+                writer.write("\n");
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testGetZGround() throws IOException {
+        // More than one tile in both directions
+        File asc = writeAsc(folder.newFile("dem.asc"), 300, 270, 5, 7);
+        try (RasterTopography topography = RasterTopography.fromAsc(asc, folder.newFile("dem.nmdem"))) {
+            assertEquals(300, topography.getColumnCount());
+            assertEquals(270, topography.getRowCount());
+            assertEquals(Y_CORNER + 270 * CELL_SIZE, topography.getEnvelope().getMaxY(), 0);
+            // Inside the cells centers extent
+            Random random = new Random(42);
+            for (int i = 0; i < 1000; i++) {
+                double x = X_CORNER + 20 + random.nextDouble() * 550;
+                double y = Y_CORNER + 1 + random.nextDouble() * 500;
+                assertEquals(plane(x, y), topography.getZGround(new Coordinate(x, y)), 1e-3);
+            }
+            // No data cell center
+            assertTrue(Double.isNaN(topography.getZGround(new Coordinate(X_CORNER + 5.5 * CELL_SIZE,
+                    Y_CORNER + (270 - 7.5) * CELL_SIZE))));
+            // Outside
+            assertTrue(Double.isNaN(topography.getZGround(new Coordinate(X_CORNER - 1, Y_CORNER + 10))));
+        }
+    }
+
+    @Test
+    public void testCompressedAsc() throws IOException {
+        File asc = writeAsc(folder.newFile("dem.asc.gz"), 20, 30, -1, -1);
+        try (RasterTopography topography = RasterTopography.fromAsc(asc)) {
+            assertEquals(plane(X_CORNER + 13.2, Y_CORNER + 41.7),
+                    topography.getZGround(new Coordinate(X_CORNER + 13.2, Y_CORNER + 41.7)), 1e-3);
+        }
+    }
+
+    @Test
+    public void testTopographicProfile() throws IOException {
+        File asc = writeAsc(folder.newFile("dem.asc"), 300, 270, -1, -1);
+        try (RasterTopography topography = RasterTopography.fromAsc(asc, folder.newFile("dem.nmdem"))) {
+            // Start outside of the grid
+            Coordinate p1 = new Coordinate(X_CORNER - 50, Y_CORNER + 33.3);
+            Coordinate p2 = new Coordinate(X_CORNER + 420.7, Y_CORNER + 260.1);
+            List<Coordinate> profile = topography.getTopographicProfile(p1, p2);
+            assertFalse(profile.isEmpty());
+            // One point per crossed line between cells centers
+            assertEquals(210 + 101, profile.size());
+            double lastDistance = -1;
+            for (Coordinate pt : profile) {
+                assertEquals(plane(pt.x, pt.y), pt.z, 1e-3);
+                // on the segment and ordered from p1
+                assertEquals(0, new LineSegment(p1, p2).distance(pt), 1e-6);
+                double distance = pt.distance(p1);
+                assertTrue(distance > lastDistance);
+                lastDistance = distance;
+            }
+            // Segment outside of the grid
+            assertTrue(topography.getTopographicProfile(new Coordinate(0, 0), new Coordinate(10, 10)).isEmpty());
+        }
+    }
+
+    @Test
+    public void testProfileBuilderRasterAndTin() throws IOException {
+        int columns = 40;
+        int rows = 30;
+        File asc = writeAsc(folder.newFile("dem.asc"), columns, rows, -1, -1);
+        try (RasterTopography topography = RasterTopography.fromAsc(asc, folder.newFile("dem.nmdem"))) {
+            ProfileBuilder rasterBuilder = new ProfileBuilder().setTopography(topography);
+            rasterBuilder.finishFeeding();
+            ProfileBuilder tinBuilder = new ProfileBuilder();
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    double x = X_CORNER + (column + 0.5) * CELL_SIZE;
+                    double y = Y_CORNER + (row + 0.5) * CELL_SIZE;
+                    tinBuilder.addTopographicPoint(new Coordinate(x, y, plane(x, y)));
+                }
+            }
+            tinBuilder.finishFeeding();
+            assertTrue(rasterBuilder.hasDem());
+            Random random = new Random(7);
+            for (int i = 0; i < 200; i++) {
+                Coordinate pt = new Coordinate(X_CORNER + 1 + random.nextDouble() * (columns - 1) * CELL_SIZE,
+                        Y_CORNER + 1 + random.nextDouble() * (rows - 1) * CELL_SIZE);
+                assertEquals(tinBuilder.getZGround(pt), rasterBuilder.getZGround(pt), 1e-3);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSetTopographyAfterFinishFeeding() throws IOException {
+        File asc = writeAsc(folder.newFile("dem.asc"), 4, 4, -1, -1);
+        try (RasterTopography topography = RasterTopography.fromAsc(asc, folder.newFile("dem.nmdem"))) {
+            ProfileBuilder profileBuilder = new ProfileBuilder().finishFeeding();
+            profileBuilder.setTopography(topography);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compare the contiguous receivers ranges with the balanced receivers dispatching of ComputeCnossosRays
+ */
+public class ReceiverSchedulingTest {
+    private Logger logger = LoggerFactory.getLogger(ReceiverSchedulingTest.class);
+
+    /**
+     * Scene with a dense block of buildings in the first rows of receivers and an open field elsewhere
+     */
+    private static CnossosPropagationData makeUnbalancedScene() {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        for (int i = 0; i < 12; i++) {
+            for (int j = 0; j < 4; j++) {
+                double x = 10 + i * 25;
+                double y = 10 + j * 25;
+                profileBuilder.addBuilding(new Coordinate[]{
+                        new Coordinate(x, y, 12),
+                        new Coordinate(x + 15, y, 12),
+                        new Coordinate(x + 15, y + 15, 12),
+                        new Coordinate(x, y + 15, 12)});
+            }
+        }
+        profileBuilder.finishFeeding();
+        PropagationDataBuilder builder = new PropagationDataBuilder(profileBuilder);
+        for (int i = 0; i < 6; i++) {
+            builder.addSource(5 + i * 50, 5, 0.05);
+        }
+        // Receivers are created row by row, the first rows are in the dense block
+        for (int j = 0; j < 16; j++) {
+            for (int i = 0; i < 16; i++) {
+                builder.addReceiver(7 + i * 20, 7 + j * 25, 4);
+            }
+        }
+        CnossosPropagationData data = builder.hEdgeDiff(true).vEdgeDiff(true).setGs(0.5).build();
+        data.maxSrcDist = 400;
+        data.setReflexionOrder(1);
+        return data;
+    }
+
+    @Test
+    public void testSortReceiversByCost() {
+        CnossosPropagationData data = makeUnbalancedScene();
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        int[] order = computeRays.sortReceiversByCost();
+        double[] cost = computeRays.estimateReceiversCost();
+        assertEquals(data.receivers.size(), order.length);
+        // Each receiver is present only once
+        boolean[] found = new boolean[order.length];
+        for (int idReceiver : order) {
+            assertFalse(found[idReceiver]);
+            found[idReceiver] = true;
+        }
+        // The most expensive receivers first
+        for (int i = 1; i < order.length; i++) {
+            assertTrue(cost[order[i - 1]] >= cost[order[i]]);
+        }
+        // The dense block of buildings is more expensive than the open field
+        assertTrue(cost[order[0]] > cost[order[order.length - 1]]);
+    }
+
+    /**
+     * The receivers of a reflection tile are dispatched together, so a tile is created only once even when the cache
+     * keeps only the last used tiles
+     */
+    @Test
+    public void testTileHitRate() {
+        CnossosPropagationData data = makeUnbalancedScene();
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        ReflectionCandidateIndex candidateIndex = new ReflectionCandidateIndex(data.profileBuilder,
+                data.maxSrcDist, data.reflexionOrder);
+        long maximumTileMemory = 0;
+        for (Coordinate receiver : data.receivers) {
+            maximumTileMemory = Math.max(maximumTileMemory, candidateIndex.getTile(receiver).getMemorySize());
+        }
+        // A tile is only computed once if the receivers of a tile are consecutive, even if each of the 4 segments of
+        // the cache can only hold about one tile
+        candidateIndex = new ReflectionCandidateIndex(data.profileBuilder, data.maxSrcDist, data.reflexionOrder);
+        candidateIndex.setMaximumCachedTilesMemory(4 * maximumTileMemory);
+        Set<Long> tiles = new HashSet<>();
+        for (int idReceiver : computeRays.sortReceiversByCost()) {
+            Coordinate receiver = data.receivers.get(idReceiver);
+            candidateIndex.getTile(receiver);
+            tiles.add(ReflectionCandidateIndex.getTileKey(receiver, candidateIndex.getTileSize()));
+        }
+        assertTrue(tiles.size() > 1);
+        assertEquals(tiles.size(), candidateIndex.getTileMissCount());
+        assertEquals(data.receivers.size() - tiles.size(), candidateIndex.getTileHitCount());
+
+        // Shared by the computation threads, the default cache keeps all the tiles of this scene
+        final int threadCount = 4;
+        computeRays.setThreadCount(threadCount);
+        computeRays.run(new TimedRaysOut());
+        ReflectionCandidateIndex sharedIndex = computeRays.getReflectionCandidateIndex();
+        long hits = sharedIndex.getTileHitCount();
+        long misses = sharedIndex.getTileMissCount();
+        logger.info(String.format(Locale.ROOT, "Reflection tiles hit rate %.1f %%", 100.0 * hits / (hits + misses)));
+        assertEquals(data.receivers.size(), hits + misses);
+        assertTrue(misses <= (long) tiles.size() * threadCount);
+    }
+
+    /**
+     * Log the time between the end of the first thread and the end of the last thread of the cell, and check that
+     * the balanced dispatching gives the same rays as the contiguous ranges
+     */
+    @Test
+    public void testTailLatency() {
+        final int threadCount = 4;
+        Map<String, double[]> expectedRays = null;
+        for (boolean balanceReceivers : new boolean[]{false, true}) {
+            CnossosPropagationData data = makeUnbalancedScene();
+            ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+            computeRays.setThreadCount(threadCount);
+            computeRays.setBalanceReceivers(balanceReceivers);
+            TimedRaysOut timedRaysOut = new TimedRaysOut();
+            long start = System.nanoTime();
+            computeRays.run(timedRaysOut);
+            long end = System.nanoTime();
+            long firstThreadEnd = Long.MAX_VALUE;
+            long lastThreadEnd = 0;
+            for (TimedRaysOut.ThreadOut threadOut : timedRaysOut.threadOuts) {
+                firstThreadEnd = Math.min(firstThreadEnd, threadOut.lastReceiverTime);
+                lastThreadEnd = Math.max(lastThreadEnd, threadOut.lastReceiverTime);
+            }
+            logger.info(String.format(Locale.ROOT, "Balanced receivers %b: cell computed in %d ms, tail %d ms",
+                    balanceReceivers, (end - start) / 1000000, (lastThreadEnd - firstThreadEnd) / 1000000));
+            assertEquals(data.receivers.size(), timedRaysOut.receivers.size());
+            if (expectedRays == null) {
+                expectedRays = timedRaysOut.rays;
+                assertFalse(expectedRays.isEmpty());
+            } else {
+                assertEquals(expectedRays.keySet(), timedRaysOut.rays.keySet());
+                for (Map.Entry<String, double[]> entry : expectedRays.entrySet()) {
+                    assertArrayEquals(entry.getKey(), entry.getValue(), timedRaysOut.rays.get(entry.getKey()),
+                            1e-6);
+                }
+            }
+        }
+    }
+
+    /**
+     * Keep the time of the last receiver computed by each thread, and a summary of the rays of each receiver and
+     * source: the number of paths, the number of points and the sum of the direct distances
+     */
+    private static class TimedRaysOut implements IComputeRaysOut {
+        final ConcurrentLinkedDeque<ThreadOut> threadOuts = new ConcurrentLinkedDeque<>();
+        final Set<Long> receivers = ConcurrentHashMap.newKeySet();
+        final Map<String, double[]> rays = new ConcurrentHashMap<>();
+
+        @Override
+        public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                            List<PropagationPath> propagationPath) {
+            double[] summary = new double[3];
+            for (PropagationPath path : propagationPath) {
+                summary[0] += 1;
+                summary[1] += path.getPointList().size();
+                if (path.getSRSegment() != null && path.getSRSegment().d != null) {
+                    summary[2] += path.getSRSegment().d;
+                }
+            }
+            rays.merge(receiverId + ":" + sourceId, summary, (a, b) -> new double[]{a[0] + b[0], a[1] + b[1],
+                    a[2] + b[2]});
+            return new double[0];
+        }
+
+        @Override
+        public void finalizeReceiver(long receiverId) {
+            receivers.add(receiverId);
+        }
+
+        @Override
+        public IComputeRaysOut subProcess() {
+            ThreadOut threadOut = new ThreadOut(this);
+            threadOuts.add(threadOut);
+            return threadOut;
+        }
+
+        private static class ThreadOut implements IComputeRaysOut {
+            final TimedRaysOut parent;
+            long lastReceiverTime = 0;
+
+            ThreadOut(TimedRaysOut parent) {
+                this.parent = parent;
+            }
+
+            @Override
+            public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                                List<PropagationPath> propagationPath) {
+                return parent.addPropagationPaths(sourceId, sourceLi, receiverId, propagationPath);
+            }
+
+            @Override
+            public void finalizeReceiver(long receiverId) {
+                parent.finalizeReceiver(receiverId);
+                lastReceiverTime = System.nanoTime();
+            }
+
+            @Override
+            public IComputeRaysOut subProcess() {
+                return parent.subProcess();
+            }
+        }
+    }
+}
@@ -18,10 +18,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays.splitLineStringIntoPoints;
 
 
@@ -156,6 +160,91 @@ public class TestComputeCnossosRays {
         assertEquals(7, pts.size());
     }
 
+    /**
+     * The line source subdivisions shared by the receivers must give the same point sources as
+     * splitLineStringIntoPoints
+     */
+    @Test
+    public void TestLineSourceSubdivisionLevels() throws ParseException {
+        LineString source = (LineString) new WKTReader().read("LINESTRING (0 0 0.05, 60 10 0.05, 100 0 0.05, 130 50 0.05)");
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(new Coordinate[]{new Coordinate(500, 500, 5), new Coordinate(510, 500, 5),
+                new Coordinate(510, 510, 5), new Coordinate(500, 510, 5)});
+        profileBuilder.finishFeeding();
+        Coordinate[] receivers = new Coordinate[]{new Coordinate(50, 3, 4), new Coordinate(50, 40, 4),
+                new Coordinate(50, 300, 4), new Coordinate(-20, 20, 4), new Coordinate(50, 40, 4)};
+        PropagationDataBuilder builder = new PropagationDataBuilder(profileBuilder).addSource(source);
+        for (Coordinate receiver : receivers) {
+            builder.addReceiver(receiver.x, receiver.y, receiver.z);
+        }
+        CnossosPropagationData data = builder.build();
+        data.maxSrcDist = 1000;
+        final int[] pathCount = new int[receivers.length];
+        final double[] li = new double[receivers.length];
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(1);
+        computeRays.run(new IComputeRaysOut() {
+            @Override
+            public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                                List<PropagationPath> propagationPath) {
+                pathCount[(int) receiverId] += propagationPath.size();
+                li[(int) receiverId] = sourceLi;
+                return new double[0];
+            }
+
+            @Override
+            public void finalizeReceiver(long receiverId) {
+            }
+
+            @Override
+            public IComputeRaysOut subProcess() {
+                return this;
+            }
+        });
+        for (int idReceiver = 0; idReceiver < receivers.length; idReceiver++) {
+            Coordinate receiver = receivers[idReceiver];
+            Coordinate nearestPoint = JTSUtility.getNearestPoint(receiver, source);
+            List<Coordinate> pts = new ArrayList<>();
+            double expectedLi = splitLineStringIntoPoints(source,
+                    Math.max(1, receiver.distance3D(nearestPoint) / 2.0), pts);
+            assertEquals(pts.size(), pathCount[idReceiver]);
+            assertEquals(expectedLi, li[idReceiver], 0);
+        }
+    }
+
+    /**
+     * The subdivisions of the line sources kept for the receivers at all distances must stay bounded
+     */
+    @Test
+    public void TestLineSourceSubdivisionMemory() throws ParseException {
+        // two lines of 8 km, the subdivisions of all the receiver distances exceed the bound
+        Geometry source = new WKTReader().read("MULTILINESTRING ((0 0 0.05, 6000 0 0.05, 6000 2000 0.05)," +
+                " (0 100 0.05, 8000 100 0.05))");
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(new Coordinate[]{new Coordinate(500, 500, 5), new Coordinate(510, 500, 5),
+                new Coordinate(510, 510, 5), new Coordinate(500, 510, 5)});
+        profileBuilder.finishFeeding();
+        CnossosPropagationData data = new PropagationDataBuilder(profileBuilder).addSource(source).build();
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        ComputeCnossosRays.LineSourceSubdivision[] lines = computeRays.getLineSourceSubdivisions(0, source);
+        assertEquals(2, lines.length);
+        Set<Integer> segmentCounts = new HashSet<>();
+        // receivers from 2 m to 10 km of the lines
+        for (double segmentSizeConstraint = 1; segmentSizeConstraint < 5000; segmentSizeConstraint += 0.25) {
+            for (ComputeCnossosRays.LineSourceSubdivision line : lines) {
+                assertNotNull(line.getLevel(segmentSizeConstraint));
+            }
+            segmentCounts.add((int) Math.ceil(8000 / segmentSizeConstraint));
+            Assert.assertTrue(computeRays.getCachedLinePointCount() <=
+                    ComputeCnossosRays.DEFAULT_MAXIMUM_CACHED_LINE_POINTS);
+        }
+        Assert.assertTrue(segmentCounts.size() > 500);
+        Assert.assertTrue(computeRays.getCachedLineEvictionCount() > 0);
+        // The subdivisions are shared by the receivers and the last used subdivision is kept
+        assertSame(lines[1].getLevel(4999), lines[1].getLevel(4999));
+        assertSame(lines, computeRays.getLineSourceSubdivisions(0, source));
+    }
+
     /**
      * Test vertical edge diffraction ray computation
      *
@@ -181,6 +270,51 @@ public class TestComputeCnossosRays {
         assertEquals(3, propa.getPointList().size());
     }
 
+    /**
+     * The propagation paths computed with the profiles reused by a thread must keep their own cut points
+     */
+    @Test
+    public void TestDirectPathReusedProfiles() throws ParseException {
+        WKTReader wktReader = new WKTReader();
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(wktReader.read("POLYGON ((316759.81 6706397.41, 316759.81 6706403.99, " +
+                "316778.89 6706404.49, 316777.49 6706400.81, 316765.59 6706397.51, 316759.81 6706397.41))"), 16.68);
+        profileBuilder.addBuilding(wktReader.read("POLYGON ((316755.91 6706412.41, 316756.31 6706419.69, " +
+                "316765.79 6706419.29, 316765.69 6706412.21, 316762.19 6706410.11, 316758.81 6706410.31, " +
+                "316755.91 6706412.41))"), 16.73);
+        profileBuilder.finishFeeding();
+        CnossosPropagationData data = new CnossosPropagationData(profileBuilder);
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        Coordinate source = new Coordinate(316876.05, 6706318.79, 22.09);
+        List<Coordinate> receivers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            receivers.add(new Coordinate(316747.1 + i * 2, 6706422.95 - i, 4));
+        }
+        ProfileBuilder.CutProfile directProfile = new ProfileBuilder.CutProfile();
+        ProfileBuilder.CutProfile segmentProfile = new ProfileBuilder.CutProfile();
+        List<List<PropagationPath>> reusedPaths = new ArrayList<>();
+        for (Coordinate receiver : receivers) {
+            reusedPaths.add(computeRays.directPath(source, -1, null, receiver, -1, true, true, false,
+                    directProfile, segmentProfile));
+        }
+        for (int idReceiver = 0; idReceiver < receivers.size(); idReceiver++) {
+            List<PropagationPath> expectedPaths = computeRays.directPath(source, -1, null,
+                    receivers.get(idReceiver), -1, true, true, false);
+            List<PropagationPath> actualPaths = reusedPaths.get(idReceiver);
+            Assert.assertFalse(actualPaths.isEmpty());
+            assertEquals(expectedPaths.size(), actualPaths.size());
+            for (int idPath = 0; idPath < expectedPaths.size(); idPath++) {
+                List<ProfileBuilder.CutPoint> expected = expectedPaths.get(idPath).getCutPoints();
+                List<ProfileBuilder.CutPoint> actual = actualPaths.get(idPath).getCutPoints();
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getType(), actual.get(i).getType());
+                    Assert.assertTrue(expected.get(i).getCoordinate().equals3D(actual.get(i).getCoordinate()));
+                }
+            }
+        }
+    }
+
     /**
      * Regression test for hull points in intersection with buildings
      */
@@ -2055,4 +2189,52 @@ public class TestComputeCnossosRays {
         Assert.assertTrue(ray.isEmpty());
 
     }
-}
\ No newline at end of file
+
+    private static ProfileBuilder makeSideHullTestBuilder(int sideHullCacheMaximumSize) throws ParseException {
+        WKTReader wktReader = new WKTReader();
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.setSideHullCacheMaximumSize(sideHullCacheMaximumSize);
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 3; j++) {
+                // L shaped buildings, the inner corner is not a vertex of the building convex hull
+                double x = 20 + i * 25;
+                double y = j * 30;
+                profileBuilder.addBuilding(wktReader.read(String.format(Locale.ROOT,
+                        "POLYGON((%f %f,%f %f,%f %f,%f %f,%f %f,%f %f,%f %f))", x, y, x + 12, y, x + 12, y + 5,
+                        x + 5, y + 5, x + 5, y + 20, x, y + 20, x, y)), 6 + i * 3 + j, -1);
+            }
+        }
+        profileBuilder.addWall(new Coordinate[]{new Coordinate(60, -20, 4), new Coordinate(75, -25, 4)}, 99);
+        return profileBuilder.finishFeeding();
+    }
+
+    /**
+     * The cache of the buildings intersected by the convex hull segments must not change the side paths
+     */
+    @Test
+    public void testSideHullCache() throws ParseException {
+        ProfileBuilder noCache = makeSideHullTestBuilder(0);
+        ProfileBuilder cached = makeSideHullTestBuilder(50);
+        ComputeCnossosRays noCacheRays = new ComputeCnossosRays(new CnossosPropagationData(noCache));
+        ComputeCnossosRays cachedRays = new ComputeCnossosRays(new CnossosPropagationData(cached));
+        int sidePathCount = 0;
+        for (int idSource = 0; idSource < 4; idSource++) {
+            Coordinate source = new Coordinate(0, 10 + idSource * 15, 0.05 + idSource);
+            for (int idReceiver = 0; idReceiver < 20; idReceiver++) {
+                Coordinate receiver = new Coordinate(130, -15 + idReceiver * 5, 1.5 + idReceiver % 3 * 4);
+                for (boolean left : new boolean[]{true, false}) {
+                    List<Coordinate> expected = noCacheRays.computeSideHull(left, receiver, source, noCache);
+                    List<Coordinate> actual = cachedRays.computeSideHull(left, receiver, source, cached);
+                    assertEquals(expected.size(), actual.size());
+                    for (int i = 0; i < expected.size(); i++) {
+                        Assert.assertTrue(expected.get(i).equals3D(actual.get(i)));
+                    }
+                    if (!expected.isEmpty()) {
+                        sidePathCount++;
+                    }
+                }
+            }
+        }
+        Assert.assertTrue(sidePathCount > 0);
+    }
+}
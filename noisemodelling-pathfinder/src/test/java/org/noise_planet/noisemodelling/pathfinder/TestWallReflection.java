@@ -84,6 +84,74 @@ public class TestWallReflection {
         assertTrue(polygon.intersects(factory.createPoint(new Coordinate(100, 145, 0))));
     }
 
+    private static String chainKey(MirrorReceiverResult result) {
+        StringBuilder sb = new StringBuilder();
+        MirrorReceiverResult cursor = result;
+        while (cursor != null) {
+            sb.append(cursor.getWall().getProcessedWallIndex()).append(" ");
+            cursor = cursor.getParentMirror();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The pruning of the image receivers must not remove any reflection path
+     */
+    @Test
+    public void testReflectionCandidateIndex() {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                double x = i * 30;
+                double y = j * 30;
+                // U shaped buildings in order to have facing walls
+                profileBuilder.addBuilding(new Coordinate[]{new Coordinate(x, y, 10 + i),
+                        new Coordinate(x + 20, y, 10 + i), new Coordinate(x + 20, y + 20, 10 + i),
+                        new Coordinate(x + 14, y + 20, 10 + i), new Coordinate(x + 14, y + 6, 10 + i),
+                        new Coordinate(x + 6, y + 6, 10 + i), new Coordinate(x + 6, y + 20, 10 + i),
+                        new Coordinate(x, y + 20, 10 + i)});
+            }
+        }
+        profileBuilder.finishFeeding();
+        double maxPropagationDistance = 80;
+        double maxPropagationDistanceFromWall = 50;
+        int reflectionOrder = 2;
+        ReflectionCandidateIndex candidateIndex = new ReflectionCandidateIndex(profileBuilder,
+                maxPropagationDistance, reflectionOrder);
+        int legacyImages = 0;
+        int prunedImages = 0;
+        int reflections = 0;
+        for (int idReceiver = 0; idReceiver < 12; idReceiver++) {
+            Coordinate receiver = new Coordinate(10 + idReceiver * 7.3, 13 + (idReceiver % 4) * 30, 4);
+            Envelope receiverPropagationEnvelope = new Envelope(receiver);
+            receiverPropagationEnvelope.expandBy(maxPropagationDistance);
+            MirrorReceiverResultIndex legacy = new MirrorReceiverResultIndex(
+                    profileBuilder.getWallsIn(receiverPropagationEnvelope), receiver, reflectionOrder,
+                    maxPropagationDistance, maxPropagationDistanceFromWall);
+            MirrorReceiverResultIndex pruned = new MirrorReceiverResultIndex(candidateIndex, receiver,
+                    reflectionOrder, maxPropagationDistance, maxPropagationDistanceFromWall);
+            legacyImages += legacy.numberOfImageReceivers;
+            prunedImages += pruned.numberOfImageReceivers;
+            for (int idSource = 0; idSource < 12; idSource++) {
+                Coordinate source = new Coordinate(3 + idSource * 9.1, 27 - (idSource % 3) * 10, 0.05);
+                List<String> expected = new ArrayList<>();
+                for (MirrorReceiverResult result : legacy.findCloseMirrorReceivers(source)) {
+                    expected.add(chainKey(result));
+                }
+                List<String> actual = new ArrayList<>();
+                for (MirrorReceiverResult result : pruned.findCloseMirrorReceivers(source)) {
+                    actual.add(chainKey(result));
+                }
+                Collections.sort(expected);
+                Collections.sort(actual);
+                assertEquals(expected, actual);
+                reflections += expected.size();
+            }
+        }
+        assertTrue(reflections > 0);
+        assertTrue(prunedImages < legacyImages);
+    }
+
 //
 //    @Test
 //    public void testExportVisibilityCones() throws Exception {
@@ -0,0 +1,137 @@
+package org.noise_planet.noisemodelling.pathfinder.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class LruCacheTest {
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        LruCache<Integer, String> cache = new LruCache<>(3, value -> 1, 1);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        // 1 is now the most recently used
+        assertEquals("a", cache.get(1));
+        cache.put(4, "d");
+        assertEquals(3, cache.size());
+        assertNull(cache.get(2));
+        assertEquals("a", cache.get(1));
+        assertEquals("c", cache.get(3));
+        assertEquals("d", cache.get(4));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testWeight() {
+        LruCache<Integer, int[]> cache = new LruCache<>(100, value -> value.length, 1);
+        cache.put(1, new int[60]);
+        cache.put(2, new int[30]);
+        assertEquals(90, cache.getWeight());
+        cache.put(3, new int[30]);
+        assertNull(cache.get(1));
+        assertEquals(60, cache.getWeight());
+        // an entry heavier than the bound is not cached
+        cache.put(4, new int[200]);
+        assertNull(cache.get(4));
+        assertEquals(60, cache.getWeight());
+        // the value of an existing key is replaced by a too heavy value
+        cache.put(3, new int[200]);
+        assertNull(cache.get(3));
+        assertEquals(30, cache.getWeight());
+        assertEquals(200, cache.computeIfAbsent(5, k -> new int[200]).length);
+        assertNull(cache.get(5));
+        cache.setMaximumWeight(0);
+        assertEquals(0, cache.size());
+        cache.put(5, new int[1]);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSmallCache() {
+        // fewer entries than the default number of segments
+        LruCache<Integer, Integer> cache = new LruCache<>(2);
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, i);
+            assertTrue(cache.size() <= 2);
+        }
+        assertEquals(Integer.valueOf(49), cache.get(49));
+    }
+
+    @Test
+    public void testLowerMaximumWeight() {
+        LruCache<Integer, Integer> cache = new LruCache<>(1000);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+        assertTrue(cache.size() > 3);
+        // fewer than the 16 segments, the segments are merged and the exceeding entries are evicted at once
+        cache.setMaximumWeight(3);
+        assertTrue(cache.size() <= 3);
+        for (int i = 1000; i < 1100; i++) {
+            cache.put(i, i);
+            assertTrue(cache.size() <= 3);
+        }
+        assertEquals(Integer.valueOf(1099), cache.get(1099));
+        assertEquals(1100 - cache.size(), cache.getEvictionCount());
+        // the weight of the entries is also bounded
+        LruCache<Integer, int[]> weighted = new LruCache<>(1 << 20, value -> value.length, 4);
+        for (int i = 0; i < 64; i++) {
+            weighted.put(i, new int[1000]);
+        }
+        weighted.setMaximumWeight(2);
+        assertEquals(0, weighted.size());
+        weighted.setMaximumWeight(8000);
+        for (int i = 0; i < 64; i++) {
+            weighted.put(i, new int[1000]);
+            assertTrue(weighted.getWeight() <= 8000);
+        }
+        assertTrue(weighted.size() > 0);
+        // the segments are split again
+        cache.setMaximumWeight(1000);
+        for (int i = 0; i < 2000; i++) {
+            cache.put(i, i);
+            assertTrue(cache.size() <= 1000);
+        }
+        assertTrue(cache.size() > 3);
+    }
+
+    @Test
+    public void testComputeIfAbsentConcurrent() {
+        LruCache<Integer, Integer> cache = new LruCache<>(1000);
+        AtomicInteger loads = new AtomicInteger();
+        IntStream.range(0, 100000).parallel().forEach(i -> {
+            int key = i % 500;
+            int value = cache.computeIfAbsent(key, k -> {
+                loads.incrementAndGet();
+                return k * 2;
+            });
+            assertEquals(key * 2, value);
+        });
+        assertTrue(cache.size() <= 1000);
+        // the whole working set fits in the cache, only concurrent first loads are computed twice
+        assertTrue(loads.get() < 1000);
+    }
+
+    @Test
+    public void testWorkingSetLargerThanCache() {
+        LruCache<Integer, Integer> cache = new LruCache<>(100, value -> 1, 1);
+        int hits = 0;
+        // a hot set of 25 keys and a stream of cold keys
+        for (int i = 0; i < 10000; i++) {
+            int key = i % 2 == 0 ? i % 50 : 1000 + i;
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, i);
+            }
+            assertTrue(cache.size() <= 100);
+        }
+        // the hot keys are never evicted by the cold keys
+        assertEquals(5000 - 25, hits);
+    }
+}
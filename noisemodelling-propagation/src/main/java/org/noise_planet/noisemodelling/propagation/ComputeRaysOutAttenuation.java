@@ -164,14 +164,30 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         if (data == null) {
             return new double[0];
         }
-        // cache frequencies
-        double[] frequencies = new double[0];
-        if(inputData != null) {
-            frequencies = new double[inputData.freq_lvl.size()];
-            for (int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
-                frequencies[idFrequency] = inputData.freq_lvl.get(idFrequency);
-            }
+        EvaluateAttenuationCnossos evaluator = new EvaluateAttenuationCnossos(data);
+        return computeAttenuation(data, evaluator, evaluator.createBuffer(), sourceId, sourceLi, receiverId,
+                propagationPath);
+    }
+
+    /**
+     * Compute the attenuation of all the propagation paths between a source and a receiver
+     * @param data Propagation parameters
+     * @param evaluator Attenuation equations initialized with data
+     * @param buffer Scratch arrays of the calling thread
+     * @param sourceId Source index
+     * @param sourceLi Source length coefficient
+     * @param receiverId Receiver index
+     * @param propagationPath Propagation paths
+     * @return Attenuation spectrum, sum of all propagation paths
+     */
+    public double[] computeAttenuation(PropagationProcessPathData data, EvaluateAttenuationCnossos evaluator,
+                                       EvaluateAttenuationCnossos.AttenuationBuffer buffer, long sourceId,
+                                       double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
+        if (data == null) {
+            return new double[0];
         }
+        // cache frequencies
+        double[] frequencies = null;
         // Compute receiver/source attenuation
         double[] propagationAttenuationSpectrum = null;
         for (PropagationPath proPath : propagationPath) {
@@ -180,123 +196,23 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
                 proPath.groundAttenuation.init(data.freq_lvl.size());
                 proPath.absorptionData.init(data.freq_lvl.size());
             }
-            EvaluateAttenuationCnossos.init(data);
             //ADiv computation
-            double[] aDiv = EvaluateAttenuationCnossos.aDiv(proPath, data);
+            double[] aDiv = evaluator.aDiv(proPath, buffer);
             //AAtm computation
-            double[] aAtm = EvaluateAttenuationCnossos.aAtm(data, proPath.getSRSegment().d);
+            double[] aAtm = evaluator.aAtm(proPath.getSRSegment().d, buffer);
             //Reflexion computation
-            double[] aRef = EvaluateAttenuationCnossos.evaluateAref(proPath, data);
+            double[] aRef = evaluator.aRef(proPath, buffer);
             double[] aRetroDiff;
             //ABoundary computation
             double[] aBoundary;
-            double[] aGlobalMeteoHom = new double[data.freq_lvl.size()];
-            double[] aGlobalMeteoFav = new double[data.freq_lvl.size()];
-            double[] deltaBodyScreen = new double[data.freq_lvl.size()];
-
-            List<PointPath> ptList = proPath.getPointList();
-
-            // todo get hRail from input data
-            double hRail = 0.5;
-            Coordinate src = ptList.get(0).coordinate;
-            PointPath pDif = ptList.stream().filter(p -> p.type.equals(DIFH)).findFirst().orElse(null);
-
-            if (pDif != null && pDif.alphaWall.size()>0) {
-                if (pDif.bodyBarrier){
-
-                    int n = 3;
-                    Coordinate rcv = ptList.get(ptList.size() - 1).coordinate;
-                    double[][] deltaGeo = new double[n+1][data.freq_lvl.size()];
-                    double[][] deltaAbs = new double[n+1][data.freq_lvl.size()];
-                    double[][] deltaDif = new double[n+1][data.freq_lvl.size()];
-                    double[][] deltaRef = new double[n+1][data.freq_lvl.size()];
-                    double[][] deltaRetroDifi = new double[n+1][data.freq_lvl.size()];
-                    double[][] deltaRetroDif = new double[n+1][data.freq_lvl.size()];
-                    double[] deltaL = new double[data.freq_lvl.size()];
-                    Arrays.fill(deltaL,dbaToW(0.0));
-
-                    double db = pDif.coordinate.x;
-                    double hb = pDif.coordinate.y;
-                    Coordinate B = new Coordinate(db,hb);
-
-                    double Cref = 1;
-                    double dr = rcv.x;
-                    double h0 = ptList.get(0).altitude+hRail;
-                    double hs = ptList.get(0).altitude+src.y-hRail;
-                    double hr = ptList.get(ptList.size()-1).altitude + ptList.get(ptList.size()-1).coordinate.y-h0;
-                    double[] r = new double[4];
-                    if (db<5*hb) {
-                        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-                            if (pDif.alphaWall.get(idfreq)<0.8){
-
-                                double dif0 =0 ;
-                                double ch = 1.;
-                                double lambda = 340.0 / data.freq_lvl.get(idfreq);
-                                double hi = hs;
-                                double cSecond = 1;
-
-                                for (int i = 0; i <= n; i++) {
-                                    double di = -2 * i * db;
-
-                                    Coordinate si = new Coordinate(src.x+di, src.y);
-                                    r[i] = sqrt(pow(di - (db + dr), 2) + pow(hi - hr, 2));
-                                    deltaGeo[i][idfreq] =  20 * log10(r[0] / r[i]);
-                                    double deltai = si.distance(B)+B.distance(rcv)-si.distance(rcv);
-
-                                    double dif = 0;
-                                    double testForm = (40/lambda)*cSecond*deltai;
-                                    if (testForm>=-2) {
-                                        dif = 10*ch*log10(3+testForm);
-                                    }
-
-                                    if (i==0){
-                                        dif0=dif;
-                                        deltaRetroDif[i][idfreq] = dif;
-                                    }else{
-                                        deltaDif[i][idfreq] = dif0-dif;
-                                    }
-
-                                    deltaAbs[i][idfreq] = 10 * i * log10(1 - pDif.alphaWall.get(idfreq));
-                                    deltaRef[i][idfreq] = 10 * i * log10(Cref);
-
-                                    double retroDif =0 ;
-                                    Coordinate Pi = new Coordinate(-(2 * i -1)* db,hb);
-                                    Coordinate RcvPrime = new Coordinate(dr,max(hr,hb*(db+dr-di)/(db-di)));
-                                    deltai = -(si.distance(Pi)+Pi.distance(RcvPrime)-si.distance(RcvPrime));
-
-                                    testForm = (40/lambda)*cSecond*deltai;
-                                    if (testForm>=-2) {
-                                        retroDif = 10*ch*log10(3+testForm);
-                                    }
-
-                                    if (i==0){
-                                        deltaRetroDifi[i][idfreq] = 0;
-                                    }else{
-                                        deltaRetroDifi[i][idfreq] = retroDif;
-                                    }
+            double[] aGlobalMeteoHom = buffer.aGlobalH;
+            double[] aGlobalMeteoFav = buffer.aGlobalF;
+            double[] deltaBodyScreen = buffer.deltaBodyScreen;
+            Arrays.fill(aGlobalMeteoHom, 0);
+            Arrays.fill(aGlobalMeteoFav, 0);
+            Arrays.fill(deltaBodyScreen, 0);
 
-
-                                }
-                                // Compute deltaRetroDif
-                                deltaRetroDif[0][idfreq] = 0;
-                                for (int i = 1; i <= n; i++) {
-                                    double sumRetrodif = 0;
-                                    for (int j = 1; j <= i; j++) {
-                                        sumRetrodif = sumRetrodif + deltaRetroDifi[j][idfreq];
-                                    }
-                                    deltaRetroDif[i][idfreq] = - sumRetrodif;
-                                }
-                                // Compute deltaL
-                                for (int i = 0; i <= n; i++) {
-                                    deltaL[idfreq] = deltaL[idfreq] + dbaToW(deltaGeo[i][idfreq] + deltaDif[i][idfreq] + deltaAbs[i][idfreq] + deltaRef[i][idfreq] + deltaRetroDif[i][idfreq]);
-                                }
-                            }
-                        }
-                        deltaBodyScreen = wToDba(deltaL);
-                    }
-                }
-
-            }
+            computeDeltaBodyScreen(data, proPath, deltaBodyScreen);
 
             // restore the Map relative propagation direction from the emission propagation relative to the sound source orientation
             // just swap the inverse boolean parameter
@@ -308,8 +224,8 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             if (data.getWindRose()[roseIndex] != 1) {
                 proPath.setFavorable(false);
 
-                aBoundary = EvaluateAttenuationCnossos.aBoundary(proPath, data);
-                aRetroDiff = EvaluateAttenuationCnossos.deltaRetrodif(proPath, data);
+                aBoundary = evaluator.aBoundary(proPath, buffer);
+                aRetroDiff = evaluator.deltaRetrodif(proPath, buffer);
                 for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
                     aGlobalMeteoHom[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] + aRef[idfreq] + aRetroDiff[idfreq] - deltaBodyScreen[idfreq]); // Eq. 2.5.6
                 }
@@ -322,8 +238,8 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             // Favorable conditions
             if (data.getWindRose()[roseIndex] != 0) {
                 proPath.setFavorable(true);
-                aBoundary = EvaluateAttenuationCnossos.aBoundary(proPath, data);
-                aRetroDiff = EvaluateAttenuationCnossos.deltaRetrodif(proPath, data);
+                aBoundary = evaluator.aBoundary(proPath, buffer);
+                aRetroDiff = evaluator.deltaRetrodif(proPath, buffer);
                 for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
                     aGlobalMeteoFav[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq]+ aRef[idfreq] + aRetroDiff[idfreq] -deltaBodyScreen[idfreq]); // Eq. 2.5.8
                 }
@@ -342,10 +258,17 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             }
 
             // Compute attenuation under the wind conditions using the ray direction
-            double[] aGlobalMeteoRay = sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom, data.getWindRose()[roseIndex]);
+            double[] aGlobalMeteoRay = sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom,
+                    data.getWindRose()[roseIndex], buffer.aGlobal);
 
             // Apply attenuation due to sound direction
             if(inputData != null && !inputData.isOmnidirectional((int)sourceId)) {
+                if(frequencies == null) {
+                    frequencies = new double[inputData.freq_lvl.size()];
+                    for (int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+                        frequencies[idFrequency] = inputData.freq_lvl.get(idFrequency);
+                    }
+                }
                 Orientation directivityToPick = proPath.raySourceReceiverDirectivity;
                 double[] attSource = inputData.getSourceAttenuation((int) sourceId,
                         frequencies, Math.toRadians(directivityToPick.yaw),
@@ -353,7 +276,9 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
                 if(keepAbsorption) {
                     proPath.absorptionData.aSource = attSource;
                 }
-                aGlobalMeteoRay = sumArray(aGlobalMeteoRay, attSource);
+                for (int i = 0; i < aGlobalMeteoRay.length; i++) {
+                    aGlobalMeteoRay[i] += attSource[i];
+                }
             }
 
             // For line source, take account of li coefficient
@@ -368,9 +293,9 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             }
 
             if (propagationAttenuationSpectrum != null) {
-                propagationAttenuationSpectrum = sumDbArray(aGlobalMeteoRay, propagationAttenuationSpectrum);
+                sumDbArray(aGlobalMeteoRay, propagationAttenuationSpectrum, propagationAttenuationSpectrum);
             } else {
-                propagationAttenuationSpectrum = aGlobalMeteoRay;
+                propagationAttenuationSpectrum = aGlobalMeteoRay.clone();
             }
         }
         if (propagationAttenuationSpectrum != null) {
@@ -380,6 +305,245 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         }
     }
 
+    /**
+     * Compute the attenuation of a single propagation path for several propagation parameters (ex: time periods).
+     * The geometrical terms (aDiv, aRef, body screen) are computed once, the ground, diffraction and
+     * retro-diffraction terms are computed once for all the evaluators that share the same constants, only the
+     * atmospheric absorption and the wind rose are evaluated for each parameter set.
+     * The result of each parameter set is identical to
+     * {@link #computeAttenuation(PropagationProcessPathData, EvaluateAttenuationCnossos,
+     * EvaluateAttenuationCnossos.AttenuationBuffer, long, double, long, List)} called with this path only.
+     * The absorption details are not stored in the path.
+     * @param data Propagation parameters of each period
+     * @param evaluators Attenuation equations initialized with the data of each period
+     * @param buffer Scratch arrays of the calling thread
+     * @param sourceId Source index
+     * @param sourceLi Source length coefficient
+     * @param proPath Propagation path
+     * @return Attenuation spectrum of each period
+     */
+    public double[][] computeAttenuation(PropagationProcessPathData[] data, EvaluateAttenuationCnossos[] evaluators,
+                                         EvaluateAttenuationCnossos.AttenuationBuffer buffer, long sourceId,
+                                         double sourceLi, PropagationPath proPath) {
+        int periodCount = data.length;
+        int frequencyCount = evaluators[0].getFrequencyCount();
+        double[][] aGlobal = new double[periodCount][frequencyCount];
+        //ADiv computation
+        double[] aDiv = evaluators[0].aDiv(proPath, buffer);
+        //Reflexion computation
+        double[] aRef = evaluators[0].aRef(proPath, buffer);
+        double[] deltaBodyScreen = buffer.deltaBodyScreen;
+        Arrays.fill(deltaBodyScreen, 0);
+        computeDeltaBodyScreen(data[0], proPath, deltaBodyScreen);
+        Vector3D fieldVectorPropagation = Orientation.rotate(proPath.getSourceOrientation(),
+                Orientation.toVector(proPath.raySourceReceiverDirectivity), false);
+        int roseIndex = getRoseIndex(Math.atan2(fieldVectorPropagation.getY(), fieldVectorPropagation.getX()));
+        // Ground and diffraction attenuation, shared between the periods with the same evaluator constants
+        double[][] aBoundaryH = new double[periodCount][];
+        double[][] aRetroDiffH = new double[periodCount][];
+        double[][] aBoundaryF = new double[periodCount][];
+        double[][] aRetroDiffF = new double[periodCount][];
+        // favorable state of the path after the evaluation of the last period
+        boolean favorable = proPath.isFavorable();
+        for (int idPeriod = 0; idPeriod < periodCount; idPeriod++) {
+            double windRose = data[idPeriod].getWindRose()[roseIndex];
+            for (int idShared = 0; idShared < idPeriod; idShared++) {
+                if (evaluators[idShared].hasSameBoundaryAttenuation(evaluators[idPeriod])) {
+                    if (aBoundaryH[idPeriod] == null) {
+                        aBoundaryH[idPeriod] = aBoundaryH[idShared];
+                        aRetroDiffH[idPeriod] = aRetroDiffH[idShared];
+                    }
+                    if (aBoundaryF[idPeriod] == null) {
+                        aBoundaryF[idPeriod] = aBoundaryF[idShared];
+                        aRetroDiffF[idPeriod] = aRetroDiffF[idShared];
+                    }
+                }
+            }
+            // Homogenous conditions
+            if (windRose != 1) {
+                if (aBoundaryH[idPeriod] == null) {
+                    proPath.setFavorable(false);
+                    aBoundaryH[idPeriod] = evaluators[idPeriod].aBoundary(proPath, buffer).clone();
+                    aRetroDiffH[idPeriod] = evaluators[idPeriod].deltaRetrodif(proPath, buffer).clone();
+                }
+                favorable = false;
+            }
+            // Favorable conditions
+            if (windRose != 0) {
+                if (aBoundaryF[idPeriod] == null) {
+                    proPath.setFavorable(true);
+                    aBoundaryF[idPeriod] = evaluators[idPeriod].aBoundary(proPath, buffer).clone();
+                    aRetroDiffF[idPeriod] = evaluators[idPeriod].deltaRetrodif(proPath, buffer).clone();
+                }
+                favorable = true;
+            }
+        }
+        proPath.setFavorable(favorable);
+        double[] attSource = null;
+        if(inputData != null && !inputData.isOmnidirectional((int)sourceId)) {
+            double[] frequencies = new double[inputData.freq_lvl.size()];
+            for (int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+                frequencies[idFrequency] = inputData.freq_lvl.get(idFrequency);
+            }
+            Orientation directivityToPick = proPath.raySourceReceiverDirectivity;
+            attSource = inputData.getSourceAttenuation((int) sourceId,
+                    frequencies, Math.toRadians(directivityToPick.yaw),
+                    Math.toRadians(directivityToPick.pitch));
+        }
+        double[] aGlobalMeteoHom = buffer.aGlobalH;
+        double[] aGlobalMeteoFav = buffer.aGlobalF;
+        for (int idPeriod = 0; idPeriod < periodCount; idPeriod++) {
+            double windRose = data[idPeriod].getWindRose()[roseIndex];
+            //AAtm computation
+            double[] aAtm = evaluators[idPeriod].aAtm(proPath.getSRSegment().d, buffer);
+            Arrays.fill(aGlobalMeteoHom, 0);
+            Arrays.fill(aGlobalMeteoFav, 0);
+            if (windRose != 1) {
+                double[] aBoundary = aBoundaryH[idPeriod];
+                double[] aRetroDiff = aRetroDiffH[idPeriod];
+                for (int idfreq = 0; idfreq < frequencyCount; idfreq++) {
+                    aGlobalMeteoHom[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] + aRef[idfreq] + aRetroDiff[idfreq] - deltaBodyScreen[idfreq]); // Eq. 2.5.6
+                }
+            }
+            if (windRose != 0) {
+                double[] aBoundary = aBoundaryF[idPeriod];
+                double[] aRetroDiff = aRetroDiffF[idPeriod];
+                for (int idfreq = 0; idfreq < frequencyCount; idfreq++) {
+                    aGlobalMeteoFav[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq]+ aRef[idfreq] + aRetroDiff[idfreq] -deltaBodyScreen[idfreq]); // Eq. 2.5.8
+                }
+            }
+            // Compute attenuation under the wind conditions using the ray direction
+            double[] aGlobalMeteoRay = sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom, windRose,
+                    aGlobal[idPeriod]);
+            // Apply attenuation due to sound direction
+            if(attSource != null) {
+                for (int i = 0; i < aGlobalMeteoRay.length; i++) {
+                    aGlobalMeteoRay[i] += attSource[i];
+                }
+            }
+            // For line source, take account of li coefficient
+            if(sourceLi > 1.0) {
+                for (int i = 0; i < aGlobalMeteoRay.length; i++) {
+                    aGlobalMeteoRay[i] = wToDba(dbaToW(aGlobalMeteoRay[i]) * sourceLi);
+                }
+            }
+        }
+        return aGlobal;
+    }
+
+    /**
+     * Attenuation of the multiple reflections between a train body and a screen
+     * @param data Propagation parameters
+     * @param proPath Propagation path
+     * @param deltaBodyScreen Destination, left unchanged if the path is not diffracted by a body barrier
+     */
+    private static void computeDeltaBodyScreen(PropagationProcessPathData data, PropagationPath proPath,
+                                               double[] deltaBodyScreen) {
+        List<PointPath> ptList = proPath.getPointList();
+
+        // todo get hRail from input data
+        double hRail = 0.5;
+        Coordinate src = ptList.get(0).coordinate;
+        PointPath pDif = ptList.stream().filter(p -> p.type.equals(DIFH)).findFirst().orElse(null);
+
+        if (pDif != null && pDif.alphaWall.size()>0) {
+            if (pDif.bodyBarrier){
+
+                int n = 3;
+                Coordinate rcv = ptList.get(ptList.size() - 1).coordinate;
+                double[][] deltaGeo = new double[n+1][data.freq_lvl.size()];
+                double[][] deltaAbs = new double[n+1][data.freq_lvl.size()];
+                double[][] deltaDif = new double[n+1][data.freq_lvl.size()];
+                double[][] deltaRef = new double[n+1][data.freq_lvl.size()];
+                double[][] deltaRetroDifi = new double[n+1][data.freq_lvl.size()];
+                double[][] deltaRetroDif = new double[n+1][data.freq_lvl.size()];
+                double[] deltaL = new double[data.freq_lvl.size()];
+                Arrays.fill(deltaL,dbaToW(0.0));
+
+                double db = pDif.coordinate.x;
+                double hb = pDif.coordinate.y;
+                Coordinate B = new Coordinate(db,hb);
+
+                double Cref = 1;
+                double dr = rcv.x;
+                double h0 = ptList.get(0).altitude+hRail;
+                double hs = ptList.get(0).altitude+src.y-hRail;
+                double hr = ptList.get(ptList.size()-1).altitude + ptList.get(ptList.size()-1).coordinate.y-h0;
+                double[] r = new double[4];
+                if (db<5*hb) {
+                    for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
+                        if (pDif.alphaWall.get(idfreq)<0.8){
+
+                            double dif0 =0 ;
+                            double ch = 1.;
+                            double lambda = 340.0 / data.freq_lvl.get(idfreq);
+                            double hi = hs;
+                            double cSecond = 1;
+
+                            for (int i = 0; i <= n; i++) {
+                                double di = -2 * i * db;
+
+                                Coordinate si = new Coordinate(src.x+di, src.y);
+                                r[i] = sqrt(pow(di - (db + dr), 2) + pow(hi - hr, 2));
+                                deltaGeo[i][idfreq] =  20 * log10(r[0] / r[i]);
+                                double deltai = si.distance(B)+B.distance(rcv)-si.distance(rcv);
+
+                                double dif = 0;
+                                double testForm = (40/lambda)*cSecond*deltai;
+                                if (testForm>=-2) {
+                                    dif = 10*ch*log10(3+testForm);
+                                }
+
+                                if (i==0){
+                                    dif0=dif;
+                                    deltaRetroDif[i][idfreq] = dif;
+                                }else{
+                                    deltaDif[i][idfreq] = dif0-dif;
+                                }
+
+                                deltaAbs[i][idfreq] = 10 * i * log10(1 - pDif.alphaWall.get(idfreq));
+                                deltaRef[i][idfreq] = 10 * i * log10(Cref);
+
+                                double retroDif =0 ;
+                                Coordinate Pi = new Coordinate(-(2 * i -1)* db,hb);
+                                Coordinate RcvPrime = new Coordinate(dr,max(hr,hb*(db+dr-di)/(db-di)));
+                                deltai = -(si.distance(Pi)+Pi.distance(RcvPrime)-si.distance(RcvPrime));
+
+                                testForm = (40/lambda)*cSecond*deltai;
+                                if (testForm>=-2) {
+                                    retroDif = 10*ch*log10(3+testForm);
+                                }
+
+                                if (i==0){
+                                    deltaRetroDifi[i][idfreq] = 0;
+                                }else{
+                                    deltaRetroDifi[i][idfreq] = retroDif;
+                                }
+
+
+                            }
+                            // Compute deltaRetroDif
+                            deltaRetroDif[0][idfreq] = 0;
+                            for (int i = 1; i <= n; i++) {
+                                double sumRetrodif = 0;
+                                for (int j = 1; j <= i; j++) {
+                                    sumRetrodif = sumRetrodif + deltaRetroDifi[j][idfreq];
+                                }
+                                deltaRetroDif[i][idfreq] = - sumRetrodif;
+                            }
+                            // Compute deltaL
+                            for (int i = 0; i <= n; i++) {
+                                deltaL[idfreq] = deltaL[idfreq] + dbaToW(deltaGeo[i][idfreq] + deltaDif[i][idfreq] + deltaAbs[i][idfreq] + deltaRef[i][idfreq] + deltaRetroDif[i][idfreq]);
+                            }
+                        }
+                    }
+                    System.arraycopy(wToDba(deltaL), 0, deltaBodyScreen, 0, deltaBodyScreen.length);
+                }
+            }
+
+        }
+    }
+
     @Override
     public IComputeRaysOut subProcess() {
         return new ThreadRaysOut(this, genericMeteoData);
@@ -460,16 +624,24 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         public List<PropagationPath> propagationPaths = new ArrayList<PropagationPath>();
         public PropagationProcessPathData propagationProcessPathData;
         public boolean keepRays = false;
+        protected EvaluateAttenuationCnossos evaluator;
+        protected EvaluateAttenuationCnossos.AttenuationBuffer attenuationBuffer;
 
         public ThreadRaysOut(ComputeRaysOutAttenuation multiThreadParent, PropagationProcessPathData propagationProcessPathData) {
             this.multiThreadParent = multiThreadParent;
             this.keepRays = multiThreadParent.keepRays;
             this.propagationProcessPathData = propagationProcessPathData;
+            if(propagationProcessPathData != null) {
+                // This instance is used by a single thread, so are the scratch arrays
+                this.evaluator = new EvaluateAttenuationCnossos(propagationProcessPathData);
+                this.attenuationBuffer = evaluator.createBuffer();
+            }
         }
 
         @Override
         public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
-            double[] aGlobalMeteo = multiThreadParent.computeAttenuation(propagationProcessPathData, sourceId, sourceLi, receiverId, propagationPath);
+            double[] aGlobalMeteo = multiThreadParent.computeAttenuation(propagationProcessPathData, evaluator,
+                    attenuationBuffer, sourceId, sourceLi, receiverId, propagationPath);
             multiThreadParent.rayCount.addAndGet(propagationPath.size());
             if(keepRays) {
                 if(multiThreadParent.inputData != null && sourceId < multiThreadParent.inputData.sourcesPk.size() &&
@@ -495,6 +667,50 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             }
         }
 
+        /**
+         * Add a propagation path to several instances, one for each time period. When possible the geometrical
+         * attenuation terms are evaluated once for all the periods, see
+         * {@link ComputeRaysOutAttenuation#computeAttenuation(PropagationProcessPathData[], EvaluateAttenuationCnossos[], EvaluateAttenuationCnossos.AttenuationBuffer, long, double, PropagationPath)}.
+         * Same result as calling {@link #addPropagationPaths(long, double, long, List)} of each instance with this
+         * path only.
+         * @param periods Instances of the same parent, one for each period
+         * @param sourceId Source index
+         * @param sourceLi Source length coefficient
+         * @param receiverId Receiver index
+         * @param propagationPath Propagation path
+         * @return Attenuation spectrum of each period
+         */
+        public static double[][] addPropagationPath(ThreadRaysOut[] periods, long sourceId, double sourceLi,
+                                                    long receiverId, PropagationPath propagationPath) {
+            ComputeRaysOutAttenuation parent = periods[0].multiThreadParent;
+            boolean shareGeometry = !parent.keepAbsorption;
+            for (ThreadRaysOut period : periods) {
+                shareGeometry &= period.multiThreadParent == parent && !period.keepRays &&
+                        period.propagationProcessPathData != null;
+            }
+            double[][] levels = new double[periods.length][];
+            if (!shareGeometry) {
+                List<PropagationPath> paths = Collections.singletonList(propagationPath);
+                for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+                    levels[idPeriod] = periods[idPeriod].addPropagationPaths(sourceId, sourceLi, receiverId, paths);
+                }
+                return levels;
+            }
+            PropagationProcessPathData[] data = new PropagationProcessPathData[periods.length];
+            EvaluateAttenuationCnossos[] evaluators = new EvaluateAttenuationCnossos[periods.length];
+            for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+                data[idPeriod] = periods[idPeriod].propagationProcessPathData;
+                evaluators[idPeriod] = periods[idPeriod].evaluator;
+            }
+            levels = parent.computeAttenuation(data, evaluators, periods[0].attenuationBuffer, sourceId, sourceLi,
+                    propagationPath);
+            for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+                parent.rayCount.addAndGet(1);
+                periods[idPeriod].receiverAttenuationLevels.add(new VerticeSL(receiverId, sourceId, levels[idPeriod]));
+            }
+            return levels;
+        }
+
         protected void pushResult(long receiverId, long sourceId, double[] level) {
             multiThreadParent.receiversAttenuationLevels.add(new VerticeSL(receiverId, sourceId, level));
         }
@@ -55,12 +55,16 @@ import static org.noise_planet.noisemodelling.pathfinder.PointPath.POINT_TYPE.*;
  */
 
 public class EvaluateAttenuationCnossos {
-    private static double[] freq_lambda;
-    private static double[] aGlobal;
-
-    public static double[] getaGlobal() {
-        return aGlobal;
-    }
+    private final int frequencyCount;
+    /** Wave length with c=340 m/s, as used by the diffraction equations */
+    private final double[] lambda;
+    /** Wave number 2*PI*f/c */
+    private final double[] k;
+    /** Frequency powers used by Eq. 2.5.17 */
+    private final double[] fm25;
+    private final double[] fm15;
+    private final double[] fm075;
+    private final double[] alphaAtmo;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EvaluateAttenuationCnossos.class);
 
@@ -76,15 +80,16 @@ public class EvaluateAttenuationCnossos {
 
         for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
             double Ch = 1; // Eq 2.5.21
+            double lambda = data.freq_lvl.get(idfreq) > 0 ? data.getCelerity() / data.freq_lvl.get(idfreq) : 1;
             if (srpath.eLength > 0.3) {
-                double gammaPart = pow((5 * freq_lambda[idfreq]) / srpath.eLength, 2);
+                double gammaPart = pow((5 * lambda) / srpath.eLength, 2);
                 cprime = (1. + gammaPart) / (1./3. + gammaPart); // Eq. 2.5.23
             } else {
                 cprime = 1.;
             }
 
             //(7.11) NMP2008 P.32
-            double testForm = (40 / freq_lambda[idfreq])
+            double testForm = (40 / lambda)
                     * cprime * srpath.getDelta();
 
             double deltaDif = 0.;
@@ -383,147 +388,141 @@ public class EvaluateAttenuationCnossos {
     }
 
     /**
-     *
-     * @param data
+     * Precompute the frequency dependent constants of the attenuation equations.
+     * The created instance is immutable and can be shared between threads, the intermediate values are stored in a
+     * {@link AttenuationBuffer} that must not be shared between threads.
+     * @param data Propagation parameters, later modifications of this instance are not taken into account
      */
-    public static void init(PropagationProcessPathData data) {
-        // init
-        aGlobal = new double[data.freq_lvl.size()];
-
-        // Init wave length for each frequency
-        freq_lambda = new double[data.freq_lvl.size()];
-        for (int idf = 0; idf < data.freq_lvl.size(); idf++) {
-            if (data.freq_lvl.get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.freq_lvl.get(idf);
-            } else {
-                freq_lambda[idf] = 1;
-            }
+    public EvaluateAttenuationCnossos(PropagationProcessPathData data) {
+        frequencyCount = data.freq_lvl.size();
+        lambda = new double[frequencyCount];
+        k = new double[frequencyCount];
+        fm25 = new double[frequencyCount];
+        fm15 = new double[frequencyCount];
+        fm075 = new double[frequencyCount];
+        double celerity = data.getCelerity();
+        for (int idf = 0; idf < frequencyCount; idf++) {
+            int fm = data.freq_lvl.get(idf);
+            lambda[idf] = 340.0 / fm;
+            k[idf] = 2*PI*fm/celerity;
+            fm25[idf] = pow(fm, 2.5);
+            fm15[idf] = pow(fm, 1.5);
+            fm075[idf] = pow(fm, 0.75);
         }
+        double[] dataAlphaAtmo = data.getAlpha_atmo();
+        alphaAtmo = dataAlphaAtmo == null ? new double[frequencyCount] : dataAlphaAtmo.clone();
     }
 
-    public static double[] aDiv(PropagationPath path, PropagationProcessPathData data) {
-        double[] aDiv = new double[data.freq_lvl.size()];
-        Arrays.fill(aDiv, getADiv(path.difVPoints.isEmpty() ? path.getSRSegment().d : path.getSRSegment().dc));
-        return aDiv;
+    /**
+     * @return Number of frequency bands
+     */
+    public int getFrequencyCount() {
+        return frequencyCount;
     }
 
     /**
-     *
-     * @param data
-     * @param distance
-     * @return
+     * @param other Other evaluator
+     * @return True if {@link #aBoundary(PropagationPath, AttenuationBuffer)} and
+     * {@link #deltaRetrodif(PropagationPath, AttenuationBuffer)} give the same result with both evaluators. Only the
+     * atmospheric absorption may differ.
      */
-    public static double[] aAtm(PropagationProcessPathData data, double distance) {
-        // init
-        double[] aAtm = new double[data.freq_lvl.size()];
-        // init atmosphere
-        double[] alpha_atmo = data.getAlpha_atmo();
-
-        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-            aAtm[idfreq] = getAAtm(distance, alpha_atmo[idfreq]);
-        }
-        return aAtm;
+    public boolean hasSameBoundaryAttenuation(EvaluateAttenuationCnossos other) {
+        return other == this || (Arrays.equals(lambda, other.lambda) && Arrays.equals(k, other.k) &&
+                Arrays.equals(fm25, other.fm25));
     }
 
     /**
-     *
-     * @param path
-     * @param data
-     * @return
+     * @return A new set of scratch arrays sized for this evaluator, to be used by a single thread
      */
-    public static double[] evaluateAref(PropagationPath path, PropagationProcessPathData data) {
-        return getARef(path, data);
+    public AttenuationBuffer createBuffer() {
+        return new AttenuationBuffer(frequencyCount);
     }
 
     /**
-     * Only for propagation Path Cnossos
-     * // todo erase evaluate
-     * @param path
-     * @param data
-     * @return
+     * Eq. 2.5.12
+     * @param path Propagation path
+     * @param buffer Thread scratch arrays
+     * @return Geometrical divergence for each frequency, stored in {@link AttenuationBuffer#aDiv}
      */
-    public static double[] evaluate(PropagationPath path, PropagationProcessPathData data) {
-        // init
-        aGlobal = new double[data.freq_lvl.size()];
-        double[] aBoundary;
-        double[] aRef;
-
-        // Init wave length for each frequency
-        freq_lambda = new double[data.freq_lvl.size()];
-        for (int idf = 0; idf < data.freq_lvl.size(); idf++) {
-            if (data.freq_lvl.get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.freq_lvl.get(idf);
-            } else {
-                freq_lambda[idf] = 1;
-            }
-        }
-
-        // init atmosphere
-        double[] alpha_atmo = data.getAlpha_atmo();
+    public double[] aDiv(PropagationPath path, AttenuationBuffer buffer) {
+        Arrays.fill(buffer.aDiv, getADiv(path.difVPoints.isEmpty() ? path.getSRSegment().d : path.getSRSegment().dc));
+        return buffer.aDiv;
+    }
 
-        double aDiv;
-        // divergence
-        if (path.refPoints.size() > 0) {
-            aDiv = getADiv(path.getSRSegment().dPath);
-        } else {
-            aDiv = getADiv(path.getSRSegment().d);
+    /**
+     * @param distance Propagation distance
+     * @param buffer Thread scratch arrays
+     * @return Atmospheric absorption for each frequency, stored in {@link AttenuationBuffer#aAtm}
+     */
+    public double[] aAtm(double distance, AttenuationBuffer buffer) {
+        for (int idfreq = 0; idfreq < frequencyCount; idfreq++) {
+            buffer.aAtm[idfreq] = getAAtm(distance, alphaAtmo[idfreq]);
         }
+        return buffer.aAtm;
+    }
 
-
-        // boundary (ground + diffration)
-        aBoundary = getABoundary(path, data);
-
-        // reflections
-        aRef = getARef(path, data);
-
-        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-            // atm
-            double aAtm;
-            if (path.difVPoints.size() > 0 || path.refPoints.size() > 0) {
-                aAtm = getAAtm(path.getSRSegment().dPath, alpha_atmo[idfreq]);
-            } else {
-                aAtm = getAAtm(path.getSRSegment().d, alpha_atmo[idfreq]);
+    /**
+     * @param path Propagation path
+     * @param buffer Thread scratch arrays
+     * @return Wall absorption for each frequency, stored in {@link AttenuationBuffer#aRef}
+     */
+    public double[] aRef(PropagationPath path, AttenuationBuffer buffer) {
+        double[] aRef = buffer.aRef;
+        Arrays.fill(aRef, 0.0);
+        for (int idf = 0; idf < frequencyCount; idf++) {
+            for (int idRef = 0; idRef < path.refPoints.size(); idRef++) {
+                List<Double> alpha = path.getPointList().get(path.refPoints.get(idRef)).alphaWall;
+                if(alpha != null && !alpha.isEmpty()) {
+                    aRef[idf] += -10 * log10(1 - alpha.get(idf));
+                }
             }
-
-            aGlobal[idfreq] = -(aDiv + aAtm + aBoundary[idfreq] + aRef[idfreq]);
-
         }
-        return aGlobal;
+        return aRef;
     }
 
-    private static boolean isValidRcrit(PropagationPath pp, int freq, boolean favorable) {
-        double lambda = 340.0/freq;
+    private static boolean isValidRcrit(PropagationPath pp, double lambda, boolean favorable) {
         return favorable ?
                 pp.deltaF > -lambda / 20 && pp.deltaF > lambda / 4 - pp.deltaPrimeF || pp.deltaF > 0 :
                 pp.deltaH > -lambda / 20 && pp.deltaH > lambda / 4 - pp.deltaPrimeH || pp.deltaH > 0 ;
     }
 
-    public static double[] aBoundary(PropagationPath path, PropagationProcessPathData data) {
-        double[] aGround = new double[data.freq_lvl.size()];
-        double[] aDif = new double[data.freq_lvl.size()];
-        List<PointPath> diffPts = new ArrayList<>();
-        for(int i=0; i<path.getPointList().size(); i++) {
-            if(path.difHPoints.contains(i)) {
-                diffPts.add(path.getPointList().get(i));
-            }
-            else if(path.difVPoints.contains(i)) {
-                diffPts.add(path.getPointList().get(i));
+    /**
+     * @param path Propagation path
+     * @param idFreq Frequency index
+     * @return Type of the first diffraction point taken into account for this frequency, null if none
+     */
+    private PointPath.POINT_TYPE getFirstDiffractionType(PropagationPath path, int idFreq) {
+        List<PointPath> pointList = path.getPointList();
+        for(int i=0; i<pointList.size(); i++) {
+            if(path.difHPoints.contains(i) || path.difVPoints.contains(i)) {
+                PointPath.POINT_TYPE type = pointList.get(i).type;
+                if(type.equals(DIFH) || type.equals(DIFV) ||
+                        (type.equals(DIFH_RCRIT) && isValidRcrit(path, lambda[idFreq], path.isFavorable()))) {
+                    return type;
+                }
             }
         }
-        path.aBoundaryH.init(data.freq_lvl.size());
-        path.aBoundaryF.init(data.freq_lvl.size());
+        return null;
+    }
+
+    /**
+     * @param path Propagation path, with favorable condition set
+     * @param buffer Thread scratch arrays
+     * @return Ground and diffraction attenuation for each frequency, stored in {@link AttenuationBuffer#aBoundary}
+     */
+    public double[] aBoundary(PropagationPath path, AttenuationBuffer buffer) {
+        double[] aGround = buffer.aGround;
+        double[] aDif = buffer.aDif;
+        if(path.keepAbsorption) {
+            path.aBoundaryH.init(frequencyCount);
+            path.aBoundaryF.init(frequencyCount);
+        }
         // Without diff
-        for(int i=0; i<data.freq_lvl.size(); i++) {
-            int finalI = i;
-            PointPath first = diffPts.stream()
-                    .filter(pp -> pp.type.equals(PointPath.POINT_TYPE.DIFH) || pp.type.equals(DIFV) ||
-                            (pp.type.equals(DIFH_RCRIT) &&
-                                    isValidRcrit(path, data.freq_lvl.get(finalI), path.isFavorable())))
-                    .findFirst()
-                    .orElse(null);
+        for(int i=0; i<frequencyCount; i++) {
+            PointPath.POINT_TYPE firstType = getFirstDiffractionType(path, i);
             aGround[i] = path.isFavorable() ?
-                    aGroundF(path, path.getSRSegment(), data, i) :
-                    aGroundH(path, path.getSRSegment(), data, i);
+                    aGroundF(path, path.getSRSegment(), i) :
+                    aGroundH(path, path.getSRSegment(), i);
             if(path.groundAttenuation != null && path.groundAttenuation.aGroundF != null) {
                 if (path.isFavorable()) {
                     path.groundAttenuation.aGroundF[i] = aGround[i];
@@ -531,9 +530,9 @@ public class EvaluateAttenuationCnossos {
                     path.groundAttenuation.aGroundH[i] = aGround[i];
                 }
             }
-            if (first != null) {
-                aDif[i] = aDif(path, data, i, first.type);
-                if(!first.type.equals(DIFV)) {
+            if (firstType != null) {
+                aDif[i] = aDif(path, i, firstType);
+                if(!firstType.equals(DIFV)) {
                     aGround[i] = 0.;
                 }
             }
@@ -545,21 +544,26 @@ public class EvaluateAttenuationCnossos {
         }
         if(path.keepAbsorption) {
             if (path.isFavorable()) {
-                path.absorptionData.aDifF = aDif;
+                path.absorptionData.aDifF = aDif.clone();
             } else {
-                path.absorptionData.aDifH = aDif;
+                path.absorptionData.aDifH = aDif.clone();
             }
         }
-        double[] aBoundary = new double[data.freq_lvl.size()];
-        for(int i=0; i<data.freq_lvl.size(); i++) {
+        double[] aBoundary = buffer.aBoundary;
+        for(int i=0; i<frequencyCount; i++) {
             aBoundary[i] = aGround[i] + aDif[i];
         }
         return aBoundary;
     }
 
-    public static double[] deltaRetrodif(PropagationPath reflect, PropagationProcessPathData data) {
-
-        double[] retroDiff = new double[data.freq_lvl.size()];
+    /**
+     * Eq. 2.5.36
+     * @param reflect Propagation path
+     * @param buffer Thread scratch arrays
+     * @return Retro-diffraction attenuation for each frequency, stored in {@link AttenuationBuffer#aRetroDiff}
+     */
+    public double[] deltaRetrodif(PropagationPath reflect, AttenuationBuffer buffer) {
+        double[] retroDiff = buffer.aRetroDiff;
         Arrays.fill(retroDiff, 0.);
         Coordinate s = reflect.getSRSegment().s;
         Coordinate r = reflect.getSRSegment().r;
@@ -571,28 +575,27 @@ public class EvaluateAttenuationCnossos {
             //Compute de distance delta (2.5.36)
             double deltaPrime = -(s.distance(o) + o.distance(r) - reflect.getSRSegment().d);
             double ch = 1.;
-            for (int i = 0; i < data.freq_lvl.size(); i++) {
-                double lambda = 340.0 / data.freq_lvl.get(i);
-                double testForm = 40.0 / lambda * deltaPrime;
+            for (int i = 0; i < frequencyCount; i++) {
+                double testForm = 40.0 / lambda[i] * deltaPrime;
                 double dLRetro = testForm >= -2 ? 10 * ch * log10(3 + testForm) : 0;
                 retroDiff[i] = dLRetro;
             }
         }
         if (reflect.keepAbsorption) {
             if (reflect.reflectionAttenuation.dLRetro == null) {
-                reflect.reflectionAttenuation.init(data.freq_lvl.size());
+                reflect.reflectionAttenuation.init(frequencyCount);
             }
-            reflect.reflectionAttenuation.dLRetro = retroDiff;
+            reflect.reflectionAttenuation.dLRetro = retroDiff.clone();
         }
         return retroDiff;
     }
 
-    private static double aDif(PropagationPath proPath, PropagationProcessPathData data, int i, PointPath.POINT_TYPE type) {
+    private double aDif(PropagationPath proPath, int i, PointPath.POINT_TYPE type) {
         SegmentPath first = proPath.getSegmentList().get(0);
         SegmentPath last = proPath.getSegmentList().get(proPath.getSegmentList().size()-1);
 
         double ch = 1.;
-        double lambda = 340.0 / data.freq_lvl.get(i);
+        double lambda = this.lambda[i];
         double cSecond = (type.equals(DIFH) && proPath.difHPoints.size() <= 1) || (type.equals(DIFV) && proPath.difVPoints.size() <= 1) || proPath.e <= 0.3 ? 1. :
                 (1+pow(5*lambda/proPath.e, 2))/(1./3+pow(5*lambda/proPath.e, 2));
 
@@ -624,8 +627,8 @@ public class EvaluateAttenuationCnossos {
         testForm = 40/lambda*cSecond*_delta;
         double deltaDiffSRPrime = testForm>=-2 ? 10*ch*log10(3+testForm) : 0;
 
-        double aGroundSO = proPath.isFavorable() ? aGroundF(proPath, first, data, i) : aGroundH(proPath, first, data, i);
-        double aGroundOR = proPath.isFavorable() ? aGroundF(proPath, last, data, i, true) : aGroundH(proPath, last, data, i, true);
+        double aGroundSO = proPath.isFavorable() ? aGroundF(proPath, first, i) : aGroundH(proPath, first, i);
+        double aGroundOR = proPath.isFavorable() ? aGroundF(proPath, last, i, true) : aGroundH(proPath, last, i, true);
 
         //If the source or the receiver are under the mean plane, change the computation of deltaDffSR and deltaGround
         double deltaGroundSO = -20*log10(1+(pow(10, -aGroundSO/20)-1)*pow(10, -(deltaDiffSPrimeR-deltaDiffSR)/20));
@@ -670,30 +673,36 @@ public class EvaluateAttenuationCnossos {
         return aDiff;
     }
 
-    private static double[] computeCfKValues(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
-        return computeCfKValues(proPath, path, data, idFreq, false);
+    /**
+     * Eq. 2.5.17
+     * @param idFreq Frequency index
+     * @param gw Ground factor
+     * @return w
+     */
+    private double computeW(int idFreq, double gw) {
+        return 0.0185 * fm25[idFreq] * pow(gw, 2.6) /
+                (fm15[idFreq] * pow(gw, 2.6) + 1.3e3 * fm075[idFreq] * pow(gw, 1.3) + 1.16e6);
     }
-    private static double[] computeCfKValues(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
-        int fm = data.freq_lvl.get(idFreq);
-        double c = data.getCelerity();
-        double dp = path.dp;
-        double k = 2*PI*fm/c;
-        double gw = forceGPath ? path.gPath : proPath.isFavorable() ? path.gPath : path.gPathPrime;
-        double w = 0.0185 * pow(fm, 2.5) * pow(gw, 2.6) /
-                (pow(fm, 1.5) * pow(gw, 2.6) + 1.3e3 * pow(fm, 0.75) * pow(gw, 1.3) + 1.16e6);
-        double cf = dp * (1 + 3 * w * dp * exp(-sqrt(w * dp))) / (1 + w * dp);
-        return new double[]{cf, k, w};
+
+    /**
+     * Eq. 2.5.16
+     * @param dp Distance between source and receiver projections on the mean plane
+     * @param w See {@link #computeW(int, double)}
+     * @return cf
+     */
+    private static double computeCf(double dp, double w) {
+        return dp * (1 + 3 * w * dp * exp(-sqrt(w * dp))) / (1 + w * dp);
     }
 
-    public static double aGroundH(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
-        return aGroundH(proPath, path, data, idFreq, false);
+    public double aGroundH(PropagationPath proPath, SegmentPath path, int idFreq) {
+        return aGroundH(proPath, path, idFreq, false);
     }
 
-    public static double aGroundH(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
-        double[] values = computeCfKValues(proPath, path, data, idFreq, forceGPath);
-        double cf = values[0];
-        double k = values[1];
-        double w = values[2];
+    public double aGroundH(PropagationPath proPath, SegmentPath path, int idFreq, boolean forceGPath) {
+        double gw = forceGPath ? path.gPath : proPath.isFavorable() ? path.gPath : path.gPathPrime;
+        double w = computeW(idFreq, gw);
+        double cf = computeCf(path.dp, w);
+        double k = this.k[idFreq];
         if(proPath.keepAbsorption && path == proPath.getSRSegment()) {
             proPath.groundAttenuation.wH[idFreq] = w;
             proPath.groundAttenuation.cfH[idFreq] = cf;
@@ -713,14 +722,16 @@ public class EvaluateAttenuationCnossos {
     }
 
     //Todo check if the favorable testform should be use instead
-    public static double aGroundF(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
-        return aGroundF(proPath, path, data, idFreq, false);
+    public double aGroundF(PropagationPath proPath, SegmentPath path, int idFreq) {
+        return aGroundF(proPath, path, idFreq, false);
     }
-    public static double aGroundF(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
-        double[] values = computeCfKValues(proPath, path, data, idFreq);
-        double cf = values[0];
-        double k = values[1];
-        double w = values[2];
+
+    public double aGroundF(PropagationPath proPath, SegmentPath path, int idFreq, boolean forceGPath) {
+        // forceGPath is only applied on the lower bound, w and cf use the favorable gw
+        double gw = proPath.isFavorable() ? path.gPath : path.gPathPrime;
+        double w = computeW(idFreq, gw);
+        double cf = computeCf(path.dp, w);
+        double k = this.k[idFreq];
         if(proPath.keepAbsorption && path == proPath.getSRSegment()) {
             proPath.groundAttenuation.wF[idFreq] = w;
             proPath.groundAttenuation.cfF[idFreq] = cf;
@@ -740,4 +751,169 @@ public class EvaluateAttenuationCnossos {
             return max(aGroundFComputed, aGroundFMin);
         }
     }
+
+    public static double[] aDiv(PropagationPath path, PropagationProcessPathData data) {
+        double[] aDiv = new double[data.freq_lvl.size()];
+        Arrays.fill(aDiv, getADiv(path.difVPoints.isEmpty() ? path.getSRSegment().d : path.getSRSegment().dc));
+        return aDiv;
+    }
+
+    /**
+     *
+     * @param data
+     * @param distance
+     * @return
+     */
+    public static double[] aAtm(PropagationProcessPathData data, double distance) {
+        // init
+        double[] aAtm = new double[data.freq_lvl.size()];
+        // init atmosphere
+        double[] alpha_atmo = data.getAlpha_atmo();
+
+        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
+            aAtm[idfreq] = getAAtm(distance, alpha_atmo[idfreq]);
+        }
+        return aAtm;
+    }
+
+    /**
+     *
+     * @param path
+     * @param data
+     * @return
+     */
+    public static double[] evaluateAref(PropagationPath path, PropagationProcessPathData data) {
+        return getARef(path, data);
+    }
+
+    /**
+     * Only for propagation Path Cnossos
+     * @param path
+     * @param data
+     * @return
+     */
+    public static double[] evaluate(PropagationPath path, PropagationProcessPathData data) {
+        // init
+        double[] aGlobal = new double[data.freq_lvl.size()];
+        double[] aBoundary;
+        double[] aRef;
+
+        // init atmosphere
+        double[] alpha_atmo = data.getAlpha_atmo();
+
+        double aDiv;
+        // divergence
+        if (path.refPoints.size() > 0) {
+            aDiv = getADiv(path.getSRSegment().dPath);
+        } else {
+            aDiv = getADiv(path.getSRSegment().d);
+        }
+
+
+        // boundary (ground + diffration)
+        aBoundary = getABoundary(path, data);
+
+        // reflections
+        aRef = getARef(path, data);
+
+        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
+            // atm
+            double aAtm;
+            if (path.difVPoints.size() > 0 || path.refPoints.size() > 0) {
+                aAtm = getAAtm(path.getSRSegment().dPath, alpha_atmo[idfreq]);
+            } else {
+                aAtm = getAAtm(path.getSRSegment().d, alpha_atmo[idfreq]);
+            }
+
+            aGlobal[idfreq] = -(aDiv + aAtm + aBoundary[idfreq] + aRef[idfreq]);
+
+        }
+        return aGlobal;
+    }
+
+    /**
+     * @deprecated Allocates an evaluator and its buffers on each call, use
+     * {@link #aBoundary(PropagationPath, AttenuationBuffer)}
+     */
+    @Deprecated
+    public static double[] aBoundary(PropagationPath path, PropagationProcessPathData data) {
+        EvaluateAttenuationCnossos evaluator = new EvaluateAttenuationCnossos(data);
+        return evaluator.aBoundary(path, evaluator.createBuffer());
+    }
+
+    /**
+     * @deprecated Allocates an evaluator and its buffers on each call, use
+     * {@link #deltaRetrodif(PropagationPath, AttenuationBuffer)}
+     */
+    @Deprecated
+    public static double[] deltaRetrodif(PropagationPath reflect, PropagationProcessPathData data) {
+        EvaluateAttenuationCnossos evaluator = new EvaluateAttenuationCnossos(data);
+        return evaluator.deltaRetrodif(reflect, evaluator.createBuffer());
+    }
+
+    /**
+     * @deprecated Allocates an evaluator on each call, use {@link #aGroundH(PropagationPath, SegmentPath, int)}
+     */
+    @Deprecated
+    public static double aGroundH(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
+        return aGroundH(proPath, path, data, idFreq, false);
+    }
+
+    /**
+     * @deprecated Allocates an evaluator on each call, use
+     * {@link #aGroundH(PropagationPath, SegmentPath, int, boolean)}
+     */
+    @Deprecated
+    public static double aGroundH(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
+        return new EvaluateAttenuationCnossos(data).aGroundH(proPath, path, idFreq, forceGPath);
+    }
+
+    /**
+     * @deprecated Allocates an evaluator on each call, use {@link #aGroundF(PropagationPath, SegmentPath, int)}
+     */
+    @Deprecated
+    public static double aGroundF(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
+        return aGroundF(proPath, path, data, idFreq, false);
+    }
+
+    /**
+     * @deprecated Allocates an evaluator on each call, use
+     * {@link #aGroundF(PropagationPath, SegmentPath, int, boolean)}
+     */
+    @Deprecated
+    public static double aGroundF(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
+        return new EvaluateAttenuationCnossos(data).aGroundF(proPath, path, idFreq, forceGPath);
+    }
+
+    /**
+     * Per-frequency intermediate values of the attenuation computation.
+     * Instances are reused from one propagation path to another and must not be shared between threads.
+     */
+    public static class AttenuationBuffer {
+        public final double[] aDiv;
+        public final double[] aAtm;
+        public final double[] aRef;
+        public final double[] aGround;
+        public final double[] aDif;
+        public final double[] aBoundary;
+        public final double[] aRetroDiff;
+        public final double[] aGlobalH;
+        public final double[] aGlobalF;
+        public final double[] aGlobal;
+        public final double[] deltaBodyScreen;
+
+        public AttenuationBuffer(int frequencyCount) {
+            aDiv = new double[frequencyCount];
+            aAtm = new double[frequencyCount];
+            aRef = new double[frequencyCount];
+            aGround = new double[frequencyCount];
+            aDif = new double[frequencyCount];
+            aBoundary = new double[frequencyCount];
+            aRetroDiff = new double[frequencyCount];
+            aGlobalH = new double[frequencyCount];
+            aGlobalF = new double[frequencyCount];
+            aGlobal = new double[frequencyCount];
+            deltaBodyScreen = new double[frequencyCount];
+        }
+    }
 }
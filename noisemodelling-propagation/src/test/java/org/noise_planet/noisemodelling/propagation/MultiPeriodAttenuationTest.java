@@ -0,0 +1,87 @@
+package org.noise_planet.noisemodelling.propagation;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.PropagationDataBuilder;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Compare the attenuation computed once for all time periods with the attenuation computed for each period
+ */
+public class MultiPeriodAttenuationTest {
+
+    @Test
+    public void testSameAttenuationAsSinglePeriod() {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.addBuilding(new Coordinate[]{
+                new Coordinate(20, 10, 8),
+                new Coordinate(30, 10, 8),
+                new Coordinate(30, 40, 8),
+                new Coordinate(20, 40, 8)});
+        profileBuilder.addBuilding(new Coordinate[]{
+                new Coordinate(50, -20, 12),
+                new Coordinate(70, -20, 12),
+                new Coordinate(70, -10, 12),
+                new Coordinate(50, -10, 12)});
+        profileBuilder.finishFeeding();
+        CnossosPropagationData data = new PropagationDataBuilder(profileBuilder)
+                .addSource(5, 20, 0.05)
+                .addReceiver(60, 25, 4)
+                .addReceiver(45, 0, 1.5)
+                .addReceiver(80, -30, 4)
+                .hEdgeDiff(true)
+                .vEdgeDiff(true)
+                .setGs(0.5)
+                .build();
+        data.setReflexionOrder(1);
+
+        PropagationProcessPathData day = new PropagationProcessPathData(false);
+        PropagationProcessPathData evening = new PropagationProcessPathData(false);
+        evening.setHumidity(80);
+        double[] windRose = new double[PropagationProcessPathData.DEFAULT_WIND_ROSE.length];
+        Arrays.fill(windRose, 0.75);
+        evening.setWindRose(windRose);
+        PropagationProcessPathData night = new PropagationProcessPathData(false);
+        night.setTemperature(5);
+        Arrays.fill(windRose, 1.0);
+        night.setWindRose(windRose);
+        PropagationProcessPathData[] periods = new PropagationProcessPathData[]{day, evening, night};
+
+        ComputeRaysOutAttenuation rayOut = new ComputeRaysOutAttenuation(true, day, data);
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(1);
+        computeRays.run(rayOut);
+        List<PropagationPath> paths = rayOut.getPropagationPaths();
+        assertFalse(paths.isEmpty());
+
+        EvaluateAttenuationCnossos[] evaluators = new EvaluateAttenuationCnossos[periods.length];
+        for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+            evaluators[idPeriod] = new EvaluateAttenuationCnossos(periods[idPeriod]);
+        }
+        EvaluateAttenuationCnossos.AttenuationBuffer buffer = evaluators[0].createBuffer();
+        for (PropagationPath path : paths) {
+            double[][] expected = new double[periods.length][];
+            for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+                expected[idPeriod] = rayOut.computeAttenuation(periods[idPeriod], evaluators[idPeriod],
+                        evaluators[idPeriod].createBuffer(), 0, 1.0, 0, Collections.singletonList(path));
+            }
+            boolean expectedFavorable = path.isFavorable();
+            double[][] actual = rayOut.computeAttenuation(periods, evaluators, buffer, 0, 1.0, path);
+            for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+                assertArrayEquals(expected[idPeriod], actual[idPeriod], 0);
+            }
+            assertEquals(expectedFavorable, path.isFavorable());
+        }
+    }
+}
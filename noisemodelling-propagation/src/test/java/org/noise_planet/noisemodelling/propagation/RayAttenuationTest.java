@@ -27,7 +27,8 @@ public class RayAttenuationTest {
         PropagationPath path = mapper.readValue(
                 RayAttenuationTest.class.getResourceAsStream("special_ray.json"), PropagationPath.class);
         PropagationProcessPathData propagationProcessPathData = new PropagationProcessPathData(false);
-        double[] aBoundary = EvaluateAttenuationCnossos.aBoundary(path, propagationProcessPathData);
+        EvaluateAttenuationCnossos evaluator = new EvaluateAttenuationCnossos(propagationProcessPathData);
+        double[] aBoundary = evaluator.aBoundary(path, evaluator.createBuffer());
         for(double value : aBoundary) {
             assertFalse(Double.isNaN(value));
         }
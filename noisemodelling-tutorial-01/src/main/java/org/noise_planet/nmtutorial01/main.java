@@ -28,7 +28,9 @@ import org.noise_planet.noisemodelling.pathfinder.utils.JVMMemoryMetric;
 import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProgressMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.ProfileCacheMetric;
 import org.noise_planet.noisemodelling.pathfinder.utils.ReceiverStatsMetric;
+import org.noise_planet.noisemodelling.pathfinder.utils.SourcePruningMetric;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -166,6 +168,8 @@ class Main {
         profilerThread.addMetric(new ProgressMetric(progressLogger));
         profilerThread.addMetric(new JVMMemoryMetric());
         profilerThread.addMetric(new ReceiverStatsMetric());
+        profilerThread.addMetric(new ProfileCacheMetric());
+        profilerThread.addMetric(new SourcePruningMetric());
         profilerThread.setWriteInterval(60);
         profilerThread.setFlushInterval(60);
         pointNoiseMap.setProfilerThread(profilerThread);
@@ -36,7 +36,9 @@ import org.noise_planet.noisemodelling.emission.*
 import org.noise_planet.noisemodelling.pathfinder.*
 import org.noise_planet.noisemodelling.pathfinder.utils.JVMMemoryMetric
 import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument
+import org.noise_planet.noisemodelling.pathfinder.utils.ProfileCacheMetric
 import org.noise_planet.noisemodelling.pathfinder.utils.ReceiverStatsMetric
+import org.noise_planet.noisemodelling.pathfinder.utils.SourcePruningMetric
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread
 import org.noise_planet.noisemodelling.pathfinder.utils.ProgressMetric
 import org.noise_planet.noisemodelling.propagation.*
@@ -153,6 +155,24 @@ inputs = [
                         '</br> </br> <b> Default value : 50 </b>',
                 min        : 0, max: 1, type: String.class
         ],
+        confReducedFidelityError: [
+                name       : 'Reduced fidelity error',
+                title      : 'Reduced fidelity error',
+                description: 'Maximum error in dB (FLOAT). The further sources are computed without reflections ' +
+                        'and lateral diffraction when the maximal sum of their contributions is below this error.' +
+                        '</br> </br> <b> Default value : not set, all the sources are computed with reflections ' +
+                        'and lateral diffraction </b>',
+                min        : 0, max: 1, type: Double.class
+        ],
+        confPruningAtmosphericAbsorption: [
+                name       : 'Atmospheric absorption in source pruning',
+                title      : 'Atmospheric absorption in source pruning',
+                description: 'Use the lowest atmospheric absorption of the day, evening and night periods in the ' +
+                        'maximal contribution of the further sources, so more sources are skipped or computed ' +
+                        'with reduced fidelity.' +
+                        '</br> </br> <b> Default value : true </b>',
+                min        : 0, max: 1, type: Boolean.class
+        ],
         confThreadNumber        : [
                 name       : 'Thread number',
                 title      : 'Thread number',
@@ -267,6 +287,15 @@ inputs = [
                         '. The number of rays has been limited in this script in order to avoid memory exception' +
                         '</br> <b> Default value : empty (do not keep rays) </b>',
                 min        : 0, max: 1, type: String.class
+        ],
+        confRaysFolder          : [
+                name       : 'Rays folder',
+                title      : 'Export rays in binary files',
+                description: 'Write all the propagation rays into binary files in the specified folder (ex: /home/user/rays).' +
+                        ' The number of rays is not limited, the rays of a receiver can be read with RayStoreReader' +
+                        ' and evaluated again with other meteorological conditions. Export scene is ignored when this folder is set' +
+                        '</br> <b> Default value : empty (do not keep rays) </b>',
+                min        : 0, max: 1, type: String.class
         ]
 ]
 
@@ -574,7 +603,11 @@ def exec(Connection connection, input) {
 
     File folderExportKML = null
     String kmlFileNamePrepend = ""
-    if (input['confRaysName'] && !((input['confRaysName'] as String).isEmpty())) {
+    if (input['confRaysFolder'] && !((input['confRaysFolder'] as String).isEmpty())) {
+        // The computation threads write all the rays in binary files, the rays are not kept in memory
+        ldenConfig.setExportRaysMethod(LDENConfig.ExportRaysMethods.TO_BINARY_FILES)
+        ldenConfig.setRaysOutputDirectory(new File(input['confRaysFolder'] as String))
+    } else if (input['confRaysName'] && !((input['confRaysName'] as String).isEmpty())) {
         String confRaysName = input['confRaysName'] as String
         if(confRaysName.startsWith("file:")) {
             ldenConfig.setExportRaysMethod(LDENConfig.ExportRaysMethods.TO_MEMORY)
@@ -603,8 +636,8 @@ def exec(Connection connection, input) {
         // Add train directivity
         ldenProcessing.insertTrainDirectivity()
     } else {
-        // Load table into specialized class
-        ldenProcessing.directionAttributes = DirectivityTableLoader.loadTable(connection, tableSourceDirectivity, 1)
+        // Load table into specialized class, stored into a grid when the angles allow it
+        ldenProcessing.directionAttributes = DirectivityTableLoader.loadTable(connection, tableSourceDirectivity, 1, 0.01)
         logger.info(String.format(Locale.ROOT, "Loaded %d directivity from %s table", ldenProcessing.directionAttributes.size(), tableSourceDirectivity))
     }
     pointNoiseMap.setComputeHorizontalDiffraction(compute_vertical_diffraction)
@@ -679,6 +712,13 @@ def exec(Connection connection, input) {
     // Do not propagate for low emission or far away sources
     // Maximum error in dB
     pointNoiseMap.setMaximumError(0.1d)
+    // Compute the further sources without reflections and lateral diffraction
+    if (input['confReducedFidelityError'] != null) {
+        pointNoiseMap.setReducedFidelityError(input['confReducedFidelityError'] as Double)
+    }
+    if (input['confPruningAtmosphericAbsorption'] != null) {
+        pointNoiseMap.setUseMinimalAtmosphericAbsorption(input['confPruningAtmosphericAbsorption'] as Boolean)
+    }
     // Init Map
     pointNoiseMap.initialize(connection, new EmptyProgressVisitor())
 
@@ -697,6 +737,8 @@ def exec(Connection connection, input) {
     profilerThread.addMetric(new ProgressMetric(progressLogger));
     profilerThread.addMetric(new JVMMemoryMetric());
     profilerThread.addMetric(new ReceiverStatsMetric());
+    profilerThread.addMetric(new ProfileCacheMetric());
+    profilerThread.addMetric(new SourcePruningMetric());
     profilerThread.setWriteInterval(300);
     profilerThread.setFlushInterval(300);
     pointNoiseMap.setProfilerThread(profilerThread);
@@ -704,27 +746,24 @@ def exec(Connection connection, input) {
         ldenProcessing.start()
         new Thread(profilerThread).start();
         // Iterate over computation areas
-        int k = 0
-        Map cells = pointNoiseMap.searchPopulatedCells(connection);
-        ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
-        new TreeSet<>(cells.keySet()).each { cellIndex ->
-            Envelope cellEnvelope = pointNoiseMap.getCellEnv(pointNoiseMap.getMainEnvelope(),
-                    cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), pointNoiseMap.getCellWidth(),
-                    pointNoiseMap.getCellHeight());
-            logger.info("Compute domain is " + new GeometryFactory().toGeometry(cellEnvelope))
-            logger.info(String.format("Compute... %.3f %% (%d receivers in this cell)", 100 * k++ / cells.size(), cells.get(cellIndex)))
-            // Run ray propagation
-            IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers)
-            // Export as a Google Earth 3d scene
-            if (out instanceof ComputeRaysOutAttenuation && folderExportKML != null) {
-                ComputeRaysOutAttenuation cellStorage = (ComputeRaysOutAttenuation) out;
-                exportScene(new File(folderExportKML.getPath(),
-                        String.format(Locale.ROOT, kmlFileNamePrepend + "_%d_%d.kml", cellIndex.getLatitudeIndex(),
-                                cellIndex.getLongitudeIndex())).getPath(),
-                cellStorage.inputData.profileBuilder, cellStorage, sridSources)
-            }
-
+        Map cells = pointNoiseMap.searchPopulatedCells(connection)
+        ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size())
+        // Fetch the next cells while the previous ones are computed
+        CellScheduler cellScheduler = new CellScheduler(pointNoiseMap)
+        if (folderExportKML != null) {
+            cellScheduler.setCellListener({ PointNoiseMap.CellIndex cellIndex, IComputeRaysOut out ->
+                // Export as a Google Earth 3d scene
+                if (out instanceof ComputeRaysOutAttenuation) {
+                    ComputeRaysOutAttenuation cellStorage = (ComputeRaysOutAttenuation) out;
+                    exportScene(new File(folderExportKML.getPath(),
+                            String.format(Locale.ROOT, kmlFileNamePrepend + "_%d_%d.kml", cellIndex.getLatitudeIndex(),
+                                    cellIndex.getLongitudeIndex())).getPath(),
+                            cellStorage.inputData.profileBuilder, cellStorage, sridSources)
+                }
+            } as CellScheduler.CellListener)
         }
+        logger.info(String.format("Compute %d cells using %d threads", cells.size(), cellScheduler.getThreadCount()))
+        cellScheduler.run(connection, new TreeSet<>(cells.keySet()), progressVisitor, receivers)
     } finally {
         profilerThread.stop();
         ldenProcessing.stop()
@@ -33,6 +33,7 @@ import org.noise_planet.noisemodelling.emission.*
 import org.noise_planet.noisemodelling.pathfinder.*
 import org.noise_planet.noisemodelling.propagation.*
 import org.noise_planet.noisemodelling.jdbc.*
+import org.noise_planet.noisemodelling.jdbc.utils.ProbabilisticTrafficEngine
 
 
 import java.sql.Connection
@@ -42,11 +43,18 @@ import java.sql.SQLException
 title = 'Road traffic probabilistic modeling'
 description = 'Compute road traffic probabilistic modeling as describe in <b>Aumond, P., Jacquesson, L., & Can, A. (2018). Probabilistic modeling framework for multisource sound mapping. Applied Acoustics, 139, 34-43. </b>.' +
         '</br>The user can indicate the number of iterations he wants the model to calculate.' +
-        '</br> </br> <b> The first output table is called : L_PROBA_GEOM </b> ' +
+        '</br> </br> <b> The first output table is called : L_PROBA_STATS </b> ' +
         'and contain : </br>' +
-        '-  <b> I  </b> : The i iteration (INTEGER).</br>' +
         '-  <b> IDRECEIVER  </b> : an identifier (INTEGER, PRIMARY KEY). </br>' +
         '- <b> THE_GEOM </b> : the 3D geometry of the receivers (POINT). </br> ' +
+        '-  <b> Hz63, Hz125, Hz250, Hz500, Hz1000,Hz2000, Hz4000, Hz8000 </b> : 8 columns giving the energetic mean over the iterations of the sound level for each octave band (FLOAT).</br>' +
+        '-  <b> LA10, LA50, LA90 </b> : the A-weighted sound level exceeded in 10%, 50% and 90% of the iterations (FLOAT).</br>' +
+        '-  <b> P_EXCEED </b> : the probability to exceed the A-weighted threshold level, if the threshold is set (FLOAT).' +
+        '</br> </br> <b> Unless the export of the iterations is disabled, the second output table is called : L_PROBA_GEOM </b> ' +
+        'and contain : </br>' +
+        '-  <b> I  </b> : The i iteration (INTEGER).</br>' +
+        '-  <b> IDRECEIVER  </b> : an identifier (INTEGER). </br>' +
+        '- <b> THE_GEOM </b> : the 3D geometry of the receivers (POINT). </br> ' +
         '-  <b> Hz63, Hz125, Hz250, Hz500, Hz1000,Hz2000, Hz4000, Hz8000 </b> : 8 columns giving the day emission sound level for each octave band (FLOAT).'
 
 inputs = [
@@ -115,8 +123,16 @@ inputs = [
                                      '</br> </br> <b> Default value : false </b>',
                              min        : 0, max: 1, type: Boolean.class],
         nIterations       : [name       : 'Iteration number', title: 'Iteration number',
-                             description: 'Number of the iterations to compute (INTEGER). </br> </br> <b> Default value : 100 </b>',
+                             description: 'Number of the iterations to compute (INTEGER). </br> </br> <b> Default value : 300 </b>',
                              min        : 0, max: 1, type: Integer.class],
+        exceedanceThreshold: [name       : 'Exceedance threshold', title: 'Exceedance threshold',
+                             description: 'A-weighted sound level in dB(A), the probability to exceed this level is computed in the column P_EXCEED (FLOAT).',
+                             min        : 0, max: 1, type: Double.class],
+        exportIterations  : [name       : 'Export iterations', title: 'Export iterations',
+                             description: 'Write the sound levels of every iteration in the table L_PROBA_GEOM.' +
+                                     '</br> Set it to false on large areas, this table has one row by receiver and iteration.' +
+                                     '</br> </br> <b> Default value : true </b>',
+                             min        : 0, max: 1, type: Boolean.class],
 ]
 
 outputs = [
@@ -273,6 +289,16 @@ def exec(Connection connection, input) {
         compute_horizontal_diffraction = input['confDiffHorizontal']
     }
 
+    Double exceedance_threshold = null
+    if (input['exceedanceThreshold'] != null) {
+        exceedance_threshold = Double.valueOf(input['exceedanceThreshold'] as String)
+    }
+
+    boolean export_iterations = true
+    if (input['exportIterations'] != null) {
+        export_iterations = input['exportIterations'] as Boolean
+    }
+
 
     // -------------------------
     // Initialize some variables
@@ -328,23 +354,20 @@ def exec(Connection connection, input) {
 
     // Init ProgressLogger (loading bar)
     RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1)
-    ProgressVisitor progressVisitor = progressLogger.subProcess(pointNoiseMap.getGridDim() * pointNoiseMap.getGridDim())
-    int fullGridSize = pointNoiseMap.getGridDim() * pointNoiseMap.getGridDim()
+    Map cells = pointNoiseMap.searchPopulatedCells(connection)
+    ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size())
 
     System.println("Start calculation... ")
-    // Iterate over computation areas
-    int k=0
-    for (int i = 0; i < pointNoiseMap.getGridDim(); i++) {
-        for (int j = 0; j < pointNoiseMap.getGridDim(); j++) {
-            System.println("Compute... " + 100*k++/fullGridSize + " % ")
-
-            IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, i, j, progressVisitor, receivers)
-
-            if (out instanceof ComputeRaysOutAttenuation) {
+    // Iterate over computation areas, the next cells are fetched while the previous ones are computed
+    CellScheduler cellScheduler = new CellScheduler(pointNoiseMap)
+    cellScheduler.setCellListener({ PointNoiseMap.CellIndex cellIndex, IComputeRaysOut out ->
+        if (out instanceof ComputeRaysOutAttenuation) {
+            synchronized (allLevels) {
                 allLevels.addAll(((ComputeRaysOutAttenuation) out).getVerticesSoundLevel())
             }
         }
-    }
+    } as CellScheduler.CellListener)
+    cellScheduler.run(connection, new TreeSet<>(cells.keySet()), progressVisitor, receivers)
 
     System.out.println('Intermediate  time : ' + TimeCategory.minus(new Date(), start))
 
@@ -389,80 +412,73 @@ def exec(Connection connection, input) {
 
     sql.execute("drop table ROADS_PROBA if exists;")
 
-    System.out.println('Intermediate  time : ' + TimeCategory.minus(new Date(), start))
-    System.out.println("Export data to table")
-
-    sql.execute("drop table if exists L_PROBA;")
-    sql.execute("create table L_PROBA(IT integer, IDRECEIVER integer, Hz63 double precision, Hz125 double precision, Hz250 double precision, Hz500 double precision, Hz1000 double precision, Hz2000 double precision, Hz4000 double precision, Hz8000 double precision);")
-    def qry = 'INSERT INTO L_PROBA(IT , IDRECEIVER,Hz63, Hz125, Hz250, Hz500, Hz1000,Hz2000, Hz4000, Hz8000) VALUES (?,?,?,?,?,?,?,?,?,?);'
-
-    k = 0
-    for (int it = 1; it < nIterations; it++) {
-        // Iterate over attenuation matrix
-        Map<Integer, double[]> soundLevels = new HashMap<>()
-        Map<Integer, double[]> sourceLev = new HashMap<>()
-
-        for (int i = 0; i < allLevels.size(); i++) {
-            k++
-
-            // get attenuation matrix value
-            double[] soundLevel = allLevels.get(i).value
-
-            //get id from receiver and sound sources
-            int idReceiver = (Integer) allLevels.get(i).receiverId
-            int idSource = (Integer) allLevels.get(i).sourceId
-
-            // get source SoundLevel
-            if (!sourceLev.containsKey(idSource)) {
-                double[] carsLevel = probabilisticProcessData.getCarsLevel(idSource)
-                sourceLev.put(idSource, carsLevel)
-            }
+    // Attenuation matrix and sources states are stored in primitive arrays, the iterations are computed in parallel
+    ProbabilisticTrafficEngine engine = new ProbabilisticTrafficEngine(ProbabilisticProcessData.FREQUENCIES.length)
+    engine.setThreadCount(n_thread > 0 ? n_thread : Runtime.getRuntime().availableProcessors())
+    engine.setBandWeights(ProbabilisticProcessData.A_WEIGHTING)
+    if (exceedance_threshold != null) {
+        engine.setExceedanceThresholds(exceedance_threshold)
+    }
+    probabilisticProcessData.addSources(engine)
+    engine.addAttenuation(allLevels)
+    allLevels.clear()
 
-            if (sourceLev.get(idSource)[0] > 0) {
-                // if any attenuation matrix value is set to NaN
-                if (!Double.isNaN(soundLevel[0]) && !Double.isNaN(soundLevel[1])
-                        && !Double.isNaN(soundLevel[2]) && !Double.isNaN(soundLevel[3])
-                        && !Double.isNaN(soundLevel[4]) && !Double.isNaN(soundLevel[5])
-                        && !Double.isNaN(soundLevel[6]) && !Double.isNaN(soundLevel[7])) {
-
-                    if (soundLevels.containsKey(idReceiver)) {
-                        // add Leq value to the pre-existing sound level on this receiver
-                        double[] sumArray = tools.invokeMethod("sumArraySR", [soundLevel, sourceLev.get(idSource)])
-                        soundLevel = ComputeRays.sumDbArray(sumArray, soundLevels.get(idReceiver))
-                        soundLevels.replace(idReceiver, soundLevel)
-                    } else {
-                        // apply A ponderation
-                        //soundLevel = DBToDBA(soundLevel)
-                        // add a new Leq value on this receiver
-                        double[] sumArray =  tools.invokeMethod("sumArraySR", [soundLevel, sourceLev.get(idSource)])
-                        soundLevels.put(idReceiver, sumArray)
-                    }
+    System.out.println('Intermediate  time : ' + TimeCategory.minus(new Date(), start))
+    System.out.println("Compute " + nIterations + " iterations")
+
+    if (export_iterations) {
+        sql.execute("drop table if exists L_PROBA;")
+        sql.execute("create table L_PROBA(IT integer, IDRECEIVER integer, Hz63 double precision, Hz125 double precision, Hz250 double precision, Hz500 double precision, Hz1000 double precision, Hz2000 double precision, Hz4000 double precision, Hz8000 double precision);")
+        def qry = 'INSERT INTO L_PROBA(IT , IDRECEIVER,Hz63, Hz125, Hz250, Hz500, Hz1000,Hz2000, Hz4000, Hz8000) VALUES (?,?,?,?,?,?,?,?,?,?);'
+        sql.withBatch(1000, qry) { ps ->
+            engine.run(nIterations, { int iteration, long receiverPk, double[] levels ->
+                synchronized (ps) {
+                    ps.addBatch((iteration + 1) as Integer, receiverPk as Integer,
+                            levels[0] as Double, levels[1] as Double, levels[2] as Double,
+                            levels[3] as Double, levels[4] as Double, levels[5] as Double,
+                            levels[6] as Double, levels[7] as Double)
                 }
-            }
+            } as ProbabilisticTrafficEngine.IterationListener)
         }
+    } else {
+        engine.run(nIterations)
+    }
 
-        sql.withBatch(100, qry) { ps ->
-            for (Map.Entry<Integer, double[]> s : soundLevels.entrySet()) {
-
-                ps.addBatch(it as Integer, s.key as Integer,
-                        s.value[0] as Double, s.value[1] as Double, s.value[2] as Double,
-                        s.value[3] as Double, s.value[4] as Double, s.value[5] as Double,
-                        s.value[6] as Double, s.value[7] as Double)
+    System.out.println('Intermediate  time : ' + TimeCategory.minus(new Date(), start))
+    System.out.println("Export data to table")
 
-            }
+    sql.execute("drop table if exists L_PROBA_STATS_NOGEOM;")
+    sql.execute("create table L_PROBA_STATS_NOGEOM(IDRECEIVER integer, Hz63 double precision, Hz125 double precision, Hz250 double precision, Hz500 double precision, Hz1000 double precision, Hz2000 double precision, Hz4000 double precision, Hz8000 double precision, LA10 double precision, LA50 double precision, LA90 double precision, P_EXCEED double precision);")
+    def statsQry = 'INSERT INTO L_PROBA_STATS_NOGEOM VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?);'
+    sql.withBatch(1000, statsQry) { ps ->
+        for (int idReceiver = 0; idReceiver < engine.getReceiverCount(); idReceiver++) {
+            double[] leq = engine.getEquivalentLevels(idReceiver)
+            ps.addBatch(engine.getReceiverPk(idReceiver) as Integer,
+                    leq[0] as Double, leq[1] as Double, leq[2] as Double, leq[3] as Double,
+                    leq[4] as Double, leq[5] as Double, leq[6] as Double, leq[7] as Double,
+                    finiteOrNull(engine.getExceededLevel(idReceiver, 10)),
+                    finiteOrNull(engine.getExceededLevel(idReceiver, 50)),
+                    finiteOrNull(engine.getExceededLevel(idReceiver, 90)),
+                    exceedance_threshold != null ? engine.getExceedanceProbability(idReceiver, 0) as Double : null)
         }
     }
 
-
-    // Drop table LDEN_GEOM if exists
-    sql.execute("drop table if exists L_PROBA_GEOM;")
-    // Associate Geometry column to the table LDEN
-    sql.execute("CREATE INDEX ON L_PROBA(IDRECEIVER);")
+    // Associate Geometry column to the statistics
     sql.execute("CREATE INDEX ON RECEIVERS(PK);")
-    sql.execute("create table L_PROBA_GEOM  as select a.IT,a.IDRECEIVER, b.THE_GEOM, a.Hz63, a.Hz125, a.Hz250, a.Hz500, a.Hz1000, a.Hz2000, a.Hz4000, a.Hz8000  FROM L_PROBA a LEFT JOIN  RECEIVERS b  ON a.IDRECEIVER = b.PK;")
-
-
-    resultString = "Calculation Done ! The table L_PROBA_GEOM has been created."
+    sql.execute("drop table if exists L_PROBA_STATS;")
+    sql.execute("create table L_PROBA_STATS as select a.IDRECEIVER, b.THE_GEOM, a.Hz63, a.Hz125, a.Hz250, a.Hz500, a.Hz1000, a.Hz2000, a.Hz4000, a.Hz8000, a.LA10, a.LA50, a.LA90, a.P_EXCEED FROM L_PROBA_STATS_NOGEOM a LEFT JOIN RECEIVERS b ON a.IDRECEIVER = b.PK;")
+    sql.execute("drop table if exists L_PROBA_STATS_NOGEOM;")
+
+    resultString = "Calculation Done ! The table L_PROBA_STATS has been created."
+
+    if (export_iterations) {
+        // Drop table LDEN_GEOM if exists
+        sql.execute("drop table if exists L_PROBA_GEOM;")
+        // Associate Geometry column to the table LDEN
+        sql.execute("CREATE INDEX ON L_PROBA(IDRECEIVER);")
+        sql.execute("create table L_PROBA_GEOM  as select a.IT,a.IDRECEIVER, b.THE_GEOM, a.Hz63, a.Hz125, a.Hz250, a.Hz500, a.Hz1000, a.Hz2000, a.Hz4000, a.Hz8000  FROM L_PROBA a LEFT JOIN  RECEIVERS b  ON a.IDRECEIVER = b.PK;")
+        resultString = "Calculation Done ! The tables L_PROBA_STATS and L_PROBA_GEOM have been created."
+    }
 
     // print to command window
     System.out.println('Result : ' + resultString)
@@ -473,6 +489,13 @@ def exec(Connection connection, input) {
     return resultString
 }
 
+/**
+ * @return null instead of an infinite level, when no source reach the receiver
+ */
+static Double finiteOrNull(double level) {
+    return Double.isInfinite(level) ? null : level
+}
+
 
 
 
@@ -799,76 +822,64 @@ class ProbabilisticProcessData {
     Map<Integer, Double> LV = new HashMap<>()
     Map<Integer, Double> HV = new HashMap<>()
 
-    double[] getCarsLevel(int idSource) throws SQLException {
-        double[] res_d = [0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0]
-        double[] res_LV = [0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0]
-        double[] res_HV = [0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0]
-        def list = [63, 125, 250, 500, 1000, 2000, 4000, 8000]
-        // memes valeurs d e et n
-
+    static final int[] FREQUENCIES = [63, 125, 250, 500, 1000, 2000, 4000, 8000]
+    static final double[] A_WEIGHTING = CnossosPropagationData.asOctaveBands(
+            CnossosPropagationData.DEFAULT_FREQUENCIES_A_WEIGHTING_THIRD_OCTAVE) as double[]
 
-        def random = Math.random()
-        if (random < LV.get(idSource)) {
-            int kk = 0
-            for (f in list) {
+    // the emission only depends on the vehicle type and on the speed
+    Map<String, double[]> vehicleLevels = new HashMap<>()
 
-                double speed = SPEED_LV.get(idSource)
+    double[] getVehicleLevel(String vehType, double speed) {
+        String key = vehType + "_" + speed
+        double[] res = vehicleLevels.get(key)
+        if (res == null) {
+            res = new double[FREQUENCIES.length]
+            for (int kk = 0; kk < FREQUENCIES.length; kk++) {
                 int acc = 0
-                int FreqParam = f
+                int FreqParam = FREQUENCIES[kk]
                 double Temperature = 20
                 String RoadSurface = "DEF"
                 boolean Stud = true
                 double Junc_dist = 200
                 int Junc_type = 1
-                String veh_type = "1"
                 int acc_type = 1
                 double LwStd = 1
                 int VehId = 10
 
-                RoadSourceParametersDynamic rsParameters = new RoadSourceParametersDynamic(speed, acc, veh_type, acc_type, FreqParam, Temperature, RoadSurface, Stud, Junc_dist, Junc_type, LwStd, VehId)
+                RoadSourceParametersDynamic rsParameters = new RoadSourceParametersDynamic(speed, acc, vehType, acc_type, FreqParam, Temperature, RoadSurface, Stud, Junc_dist, Junc_type, LwStd, VehId)
                 rsParameters.setSlopePercentage(0)
 
-                res_LV[kk] = EvaluateRoadSourceDynamic.evaluate(rsParameters)
-                kk++
+                res[kk] = EvaluateRoadSourceDynamic.evaluate(rsParameters)
             }
-
+            vehicleLevels.put(key, res)
         }
-        if (random < HV.get(idSource)) {
-            int kk = 0
-            for (f in list) {
-                double speed = SPEED_HV.get(idSource)
-                int acc = 0
-                int FreqParam = f
-                double Temperature = 20
-                String RoadSurface = "DEF"
-                boolean Stud = true
-                double Junc_dist = 200
-                int Junc_type = 1
-                String veh_type = "3"
-                int acc_type = 1
-                double LwStd = 1
-                int VehId = 10
-
-                RoadSourceParametersDynamic rsParameters = new RoadSourceParametersDynamic(speed, acc, veh_type, acc_type, FreqParam, Temperature, RoadSurface, Stud, Junc_dist, Junc_type, LwStd, VehId)
-                rsParameters.setSlopePercentage(0)
+        return res
+    }
 
-                res_HV[kk] = EvaluateRoadSourceDynamic.evaluate(rsParameters)
-                kk++
+    /**
+     * Add the emission states of the sources. A single random value drive the presence of the light and heavy
+     * vehicles, so the heavy and light vehicles are both present with the smallest probability. An absent vehicle
+     * category count as 0 dB in the mean of the two categories.
+     */
+    void addSources(ProbabilisticTrafficEngine engine) {
+        for (Integer idSource : LV.keySet()) {
+            double pLV = Math.min(1.0, LV.get(idSource))
+            double pHV = Math.min(1.0, HV.get(idSource))
+            double[] levelLV = getVehicleLevel("1", SPEED_LV.get(idSource))
+            double[] levelHV = getVehicleLevel("3", SPEED_HV.get(idSource))
+            double[] both = new double[FREQUENCIES.length]
+            double[] onlyLV = new double[FREQUENCIES.length]
+            double[] onlyHV = new double[FREQUENCIES.length]
+            for (int kk = 0; kk < FREQUENCIES.length; kk++) {
+                both[kk] = 10 * Math.log10(0.5 * (Math.pow(10, levelLV[kk] / 10) + Math.pow(10, levelHV[kk] / 10)))
+                onlyLV[kk] = 10 * Math.log10(0.5 * (Math.pow(10, levelLV[kk] / 10) + 1))
+                onlyHV[kk] = 10 * Math.log10(0.5 * (1 + Math.pow(10, levelHV[kk] / 10)))
             }
+            double pBoth = Math.min(pLV, pHV)
+            double pSingle = Math.abs(pLV - pHV)
+            engine.addSource(idSource, [pBoth, pSingle] as double[],
+                    [both, pLV > pHV ? onlyLV : onlyHV] as double[][])
         }
-        int kk = 0
-        for (f in list) {
-            res_d[kk] = 10 * Math.log10(
-                    (1.0 / 2.0) *
-                            (Math.pow(10, (10 * Math.log10(Math.pow(10, res_LV[kk] / 10))) / 10)
-                                    + Math.pow(10, (10 * Math.log10(Math.pow(10, res_HV[kk] / 10))) / 10)
-                            )
-            )
-            kk++
-        }
-
-
-        return res_d
     }
 
     void setProbaTable(String tablename, Sql sql) {
@@ -18,6 +18,7 @@ import org.h2gis.functions.io.dbf.DBFRead
 import org.h2gis.functions.io.shp.SHPRead
 import org.h2gis.utilities.JDBCUtilities
 import org.junit.Test
+import org.noise_planet.noisemodelling.jdbc.utils.RayStoreReader
 import org.noise_planet.noisemodelling.wps.Geometric_Tools.Set_Height
 import org.noise_planet.noisemodelling.wps.Import_and_Export.Import_File
 import org.noise_planet.noisemodelling.wps.Import_and_Export.Export_Table
@@ -186,6 +187,43 @@ class TestNoiseModelling extends JdbcTestCase {
         assertEquals(63, leqs[7] as Double, 2.0)
     }
 
+    @Test
+    void testLdayFromTrafficRaysFolder() {
+
+        SHPRead.importTable(connection, TestNoiseModelling.getResource("ROADS2.shp").getPath())
+
+        new Import_File().exec(connection,
+                ["pathFile" : TestNoiseModelling.getResource("buildings.shp").getPath(),
+                 "inputSRID": "2154",
+                 "tableName": "buildings"])
+
+        new Import_File().exec(connection,
+                ["pathFile" : TestNoiseModelling.getResource("receivers.shp").getPath(),
+                 "inputSRID": "2154",
+                 "tableName": "receivers"])
+
+        File raysFolder = new File("target/rays_traffic")
+
+        String res = new Noise_level_from_traffic().exec(connection,
+                ["tableBuilding"   : "BUILDINGS",
+                 "tableRoads"   : "ROADS2",
+                 "tableReceivers": "RECEIVERS",
+                 "confSkipLevening": true,
+                 "confSkipLnight": true,
+                 "confSkipLden": true,
+                 "confRaysFolder": raysFolder.getAbsolutePath()])
+
+        assertTrue(res.contains("LDAY_GEOM"))
+
+        RayStoreReader reader = new RayStoreReader(raysFolder)
+        try {
+            assertTrue(reader.getReceiverCount() > 0)
+            assertFalse(reader.readReceiverAt(0).isEmpty())
+        } finally {
+            reader.close()
+        }
+    }
+
     @Test
     void testLdayFromTrafficWithBuildingsZ() {
 